@@ -5,21 +5,18 @@ import android.content.Context;
 import com.sismics.docs.listener.HttpCallback;
 import com.sismics.docs.util.OkHttpUtil;
 
+import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.IOException;
-import java.io.InputStream;
 
+import okhttp3.FormBody;
 import okhttp3.HttpUrl;
 import okhttp3.MediaType;
-import okhttp3.MultipartBody;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
 import okhttp3.internal.Util;
-import okio.BufferedSink;
-import okio.Okio;
-import okio.Source;
 
 
 /**
@@ -66,58 +63,102 @@ public class FileResource extends BaseResource {
     }
 
     /**
-     * PUT /file.
+     * POST /file/upload.
      *
      * @param context Context
      * @param documentId Document ID
-     * @param is Input stream
-     * @param callback Callback
-     * @throws Exception
+     * @param name File name
+     * @return Upload session
+     * @throws IOException e
+     */
+    public static JSONObject startUploadSync(Context context, String documentId, String name) throws IOException {
+        Request request = new Request.Builder()
+                .url(HttpUrl.parse(getApiUrl(context) + "/file/upload"))
+                .post(new FormBody.Builder()
+                        .add("id", documentId)
+                        .add("name", name)
+                        .build())
+                .build();
+        return executeSync(context, request);
+    }
+
+    /**
+     * GET /file/upload/id.
+     *
+     * @param context Context
+     * @param uploadId Upload ID
+     * @return Upload session, with the offset received by the server
+     * @throws IOException e
      */
-    public static void addSync(Context context, String documentId, final InputStream is, HttpCallback callback) throws Exception {
+    public static JSONObject getUploadSync(Context context, String uploadId) throws IOException {
         Request request = new Request.Builder()
-                .url(HttpUrl.parse(getApiUrl(context) + "/file"))
-                .put(new MultipartBody.Builder()
-                        .setType(MultipartBody.FORM)
-                        .addFormDataPart("id", documentId)
-                        .addFormDataPart("file", "file", new RequestBody() {
-                            @Override
-                            public MediaType contentType() {
-                                return MediaType.parse("application/octet-stream");
-                            }
+                .url(HttpUrl.parse(getApiUrl(context) + "/file/upload/" + uploadId))
+                .get()
+                .build();
+        return executeSync(context, request);
+    }
 
-                            @Override
-                            public void writeTo(BufferedSink sink) throws IOException {
-                                Source source = Okio.source(is);
-                                try {
-                                    sink.writeAll(source);
-                                } finally {
-                                    Util.closeQuietly(source);
-                                }
-                            }
-                        })
+    /**
+     * PUT /file/upload/id.
+     *
+     * @param context Context
+     * @param uploadId Upload ID
+     * @param offset Offset of the chunk
+     * @param data Chunk data
+     * @param start Start of the chunk in the data
+     * @param length Chunk length
+     * @return Offset of the next chunk
+     * @throws IOException e
+     */
+    public static JSONObject putUploadSync(Context context, String uploadId, long offset, byte[] data, int start, int length) throws IOException {
+        Request request = new Request.Builder()
+                .url(HttpUrl.parse(getApiUrl(context) + "/file/upload/" + uploadId)
+                        .newBuilder()
+                        .addQueryParameter("offset", Long.toString(offset))
                         .build())
+                .put(RequestBody.create(MediaType.parse("application/octet-stream"), data, start, length))
+                .build();
+        return executeSync(context, request);
+    }
+
+    /**
+     * POST /file/upload/id/complete.
+     *
+     * @param context Context
+     * @param uploadId Upload ID
+     * @return Added file
+     * @throws IOException e
+     */
+    public static JSONObject completeUploadSync(Context context, String uploadId) throws IOException {
+        Request request = new Request.Builder()
+                .url(HttpUrl.parse(getApiUrl(context) + "/file/upload/" + uploadId + "/complete"))
+                .post(new FormBody.Builder().build())
                 .build();
+        return executeSync(context, request);
+    }
+
+    /**
+     * Execute a request synchronously.
+     *
+     * @param context Context
+     * @param request Request
+     * @return JSON response
+     * @throws IOException e, if the request failed
+     */
+    private static JSONObject executeSync(Context context, Request request) throws IOException {
         Response response = OkHttpUtil.buildClient(context)
                 .newCall(request)
                 .execute();
-
-        // Call the right callback
-        final String body = response.body().string();
-        if (response.isSuccessful()) {
-            try {
-                callback.onSuccess(new JSONObject(body));
-            } catch (Exception e) {
-                callback.onFailure(null, e);
-            }
-        } else {
-            try {
-                callback.onFailure(new JSONObject(body), null);
-            } catch (Exception e) {
-                callback.onFailure(null, e);
+        try {
+            String body = response.body().string();
+            if (!response.isSuccessful()) {
+                throw new IOException("HTTP " + response.code() + ": " + body);
             }
+            return new JSONObject(body);
+        } catch (JSONException e) {
+            throw new IOException(e);
+        } finally {
+            Util.closeQuietly(response);
         }
-
-        callback.onFinish();
     }
 }
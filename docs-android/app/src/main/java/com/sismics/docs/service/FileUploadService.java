@@ -14,7 +14,6 @@ import android.util.Log;
 
 import com.sismics.docs.R;
 import com.sismics.docs.event.FileAddEvent;
-import com.sismics.docs.listener.HttpCallback;
 import com.sismics.docs.resource.FileResource;
 
 import org.greenrobot.eventbus.EventBus;
@@ -36,6 +35,9 @@ public class FileUploadService extends IntentService {
 
     private static final int UPLOAD_NOTIFICATION_ID = 1;
     private static final int UPLOAD_NOTIFICATION_ID_DONE = 2;
+    private static final int CHUNK_SIZE = 1024 * 1024;
+    private static final int MAX_RETRY = 5;
+    private static final long RETRY_DELAY = 5000;
     public static final String PARAM_URI = "uri";
     public static final String PARAM_DOCUMENT_ID = "documentId";
 
@@ -88,31 +90,81 @@ public class FileUploadService extends IntentService {
     }
 
     /**
-     * Actually uploading the file.
+     * Actually uploading the file, in chunks.
      *
      * @param documentId Document ID
      * @param uri Data URI
-     * @throws IOException e
+     * @throws Exception e
      */
     private void handleFileUpload(final String documentId, final Uri uri) throws Exception {
-        final InputStream is = getContentResolver().openInputStream(uri);
-        FileResource.addSync(this, documentId, is, new HttpCallback() {
-            @Override
-            public void onSuccess(JSONObject response) {
-                EventBus.getDefault().post(new FileAddEvent(documentId, response.optString("id")));
-                FileUploadService.this.onComplete();
+        InputStream is = getContentResolver().openInputStream(uri);
+        try {
+            String uploadId = FileResource.startUploadSync(this, documentId, "file").getString("id");
+            byte[] chunk = new byte[CHUNK_SIZE];
+            long offset = 0;
+            int length;
+            while ((length = read(is, chunk)) > 0) {
+                offset = sendChunk(uploadId, offset, chunk, length);
             }
 
-            @Override
-            public void onFailure(JSONObject json, Exception e) {
-                FileUploadService.this.onError();
+            JSONObject response = FileResource.completeUploadSync(this, uploadId);
+            EventBus.getDefault().post(new FileAddEvent(documentId, response.optString("id")));
+            onComplete();
+        } finally {
+            Util.closeQuietly(is);
+        }
+    }
+
+    /**
+     * Send a chunk, resuming from what the server received after an error.
+     *
+     * @param uploadId Upload ID
+     * @param offset Offset of the chunk
+     * @param chunk Chunk data
+     * @param length Chunk length
+     * @return Offset of the next chunk
+     * @throws Exception e
+     */
+    private long sendChunk(String uploadId, long offset, byte[] chunk, int length) throws Exception {
+        int sent = 0;
+        for (int retry = 0; ; retry++) {
+            try {
+                return FileResource.putUploadSync(this, uploadId, offset + sent, chunk, sent, length - sent).getLong("offset");
+            } catch (IOException e) {
+                if (retry >= MAX_RETRY) {
+                    throw e;
+                }
+                Log.w(TAG, "Error sending a chunk, resuming", e);
             }
 
-            @Override
-            public void onFinish() {
-                Util.closeQuietly(is);
+            Thread.sleep(RETRY_DELAY * (retry + 1));
+            try {
+                long received = FileResource.getUploadSync(this, uploadId).getLong("offset");
+                if (received < offset || received > offset + length) {
+                    throw new IOException("Unexpected offset received: " + received);
+                }
+                sent = (int) (received - offset);
+            } catch (IOException e) {
+                Log.w(TAG, "Error getting the upload progress", e);
             }
-        });
+        }
+    }
+
+    /**
+     * Read a chunk entirely, unless the end of the stream is reached.
+     *
+     * @param is Input stream
+     * @param chunk Chunk data
+     * @return Chunk length
+     * @throws IOException e
+     */
+    private static int read(InputStream is, byte[] chunk) throws IOException {
+        int length = 0;
+        int n;
+        while (length < chunk.length && (n = is.read(chunk, length, chunk.length - length)) != -1) {
+            length += n;
+        }
+        return length;
     }
 
     /**
@@ -83,11 +83,89 @@ public class Constants {
      */
     public static final String BCRYPT_WORK_ENV = "DOCS_BCRYPT_WORK";
 
+    /**
+     * Audit log writing environment variables.
+     * Audit logs are written in the request transaction in synchronous mode, in background batches otherwise.
+     */
+    public static final String AUDIT_LOG_SYNC_ENV = "DOCS_AUDIT_LOG_SYNC";
+    public static final String AUDIT_LOG_QUEUE_SIZE_ENV = "DOCS_AUDIT_LOG_QUEUE_SIZE";
+
+    /**
+     * Default maximum number of audit logs waiting to be written.
+     */
+    public static final int DEFAULT_AUDIT_LOG_QUEUE_SIZE = 10000;
+
+    /**
+     * Audit log retention in days environment variable.
+     * Older audit logs are archived and removed from the database, by whole months.
+     */
+    public static final String AUDIT_LOG_RETENTION_DAYS_ENV = "DOCS_AUDIT_LOG_RETENTION_DAYS";
+
+    /**
+     * Storage deduplication environment variable.
+     * New files with identical content are stored once, in a content-addressed blob.
+     */
+    public static final String STORAGE_DEDUPLICATION_ENV = "DOCS_STORAGE_DEDUPLICATION";
+
+    /**
+     * Storage type environment variable: filesystem (default), memory or s3.
+     */
+    public static final String STORAGE_TYPE_ENV = "DOCS_STORAGE_TYPE";
+
+    /**
+     * S3-compatible storage environment variables.
+     */
+    public static final String S3_ENDPOINT_ENV = "DOCS_S3_ENDPOINT";
+    public static final String S3_REGION_ENV = "DOCS_S3_REGION";
+    public static final String S3_BUCKET_ENV = "DOCS_S3_BUCKET";
+    public static final String S3_ACCESS_KEY_ENV = "DOCS_S3_ACCESS_KEY";
+    public static final String S3_SECRET_KEY_ENV = "DOCS_S3_SECRET_KEY";
+
+    /**
+     * Memory budget of the decrypted file previews, in megabytes. 0 disables the cache.
+     */
+    public static final String PREVIEW_CACHE_SIZE_ENV = "DOCS_PREVIEW_CACHE_SIZE";
+
+    /**
+     * Default memory budget of the decrypted file previews, in megabytes.
+     */
+    public static final int DEFAULT_PREVIEW_CACHE_SIZE = 64;
+
+    /**
+     * Directory of the temporary files environment variable, the system one by default.
+     */
+    public static final String TEMP_DIRECTORY_ENV = "DOCS_TEMP_DIR";
+
+    /**
+     * Disk budget of the temporary files, in megabytes. 0 (default) for no budget.
+     */
+    public static final String TEMP_MAX_SIZE_ENV = "DOCS_TEMP_MAX_SIZE";
+
+    /**
+     * Read rate of the storage scrubber, in megabytes per second. 0 (default) disables the scrubber.
+     */
+    public static final String STORAGE_SCRUB_RATE_ENV = "DOCS_STORAGE_SCRUB_RATE";
+
     /**
      * Expiration time of the password recovery in hours.
      */
     public static final int PASSWORD_RECOVERY_EXPIRATION_HOUR = 2;
 
+    /**
+     * Expiration time of the upload sessions without new content in hours.
+     */
+    public static final int UPLOAD_EXPIRATION_HOUR = 24;
+
+    /**
+     * Maximum size of a chunk of an upload session.
+     */
+    public static final long UPLOAD_MAX_CHUNK_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * Maximum number of upload sessions per user.
+     */
+    public static final int UPLOAD_MAX_COUNT = 10;
+
     /**
      * Email template for password recovery.
      */
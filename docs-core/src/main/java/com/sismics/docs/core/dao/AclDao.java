@@ -13,8 +13,12 @@ import com.sismics.util.context.ThreadLocalContext;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.Query;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 /**
@@ -63,32 +67,48 @@ public class AclDao {
      * Search ACLs by source ID.
      *
      * @param sourceId Source ID
+     * @param type Type
      * @return ACL DTO list
      */
-    @SuppressWarnings("unchecked")
     public List<AclDto> getBySourceId(String sourceId, AclType type) {
+        return getBySourceIds(Collections.singleton(sourceId), type).getOrDefault(sourceId, new ArrayList<>());
+    }
+
+    /**
+     * Search ACLs of several sources in one query.
+     *
+     * @param sourceIds Sources IDs
+     * @param type Type
+     * @return ACL DTO list per source ID (sources without ACL are absent)
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, List<AclDto>> getBySourceIds(Collection<String> sourceIds, AclType type) {
+        Map<String, List<AclDto>> result = new HashMap<>();
+        if (sourceIds.isEmpty()) {
+            return result;
+        }
+
         EntityManager em = ThreadLocalContext.get().getEntityManager();
         StringBuilder sb = new StringBuilder("select a.ACL_ID_C, a.ACL_PERM_C, a.ACL_TARGETID_C, ")
-                .append(" u.USE_USERNAME_C, s.SHA_ID_C, s.SHA_NAME_C, g.GRP_NAME_C ")
+                .append(" u.USE_USERNAME_C, s.SHA_ID_C, s.SHA_NAME_C, g.GRP_NAME_C, a.ACL_SOURCEID_C ")
                 .append(" from T_ACL a ")
                 .append(" left join T_USER u on u.USE_ID_C = a.ACL_TARGETID_C ")
                 .append(" left join T_SHARE s on s.SHA_ID_C = a.ACL_TARGETID_C ")
                 .append(" left join T_GROUP g on g.GRP_ID_C = a.ACL_TARGETID_C ")
-                .append(" where a.ACL_DELETEDATE_D is null and a.ACL_SOURCEID_C = :sourceId ");
+                .append(" where a.ACL_DELETEDATE_D is null and a.ACL_SOURCEID_C in (:sourceIds) ");
         if (type != null) {
             sb.append(" and a.ACL_TYPE_C = :type");
         }
 
         // Perform the query
         Query q = em.createNativeQuery(sb.toString());
-        q.setParameter("sourceId", sourceId);
+        q.setParameter("sourceIds", sourceIds);
         if (type != null) {
             q.setParameter("type", type.name());
         }
         List<Object[]> l = q.getResultList();
 
         // Assemble results
-        List<AclDto> aclDtoList = new ArrayList<>();
         for (Object[] o : l) {
             int i = 0;
             AclDto aclDto = new AclDto();
@@ -98,7 +118,7 @@ public class AclDao {
             String userName = (String) o[i++];
             String shareId = (String) o[i++];
             String shareName = (String) o[i++];
-            String groupName = (String) o[i];
+            String groupName = (String) o[i++];
             if (userName != null) {
                 aclDto.setTargetName(userName);
                 aclDto.setTargetType(AclTargetType.USER.name());
@@ -111,9 +131,9 @@ public class AclDao {
                 aclDto.setTargetName(groupName);
                 aclDto.setTargetType(AclTargetType.GROUP.name());
             }
-            aclDtoList.add(aclDto);
+            result.computeIfAbsent((String) o[i], k -> new ArrayList<>()).add(aclDto);
         }
-        return aclDtoList;
+        return result;
     }
 
     /**
@@ -181,5 +201,10 @@ public class AclDao {
         q.setParameter("type", type);
         q.setParameter("dateNow", new Date());
         q.executeUpdate();
+
+        // The ACL may have been a share of a document
+        if (type == AclType.USER) {
+            new DocumentDao().updateShareCount(sourceId);
+        }
     }
 }
\ No newline at end of file
@@ -13,6 +13,8 @@ import com.sismics.docs.core.util.jpa.SortCriteria;
 import com.sismics.util.context.ThreadLocalContext;
 
 import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import jakarta.persistence.TypedQuery;
 import java.sql.Timestamp;
 import java.util.*;
 
@@ -40,6 +42,59 @@ public class AuditLogDao {
         return auditLog.getId();
     }
     
+    /**
+     * Returns the creation date of the oldest audit log.
+     *
+     * @return Creation date, null if there is no audit log
+     */
+    public Date getOldestCreateDate() {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        TypedQuery<Date> q = em.createQuery("select min(l.createDate) from AuditLog l", Date.class);
+        return q.getSingleResult();
+    }
+
+    /**
+     * Returns audit logs created in a period, in creation order.
+     *
+     * @param start Start of the period (inclusive)
+     * @param end End of the period (exclusive)
+     * @param after Last audit log of the previous chunk, null for the first chunk
+     * @param limit Maximum number of audit logs
+     * @return Audit logs
+     */
+    public List<AuditLog> findByCreateDate(Date start, Date end, AuditLog after, int limit) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        StringBuilder sb = new StringBuilder("select l from AuditLog l where l.createDate >= :start and l.createDate < :end ");
+        if (after != null) {
+            sb.append(" and (l.createDate > :afterDate or l.createDate = :afterDate and l.id > :afterId) ");
+        }
+        sb.append(" order by l.createDate, l.id");
+        TypedQuery<AuditLog> q = em.createQuery(sb.toString(), AuditLog.class);
+        q.setParameter("start", start);
+        q.setParameter("end", end);
+        if (after != null) {
+            q.setParameter("afterDate", after.getCreateDate());
+            q.setParameter("afterId", after.getId());
+        }
+        q.setMaxResults(limit);
+        return q.getResultList();
+    }
+
+    /**
+     * Hard deletes the audit logs created in a period.
+     *
+     * @param start Start of the period (inclusive)
+     * @param end End of the period (exclusive)
+     * @return Number of deleted audit logs
+     */
+    public int deleteByCreateDate(Date start, Date end) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query q = em.createQuery("delete from AuditLog l where l.createDate >= :start and l.createDate < :end");
+        q.setParameter("start", start);
+        q.setParameter("end", end);
+        return q.executeUpdate();
+    }
+
     /**
      * Searches audit logs by criteria.
      * 
@@ -0,0 +1,155 @@
+package com.sismics.docs.core.dao;
+
+import com.sismics.docs.core.model.jpa.Blob;
+import com.sismics.util.context.ThreadLocalContext;
+import com.sismics.util.jpa.EMF;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityTransaction;
+import jakarta.persistence.PersistenceException;
+import jakarta.persistence.Query;
+import jakarta.persistence.TypedQuery;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Blob DAO.
+ * Reference counts are updated in the database, so that concurrent uploads and deletions see each other.
+ * 
+ * @author bgamard
+ */
+public class BlobDao {
+    /**
+     * Creates a new blob, not referenced yet.
+     * The blob is committed in its own transaction, so that concurrent uploads of the same content share it.
+     * 
+     * @param blob Blob
+     * @return False if the blob already exists
+     */
+    public boolean create(Blob blob) {
+        blob.setRefCount(0);
+        blob.setCreateDate(new Date());
+        EntityManager em = EMF.get().createEntityManager();
+        EntityTransaction tx = em.getTransaction();
+        try {
+            tx.begin();
+            if (em.find(Blob.class, blob.getId()) != null) {
+                tx.rollback();
+                return false;
+            }
+            em.persist(blob);
+            tx.commit();
+            return true;
+        } catch (PersistenceException e) {
+            // Created by a concurrent upload
+            if (tx.isActive()) {
+                tx.rollback();
+            }
+            return false;
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * Returns a blob.
+     * 
+     * @param id Blob ID
+     * @return Blob or null
+     */
+    public Blob getById(String id) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        return em.find(Blob.class, id);
+    }
+
+    /**
+     * Adds a reference to an existing blob.
+     * 
+     * @param id Blob ID
+     * @return True if the blob exists
+     */
+    public boolean addReference(String id) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query q = em.createQuery("update Blob b set b.refCount = b.refCount + 1 where b.id = :id");
+        q.setParameter("id", id);
+        return q.executeUpdate() > 0;
+    }
+
+    /**
+     * Removes a reference to a blob.
+     * 
+     * @param id Blob ID
+     * @return True if the blob is not referenced anymore
+     */
+    public boolean removeReference(String id) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query q = em.createQuery("update Blob b set b.refCount = b.refCount - 1 where b.id = :id");
+        q.setParameter("id", id);
+        q.executeUpdate();
+
+        TypedQuery<Integer> refCountQuery = em.createQuery("select b.refCount from Blob b where b.id = :id", Integer.class);
+        refCountQuery.setParameter("id", id);
+        return refCountQuery.getResultList().stream().allMatch(refCount -> refCount <= 0);
+    }
+
+    /**
+     * Deletes a blob if it is not referenced.
+     * The blob stays locked until the end of the transaction, a concurrent reference waits for it.
+     * 
+     * @param id Blob ID
+     * @return True if the blob has been deleted
+     */
+    public boolean deleteUnreferenced(String id) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query q = em.createQuery("delete from Blob b where b.id = :id and b.refCount <= 0");
+        q.setParameter("id", id);
+        return q.executeUpdate() > 0;
+    }
+
+    /**
+     * Returns the blobs, by ID.
+     *
+     * @param afterId Blobs with an ID after this one are returned
+     * @param limit Maximum number of blobs
+     * @return List of blobs
+     */
+    public List<Blob> findAfterId(String afterId, int limit) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        TypedQuery<Blob> q = em.createQuery("select b from Blob b where b.id > :afterId order by b.id asc", Blob.class);
+        q.setParameter("afterId", afterId);
+        q.setMaxResults(limit);
+        return q.getResultList();
+    }
+
+    /**
+     * Returns the IDs of the existing blobs among a list.
+     *
+     * @param ids Blob IDs
+     * @return IDs of the existing blobs
+     */
+    public List<String> getIdList(Collection<String> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        TypedQuery<String> q = em.createQuery("select b.id from Blob b where b.id in :ids", String.class);
+        q.setParameter("ids", ids);
+        return q.getResultList();
+    }
+
+    /**
+     * Update the checksum of the stored content of a blob.
+     *
+     * @param id Blob ID
+     * @param checksum Checksum
+     */
+    public void updateChecksum(String id, String checksum) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query q = em.createQuery("update Blob b set b.checksum = :checksum where b.id = :id");
+        q.setParameter("checksum", checksum);
+        q.setParameter("id", id);
+        q.executeUpdate();
+    }
+}
@@ -12,8 +12,11 @@ import jakarta.persistence.NoResultException;
 import jakarta.persistence.Query;
 import jakarta.persistence.TypedQuery;
 import java.sql.Timestamp;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 /**
@@ -88,7 +91,7 @@ public class DocumentDao {
 
         EntityManager em = ThreadLocalContext.get().getEntityManager();
         StringBuilder sb = new StringBuilder("select distinct d.DOC_ID_C, d.DOC_TITLE_C, d.DOC_DESCRIPTION_C, d.DOC_SUBJECT_C, d.DOC_IDENTIFIER_C, d.DOC_PUBLISHER_C, d.DOC_FORMAT_C, d.DOC_SOURCE_C, d.DOC_TYPE_C, d.DOC_COVERAGE_C, d.DOC_RIGHTS_C, d.DOC_CREATEDATE_D, d.DOC_UPDATEDATE_D, d.DOC_LANGUAGE_C, d.DOC_IDFILE_C,");
-        sb.append(" (select count(s.SHA_ID_C) from T_SHARE s, T_ACL ac where ac.ACL_SOURCEID_C = d.DOC_ID_C and ac.ACL_TARGETID_C = s.SHA_ID_C and ac.ACL_DELETEDATE_D is null and s.SHA_DELETEDATE_D is null) shareCount, ");
+        sb.append(" d.DOC_SHARECOUNT_N, ");
         sb.append(" (select count(f.FIL_ID_C) from T_FILE f where f.FIL_DELETEDATE_D is null and f.FIL_IDDOC_C = d.DOC_ID_C) fileCount, ");
         sb.append(" u.USE_USERNAME_C ");
         sb.append(" from T_DOCUMENT d ");
@@ -128,6 +131,38 @@ public class DocumentDao {
         return documentDto;
     }
     
+    /**
+     * Updates the denormalized number of shares of a document.
+     * Must be called each time a share ACL is added or removed.
+     *
+     * @param id Document ID
+     */
+    public void updateShareCount(String id) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        em.createNativeQuery("update T_DOCUMENT set DOC_SHARECOUNT_N = " +
+                " (select count(s.SHA_ID_C) from T_SHARE s, T_ACL ac where ac.ACL_SOURCEID_C = DOC_ID_C and ac.ACL_TARGETID_C = s.SHA_ID_C and ac.ACL_DELETEDATE_D is null and s.SHA_DELETEDATE_D is null) " +
+                " where DOC_ID_C = :id")
+                .setParameter("id", id)
+                .executeUpdate();
+    }
+
+    /**
+     * Updates the denormalized current route step of a document.
+     * Must be called each time a route is started, canceled or a step is ended.
+     *
+     * @param id Document ID
+     */
+    public void updateCurrentStep(String id) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        em.createNativeQuery("update T_DOCUMENT set DOC_IDCURRENTSTEP_C = " +
+                " (select min(rs.RTP_ID_C) from T_ROUTE_STEP rs join T_ROUTE r on r.RTE_ID_C = rs.RTP_IDROUTE_C and r.RTE_DELETEDATE_D is null " +
+                "  where r.RTE_IDDOCUMENT_C = DOC_ID_C and rs.RTP_DELETEDATE_D is null and rs.RTP_ENDDATE_D is null " +
+                "  and rs.RTP_ORDER_N = (select min(rs2.RTP_ORDER_N) from T_ROUTE_STEP rs2 where rs2.RTP_IDROUTE_C = rs.RTP_IDROUTE_C and rs2.RTP_DELETEDATE_D is null and rs2.RTP_ENDDATE_D is null)) " +
+                " where DOC_ID_C = :id")
+                .setParameter("id", id)
+                .executeUpdate();
+    }
+
     /**
      * Deletes a document.
      * 
@@ -188,6 +223,22 @@ public class DocumentDao {
         }
     }
     
+    /**
+     * Filters a list of document IDs, keeping only active documents.
+     *
+     * @param idList Document ID list
+     * @return IDs of the active documents
+     */
+    public Set<String> filterActiveIds(Collection<String> idList) {
+        if (idList.isEmpty()) {
+            return new HashSet<>();
+        }
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        TypedQuery<String> q = em.createQuery("select d.id from Document d where d.id in (:idList) and d.deleteDate is null", String.class);
+        q.setParameter("idList", idList);
+        return new HashSet<>(q.getResultList());
+    }
+    
     /**
      * Update a document and log the action.
      * 
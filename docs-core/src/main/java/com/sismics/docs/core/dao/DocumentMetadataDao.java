@@ -7,8 +7,11 @@ import com.sismics.util.context.ThreadLocalContext;
 
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.Query;
+import jakarta.persistence.TypedQuery;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 /**
@@ -54,6 +57,39 @@ public class DocumentMetadataDao {
         return documentMetadata;
     }
 
+    /**
+     * Updates the values of some document metadata.
+     * All of them are loaded at once, and updated in a batch at flush time.
+     *
+     * @param valueMap Values by document metadata ID
+     */
+    public void updateValues(Map<String, String> valueMap) {
+        if (valueMap.isEmpty()) {
+            return;
+        }
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        TypedQuery<DocumentMetadata> q = em.createQuery("select dm from DocumentMetadata dm where dm.id in (:idList)", DocumentMetadata.class);
+        q.setParameter("idList", valueMap.keySet());
+        for (DocumentMetadata documentMetadata : q.getResultList()) {
+            documentMetadata.setValue(valueMap.get(documentMetadata.getId()));
+        }
+    }
+
+    /**
+     * Removes the values of some document metadata, in one statement.
+     *
+     * @param idList Document metadata ID list
+     */
+    public void clearValues(Collection<String> idList) {
+        if (idList.isEmpty()) {
+            return;
+        }
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query q = em.createQuery("update DocumentMetadata dm set dm.value = null where dm.id in (:idList)");
+        q.setParameter("idList", idList);
+        q.executeUpdate();
+    }
+
     /**
      * Returns the list of all metadata values on a document.
      *
@@ -9,6 +9,8 @@ import jakarta.persistence.NoResultException;
 import jakarta.persistence.Query;
 import jakarta.persistence.TypedQuery;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
@@ -164,6 +166,7 @@ public class FileDao {
         fileDb.setVersionId(file.getVersionId());
         fileDb.setLatestVersion(file.isLatestVersion());
         fileDb.setSize(file.getSize());
+        fileDb.setChecksum(file.getChecksum());
 
         return file;
     }
@@ -247,11 +250,133 @@ public class FileDao {
         return q.getResultList();
     }
 
-    public List<File> getFilesWithUnknownSize(int limit) {
+    /**
+     * Returns the files without size, by ID.
+     *
+     * @param afterId Files with an ID after this one are returned
+     * @param limit Maximum number of files
+     * @return List of files
+     */
+    public List<File> getFilesWithUnknownSize(String afterId, int limit) {
         EntityManager em = ThreadLocalContext.get().getEntityManager();
-        TypedQuery<File> q = em.createQuery("select f from File f where f.size = :size and f.deleteDate is null order by f.order asc", File.class);
+        TypedQuery<File> q = em.createQuery("select f from File f where f.size = :size and f.id > :afterId and f.deleteDate is null order by f.id asc", File.class);
         q.setParameter("size", File.UNKNOWN_SIZE);
+        q.setParameter("afterId", afterId);
+        q.setMaxResults(limit);
+        return q.getResultList();
+    }
+
+    /**
+     * Returns the number of files without size.
+     *
+     * @return Number of files
+     */
+    public long countFilesWithUnknownSize() {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        TypedQuery<Long> q = em.createQuery("select count(f) from File f where f.size = :size and f.deleteDate is null", Long.class);
+        q.setParameter("size", File.UNKNOWN_SIZE);
+        return q.getSingleResult();
+    }
+
+    /**
+     * Update the size of a file.
+     *
+     * @param id File ID
+     * @param size File size
+     */
+    public void updateSize(String id, long size) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query q = em.createQuery("update File f set f.size = :size where f.id = :id");
+        q.setParameter("size", size);
+        q.setParameter("id", id);
+        q.executeUpdate();
+    }
+
+    /**
+     * Returns the files not deleted, by ID.
+     *
+     * @param afterId Files with an ID after this one are returned
+     * @param limit Maximum number of files
+     * @return List of files
+     */
+    public List<File> findAfterId(String afterId, int limit) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        TypedQuery<File> q = em.createQuery("select f from File f where f.id > :afterId and f.deleteDate is null order by f.id asc", File.class);
+        q.setParameter("afterId", afterId);
         q.setMaxResults(limit);
         return q.getResultList();
     }
+
+    /**
+     * Returns the IDs of the files not deleted among a list.
+     *
+     * @param ids File IDs
+     * @return IDs of the files not deleted
+     */
+    public List<String> getActiveIdList(Collection<String> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        TypedQuery<String> q = em.createQuery("select f.id from File f where f.id in :ids and f.deleteDate is null", String.class);
+        q.setParameter("ids", ids);
+        return q.getResultList();
+    }
+
+    /**
+     * Update the checksum of the stored content of a file.
+     *
+     * @param id File ID
+     * @param checksum Checksum
+     */
+    public void updateChecksum(String id, String checksum) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query q = em.createQuery("update File f set f.checksum = :checksum where f.id = :id");
+        q.setParameter("checksum", checksum);
+        q.setParameter("id", id);
+        q.executeUpdate();
+    }
+
+    /**
+     * Returns the blob ID of a file, deleted or not.
+     *
+     * @param id File ID
+     * @return Blob ID, null if the file content is not in a blob
+     */
+    public String getBlobId(String id) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        TypedQuery<String> q = em.createQuery("select f.blobId from File f where f.id = :id", String.class);
+        q.setParameter("id", id);
+        List<String> blobIdList = q.getResultList();
+        return blobIdList.isEmpty() ? null : blobIdList.get(0);
+    }
+
+    /**
+     * Detach a file from its blob.
+     *
+     * @param id File ID
+     */
+    public void removeBlob(String id) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query q = em.createQuery("update File f set f.blobId = null, f.blobKey = null where f.id = :id");
+        q.setParameter("id", id);
+        q.executeUpdate();
+    }
+
+    /**
+     * Returns the content extracted from another file sharing the same blob.
+     *
+     * @param blobId Blob ID
+     * @param id ID of the file to exclude
+     * @return Content, null if none has been extracted yet
+     */
+    public String getBlobContent(String blobId, String id) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        TypedQuery<String> q = em.createQuery("select f.content from File f where f.blobId = :blobId and f.id <> :id and f.content is not null", String.class);
+        q.setParameter("blobId", blobId);
+        q.setParameter("id", id);
+        q.setMaxResults(1);
+        List<String> contentList = q.getResultList();
+        return contentList.isEmpty() ? null : contentList.get(0);
+    }
 }
@@ -6,6 +6,7 @@ import com.sismics.util.context.ThreadLocalContext;
 
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.Query;
+import jakarta.persistence.TypedQuery;
 import java.util.*;
 
 /**
@@ -59,29 +60,27 @@ public class RelationDao {
         EntityManager em = ThreadLocalContext.get().getEntityManager();
         
         // Get current relations from this document
-        Query q = em.createQuery("select r from Relation r where r.fromDocumentId = :documentId and r.deleteDate is null");
+        TypedQuery<String> q = em.createQuery("select r.toDocumentId from Relation r where r.fromDocumentId = :documentId and r.deleteDate is null", String.class);
         q.setParameter("documentId", documentId);
-        @SuppressWarnings("unchecked")
-        List<Relation> relationList = q.getResultList();
+        Set<String> currentDocumentIdSet = new HashSet<>(q.getResultList());
         
-        // Deleting relations no longer there
-        for (Relation relation : relationList) {
-            if (!documentIdSet.contains(relation.getToDocumentId())) {
-                relation.setDeleteDate(new Date());
+        // Deleting relations no longer there, in one statement
+        if (!documentIdSet.containsAll(currentDocumentIdSet)) {
+            Query deleteQuery;
+            if (documentIdSet.isEmpty()) {
+                deleteQuery = em.createQuery("update Relation r set r.deleteDate = :dateNow where r.fromDocumentId = :documentId and r.deleteDate is null");
+            } else {
+                deleteQuery = em.createQuery("update Relation r set r.deleteDate = :dateNow where r.fromDocumentId = :documentId and r.toDocumentId not in (:documentIdSet) and r.deleteDate is null");
+                deleteQuery.setParameter("documentIdSet", documentIdSet);
             }
+            deleteQuery.setParameter("documentId", documentId);
+            deleteQuery.setParameter("dateNow", new Date());
+            deleteQuery.executeUpdate();
         }
         
-        // Adding new relations
+        // Adding new relations, batched at flush time
         for (String targetDocId : documentIdSet) {
-            boolean found = false;
-            for (Relation relation : relationList) {
-                if (relation.getToDocumentId().equals(targetDocId)) {
-                    found = true;
-                    break;
-                }
-            }
-            
-            if (!found) {
+            if (!currentDocumentIdSet.contains(targetDocId)) {
                 Relation relation = new Relation();
                 relation.setId(UUID.randomUUID().toString());
                 relation.setFromDocumentId(documentId);
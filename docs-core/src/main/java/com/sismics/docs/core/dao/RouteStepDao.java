@@ -150,5 +150,12 @@ public class RouteStepDao {
         q.setParameter("validatorUserId", validatorUserId);
         q.setParameter("id", id);
         q.executeUpdate();
+
+        // Move the document to its next step
+        q = em.createNativeQuery("select r.RTE_IDDOCUMENT_C from T_ROUTE r join T_ROUTE_STEP rs on rs.RTP_IDROUTE_C = r.RTE_ID_C where rs.RTP_ID_C = :id");
+        q.setParameter("id", id);
+        for (Object documentId : q.getResultList()) {
+            new DocumentDao().updateCurrentStep((String) documentId);
+        }
     }
 }
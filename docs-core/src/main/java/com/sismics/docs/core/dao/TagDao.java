@@ -16,6 +16,7 @@ import com.sismics.util.context.ThreadLocalContext;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.NoResultException;
 import jakarta.persistence.Query;
+import jakarta.persistence.TypedQuery;
 import java.util.*;
 
 /**
@@ -49,29 +50,27 @@ public class TagDao {
         EntityManager em = ThreadLocalContext.get().getEntityManager();
         
         // Get current tag links
-        Query q = em.createQuery("select dt from DocumentTag dt where dt.documentId = :documentId and dt.deleteDate is null");
+        TypedQuery<String> q = em.createQuery("select dt.tagId from DocumentTag dt where dt.documentId = :documentId and dt.deleteDate is null", String.class);
         q.setParameter("documentId", documentId);
-        @SuppressWarnings("unchecked")
-        List<DocumentTag> documentTagList = q.getResultList();
+        Set<String> currentTagIdSet = new HashSet<>(q.getResultList());
         
-        // Deleting tags no longer linked
-        for (DocumentTag documentTag : documentTagList) {
-            if (!tagIdSet.contains(documentTag.getTagId())) {
-                documentTag.setDeleteDate(new Date());
+        // Deleting tags no longer linked, in one statement
+        if (!tagIdSet.containsAll(currentTagIdSet)) {
+            Query deleteQuery;
+            if (tagIdSet.isEmpty()) {
+                deleteQuery = em.createQuery("update DocumentTag dt set dt.deleteDate = :dateNow where dt.documentId = :documentId and dt.deleteDate is null");
+            } else {
+                deleteQuery = em.createQuery("update DocumentTag dt set dt.deleteDate = :dateNow where dt.documentId = :documentId and dt.tagId not in (:tagIdSet) and dt.deleteDate is null");
+                deleteQuery.setParameter("tagIdSet", tagIdSet);
             }
+            deleteQuery.setParameter("documentId", documentId);
+            deleteQuery.setParameter("dateNow", new Date());
+            deleteQuery.executeUpdate();
         }
         
-        // Adding new tag links
+        // Adding new tag links, batched at flush time
         for (String tagId : tagIdSet) {
-            boolean found = false;
-            for (DocumentTag documentTag : documentTagList) {
-                if (documentTag.getTagId().equals(tagId)) {
-                    found = true;
-                    break;
-                }
-            }
-            
-            if (!found) {
+            if (!currentTagIdSet.contains(tagId)) {
                 DocumentTag documentTag = new DocumentTag();
                 documentTag.setId(UUID.randomUUID().toString());
                 documentTag.setDocumentId(documentId);
@@ -186,16 +185,16 @@ public class TagDao {
             criteriaList.add("t.TAG_ID_C = :id");
             parameterMap.put("id", criteria.getId());
         }
-        if (criteria.getTargetIdList() != null && !SecurityUtil.skipAclCheck(criteria.getTargetIdList())) {
-            sb.append(" left join T_ACL a on a.ACL_TARGETID_C in (:targetIdList) and a.ACL_SOURCEID_C = t.TAG_ID_C and a.ACL_PERM_C = 'READ' and a.ACL_DELETEDATE_D is null ");
-            criteriaList.add("a.ACL_ID_C is not null");
-            parameterMap.put("targetIdList", criteria.getTargetIdList());
-        }
         if (criteria.getDocumentId() != null) {
             sb.append(" join T_DOCUMENT_TAG dt on dt.DOT_IDTAG_C = t.TAG_ID_C and dt.DOT_DELETEDATE_D is null ");
             criteriaList.add("dt.DOT_IDDOCUMENT_C = :documentId");
             parameterMap.put("documentId", criteria.getDocumentId());
         }
+        if (criteria.getTargetIdList() != null && !SecurityUtil.skipAclCheck(criteria.getTargetIdList())) {
+            // Not a join, so the database is free to start from the document tags
+            criteriaList.add("exists (select a.ACL_ID_C from T_ACL a where a.ACL_TARGETID_C in (:targetIdList) and a.ACL_SOURCEID_C = t.TAG_ID_C and a.ACL_PERM_C = 'READ' and a.ACL_DELETEDATE_D is null)");
+            parameterMap.put("targetIdList", criteria.getTargetIdList());
+        }
 
         criteriaList.add("t.TAG_DELETEDATE_D is null");
 
@@ -222,5 +221,50 @@ public class TagDao {
 
         return tagDtoList;
     }
-}
 
+    /**
+     * Returns the tags of several documents in one query.
+     * Only the tags readable by the targets are returned, sorted by name.
+     *
+     * @param documentIds Documents IDs
+     * @param targetIdList List of targets
+     * @return Tags per document ID (documents without tags are absent)
+     */
+    public Map<String, List<TagDto>> findByDocumentsIds(Collection<String> documentIds, List<String> targetIdList) {
+        Map<String, List<TagDto>> result = new HashMap<>();
+        if (documentIds.isEmpty()) {
+            return result;
+        }
+
+        Map<String, Object> parameterMap = new HashMap<>();
+        StringBuilder sb = new StringBuilder("select distinct dt.DOT_IDDOCUMENT_C as c0, t.TAG_NAME_C as c1, t.TAG_ID_C as c2, t.TAG_COLOR_C as c3, t.TAG_IDPARENT_C as c4, u.USE_USERNAME_C as c5 ");
+        sb.append(" from T_TAG t ");
+        sb.append(" join T_USER u on t.TAG_IDUSER_C = u.USE_ID_C ");
+        sb.append(" join T_DOCUMENT_TAG dt on dt.DOT_IDTAG_C = t.TAG_ID_C and dt.DOT_DELETEDATE_D is null ");
+        if (!SecurityUtil.skipAclCheck(targetIdList)) {
+            sb.append(" join T_ACL a on a.ACL_TARGETID_C in (:targetIdList) and a.ACL_SOURCEID_C = t.TAG_ID_C and a.ACL_PERM_C = 'READ' and a.ACL_DELETEDATE_D is null ");
+            parameterMap.put("targetIdList", targetIdList);
+        }
+        sb.append(" where dt.DOT_IDDOCUMENT_C in (:documentIds) and t.TAG_DELETEDATE_D is null ");
+        sb.append(" order by c1 asc, c2 asc");
+        parameterMap.put("documentIds", documentIds);
+
+        @SuppressWarnings("unchecked")
+        List<Object[]> l = QueryUtil.getNativeQuery(new QueryParam(sb.toString(), parameterMap)).getResultList();
+
+        // Assemble results
+        for (Object[] o : l) {
+            int i = 0;
+            String documentId = (String) o[i++];
+            TagDto tagDto = new TagDto()
+                    .setName((String) o[i++])
+                    .setId((String) o[i++])
+                    .setColor((String) o[i++])
+                    .setParentId((String) o[i++])
+                    .setCreator((String) o[i]);
+            result.computeIfAbsent(documentId, k -> new ArrayList<>()).add(tagDto);
+        }
+
+        return result;
+    }
+}
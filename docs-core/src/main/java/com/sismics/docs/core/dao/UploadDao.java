@@ -0,0 +1,106 @@
+package com.sismics.docs.core.dao;
+
+import com.sismics.docs.core.model.jpa.Upload;
+import com.sismics.util.context.ThreadLocalContext;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.NoResultException;
+import jakarta.persistence.Query;
+import jakarta.persistence.TypedQuery;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Upload session DAO.
+ * 
+ * @author bgamard
+ */
+public class UploadDao {
+    /**
+     * Creates a new upload session.
+     * 
+     * @param upload Upload session
+     * @return New ID
+     */
+    public String create(Upload upload) {
+        upload.setId(UUID.randomUUID().toString());
+        upload.setCreateDate(new Date());
+        upload.setUpdateDate(upload.getCreateDate());
+
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        em.persist(upload);
+
+        return upload.getId();
+    }
+
+    /**
+     * Returns an upload session of a user.
+     * 
+     * @param id Upload ID
+     * @param userId User ID
+     * @return Upload session or null
+     */
+    public Upload getById(String id, String userId) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        TypedQuery<Upload> q = em.createQuery("select u from Upload u where u.id = :id and u.userId = :userId", Upload.class);
+        q.setParameter("id", id);
+        q.setParameter("userId", userId);
+        try {
+            return q.getSingleResult();
+        } catch (NoResultException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the number of upload sessions of a user.
+     * 
+     * @param userId User ID
+     * @return Number of upload sessions
+     */
+    public long countByUserId(String userId) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        TypedQuery<Long> q = em.createQuery("select count(u) from Upload u where u.userId = :userId", Long.class);
+        q.setParameter("userId", userId);
+        return q.getSingleResult();
+    }
+
+    /**
+     * Returns the upload sessions which did not receive content since a date.
+     * 
+     * @param updateDateMax Date of the last received content
+     * @return Upload sessions
+     */
+    public List<Upload> findByUpdateDateBefore(Date updateDateMax) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        TypedQuery<Upload> q = em.createQuery("select u from Upload u where u.updateDate < :updateDateMax", Upload.class);
+        q.setParameter("updateDateMax", updateDateMax);
+        return q.getResultList();
+    }
+
+    /**
+     * Marks an upload session as active now.
+     * 
+     * @param id Upload ID
+     */
+    public void touch(String id) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query q = em.createQuery("update Upload u set u.updateDate = :updateDate where u.id = :id");
+        q.setParameter("updateDate", new Date());
+        q.setParameter("id", id);
+        q.executeUpdate();
+    }
+
+    /**
+     * Deletes an upload session.
+     * 
+     * @param id Upload ID
+     */
+    public void delete(String id) {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        Query q = em.createQuery("delete from Upload u where u.id = :id");
+        q.setParameter("id", id);
+        q.executeUpdate();
+    }
+}
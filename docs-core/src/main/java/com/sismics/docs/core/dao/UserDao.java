@@ -14,6 +14,8 @@ import com.sismics.docs.core.dao.dto.UserDto;
 import com.sismics.docs.core.model.jpa.User;
 import com.sismics.docs.core.util.AuditLogUtil;
 import com.sismics.docs.core.util.EncryptionUtil;
+import com.sismics.docs.core.util.jpa.PaginatedList;
+import com.sismics.docs.core.util.jpa.PaginatedLists;
 import com.sismics.docs.core.util.jpa.QueryParam;
 import com.sismics.docs.core.util.jpa.QueryUtil;
 import com.sismics.docs.core.util.jpa.SortCriteria;
@@ -22,6 +24,7 @@ import com.sismics.util.context.ThreadLocalContext;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.NoResultException;
 import jakarta.persistence.Query;
+import jakarta.persistence.TypedQuery;
 import java.sql.Timestamp;
 import java.util.*;
 
@@ -217,6 +220,22 @@ public class UserDao {
         }
     }
     
+    /**
+     * Gets users by their IDs.
+     * 
+     * @param idList User IDs
+     * @return Users
+     */
+    public List<User> getByIdList(Collection<String> idList) {
+        if (idList.isEmpty()) {
+            return new ArrayList<>();
+        }
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        TypedQuery<User> q = em.createQuery("select u from User u where u.id in (:idList)", User.class);
+        q.setParameter("idList", idList);
+        return q.getResultList();
+    }
+    
     /**
      * Gets an active user by its username.
      * 
@@ -306,13 +325,12 @@ public class UserDao {
     }
     
     /**
-     * Returns the list of all users.
+     * Build the search query of users.
      * 
      * @param criteria Search criteria
-     * @param sortCriteria Sort criteria
-     * @return List of users
+     * @return Unsorted query parameters
      */
-    public List<UserDto> findByCriteria(UserCriteria criteria, SortCriteria sortCriteria) {
+    private QueryParam getQueryParam(UserCriteria criteria) {
         Map<String, Object> parameterMap = new HashMap<>();
         List<String> criteriaList = new ArrayList<>();
         
@@ -344,12 +362,42 @@ public class UserDao {
             sb.append(Joiner.on(" and ").join(criteriaList));
         }
         
-        // Perform the search
-        QueryParam queryParam = QueryUtil.getSortedQueryParam(new QueryParam(sb.toString(), parameterMap), sortCriteria);
+        return new QueryParam(sb.toString(), parameterMap);
+    }
+
+    /**
+     * Returns the list of all users.
+     *
+     * @param criteria Search criteria
+     * @param sortCriteria Sort criteria
+     * @return List of users
+     */
+    public List<UserDto> findByCriteria(UserCriteria criteria, SortCriteria sortCriteria) {
+        QueryParam queryParam = QueryUtil.getSortedQueryParam(getQueryParam(criteria), sortCriteria);
         @SuppressWarnings("unchecked")
         List<Object[]> l = QueryUtil.getNativeQuery(queryParam).getResultList();
-        
-        // Assemble results
+        return assembleResults(l);
+    }
+
+    /**
+     * Searches users by criteria, one page at a time.
+     *
+     * @param paginatedList List of users (updated by side effects)
+     * @param criteria Search criteria
+     * @param sortCriteria Sort criteria
+     */
+    public void findByCriteria(PaginatedList<UserDto> paginatedList, UserCriteria criteria, SortCriteria sortCriteria) {
+        List<Object[]> l = PaginatedLists.executePaginatedQuery(paginatedList, getQueryParam(criteria), sortCriteria);
+        paginatedList.setResultList(assembleResults(l));
+    }
+
+    /**
+     * Assemble the users from the query results.
+     *
+     * @param l Query results
+     * @return List of users
+     */
+    private List<UserDto> assembleResults(List<Object[]> l) {
         List<UserDto> userDtoList = new ArrayList<>();
         for (Object[] o : l) {
             int i = 0;
@@ -2,16 +2,22 @@ package com.sismics.docs.core.listener.async;
 
 import com.google.common.eventbus.AllowConcurrentEvents;
 import com.google.common.eventbus.Subscribe;
+import com.sismics.docs.core.dao.FileDao;
 import com.sismics.docs.core.dao.UserDao;
 import com.sismics.docs.core.event.FileDeletedAsyncEvent;
 import com.sismics.docs.core.model.context.AppContext;
 import com.sismics.docs.core.model.jpa.File;
 import com.sismics.docs.core.model.jpa.User;
+import com.sismics.docs.core.util.BlobUtil;
 import com.sismics.docs.core.util.FileUtil;
+import com.sismics.docs.core.util.PreviewCache;
 import com.sismics.docs.core.util.TransactionUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
 /**
  * Listener on file deleted.
  *
@@ -35,6 +41,7 @@ public class FileDeletedAsyncListener {
         if (log.isInfoEnabled()) {
             log.info("File deleted event: " + event.toString());
         }
+        String[] unreferencedBlobId = new String[1];
         TransactionUtil.handle(() -> {
             // Update the user quota
             UserDao userDao = new UserDao();
@@ -43,8 +50,8 @@ public class FileDeletedAsyncListener {
                 Long fileSize = event.getFileSize();
 
                 if (fileSize.equals(File.UNKNOWN_SIZE)) {
-                    // The file size was not in the database, in this case we need to get from the unencrypted size.
-                    fileSize = FileUtil.getFileSize(event.getFileId(), user);
+                    // The file size was not in the database, in this case we get it from the stored content
+                    fileSize = FileUtil.getFileSize(event.getFileId(), new FileDao().getBlobId(event.getFileId()));
                 }
 
                 if (! fileSize.equals(File.UNKNOWN_SIZE)) {
@@ -52,10 +59,25 @@ public class FileDeletedAsyncListener {
                     userDao.updateQuota(user);
                 }
             }
+
+            // Release the shared blob
+            unreferencedBlobId[0] = BlobUtil.release(event.getFileId());
         });
 
+        // Delete the blob once its last reference is gone for good
+        if (unreferencedBlobId[0] != null) {
+            TransactionUtil.handle(() -> {
+                try {
+                    BlobUtil.purge(unreferencedBlobId[0]);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+
         // Delete the file from storage
         FileUtil.delete(event.getFileId());
+        PreviewCache.invalidate(event.getFileId());
 
         TransactionUtil.handle(() -> {
             // Update index
@@ -10,23 +10,13 @@ import com.sismics.docs.core.event.FileUpdatedAsyncEvent;
 import com.sismics.docs.core.model.context.AppContext;
 import com.sismics.docs.core.model.jpa.File;
 import com.sismics.docs.core.model.jpa.User;
-import com.sismics.docs.core.util.DirectoryUtil;
-import com.sismics.docs.core.util.EncryptionUtil;
 import com.sismics.docs.core.util.FileUtil;
 import com.sismics.docs.core.util.TransactionUtil;
 import com.sismics.docs.core.util.format.FormatHandler;
 import com.sismics.docs.core.util.format.FormatHandlerUtil;
-import com.sismics.util.ImageUtil;
-import com.sismics.util.Scalr;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.crypto.Cipher;
-import javax.crypto.CipherOutputStream;
-import java.awt.image.BufferedImage;
-import java.io.OutputStream;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.text.MessageFormat;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -73,13 +63,29 @@ public class FileProcessingAsyncListener {
      * Process a file :
      * Generate thumbnails
      * Extract and save text content
+     * The unencrypted file of the event is released at the end.
      *
      * @param event File event
      * @param isFileCreated True if the file was just created
      */
     private void processFile(FileEvent event, boolean isFileCreated) {
+        try {
+            processFileContent(event, isFileCreated);
+        } finally {
+            AppContext.getInstance().getFileService().deleteTemporaryFile(event.getUnencryptedFile());
+        }
+    }
+
+    /**
+     * Process the content of a file.
+     *
+     * @param event File event
+     * @param isFileCreated True if the file was just created
+     */
+    private void processFileContent(FileEvent event, boolean isFileCreated) {
         AtomicReference<File> file = new AtomicReference<>();
         AtomicReference<User> user = new AtomicReference<>();
+        AtomicReference<String> blobContent = new AtomicReference<>();
 
         // Open a first transaction to get what we need to start the processing
         TransactionUtil.handle(() -> {
@@ -93,6 +99,11 @@ public class FileProcessingAsyncListener {
             // Get the creating user from the database for its private key
             UserDao userDao = new UserDao();
             user.set(userDao.getById(file.get().getUserId()));
+
+            // A new file with the same content as another one does not need to be extracted again
+            if (isFileCreated && file.get().getBlobId() != null) {
+                blobContent.set(new FileDao().getBlobContent(file.get().getBlobId(), file.get().getId()));
+            }
         });
 
         // Process the file outside of a transaction
@@ -101,7 +112,7 @@ public class FileProcessingAsyncListener {
             FileUtil.endProcessingFile(event.getFileId());
             return;
         }
-        String content = extractContent(event, user.get(), file.get());
+        String content = extractContent(event, user.get(), file.get(), blobContent.get());
 
         // Open a new transaction to save the file content
         TransactionUtil.handle(() -> {
@@ -134,42 +145,44 @@ public class FileProcessingAsyncListener {
      * @param event File event
      * @param user User whom created the file
      * @param file Fresh file
+     * @param blobContent Content already extracted from the same blob, null if none
      * @return Text content
      */
-    private String extractContent(FileEvent event, User user, File file) {
+    private String extractContent(FileEvent event, User user, File file, String blobContent) {
         // Find a format handler
-        FormatHandler formatHandler = FormatHandlerUtil.find(file.getMimeType());
-        if (formatHandler == null) {
-            log.info("Format unhandled: " + file.getMimeType());
-            return null;
+        try (FormatHandler formatHandler = FormatHandlerUtil.find(file.getMimeType())) {
+            if (formatHandler == null) {
+                log.info("Format unhandled: " + file.getMimeType());
+                return null;
+            }
+
+            return extractContent(formatHandler, event, user, file, blobContent);
         }
+    }
 
+    /**
+     * Extract text content from a file with its format handler.
+     *
+     * @param formatHandler Format handler
+     * @param event File event
+     * @param user User whom created the file
+     * @param file Fresh file
+     * @param blobContent Content already extracted from the same blob, null if none
+     * @return Text content
+     */
+    private String extractContent(FormatHandler formatHandler, FileEvent event, User user, File file, String blobContent) {
         // Generate file variations
         try {
-            Cipher cipher = EncryptionUtil.getEncryptionCipher(user.getPrivateKey());
-            BufferedImage image = formatHandler.generateThumbnail(event.getUnencryptedFile());
-            if (image != null) {
-                // Generate thumbnails from image
-                BufferedImage web = Scalr.resize(image, Scalr.Method.ULTRA_QUALITY, Scalr.Mode.AUTOMATIC, 1280);
-                BufferedImage thumbnail = Scalr.resize(image, Scalr.Method.ULTRA_QUALITY, Scalr.Mode.AUTOMATIC, 256);
-                image.flush();
-
-                // Write "web" encrypted image
-                Path outputFile = DirectoryUtil.getStorageDirectory().resolve(file.getId() + "_web");
-                try (OutputStream outputStream = new CipherOutputStream(Files.newOutputStream(outputFile), cipher)) {
-                    ImageUtil.writeJpeg(web, outputStream);
-                }
-
-                // Write "thumb" encrypted image
-                outputFile = DirectoryUtil.getStorageDirectory().resolve(file.getId() + "_thumb");
-                try (OutputStream outputStream = new CipherOutputStream(Files.newOutputStream(outputFile), cipher)) {
-                    ImageUtil.writeJpeg(thumbnail, outputStream);
-                }
-            }
+            FileUtil.generateThumbnails(file.getId(), formatHandler, event.getUnencryptedFile(), user.getPrivateKey());
         } catch (Throwable e) {
             log.error("Unable to generate thumbnails for: " + file, e);
         }
 
+        if (blobContent != null) {
+            log.info("Content reused from a file with the same content: " + file);
+            return blobContent;
+        }
+
         // Extract text content from the file
         long startTime = System.currentTimeMillis();
         String content = null;
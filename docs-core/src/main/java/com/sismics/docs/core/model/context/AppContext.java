@@ -8,11 +8,19 @@ import com.sismics.docs.core.constant.Constants;
 import com.sismics.docs.core.dao.UserDao;
 import com.sismics.docs.core.listener.async.*;
 import com.sismics.docs.core.model.jpa.User;
+import com.sismics.docs.core.service.AuditLogArchiveService;
+import com.sismics.docs.core.service.AuditLogService;
 import com.sismics.docs.core.service.FileService;
 import com.sismics.docs.core.service.FileSizeService;
+import com.sismics.docs.core.service.StorageMigrationService;
+import com.sismics.docs.core.service.StorageScrubService;
+import com.sismics.docs.core.service.UploadService;
 import com.sismics.docs.core.service.InboxService;
 import com.sismics.docs.core.util.PdfUtil;
 import com.sismics.docs.core.util.indexing.IndexingHandler;
+import com.sismics.docs.core.util.storage.FilesystemStorageHandler;
+import com.sismics.docs.core.util.storage.StorageHandler;
+import com.sismics.docs.core.util.storage.StorageUtil;
 import com.sismics.util.ClasspathScanner;
 import com.sismics.util.EnvironmentUtil;
 import org.slf4j.Logger;
@@ -21,9 +29,11 @@ import org.slf4j.LoggerFactory;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Global application context.
@@ -56,6 +66,16 @@ public class AppContext {
      */
     private IndexingHandler indexingHandler;
 
+    /**
+     * Storage handler of the files.
+     */
+    private StorageHandler storageHandler;
+
+    /**
+     * Storage handler of the deduplicated blobs.
+     */
+    private StorageHandler blobStorageHandler;
+
     /**
      * Inbox scanning service.
      */
@@ -71,11 +91,41 @@ public class AppContext {
      */
     private FileSizeService fileSizeService;
 
+    /**
+     * Storage migration service.
+     */
+    private StorageMigrationService storageMigrationService;
+
+    /**
+     * Storage scrub service, null if disabled.
+     */
+    private StorageScrubService storageScrubService;
+
+    /**
+     * Upload service.
+     */
+    private UploadService uploadService;
+
+    /**
+     * Audit log service, null in synchronous mode.
+     */
+    private AuditLogService auditLogService;
+
+    /**
+     * Audit log archive service.
+     */
+    private AuditLogArchiveService auditLogArchiveService;
+
     /**
      * Asynchronous executors.
      */
     private List<ThreadPoolExecutor> asyncExecutorList;
 
+    /**
+     * Executor preparing the files of the ZIP exports.
+     */
+    private ExecutorService zipExportExecutor;
+
     /**
      * Start the application context.
      */
@@ -98,6 +148,24 @@ public class AppContext {
             log.error("Error starting the indexing handler", e);
         }
 
+        // Start storage handlers, nothing works without them
+        try {
+            storageHandler = StorageUtil.create(StorageUtil.FILE_AREA);
+            storageHandler.startUp();
+            blobStorageHandler = StorageUtil.create(StorageUtil.BLOB_AREA);
+            blobStorageHandler.startUp();
+        } catch (Exception e) {
+            throw new IllegalStateException("Error starting the storage handlers", e);
+        }
+
+        // Start ZIP export executor
+        AtomicInteger zipExportThreadCount = new AtomicInteger();
+        zipExportExecutor = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()), runnable -> {
+            Thread thread = new Thread(runnable, "zip-export-" + zipExportThreadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
         // Start file service
         fileService = new FileService();
         fileService.startAsync();
@@ -108,10 +176,42 @@ public class AppContext {
         inboxService.startAsync();
         inboxService.awaitRunning();
 
+        // Start audit log service
+        if (!EnvironmentUtil.isUnitTest() && !Boolean.parseBoolean(System.getenv(Constants.AUDIT_LOG_SYNC_ENV))) {
+            auditLogService = new AuditLogService(getAuditLogQueueSize());
+            auditLogService.startAsync();
+            auditLogService.awaitRunning();
+        }
+
+        // Start audit log archive service
+        auditLogArchiveService = new AuditLogArchiveService();
+        auditLogArchiveService.startAsync();
+        auditLogArchiveService.awaitRunning();
+
         // Start file size service
+        // It stops itself when there is no file without size, possibly before being seen running
         fileSizeService = new FileSizeService();
         fileSizeService.startAsync();
-        fileSizeService.awaitRunning();
+
+        // Start upload service
+        uploadService = new UploadService();
+        uploadService.startAsync();
+        uploadService.awaitRunning();
+
+        // Start storage migration service, only the filesystem has a previous layout
+        // It stops itself when there is nothing left to migrate, possibly before being seen running
+        if (storageHandler instanceof FilesystemStorageHandler) {
+            storageMigrationService = new StorageMigrationService();
+            storageMigrationService.startAsync();
+        }
+
+        // Start storage scrub service
+        long storageScrubRate = getStorageScrubRate();
+        if (storageScrubRate > 0) {
+            storageScrubService = new StorageScrubService(storageScrubRate);
+            storageScrubService.startAsync();
+            storageScrubService.awaitRunning();
+        }
 
         // Register fonts
         PdfUtil.registerFonts();
@@ -139,6 +239,40 @@ public class AppContext {
         }
     }
 
+    /**
+     * Returns the maximum number of audit logs waiting to be written.
+     *
+     * @return Queue size
+     */
+    private int getAuditLogQueueSize() {
+        String envQueueSize = System.getenv(Constants.AUDIT_LOG_QUEUE_SIZE_ENV);
+        if (!Strings.isNullOrEmpty(envQueueSize)) {
+            try {
+                return Integer.parseInt(envQueueSize);
+            } catch (NumberFormatException e) {
+                log.warn(Constants.AUDIT_LOG_QUEUE_SIZE_ENV + " needs to be a number. Falling back to " + Constants.DEFAULT_AUDIT_LOG_QUEUE_SIZE + ".");
+            }
+        }
+        return Constants.DEFAULT_AUDIT_LOG_QUEUE_SIZE;
+    }
+
+    /**
+     * Returns the read rate of the storage scrubber.
+     *
+     * @return Read rate in bytes per second, 0 if the scrubber is disabled
+     */
+    private long getStorageScrubRate() {
+        String envRate = System.getenv(Constants.STORAGE_SCRUB_RATE_ENV);
+        if (!Strings.isNullOrEmpty(envRate)) {
+            try {
+                return Math.max(0, Long.parseLong(envRate)) * 1024 * 1024;
+            } catch (NumberFormatException e) {
+                log.warn(Constants.STORAGE_SCRUB_RATE_ENV + " needs to be a number. Falling back to no scrubbing.");
+            }
+        }
+        return 0;
+    }
+
     /**
      * (Re)-initializes the event buses.
      */
@@ -217,6 +351,14 @@ public class AppContext {
         return indexingHandler;
     }
 
+    public StorageHandler getStorageHandler() {
+        return storageHandler;
+    }
+
+    public StorageHandler getBlobStorageHandler() {
+        return blobStorageHandler;
+    }
+
     public InboxService getInboxService() {
         return inboxService;
     }
@@ -225,6 +367,18 @@ public class AppContext {
         return fileService;
     }
 
+    public StorageScrubService getStorageScrubService() {
+        return storageScrubService;
+    }
+
+    public AuditLogService getAuditLogService() {
+        return auditLogService;
+    }
+
+    public ExecutorService getZipExportExecutor() {
+        return zipExportExecutor;
+    }
+
     public void shutDown() {
         for (ExecutorService executor : asyncExecutorList) {
             // Shutdown executor, don't accept any more tasks (can cause error with nested events)
@@ -236,10 +390,26 @@ public class AppContext {
             }
         }
 
+        // Let the ZIP exports in progress finish preparing their files
+        if (zipExportExecutor != null) {
+            try {
+                zipExportExecutor.shutdown();
+                zipExportExecutor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                // NOP
+            }
+        }
+
         if (indexingHandler != null) {
             indexingHandler.shutDown();
         }
 
+        // Flush the pending audit logs
+        if (auditLogService != null) {
+            auditLogService.stopAsync();
+            auditLogService.awaitTerminated();
+        }
+
         if (inboxService != null) {
             inboxService.stopAsync();
             inboxService.awaitTerminated();
@@ -253,6 +423,31 @@ public class AppContext {
             fileSizeService.stopAsync();
         }
 
+        if (auditLogArchiveService != null) {
+            auditLogArchiveService.stopAsync();
+        }
+
+        if (storageMigrationService != null) {
+            storageMigrationService.stopAsync();
+        }
+
+        if (storageScrubService != null) {
+            storageScrubService.stopAsync();
+        }
+
+        if (uploadService != null) {
+            uploadService.stopAsync();
+        }
+
+        // Sync the pending writes
+        if (storageHandler != null) {
+            storageHandler.shutDown();
+        }
+
+        if (blobStorageHandler != null) {
+            blobStorageHandler.shutDown();
+        }
+
         instance = null;
     }
 }
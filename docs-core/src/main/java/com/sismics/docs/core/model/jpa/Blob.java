@@ -0,0 +1,102 @@
+package com.sismics.docs.core.model.jpa;
+
+import com.google.common.base.MoreObjects;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import java.util.Date;
+
+/**
+ * Content-addressed blob, shared by the files with identical content.
+ * 
+ * @author bgamard
+ */
+@Entity
+@Table(name = "T_BLOB")
+public class Blob {
+    /**
+     * Blob ID, derived from the content.
+     */
+    @Id
+    @Column(name = "BLB_ID_C", length = 64)
+    private String id;
+
+    /**
+     * Size of the content.
+     */
+    @Column(name = "BLB_SIZE_N", nullable = false)
+    private Long size;
+
+    /**
+     * Number of files referencing this blob.
+     */
+    @Column(name = "BLB_REFCOUNT_N", nullable = false)
+    private Integer refCount;
+
+    /**
+     * Creation date.
+     */
+    @Column(name = "BLB_CREATEDATE_D", nullable = false)
+    private Date createDate;
+
+    /**
+     * SHA-256 of the stored content, null if unknown.
+     */
+    @Column(name = "BLB_CHECKSUM_C", length = 64)
+    private String checksum;
+
+    public String getId() {
+        return id;
+    }
+
+    public Blob setId(String id) {
+        this.id = id;
+        return this;
+    }
+
+    public Long getSize() {
+        return size;
+    }
+
+    public Blob setSize(Long size) {
+        this.size = size;
+        return this;
+    }
+
+    public Integer getRefCount() {
+        return refCount;
+    }
+
+    public Blob setRefCount(Integer refCount) {
+        this.refCount = refCount;
+        return this;
+    }
+
+    public Date getCreateDate() {
+        return createDate;
+    }
+
+    public Blob setCreateDate(Date createDate) {
+        this.createDate = createDate;
+        return this;
+    }
+
+    public String getChecksum() {
+        return checksum;
+    }
+
+    public Blob setChecksum(String checksum) {
+        this.checksum = checksum;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("id", id)
+                .add("refCount", refCount)
+                .toString();
+    }
+}
@@ -96,6 +96,24 @@ public class File implements Loggable {
     @Column(name = "FIL_SIZE_N", nullable = false)
     private Long size;
 
+    /**
+     * Blob ID, if the content is stored in a deduplicated blob.
+     */
+    @Column(name = "FIL_IDBLOB_C", length = 64)
+    private String blobId;
+
+    /**
+     * Key of the blob, encrypted with the private key of the user.
+     */
+    @Column(name = "FIL_BLOBKEY_C", length = 200)
+    private String blobKey;
+
+    /**
+     * SHA-256 of the stored content, null if unknown or if the content is stored in a blob.
+     */
+    @Column(name = "FIL_CHECKSUM_C", length = 64)
+    private String checksum;
+
     /**
      * Private key to decrypt the file.
      * Not saved to database, of course.
@@ -224,6 +242,33 @@ public class File implements Loggable {
         return this;
     }
 
+    public String getBlobId() {
+        return blobId;
+    }
+
+    public File setBlobId(String blobId) {
+        this.blobId = blobId;
+        return this;
+    }
+
+    public String getBlobKey() {
+        return blobKey;
+    }
+
+    public File setBlobKey(String blobKey) {
+        this.blobKey = blobKey;
+        return this;
+    }
+
+    public String getChecksum() {
+        return checksum;
+    }
+
+    public File setChecksum(String checksum) {
+        this.checksum = checksum;
+        return this;
+    }
+
     @Override
     public String toString() {
         return MoreObjects.toStringHelper(this)
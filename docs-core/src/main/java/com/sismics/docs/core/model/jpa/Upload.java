@@ -0,0 +1,149 @@
+package com.sismics.docs.core.model.jpa;
+
+import com.google.common.base.MoreObjects;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import java.util.Date;
+
+/**
+ * Resumable upload session.
+ * The content received so far is staged on disk, encrypted, until the upload is completed.
+ * 
+ * @author bgamard
+ */
+@Entity
+@Table(name = "T_UPLOAD")
+public class Upload {
+    /**
+     * Upload ID.
+     */
+    @Id
+    @Column(name = "UPL_ID_C", length = 36)
+    private String id;
+
+    /**
+     * User ID.
+     */
+    @Column(name = "UPL_IDUSER_C", nullable = false, length = 36)
+    private String userId;
+
+    /**
+     * Document ID the file will be added to.
+     */
+    @Column(name = "UPL_IDDOC_C", length = 36)
+    private String documentId;
+
+    /**
+     * ID of the previous version of the file.
+     */
+    @Column(name = "UPL_IDPREVIOUSFILE_C", length = 36)
+    private String previousFileId;
+
+    /**
+     * File name.
+     */
+    @Column(name = "UPL_NAME_C", length = 200)
+    private String name;
+
+    /**
+     * Announced size of the file, null if unknown.
+     */
+    @Column(name = "UPL_SIZE_N")
+    private Long size;
+
+    /**
+     * Creation date.
+     */
+    @Column(name = "UPL_CREATEDATE_D", nullable = false)
+    private Date createDate;
+
+    /**
+     * Date of the last received content.
+     */
+    @Column(name = "UPL_UPDATEDATE_D", nullable = false)
+    private Date updateDate;
+
+    public String getId() {
+        return id;
+    }
+
+    public Upload setId(String id) {
+        this.id = id;
+        return this;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public Upload setUserId(String userId) {
+        this.userId = userId;
+        return this;
+    }
+
+    public String getDocumentId() {
+        return documentId;
+    }
+
+    public Upload setDocumentId(String documentId) {
+        this.documentId = documentId;
+        return this;
+    }
+
+    public String getPreviousFileId() {
+        return previousFileId;
+    }
+
+    public Upload setPreviousFileId(String previousFileId) {
+        this.previousFileId = previousFileId;
+        return this;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Upload setName(String name) {
+        this.name = name;
+        return this;
+    }
+
+    public Long getSize() {
+        return size;
+    }
+
+    public Upload setSize(Long size) {
+        this.size = size;
+        return this;
+    }
+
+    public Date getCreateDate() {
+        return createDate;
+    }
+
+    public Upload setCreateDate(Date createDate) {
+        this.createDate = createDate;
+        return this;
+    }
+
+    public Date getUpdateDate() {
+        return updateDate;
+    }
+
+    public Upload setUpdateDate(Date updateDate) {
+        this.updateDate = updateDate;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("id", id)
+                .add("userId", userId)
+                .add("name", name)
+                .toString();
+    }
+}
@@ -0,0 +1,196 @@
+package com.sismics.docs.core.service;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Strings;
+import com.google.common.util.concurrent.AbstractScheduledService;
+import com.sismics.docs.core.constant.Constants;
+import com.sismics.docs.core.dao.AuditLogDao;
+import com.sismics.docs.core.model.jpa.AuditLog;
+import com.sismics.docs.core.util.DirectoryUtil;
+import com.sismics.docs.core.util.TransactionUtil;
+import com.sismics.util.context.ThreadLocalContext;
+import org.apache.commons.lang3.StringEscapeUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Service archiving the audit logs older than the retention period.
+ * Audit logs are archived by whole months, to a compressed CSV file per month in the data directory,
+ * then removed from the database.
+ *
+ * @author bgamard
+ */
+public class AuditLogArchiveService extends AbstractScheduledService {
+    /**
+     * Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(AuditLogArchiveService.class);
+
+    /**
+     * Number of audit logs read at once.
+     */
+    private static final int CHUNK_SIZE = 1000;
+
+    @Override
+    protected void startUp() {
+        log.info("Audit log archive service starting up");
+    }
+
+    @Override
+    protected void shutDown() {
+        log.info("Audit log archive service shutting down");
+    }
+
+    @Override
+    protected void runOneIteration() {
+        Integer retentionDays = getRetentionDays();
+        if (retentionDays == null) {
+            return;
+        }
+
+        try {
+            // Archive each month entirely outside of the retention period, one transaction per month
+            YearMonth limit = YearMonth.from(LocalDate.now().minusDays(retentionDays));
+            YearMonth month;
+            while ((month = getOldestMonth()) != null && month.isBefore(limit)) {
+                YearMonth archivedMonth = month;
+                TransactionUtil.handle(() -> {
+                    try {
+                        archive(archivedMonth);
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+                if (month.equals(getOldestMonth())) {
+                    // Nothing archived, the error is logged by the transaction
+                    return;
+                }
+            }
+        } catch (Throwable e) {
+            log.error("Exception during audit log archive service iteration", e);
+        }
+    }
+
+    @Override
+    protected Scheduler scheduler() {
+        return Scheduler.newFixedDelaySchedule(1, 60 * 24, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Returns the retention period.
+     *
+     * @return Retention in days, null to keep the audit logs forever
+     */
+    private Integer getRetentionDays() {
+        String envRetentionDays = System.getenv(Constants.AUDIT_LOG_RETENTION_DAYS_ENV);
+        if (Strings.isNullOrEmpty(envRetentionDays)) {
+            return null;
+        }
+        try {
+            int retentionDays = Integer.parseInt(envRetentionDays);
+            if (retentionDays > 0) {
+                return retentionDays;
+            }
+        } catch (NumberFormatException e) {
+            // NOP
+        }
+        log.warn(Constants.AUDIT_LOG_RETENTION_DAYS_ENV + " needs to be a positive number. Audit logs are kept forever.");
+        return null;
+    }
+
+    /**
+     * Returns the month of the oldest audit log.
+     *
+     * @return Month, null if there is no audit log
+     */
+    private YearMonth getOldestMonth() {
+        YearMonth[] month = new YearMonth[1];
+        TransactionUtil.handle(() -> {
+            Date oldestDate = new AuditLogDao().getOldestCreateDate();
+            if (oldestDate != null) {
+                month[0] = YearMonth.from(oldestDate.toInstant().atZone(ZoneId.systemDefault()));
+            }
+        });
+        return month[0];
+    }
+
+    /**
+     * Archive the audit logs of a month to a compressed CSV file, and delete them.
+     * The file is complete before anything is deleted.
+     *
+     * @param month Month
+     * @return Archive file
+     * @throws IOException e
+     */
+    Path archive(YearMonth month) throws IOException {
+        Date start = toDate(month.atDay(1));
+        Date end = toDate(month.plusMonths(1).atDay(1));
+        AuditLogDao auditLogDao = new AuditLogDao();
+
+        // Never overwrite a previous archive of the same month
+        Path archiveDirectory = DirectoryUtil.getAuditLogArchiveDirectory();
+        Path archiveFile = archiveDirectory.resolve("audit-log-" + month + ".csv.gz");
+        for (int i = 1; Files.exists(archiveFile); i++) {
+            archiveFile = archiveDirectory.resolve("audit-log-" + month + "-" + i + ".csv.gz");
+        }
+
+        Path tempFile = archiveDirectory.resolve(archiveFile.getFileName() + ".tmp");
+        int count = 0;
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(Files.newOutputStream(tempFile)), StandardCharsets.UTF_8))) {
+            writer.write("id,create_date,user_id,entity_id,entity_class,type,message\n");
+            AuditLog last = null;
+            List<AuditLog> auditLogList;
+            do {
+                auditLogList = auditLogDao.findByCreateDate(start, end, last, CHUNK_SIZE);
+                for (AuditLog auditLog : auditLogList) {
+                    writer.write(Joiner.on(',').join(
+                            auditLog.getId(),
+                            auditLog.getCreateDate().getTime(),
+                            escape(auditLog.getUserId()),
+                            escape(auditLog.getEntityId()),
+                            escape(auditLog.getEntityClass()),
+                            auditLog.getType().name(),
+                            escape(auditLog.getMessage())));
+                    writer.write('\n');
+                    last = auditLog;
+                }
+                count += auditLogList.size();
+
+                // Detach the written chunk, the persistence context would otherwise hold the whole month
+                ThreadLocalContext.get().getEntityManager().clear();
+            } while (auditLogList.size() == CHUNK_SIZE);
+        } catch (IOException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+        Files.move(tempFile, archiveFile, StandardCopyOption.ATOMIC_MOVE);
+
+        int deleted = auditLogDao.deleteByCreateDate(start, end);
+        log.info("Archived {} audit logs of {} to {}, {} deleted", count, month, archiveFile, deleted);
+        return archiveFile;
+    }
+
+    private static String escape(String value) {
+        return value == null ? "" : StringEscapeUtils.escapeCsv(value);
+    }
+
+    private static Date toDate(LocalDate localDate) {
+        return Date.from(localDate.atStartOfDay(ZoneId.systemDefault()).toInstant());
+    }
+}
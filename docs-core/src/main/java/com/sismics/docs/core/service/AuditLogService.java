@@ -0,0 +1,151 @@
+package com.sismics.docs.core.service;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.AbstractExecutionThreadService;
+import com.sismics.docs.core.model.jpa.AuditLog;
+import com.sismics.util.jpa.EMF;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityTransaction;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service writing the audit logs in batches, outside of the request transactions.
+ * Audit logs are buffered in a bounded queue, submitters are blocked when it is full.
+ *
+ * @author bgamard
+ */
+public class AuditLogService extends AbstractExecutionThreadService {
+    /**
+     * Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(AuditLogService.class);
+
+    /**
+     * Maximum number of audit logs written in one transaction.
+     */
+    private static final int BATCH_SIZE = 500;
+
+    /**
+     * Pending audit logs.
+     */
+    private final BlockingQueue<AuditLog> queue;
+
+    /**
+     * Constructor of AuditLogService.
+     *
+     * @param capacity Maximum number of pending audit logs
+     */
+    public AuditLogService(int capacity) {
+        queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    @Override
+    protected void startUp() {
+        log.info("Audit log service starting up");
+    }
+
+    @Override
+    protected void shutDown() {
+        // Flush everything submitted before the shutdown
+        flush();
+        log.info("Audit log service shutting down");
+    }
+
+    @Override
+    protected void run() {
+        List<AuditLog> batch = Lists.newArrayList();
+        while (isRunning()) {
+            try {
+                AuditLog auditLog = queue.poll(1, TimeUnit.SECONDS);
+                if (auditLog == null) {
+                    continue;
+                }
+                batch.add(auditLog);
+                queue.drainTo(batch, BATCH_SIZE - 1);
+                write(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Submit an audit log to be written.
+     * Blocks while the queue is full.
+     *
+     * @param auditLog Audit log, with its ID and creation date
+     */
+    public void submit(AuditLog auditLog) {
+        if (!isRunning()) {
+            // Too late for the background thread
+            write(Lists.newArrayList(auditLog));
+            return;
+        }
+
+        try {
+            queue.put(auditLog);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            write(Lists.newArrayList(auditLog));
+            return;
+        }
+
+        if (!isRunning()) {
+            // Stopped while queuing, the shutdown flush may be over already
+            flush();
+        }
+    }
+
+    /**
+     * Returns the number of audit logs waiting to be written.
+     *
+     * @return Number of pending audit logs
+     */
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    /**
+     * Write all pending audit logs.
+     */
+    private void flush() {
+        List<AuditLog> batch = Lists.newArrayList();
+        while (queue.drainTo(batch, BATCH_SIZE) > 0) {
+            write(batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * Write a batch of audit logs in its own transaction.
+     *
+     * @param auditLogList Audit logs
+     */
+    private void write(List<AuditLog> auditLogList) {
+        EntityManager em = EMF.get().createEntityManager();
+        EntityTransaction tx = em.getTransaction();
+        try {
+            tx.begin();
+            for (AuditLog auditLog : auditLogList) {
+                em.persist(auditLog);
+            }
+            tx.commit();
+        } catch (Exception e) {
+            log.error("Error writing " + auditLogList.size() + " audit logs: " + auditLogList, e);
+            if (tx.isActive()) {
+                tx.rollback();
+            }
+        } finally {
+            em.close();
+        }
+    }
+}
@@ -1,21 +1,28 @@
 package com.sismics.docs.core.service;
 
+import com.google.common.base.Strings;
 import com.google.common.util.concurrent.AbstractScheduledService;
+import com.sismics.docs.core.constant.Constants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.lang.ref.PhantomReference;
 import java.lang.ref.ReferenceQueue;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * File service.
+ * Temporary files are deleted when they are released. The ones never released are deleted
+ * once their path is garbage collected, as a safety net.
+ * Their size is counted when they are written, new content is refused while it is over the budget.
  *
  * @author bgamard
  */
@@ -25,25 +32,81 @@ public class FileService extends AbstractScheduledService {
      */
     private static final Logger log = LoggerFactory.getLogger(FileService.class);
 
+    /**
+     * Prefix of the temporary files.
+     */
+    private static final String PREFIX = "sismics_docs";
+
     /**
      * Phantom references queue.
      */
     private final ReferenceQueue<Path> referenceQueue = new ReferenceQueue<>();
-    private final Set<TemporaryPathReference> referenceSet = new HashSet<>();
+
+    /**
+     * References to the temporary files, by path.
+     */
+    private final Map<String, TemporaryPathReference> referenceMap = new ConcurrentHashMap<>();
+
+    /**
+     * Directory of the temporary files.
+     */
+    private final Path directory;
+
+    /**
+     * Disk budget of the temporary files in bytes, 0 if unlimited.
+     */
+    private final long maxSize;
+
+    /**
+     * Size of the temporary files in use, as counted when they are written.
+     */
+    private final AtomicLong usedSize = new AtomicLong();
+
+    /**
+     * Number of temporary files deleted when released.
+     */
+    private final AtomicLong releasedCount = new AtomicLong();
+
+    /**
+     * Number of temporary files deleted after being garbage collected.
+     */
+    private final AtomicLong collectedCount = new AtomicLong();
 
     public FileService() {
+        this(readDirectory(), readMaxSize());
+    }
+
+    /**
+     * Constructor of FileService.
+     *
+     * @param directory Directory of the temporary files, null for the system one
+     * @param maxSize Disk budget of the temporary files in bytes, 0 if unlimited
+     */
+    FileService(Path directory, long maxSize) {
+        this.directory = directory;
+        this.maxSize = maxSize;
     }
 
     @Override
-    protected void startUp() {
+    protected void startUp() throws IOException {
         log.info("File service starting up");
+        if (directory != null) {
+            Files.createDirectories(directory);
+
+            // The staging directory is dedicated, what is left from a previous run is not used anymore
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*")) {
+                for (Path path : stream) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        }
     }
 
     @Override
     protected void shutDown() {
         log.info("File service shutting down");
     }
-    
+
     @Override
     protected void runOneIteration() {
         try {
@@ -59,8 +122,12 @@ public class FileService extends AbstractScheduledService {
     private void deleteTemporaryFiles() throws Exception {
         TemporaryPathReference ref;
         while ((ref = (TemporaryPathReference) referenceQueue.poll()) != null) {
-            Files.delete(Paths.get(ref.path));
-            referenceSet.remove(ref);
+            if (referenceMap.remove(ref.path, ref)) {
+                uncount(ref);
+                Files.deleteIfExists(Paths.get(ref.path));
+                collectedCount.incrementAndGet();
+                log.debug("Temporary file deleted without being released: " + ref.path);
+            }
         }
     }
 
@@ -75,16 +142,156 @@ public class FileService extends AbstractScheduledService {
 
     /**
      * Create a temporary file.
+     * The temporary file must be released with {@link #deleteTemporaryFile(Path)} when it is not used anymore.
      *
      * @param name Wanted file name
      * @return New temporary file
      */
     public Path createTemporaryFile(String name) throws IOException {
-        Path path = Files.createTempFile("sismics_docs", name);
-        referenceSet.add(new TemporaryPathReference(path, referenceQueue));
+        Path path = directory == null ? Files.createTempFile(PREFIX, name) : Files.createTempFile(directory, PREFIX, name);
+        TemporaryPathReference ref = new TemporaryPathReference(path, referenceQueue);
+        referenceMap.put(ref.path, ref);
         return path;
     }
 
+    /**
+     * Release a temporary file: it is deleted now.
+     *
+     * @param path Temporary file, can be null
+     */
+    public void deleteTemporaryFile(Path path) {
+        if (path == null) {
+            return;
+        }
+        TemporaryPathReference ref = referenceMap.remove(path.toAbsolutePath().toString());
+        if (ref == null) {
+            // Not a temporary file, or already released
+            return;
+        }
+        ref.clear();
+        uncount(ref);
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.error("Unable to delete the temporary file " + path, e);
+        }
+        releasedCount.incrementAndGet();
+    }
+
+    /**
+     * Count the size of a temporary file once it is written.
+     *
+     * @param path Temporary file
+     * @param size Size of the file in bytes
+     */
+    public void updateTemporarySize(Path path, long size) {
+        TemporaryPathReference ref = referenceMap.get(path.toAbsolutePath().toString());
+        if (ref == null) {
+            // Not a temporary file, or already released
+            return;
+        }
+        synchronized (ref) {
+            if (!ref.released) {
+                usedSize.addAndGet(size - ref.size);
+                ref.size = size;
+            }
+        }
+    }
+
+    /**
+     * Stop counting the size of a released temporary file.
+     *
+     * @param ref Reference to the temporary file
+     */
+    private void uncount(TemporaryPathReference ref) {
+        synchronized (ref) {
+            usedSize.addAndGet(-ref.size);
+            ref.released = true;
+        }
+    }
+
+    /**
+     * Returns true if new content can be admitted in the disk budget.
+     * Nothing waits for the release of the temporary files, the caller refuses the content instead.
+     *
+     * @return True if the temporary files are under the budget
+     */
+    public boolean hasTemporarySpace() {
+        return maxSize == 0 || usedSize.get() < maxSize;
+    }
+
+    /**
+     * Returns the number of temporary files in use.
+     *
+     * @return Number of temporary files
+     */
+    public int getTemporaryCount() {
+        return referenceMap.size();
+    }
+
+    /**
+     * Returns the size of the temporary files in use, as counted when they are written.
+     *
+     * @return Size in bytes
+     */
+    public long getTemporarySize() {
+        return usedSize.get();
+    }
+
+    /**
+     * Returns the disk budget of the temporary files.
+     *
+     * @return Budget in bytes, 0 if unlimited
+     */
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Returns the number of temporary files deleted when released.
+     *
+     * @return Number of temporary files
+     */
+    public long getReleasedCount() {
+        return releasedCount.get();
+    }
+
+    /**
+     * Returns the number of temporary files deleted after being garbage collected, without being released.
+     *
+     * @return Number of temporary files
+     */
+    public long getCollectedCount() {
+        return collectedCount.get();
+    }
+
+    /**
+     * Read the directory of the temporary files from the environment.
+     *
+     * @return Directory, null for the system one
+     */
+    private static Path readDirectory() {
+        String envDirectory = System.getenv(Constants.TEMP_DIRECTORY_ENV);
+        return Strings.isNullOrEmpty(envDirectory) ? null : Paths.get(envDirectory);
+    }
+
+    /**
+     * Read the disk budget from the environment.
+     *
+     * @return Disk budget in bytes, 0 if unlimited
+     */
+    private static long readMaxSize() {
+        String envSize = System.getenv(Constants.TEMP_MAX_SIZE_ENV);
+        if (!Strings.isNullOrEmpty(envSize)) {
+            try {
+                return Math.max(0, Long.parseLong(envSize)) * 1024 * 1024;
+            } catch (NumberFormatException e) {
+                log.warn(Constants.TEMP_MAX_SIZE_ENV + " needs to be a number. Falling back to no budget.");
+            }
+        }
+        return 0;
+    }
+
     /**
      * Phantom reference to a temporary file.
      *
@@ -92,6 +299,8 @@ public class FileService extends AbstractScheduledService {
      */
     static class TemporaryPathReference extends PhantomReference<Path> {
         String path;
+        long size;
+        boolean released;
         TemporaryPathReference(Path referent, ReferenceQueue<? super Path> q) {
             super(referent, q);
             path = referent.toAbsolutePath().toString();
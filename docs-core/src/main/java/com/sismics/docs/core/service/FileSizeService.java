@@ -2,19 +2,26 @@ package com.sismics.docs.core.service;
 
 import com.google.common.util.concurrent.AbstractScheduledService;
 import com.sismics.docs.core.dao.FileDao;
-import com.sismics.docs.core.dao.UserDao;
 import com.sismics.docs.core.model.jpa.File;
-import com.sismics.docs.core.model.jpa.User;
 import com.sismics.docs.core.util.FileUtil;
 import com.sismics.docs.core.util.TransactionUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Service that retrieve files sizes when they are not in the database.
+ * The sizes are read from the metadata of the stored content, in parallel, and the service stops after one pass:
+ * the files whose stored content is missing keep an unknown size.
+ * The files whose stored content cannot be read are retried on the next iterations before stopping.
  */
 public class FileSizeService extends AbstractScheduledService {
     /**
@@ -22,7 +29,43 @@ public class FileSizeService extends AbstractScheduledService {
      */
     private static final Logger log = LoggerFactory.getLogger(FileSizeService.class);
 
+    /**
+     * Number of files read and updated at once.
+     */
+    private static final int BATCH_SIZE = 1000;
+
+    /**
+     * Number of stored contents read in parallel.
+     */
+    private static final int THREAD_COUNT = 8;
+
+    /**
+     * Number of iterations retrying the files whose stored content cannot be read.
+     */
+    private static final int MAX_RETRY_COUNT = 10;
+
+    /**
+     * Threads reading the stored contents metadata.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * Files to retry on the next iteration, null before the first pass.
+     */
+    private List<File> retryList;
+
+    /**
+     * Number of iterations retrying files.
+     */
+    private int retryCount;
+
     public FileSizeService() {
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(THREAD_COUNT, runnable -> {
+            Thread thread = new Thread(runnable, "file-size-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
     @Override
@@ -32,43 +75,111 @@ public class FileSizeService extends AbstractScheduledService {
 
     @Override
     protected void shutDown() {
+        executor.shutdownNow();
         log.info("File size service shutting down");
     }
 
-    private static final int BATCH_SIZE = 30;
-    
     @Override
     protected void runOneIteration() {
         try {
-            TransactionUtil.handle(() -> {
-                FileDao fileDao = new FileDao();
-                List<File> files = fileDao.getFilesWithUnknownSize(BATCH_SIZE);
-                for(File file : files) {
-                    processFile(file);
-                }
-                if(files.size() < BATCH_SIZE) {
-                    log.info("No more file to process, stopping the service");
-                    stopAsync();
-                }
-            });
+            if (retryList == null) {
+                retryList = new ArrayList<>();
+                processAllFiles();
+            } else {
+                List<File> files = new ArrayList<>(retryList);
+                retryList.clear();
+                int updated = processFiles(files, retryList);
+                log.info("File sizes retrieved for " + updated + " of the " + files.size() + " files retried");
+            }
+
+            if (retryList.isEmpty()) {
+                log.info("No more file to process, stopping the service");
+                stopAsync();
+            } else if (++retryCount > MAX_RETRY_COUNT) {
+                log.error("Unable to read the stored content of " + retryList.size() + " files after "
+                        + MAX_RETRY_COUNT + " retries, stopping the service");
+                stopAsync();
+            } else {
+                log.warn("Unable to read the stored content of " + retryList.size() + " files, retrying on the next iteration");
+            }
         } catch (Throwable e) {
             log.error("Exception during file service iteration", e);
         }
     }
 
-    void processFile(File file) {
-        UserDao userDao = new UserDao();
-        User user = userDao.getById(file.getUserId());
-        if(user == null) {
+    /**
+     * Retrieve and update the sizes of all the files with an unknown size.
+     *
+     * @throws Exception e
+     */
+    private void processAllFiles() throws Exception {
+        long[] total = new long[1];
+        TransactionUtil.handle(() -> total[0] = new FileDao().countFilesWithUnknownSize());
+        if (total[0] == 0) {
             return;
         }
 
-        long fileSize = FileUtil.getFileSize(file.getId(), user);
-        if(fileSize != File.UNKNOWN_SIZE){
-            FileDao fileDao = new FileDao();
-            file.setSize(fileSize);
-            fileDao.update(file);
+        log.info("Retrieving the size of " + total[0] + " files");
+        long startTime = System.currentTimeMillis();
+        long processed = 0;
+        long updated = 0;
+        String lastId = "";
+        List<File> files;
+        do {
+            String afterId = lastId;
+            List<List<File>> result = new ArrayList<>();
+            TransactionUtil.handle(() -> result.add(new FileDao().getFilesWithUnknownSize(afterId, BATCH_SIZE)));
+            files = result.get(0);
+            if (files.isEmpty()) {
+                break;
+            }
+            updated += processFiles(files, retryList);
+            processed += files.size();
+            lastId = files.get(files.size() - 1).getId();
+            log.info("File sizes retrieved: " + processed + "/" + total[0]);
+        } while (files.size() == BATCH_SIZE && isRunning());
+
+        log.info("File sizes retrieved for " + updated + " files in " + (System.currentTimeMillis() - startTime) + "ms, "
+                + retryList.size() + " files unreadable, " + (processed - updated - retryList.size()) + " files without stored content");
+    }
+
+    /**
+     * Retrieve and update the sizes of files.
+     *
+     * @param files Files
+     * @param failedFiles Receives the files whose stored content cannot be read, to retry later
+     * @return Number of files updated
+     * @throws Exception e
+     */
+    int processFiles(List<File> files, List<File> failedFiles) throws Exception {
+        List<Future<Long>> futureList = new ArrayList<>();
+        for (File file : files) {
+            futureList.add(executor.submit(() -> FileUtil.getStoredFileSize(file.getId(), file.getBlobId())));
         }
+        List<Long> sizeList = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
+            try {
+                sizeList.add(futureList.get(i).get());
+            } catch (ExecutionException e) {
+                // Only a missing stored content means that the size is unknown for good
+                log.warn("Unable to read the stored content of the file " + files.get(i).getId(), e.getCause());
+                failedFiles.add(files.get(i));
+                sizeList.add(File.UNKNOWN_SIZE);
+            }
+        }
+
+        // One transaction for the batch
+        int[] updated = new int[1];
+        TransactionUtil.handle(() -> {
+            FileDao fileDao = new FileDao();
+            for (int i = 0; i < files.size(); i++) {
+                if (!File.UNKNOWN_SIZE.equals(sizeList.get(i))) {
+                    fileDao.updateSize(files.get(i).getId(), sizeList.get(i));
+                    updated[0]++;
+                }
+            }
+        });
+        return updated[0];
     }
 
     @Override
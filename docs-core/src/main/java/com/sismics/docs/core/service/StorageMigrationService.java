@@ -0,0 +1,144 @@
+package com.sismics.docs.core.service;
+
+import com.google.common.util.concurrent.AbstractScheduledService;
+import com.sismics.docs.core.util.DirectoryUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service moving the stored files from the flat layout to the sharded layout.
+ * Files are moved a batch at a time while the application is running,
+ * they are found in both layouts in the meantime.
+ * Files are hard linked then unlinked, or moved on the volumes without hard links.
+ *
+ * @author bgamard
+ */
+public class StorageMigrationService extends AbstractScheduledService {
+    /**
+     * Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(StorageMigrationService.class);
+
+    /**
+     * Number of files moved per iteration.
+     */
+    private static final int BATCH_SIZE = 1000;
+
+    /**
+     * True while the storage volume supports hard links.
+     */
+    private volatile boolean hardLinks;
+
+    public StorageMigrationService() {
+        this(true);
+    }
+
+    /**
+     * Constructor of StorageMigrationService.
+     *
+     * @param hardLinks False to move the files without trying hard links
+     */
+    StorageMigrationService(boolean hardLinks) {
+        this.hardLinks = hardLinks;
+    }
+
+    @Override
+    protected void startUp() {
+        log.info("Storage migration service starting up");
+    }
+
+    @Override
+    protected void shutDown() {
+        log.info("Storage migration service shutting down");
+    }
+
+    @Override
+    protected void runOneIteration() {
+        try {
+            int count = migrate(DirectoryUtil.getStorageDirectory(), BATCH_SIZE);
+            if (count < BATCH_SIZE) {
+                count += migrate(DirectoryUtil.getBlobDirectory(), BATCH_SIZE - count);
+            }
+            if (count > 0) {
+                log.info("{} stored files moved to the sharded layout", count);
+            }
+            if (count < BATCH_SIZE) {
+                log.info("No more stored file to move, stopping the service");
+                stopAsync();
+            }
+        } catch (IOException e) {
+            // Neither linked nor moved, the next iterations would fail the same way
+            log.error("Unable to move the stored files to the sharded layout, stopping the service until the next startup", e);
+            stopAsync();
+        } catch (Throwable e) {
+            log.error("Exception during storage migration service iteration", e);
+        }
+    }
+
+    @Override
+    protected Scheduler scheduler() {
+        return Scheduler.newFixedDelaySchedule(0, 10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Move stored files from the flat layout of a directory to the sharded layout.
+     *
+     * @param directory Storage directory
+     * @param limit Maximum number of files to move
+     * @return Number of files moved
+     * @throws IOException e
+     */
+    int migrate(Path directory, int limit) throws IOException {
+        int count = 0;
+        try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(directory, Files::isRegularFile)) {
+            for (Path flatFile : directoryStream) {
+                if (count >= limit) {
+                    break;
+                }
+                String name = flatFile.getFileName().toString();
+                if (name.endsWith(".tmp")) {
+                    // Being written
+                    continue;
+                }
+
+                // Linked then unlinked, the file is always found and a newer sharded file is never replaced
+                Path shardedFile = DirectoryUtil.getNewStoredFile(directory, name);
+                if (hardLinks) {
+                    try {
+                        Files.createLink(shardedFile, flatFile);
+                    } catch (FileAlreadyExistsException e) {
+                        // Rewritten in the sharded layout since, the flat file is obsolete
+                    } catch (NoSuchFileException e) {
+                        // Deleted meanwhile
+                        continue;
+                    } catch (UnsupportedOperationException | FileSystemException e) {
+                        log.warn("Hard links not supported in " + directory + ", moving the stored files instead", e);
+                        hardLinks = false;
+                    }
+                }
+                if (!hardLinks && Files.notExists(shardedFile)) {
+                    // Renamed without replacing a sharded file, the reads of a file being moved retry in the sharded layout
+                    try {
+                        Files.move(flatFile, shardedFile, StandardCopyOption.ATOMIC_MOVE);
+                    } catch (NoSuchFileException e) {
+                        // Deleted meanwhile
+                        continue;
+                    }
+                }
+                Files.deleteIfExists(flatFile);
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,541 @@
+package com.sismics.docs.core.service;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.AbstractScheduledService;
+import com.google.common.util.concurrent.RateLimiter;
+import com.sismics.docs.core.constant.ConfigType;
+import com.sismics.docs.core.dao.BlobDao;
+import com.sismics.docs.core.dao.ConfigDao;
+import com.sismics.docs.core.dao.FileDao;
+import com.sismics.docs.core.dao.UserDao;
+import com.sismics.docs.core.model.context.AppContext;
+import com.sismics.docs.core.model.jpa.Blob;
+import com.sismics.docs.core.model.jpa.Config;
+import com.sismics.docs.core.model.jpa.File;
+import com.sismics.docs.core.model.jpa.User;
+import com.sismics.docs.core.util.EncryptionUtil;
+import com.sismics.docs.core.util.FileUtil;
+import com.sismics.docs.core.util.TransactionUtil;
+import com.sismics.docs.core.util.format.FormatHandler;
+import com.sismics.docs.core.util.format.FormatHandlerUtil;
+import com.sismics.docs.core.util.storage.StorageHandler;
+import com.sismics.docs.core.util.storage.StorageUtil;
+import com.sismics.docs.core.util.storage.StoredObject;
+import com.sismics.util.io.ThrottledInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.ImageIO;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Service verifying the integrity of the storage.
+ * The stored contents are read at a limited rate and compared to the checksums saved when they were written,
+ * the missing, corrupt and orphan objects are reported, and the damaged images of a file are generated again.
+ * A pass goes through the files, then the blobs, then lists the file and blob storages for orphans.
+ * Its position is saved after each batch so that it resumes after a restart.
+ * The images which cannot be generated from a file are not tried again until the restart.
+ *
+ * @author bgamard
+ */
+public class StorageScrubService extends AbstractScheduledService {
+    /**
+     * Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(StorageScrubService.class);
+
+    /**
+     * Number of files or blobs verified per iteration.
+     */
+    private static final int BATCH_SIZE = 100;
+
+    /**
+     * Number of stored objects listed per iteration, only their metadata is read.
+     */
+    private static final int ORPHAN_BATCH_SIZE = 1000;
+
+    /**
+     * Time between the end of a pass and the start of the next one.
+     */
+    private static final long PASS_INTERVAL = TimeUnit.DAYS.toMillis(1);
+
+    /**
+     * Minimum age of an orphan object, a new object is written before its file is saved.
+     */
+    private static final long ORPHAN_MIN_AGE = TimeUnit.HOURS.toMillis(1);
+
+    /**
+     * Number of problems kept for the report.
+     */
+    private static final int MAX_PROBLEM_COUNT = 100;
+
+    /**
+     * Position prefixes of the phases of a pass.
+     */
+    private static final String FILE_PHASE = "file:";
+    private static final String BLOB_PHASE = "blob:";
+    private static final String ORPHAN_PHASE = "orphan:";
+    private static final String BLOB_ORPHAN_PHASE = "blob-orphan:";
+
+    /**
+     * Read rate limiter, in bytes per second.
+     */
+    private final RateLimiter rateLimiter;
+
+    /**
+     * Position in the current pass, empty between passes.
+     */
+    private volatile String position = "";
+
+    /**
+     * End date of the last pass, null if no pass has ended since the startup.
+     */
+    private volatile Date lastPassDate;
+
+    private final AtomicLong checkedCount = new AtomicLong();
+
+    private final AtomicLong missingCount = new AtomicLong();
+
+    private final AtomicLong corruptCount = new AtomicLong();
+
+    private final AtomicLong orphanCount = new AtomicLong();
+
+    private final AtomicLong regeneratedCount = new AtomicLong();
+
+    /**
+     * Last problems found.
+     */
+    private final ConcurrentLinkedDeque<String> problemList = new ConcurrentLinkedDeque<>();
+
+    /**
+     * IDs of the files whose images cannot be generated, their format has no image or their content is damaged.
+     */
+    private final Set<String> unregeneratedFileIdSet = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Constructor.
+     *
+     * @param rate Read rate, in bytes per second
+     */
+    public StorageScrubService(long rate) {
+        rateLimiter = RateLimiter.create(rate);
+    }
+
+    @Override
+    protected void startUp() {
+        log.info("Storage scrub service starting up");
+    }
+
+    @Override
+    protected void shutDown() {
+        log.info("Storage scrub service shutting down");
+    }
+
+    @Override
+    protected void runOneIteration() {
+        try {
+            if (lastPassDate != null && System.currentTimeMillis() < lastPassDate.getTime() + PASS_INTERVAL) {
+                return;
+            }
+
+            // Resume from the saved position
+            String[] savedPosition = new String[1];
+            TransactionUtil.handle(() -> {
+                Config config = new ConfigDao().getById(ConfigType.STORAGE_SCRUB_POSITION);
+                savedPosition[0] = config == null ? "" : config.getValue();
+            });
+            if (savedPosition[0].isEmpty()) {
+                log.info("Storage scrub pass starting");
+                resetCounts();
+            }
+
+            position = scrub(savedPosition[0]);
+            TransactionUtil.handle(() -> new ConfigDao().update(ConfigType.STORAGE_SCRUB_POSITION, position));
+
+            if (position.isEmpty()) {
+                lastPassDate = new Date();
+                log.info("Storage scrub pass ended: " + checkedCount.get() + " objects checked, "
+                        + missingCount.get() + " missing, " + corruptCount.get() + " corrupt, "
+                        + orphanCount.get() + " orphan, " + regeneratedCount.get() + " images regenerated");
+            }
+        } catch (Throwable e) {
+            log.error("Exception during storage scrub service iteration", e);
+        }
+    }
+
+    @Override
+    protected Scheduler scheduler() {
+        return Scheduler.newFixedDelaySchedule(1, 1, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Verify the next batch of a pass.
+     *
+     * @param position Position in the pass, empty to start a new one
+     * @return Next position, empty at the end of the pass
+     * @throws Exception e
+     */
+    String scrub(String position) throws Exception {
+        if (position.startsWith(BLOB_ORPHAN_PHASE)) {
+            String lastName = findBlobOrphans(AppContext.getInstance().getBlobStorageHandler(),
+                    position.substring(BLOB_ORPHAN_PHASE.length()), System.currentTimeMillis() - ORPHAN_MIN_AGE, ORPHAN_BATCH_SIZE);
+            return lastName == null ? "" : BLOB_ORPHAN_PHASE + lastName;
+        }
+
+        if (position.startsWith(ORPHAN_PHASE)) {
+            String lastName = findFileOrphans(AppContext.getInstance().getStorageHandler(),
+                    position.substring(ORPHAN_PHASE.length()), System.currentTimeMillis() - ORPHAN_MIN_AGE, ORPHAN_BATCH_SIZE);
+            return lastName == null ? BLOB_ORPHAN_PHASE : ORPHAN_PHASE + lastName;
+        }
+
+        if (position.startsWith(BLOB_PHASE)) {
+            String afterId = position.substring(BLOB_PHASE.length());
+            List<List<Blob>> result = new ArrayList<>();
+            TransactionUtil.handle(() -> result.add(new BlobDao().findAfterId(afterId, BATCH_SIZE)));
+            List<Blob> blobs = result.get(0);
+            for (Blob blob : blobs) {
+                scrubBlob(blob);
+            }
+            return blobs.size() < BATCH_SIZE ? ORPHAN_PHASE : BLOB_PHASE + blobs.get(blobs.size() - 1).getId();
+        }
+
+        String afterId = position.startsWith(FILE_PHASE) ? position.substring(FILE_PHASE.length()) : "";
+        List<List<File>> result = new ArrayList<>();
+        TransactionUtil.handle(() -> result.add(new FileDao().findAfterId(afterId, BATCH_SIZE)));
+        List<File> files = result.get(0);
+        scrubFiles(files);
+        return files.size() < BATCH_SIZE ? BLOB_PHASE : FILE_PHASE + files.get(files.size() - 1).getId();
+    }
+
+    /**
+     * Verify the stored contents of files and their images.
+     *
+     * @param files Files
+     * @throws Exception e
+     */
+    void scrubFiles(List<File> files) throws Exception {
+        Set<String> userIdSet = files.stream().map(File::getUserId).collect(Collectors.toSet());
+        List<List<User>> result = new ArrayList<>();
+        TransactionUtil.handle(() -> result.add(new UserDao().getByIdList(userIdSet)));
+        Map<String, User> userMap = result.get(0).stream().collect(Collectors.toMap(User::getId, Function.identity()));
+
+        for (File file : files) {
+            if (FileUtil.isProcessingFile(file.getId())) {
+                // The images are being generated
+                continue;
+            }
+            scrubFile(file, userMap.get(file.getUserId()));
+        }
+    }
+
+    /**
+     * Verify the stored content of a file and its images.
+     *
+     * @param file File
+     * @param user User who created the file
+     * @throws Exception e
+     */
+    private void scrubFile(File file, User user) throws Exception {
+        checkedCount.incrementAndGet();
+        if (file.getBlobId() == null) {
+            String checksum = readChecksum(AppContext.getInstance().getStorageHandler(), file.getId());
+            if (checksum == null) {
+                if (isActive(file)) {
+                    report(missingCount, "Missing file content: " + file.getId());
+                }
+                return;
+            }
+            if (file.getChecksum() == null) {
+                // Stored before the checksums were saved, trusted from now on
+                TransactionUtil.handle(() -> new FileDao().updateChecksum(file.getId(), checksum));
+            } else if (!checksum.equals(file.getChecksum())) {
+                report(corruptCount, "Corrupt file content: " + file.getId());
+                return;
+            }
+        } else if (AppContext.getInstance().getBlobStorageHandler().stat(file.getBlobId()) == null) {
+            // The content of the blob is verified with the blobs
+            return;
+        }
+
+        if (user == null || unregeneratedFileIdSet.contains(file.getId())) {
+            return;
+        }
+        try (FormatHandler formatHandler = FormatHandlerUtil.find(file.getMimeType())) {
+            if (formatHandler == null
+                    || isImageValid(file.getId() + "_web", user.getPrivateKey()) && isImageValid(file.getId() + "_thumb", user.getPrivateKey())) {
+                return;
+            }
+            regenerateImages(file, user, formatHandler);
+        }
+    }
+
+    /**
+     * Generate again the images of a file from its stored content.
+     *
+     * @param file File
+     * @param user User who created the file
+     * @param formatHandler Format handler of the file
+     */
+    private void regenerateImages(File file, User user, FormatHandler formatHandler) {
+        FileService fileService = AppContext.getInstance().getFileService();
+        Path unencryptedFile = null;
+        try {
+            try (InputStream inputStream = new ThrottledInputStream(FileUtil.openStoredFile(file, 0), rateLimiter)) {
+                unencryptedFile = EncryptionUtil.decryptFile(inputStream, FileUtil.getStoredFileKey(file, user.getPrivateKey()));
+            }
+            if (FileUtil.generateThumbnails(file.getId(), formatHandler, unencryptedFile, user.getPrivateKey())) {
+                report(regeneratedCount, "Damaged images regenerated: " + file.getId());
+            } else {
+                unregeneratedFileIdSet.add(file.getId());
+            }
+        } catch (Exception e) {
+            log.error("Unable to regenerate the images of: " + file, e);
+            unregeneratedFileIdSet.add(file.getId());
+            report(corruptCount, "Damaged images not regenerated: " + file.getId());
+        } finally {
+            fileService.deleteTemporaryFile(unencryptedFile);
+        }
+    }
+
+    /**
+     * Verify the stored content of a blob.
+     *
+     * @param blob Blob
+     * @throws Exception e
+     */
+    private void scrubBlob(Blob blob) throws Exception {
+        checkedCount.incrementAndGet();
+        String checksum = readChecksum(AppContext.getInstance().getBlobStorageHandler(), blob.getId());
+        if (checksum == null) {
+            Blob[] freshBlob = new Blob[1];
+            TransactionUtil.handle(() -> freshBlob[0] = new BlobDao().getById(blob.getId()));
+            if (freshBlob[0] != null) {
+                report(missingCount, "Missing blob content: " + blob.getId());
+            }
+        } else if (blob.getChecksum() == null) {
+            // Stored before the checksums were saved, trusted from now on
+            TransactionUtil.handle(() -> new BlobDao().updateChecksum(blob.getId(), checksum));
+        } else if (!checksum.equals(blob.getChecksum())) {
+            report(corruptCount, "Corrupt blob content: " + blob.getId());
+        }
+    }
+
+    /**
+     * Report the next batch of stored objects without file.
+     * They are not deleted, only the administrator can tell where they come from.
+     *
+     * @param storageHandler Storage handler of the files
+     * @param afterName Name of the last object listed, empty to start from the beginning
+     * @param modifiedBefore Only the objects modified before this time are reported
+     * @param limit Number of objects listed
+     * @return Name of the last object listed, null at the end of the storage
+     * @throws IOException e
+     */
+    String findFileOrphans(StorageHandler storageHandler, String afterName, long modifiedBefore, int limit) throws IOException {
+        return findOrphans(storageHandler, afterName, modifiedBefore, limit,
+                // Variations are named after their file
+                name -> name.contains("_") ? name.substring(0, name.indexOf('_')) : name,
+                idList -> new FileDao().getActiveIdList(idList));
+    }
+
+    /**
+     * Report the next batch of stored objects without blob.
+     *
+     * @param storageHandler Storage handler of the blobs
+     * @param afterName Name of the last object listed, empty to start from the beginning
+     * @param modifiedBefore Only the objects modified before this time are reported
+     * @param limit Number of objects listed
+     * @return Name of the last object listed, null at the end of the storage
+     * @throws IOException e
+     */
+    String findBlobOrphans(StorageHandler storageHandler, String afterName, long modifiedBefore, int limit) throws IOException {
+        return findOrphans(storageHandler, afterName, modifiedBefore, limit,
+                Function.identity(),
+                idList -> new BlobDao().getIdList(idList));
+    }
+
+    /**
+     * Report the next batch of stored objects of a storage without owner.
+     *
+     * @param storageHandler Storage handler
+     * @param afterName Name of the last object listed, empty to start from the beginning
+     * @param modifiedBefore Only the objects modified before this time are reported
+     * @param limit Number of objects listed
+     * @param ownerIdFunction Returns the owner ID of an object from its name
+     * @param existingFunction Returns the existing owners among a list of IDs, called in a transaction
+     * @return Name of the last object listed, null at the end of the storage
+     * @throws IOException e
+     */
+    private String findOrphans(StorageHandler storageHandler, String afterName, long modifiedBefore, int limit,
+                               Function<String, String> ownerIdFunction,
+                               Function<Collection<String>, List<String>> existingFunction) throws IOException {
+        List<StoredObject> storedObjects;
+        try (Stream<StoredObject> storedObjectStream = storageHandler.list(afterName)) {
+            storedObjects = storedObjectStream.limit(limit).collect(Collectors.toList());
+        }
+
+        List<StoredObject> oldStoredObjects = storedObjects.stream()
+                .filter(storedObject -> storedObject.getLastModified() < modifiedBefore)
+                .collect(Collectors.toList());
+        for (List<StoredObject> batch : Lists.partition(oldStoredObjects, BATCH_SIZE)) {
+            Set<String> ownerIdSet = batch.stream()
+                    .map(storedObject -> ownerIdFunction.apply(storedObject.getName()))
+                    .collect(Collectors.toSet());
+            Set<String> existingIdSet = new HashSet<>();
+            TransactionUtil.handle(() -> existingIdSet.addAll(existingFunction.apply(ownerIdSet)));
+
+            for (StoredObject storedObject : batch) {
+                // Deleted with its owner meanwhile
+                if (!existingIdSet.contains(ownerIdFunction.apply(storedObject.getName()))
+                        && storageHandler.stat(storedObject.getName()) != null) {
+                    report(orphanCount, "Orphan stored object: " + storedObject.getName());
+                }
+            }
+        }
+
+        return storedObjects.size() < limit ? null : storedObjects.get(storedObjects.size() - 1).getName();
+    }
+
+    /**
+     * Read a stored object at the limited rate and compute its checksum.
+     *
+     * @param storageHandler Storage handler
+     * @param name Object name
+     * @return Checksum, null if the object does not exist
+     * @throws IOException e
+     */
+    private String readChecksum(StorageHandler storageHandler, String name) throws IOException {
+        try (InputStream inputStream = new ThrottledInputStream(storageHandler.get(name), rateLimiter)) {
+            return StorageUtil.checksum(inputStream);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns true if an encrypted image of a file can be decoded.
+     *
+     * @param name Object name
+     * @param privateKey Private key of the user who created the file
+     * @return True if the image is complete
+     */
+    private boolean isImageValid(String name, String privateKey) {
+        byte[] content;
+        try (InputStream inputStream = EncryptionUtil.decryptInputStream(
+                new ThrottledInputStream(AppContext.getInstance().getStorageHandler().get(name), rateLimiter), privateKey)) {
+            content = ByteStreams.toByteArray(inputStream);
+        } catch (NoSuchFileException e) {
+            return false;
+        } catch (Exception e) {
+            log.warn("Unable to read the image: " + name, e);
+            return false;
+        }
+
+        // A complete JPEG starts and ends with its markers, a truncated one is still decoded
+        int length = content.length;
+        if (length < 4 || (content[0] & 0xFF) != 0xFF || (content[1] & 0xFF) != 0xD8
+                || (content[length - 2] & 0xFF) != 0xFF || (content[length - 1] & 0xFF) != 0xD9) {
+            return false;
+        }
+        try {
+            return ImageIO.read(new ByteArrayInputStream(content)) != null;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns true if a file has not been deleted.
+     *
+     * @param file File
+     * @return True if the file is active
+     */
+    private boolean isActive(File file) {
+        boolean[] active = new boolean[1];
+        TransactionUtil.handle(() -> active[0] = new FileDao().getActiveById(file.getId()) != null);
+        return active[0];
+    }
+
+    /**
+     * Report a problem.
+     *
+     * @param count Count of this kind of problem
+     * @param message Message
+     */
+    private void report(AtomicLong count, String message) {
+        count.incrementAndGet();
+        log.warn(message);
+        problemList.addLast(message);
+        while (problemList.size() > MAX_PROBLEM_COUNT) {
+            problemList.pollFirst();
+        }
+    }
+
+    /**
+     * Reset the counts at the start of a pass.
+     */
+    private void resetCounts() {
+        checkedCount.set(0);
+        missingCount.set(0);
+        corruptCount.set(0);
+        orphanCount.set(0);
+        regeneratedCount.set(0);
+        problemList.clear();
+    }
+
+    public String getPosition() {
+        return position;
+    }
+
+    public Date getLastPassDate() {
+        return lastPassDate;
+    }
+
+    public long getCheckedCount() {
+        return checkedCount.get();
+    }
+
+    public long getMissingCount() {
+        return missingCount.get();
+    }
+
+    public long getCorruptCount() {
+        return corruptCount.get();
+    }
+
+    public long getOrphanCount() {
+        return orphanCount.get();
+    }
+
+    public long getRegeneratedCount() {
+        return regeneratedCount.get();
+    }
+
+    /**
+     * Returns the last problems found, since the start of the pass.
+     *
+     * @return Problems, the oldest first
+     */
+    public List<String> getProblemList() {
+        return new ArrayList<>(problemList);
+    }
+}
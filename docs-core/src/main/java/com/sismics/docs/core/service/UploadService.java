@@ -0,0 +1,64 @@
+package com.sismics.docs.core.service;
+
+import com.google.common.util.concurrent.AbstractScheduledService;
+import com.sismics.docs.core.constant.Constants;
+import com.sismics.docs.core.dao.UploadDao;
+import com.sismics.docs.core.model.jpa.Upload;
+import com.sismics.docs.core.util.TransactionUtil;
+import com.sismics.docs.core.util.UploadUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service deleting the abandoned upload sessions.
+ * An upload session is abandoned when it has not received content for {@link Constants#UPLOAD_EXPIRATION_HOUR} hours.
+ *
+ * @author bgamard
+ */
+public class UploadService extends AbstractScheduledService {
+    /**
+     * Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(UploadService.class);
+
+    @Override
+    protected void startUp() {
+        log.info("Upload service starting up");
+    }
+
+    @Override
+    protected void shutDown() {
+        log.info("Upload service shutting down");
+    }
+
+    @Override
+    protected void runOneIteration() {
+        try {
+            TransactionUtil.handle(() -> {
+                UploadDao uploadDao = new UploadDao();
+                Date updateDateMax = new Date(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(Constants.UPLOAD_EXPIRATION_HOUR));
+                for (Upload upload : uploadDao.findByUpdateDateBefore(updateDateMax)) {
+                    try {
+                        UploadUtil.delete(upload.getId());
+                    } catch (IOException e) {
+                        log.error("Unable to delete the content of the upload session " + upload.getId(), e);
+                        continue;
+                    }
+                    uploadDao.delete(upload.getId());
+                    log.info("Upload session " + upload.getId() + " expired");
+                }
+            });
+        } catch (Throwable e) {
+            log.error("Exception during upload service iteration", e);
+        }
+    }
+
+    @Override
+    protected Scheduler scheduler() {
+        return Scheduler.newFixedDelaySchedule(1, 60, TimeUnit.MINUTES);
+    }
+}
@@ -2,11 +2,17 @@ package com.sismics.docs.core.util;
 
 import com.sismics.docs.core.constant.AuditLogType;
 import com.sismics.docs.core.dao.AuditLogDao;
+import com.sismics.docs.core.model.context.AppContext;
 import com.sismics.docs.core.model.jpa.AuditLog;
 import com.sismics.docs.core.model.jpa.Loggable;
+import com.sismics.docs.core.service.AuditLogService;
 import com.sismics.util.context.ThreadLocalContext;
+import org.hibernate.action.spi.AfterTransactionCompletionProcess;
+import org.hibernate.engine.spi.SessionImplementor;
 
 import jakarta.persistence.EntityManager;
+import java.util.Date;
+import java.util.UUID;
 
 /**
  * Audit log utilities.
@@ -16,6 +22,7 @@ import jakarta.persistence.EntityManager;
 public class AuditLogUtil {
     /**
      * Create an audit log.
+     * In asynchronous mode, it is handed to the audit log service when the current transaction commits.
      * 
      * @param loggable Loggable
      * @param type Audit log type
@@ -29,15 +36,29 @@ public class AuditLogUtil {
         // Get the entity ID
         EntityManager em = ThreadLocalContext.get().getEntityManager();
         String entityId = (String) em.getEntityManagerFactory().getPersistenceUnitUtil().getIdentifier(loggable);
-        
+
         // Create the audit log
-        AuditLogDao auditLogDao = new AuditLogDao();
         AuditLog auditLog = new AuditLog();
         auditLog.setUserId(userId);
         auditLog.setEntityId(entityId);
         auditLog.setEntityClass(loggable.getClass().getSimpleName());
         auditLog.setType(type);
         auditLog.setMessage(loggable.toMessage());
-        auditLogDao.create(auditLog);
+
+        AuditLogService auditLogService = AppContext.getInstance().getAuditLogService();
+        if (auditLogService == null) {
+            // Synchronous mode
+            new AuditLogDao().create(auditLog);
+            return;
+        }
+
+        // Dated now, written later if the transaction succeeds
+        auditLog.setId(UUID.randomUUID().toString());
+        auditLog.setCreateDate(new Date());
+        em.unwrap(SessionImplementor.class).getActionQueue().registerProcess((AfterTransactionCompletionProcess) (success, session) -> {
+            if (success) {
+                auditLogService.submit(auditLog);
+            }
+        });
     }
 }
@@ -0,0 +1,123 @@
+package com.sismics.docs.core.util;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.sismics.docs.core.constant.Constants;
+import com.sismics.docs.core.dao.BlobDao;
+import com.sismics.docs.core.dao.FileDao;
+import com.sismics.docs.core.model.context.AppContext;
+import com.sismics.docs.core.model.jpa.Blob;
+import com.sismics.docs.core.model.jpa.File;
+import com.sismics.docs.core.util.storage.StorageHandler;
+import com.sismics.docs.core.util.storage.StorageUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.CipherInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Deduplicated storage utilities.
+ * Files with identical content share a blob, stored once and encrypted with a key derived from the content.
+ * Each file keeps its own copy of the blob key, encrypted with the private key of its user.
+ *
+ * @author bgamard
+ */
+public class BlobUtil {
+    /**
+     * Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(BlobUtil.class);
+
+    /**
+     * Maximum number of attempts to create a blob, deleted concurrently by a purge.
+     */
+    private static final int MAX_CREATE_ATTEMPTS = 3;
+
+    /**
+     * Returns true if the new files are stored in deduplicated blobs.
+     *
+     * @return True if the deduplication is enabled
+     */
+    public static boolean isEnabled() {
+        return Boolean.parseBoolean(System.getenv(Constants.STORAGE_DEDUPLICATION_ENV));
+    }
+
+    /**
+     * Store the content of a new file in a blob, shared with the files of identical content.
+     * The blob ID and the encrypted blob key are set on the file, which must be created after.
+     *
+     * @param file New file, with its size
+     * @param unencryptedFile Path to the unencrypted content
+     * @param contentHash SHA-256 of the unencrypted content, computed while it was received
+     * @param privateKey Private key of the user creating the file
+     * @throws Exception e
+     */
+    public static void store(File file, Path unencryptedFile, HashCode contentHash, String privateKey) throws Exception {
+        // The blob key is derived from the content, and the blob ID from the key
+        String blobKey = contentHash.toString();
+        String blobId = Hashing.sha256().hashBytes(contentHash.asBytes()).toString();
+
+        // Identical uploads race to create the blob, the losers reference the winner's one
+        BlobDao blobDao = new BlobDao();
+        boolean created = false;
+        for (int attempt = 0; !blobDao.addReference(blobId); attempt++) {
+            if (attempt == MAX_CREATE_ATTEMPTS) {
+                throw new IOException("Cannot create the blob: " + blobId);
+            }
+            created |= blobDao.create(new Blob()
+                    .setId(blobId)
+                    .setSize(file.getSize()));
+        }
+        if (!created) {
+            log.info("Deduplicated file content in blob: " + blobId);
+        }
+
+        // Write the blob if it is not stored yet, the content is the same for everyone
+        StorageHandler blobStorageHandler = AppContext.getInstance().getBlobStorageHandler();
+        if (blobStorageHandler.stat(blobId) == null) {
+            try (InputStream inputStream = Files.newInputStream(unencryptedFile)) {
+                blobDao.updateChecksum(blobId, StorageUtil.put(blobStorageHandler, blobId,
+                        new CipherInputStream(inputStream, EncryptionUtil.getEncryptionCipher(blobKey))));
+            }
+        }
+
+        file.setBlobId(blobId);
+        file.setBlobKey(EncryptionUtil.wrapKey(blobKey, privateKey));
+    }
+
+    /**
+     * Release the blob of a deleted file.
+     * The blob is unreferenced when the last file referencing it is deleted, it must be purged after the commit.
+     *
+     * @param fileId File ID
+     * @return ID of the unreferenced blob, or null
+     */
+    public static String release(String fileId) {
+        FileDao fileDao = new FileDao();
+        String blobId = fileDao.getBlobId(fileId);
+        if (blobId == null) {
+            return null;
+        }
+
+        fileDao.removeBlob(fileId);
+        return new BlobDao().removeReference(blobId) ? blobId : null;
+    }
+
+    /**
+     * Delete an unreferenced blob and its content.
+     * The content is deleted while the blob is locked, a concurrent upload of the same content waits for it.
+     *
+     * @param blobId Blob ID
+     * @throws IOException e
+     */
+    public static void purge(String blobId) throws IOException {
+        if (new BlobDao().deleteUnreferenced(blobId)) {
+            AppContext.getInstance().getBlobStorageHandler().delete(blobId);
+            log.info("Deleted unreferenced blob: " + blobId);
+        }
+    }
+}
@@ -1,12 +1,14 @@
 package com.sismics.docs.core.util;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 
 import org.apache.commons.lang3.StringUtils;
 
+import com.google.common.hash.Hashing;
 import com.sismics.util.EnvironmentUtil;
 
 /**
@@ -77,6 +79,24 @@ public class DirectoryUtil {
         return getDataSubDirectory("storage");
     }
     
+    /**
+     * Returns the deduplicated blobs directory.
+     * 
+     * @return Blob directory.
+     */
+    public static Path getBlobDirectory() {
+        return getDataSubDirectory("blob");
+    }
+    
+    /**
+     * Returns the directory of the upload sessions content.
+     * 
+     * @return Upload directory.
+     */
+    public static Path getUploadDirectory() {
+        return getDataSubDirectory("upload");
+    }
+    
     /**
      * Returns the log directory.
      * 
@@ -95,6 +115,87 @@ public class DirectoryUtil {
         return getDataSubDirectory("theme");
     }
 
+    /**
+     * Returns the audit log archive directory.
+     *
+     * @return Audit log archive directory.
+     */
+    public static Path getAuditLogArchiveDirectory() {
+        return getDataSubDirectory("audit");
+    }
+
+    /**
+     * Returns a stored file to read from the storage directory.
+     * 
+     * @param name File ID, optionally followed by a variation suffix
+     * @return Stored file
+     */
+    public static Path getStoredFile(String name) {
+        return getStoredFile(getStorageDirectory(), name);
+    }
+
+    /**
+     * Returns a stored file to write to the storage directory.
+     * 
+     * @param name File ID, optionally followed by a variation suffix
+     * @return Stored file
+     */
+    public static Path getNewStoredFile(String name) {
+        return getNewStoredFile(getStorageDirectory(), name);
+    }
+
+    /**
+     * Returns a stored file to read.
+     * Stored files are in two levels of subdirectories, from a hash of the ID before the variation suffix.
+     * Files from the previous flat layout are found there until they are migrated.
+     * 
+     * @param directory Storage directory
+     * @param name Stored file name
+     * @return Stored file, in the sharded layout if it does not exist
+     */
+    public static Path getStoredFile(Path directory, String name) {
+        Path shardedFile = getShardedPath(directory, name);
+        if (Files.exists(shardedFile)) {
+            return shardedFile;
+        }
+        Path flatFile = directory.resolve(name);
+        if (Files.exists(flatFile)) {
+            return flatFile;
+        }
+        return shardedFile;
+    }
+
+    /**
+     * Returns a stored file to write, always in the sharded layout.
+     * A file left in the flat layout is obsolete and deleted by the migration.
+     * 
+     * @param directory Storage directory
+     * @param name Stored file name
+     * @return Stored file
+     */
+    public static Path getNewStoredFile(Path directory, String name) {
+        Path shardedFile = getShardedPath(directory, name);
+        try {
+            Files.createDirectories(shardedFile.getParent());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return shardedFile;
+    }
+
+    /**
+     * Returns the location of a stored file in the sharded layout.
+     * 
+     * @param directory Storage directory
+     * @param name Stored file name
+     * @return Stored file
+     */
+    public static Path getShardedPath(Path directory, String name) {
+        // All variations of a file are in the same subdirectory
+        String hash = Hashing.sha256().hashString(StringUtils.substringBefore(name, "_"), StandardCharsets.UTF_8).toString();
+        return directory.resolve(hash.substring(0, 2)).resolve(hash.substring(2, 4)).resolve(name);
+    }
+
     /**
      * Returns a subdirectory of the base data directory
      * 
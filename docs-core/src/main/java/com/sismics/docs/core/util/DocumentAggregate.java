@@ -0,0 +1,191 @@
+package com.sismics.docs.core.util;
+
+import com.sismics.docs.core.constant.AclType;
+import com.sismics.docs.core.constant.PermType;
+import com.sismics.docs.core.dao.AclDao;
+import com.sismics.docs.core.dao.ContributorDao;
+import com.sismics.docs.core.dao.DocumentMetadataDao;
+import com.sismics.docs.core.dao.FileDao;
+import com.sismics.docs.core.dao.MetadataDao;
+import com.sismics.docs.core.dao.RelationDao;
+import com.sismics.docs.core.dao.RouteStepDao;
+import com.sismics.docs.core.dao.TagDao;
+import com.sismics.docs.core.dao.criteria.MetadataCriteria;
+import com.sismics.docs.core.dao.dto.AclDto;
+import com.sismics.docs.core.dao.dto.ContributorDto;
+import com.sismics.docs.core.dao.dto.DocumentMetadataDto;
+import com.sismics.docs.core.dao.dto.MetadataDto;
+import com.sismics.docs.core.dao.dto.RelationDto;
+import com.sismics.docs.core.dao.dto.RouteStepDto;
+import com.sismics.docs.core.dao.dto.TagDto;
+import com.sismics.docs.core.model.jpa.File;
+import com.sismics.docs.core.util.jpa.SortCriteria;
+import com.sismics.util.SectionTimer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Everything displayed alongside a document, loaded with a constant number of queries.
+ * The time spent loading each section is measured.
+ *
+ * @author bgamard
+ */
+public class DocumentAggregate {
+    /**
+     * Tags visible by the user, null in anonymous mode.
+     */
+    private List<TagDto> tagDtoList;
+
+    /**
+     * ACLs of the document.
+     */
+    private List<AclDto> aclDtoList;
+
+    /**
+     * ACLs inherited from the tags, by tag ID.
+     */
+    private Map<String, List<AclDto>> inheritedAclMap = Collections.emptyMap();
+
+    /**
+     * True if the document is writable.
+     */
+    private boolean writable;
+
+    /**
+     * Contributors.
+     */
+    private List<ContributorDto> contributorDtoList;
+
+    /**
+     * Relations.
+     */
+    private List<RelationDto> relationDtoList;
+
+    /**
+     * Current route step, null if none or in anonymous mode.
+     */
+    private RouteStepDto routeStepDto;
+
+    /**
+     * All metadata definitions.
+     */
+    private List<MetadataDto> metadataDtoList;
+
+    /**
+     * Metadata values of the document.
+     */
+    private List<DocumentMetadataDto> documentMetadataDtoList;
+
+    /**
+     * Files, null if not requested.
+     */
+    private List<File> fileList;
+
+    /**
+     * Load the aggregate of a document.
+     * Access to the document must have been checked before.
+     *
+     * @param documentId Document ID
+     * @param targetIdList Targets of the request (including the share)
+     * @param userTargetIdList Targets of the user, null in anonymous mode
+     * @param files True to load the files
+     * @param timer Timer of the sections
+     * @return Document aggregate
+     */
+    public static DocumentAggregate load(String documentId, List<String> targetIdList, List<String> userTargetIdList,
+                                         boolean files, SectionTimer timer) {
+        DocumentAggregate aggregate = new DocumentAggregate();
+        AclDao aclDao = new AclDao();
+
+        // Tags visible by the user (no tags for shares)
+        List<String> aclSourceIdList = new ArrayList<>();
+        aclSourceIdList.add(documentId);
+        if (userTargetIdList != null) {
+            aggregate.tagDtoList = new TagDao().findByDocumentsIds(Collections.singleton(documentId), userTargetIdList)
+                    .getOrDefault(documentId, new ArrayList<>());
+            for (TagDto tagDto : aggregate.tagDtoList) {
+                aclSourceIdList.add(tagDto.getId());
+            }
+        }
+        timer.mark("tags");
+
+        // ACLs of the document and of its tags
+        Map<String, List<AclDto>> aclMap = aclDao.getBySourceIds(aclSourceIdList, AclType.USER);
+        aggregate.aclDtoList = aclMap.getOrDefault(documentId, new ArrayList<>());
+        aclMap.remove(documentId);
+        aggregate.inheritedAclMap = aclMap;
+        aggregate.writable = aclDao.checkPermission(documentId, PermType.WRITE, targetIdList);
+        timer.mark("acls");
+
+        aggregate.contributorDtoList = new ContributorDao().getByDocumentId(documentId);
+        timer.mark("contributors");
+
+        aggregate.relationDtoList = new RelationDao().getByDocumentId(documentId);
+        timer.mark("relations");
+
+        if (userTargetIdList != null) {
+            aggregate.routeStepDto = new RouteStepDao().getCurrentStep(documentId);
+            timer.mark("route");
+        }
+
+        aggregate.metadataDtoList = new MetadataDao().findByCriteria(new MetadataCriteria(), new SortCriteria(1, true));
+        aggregate.documentMetadataDtoList = new DocumentMetadataDao().getByDocumentId(documentId);
+        timer.mark("metadata");
+
+        if (files) {
+            aggregate.fileList = new FileDao().getByDocumentsIds(Collections.singleton(documentId));
+            timer.mark("files");
+        }
+
+        return aggregate;
+    }
+
+    public List<TagDto> getTagDtoList() {
+        return tagDtoList;
+    }
+
+    public List<AclDto> getAclDtoList() {
+        return aclDtoList;
+    }
+
+    /**
+     * Returns the ACLs inherited from a tag.
+     *
+     * @param tagId Tag ID
+     * @return ACLs
+     */
+    public List<AclDto> getInheritedAclDtoList(String tagId) {
+        return inheritedAclMap.getOrDefault(tagId, Collections.emptyList());
+    }
+
+    public boolean isWritable() {
+        return writable;
+    }
+
+    public List<ContributorDto> getContributorDtoList() {
+        return contributorDtoList;
+    }
+
+    public List<RelationDto> getRelationDtoList() {
+        return relationDtoList;
+    }
+
+    public RouteStepDto getRouteStepDto() {
+        return routeStepDto;
+    }
+
+    public List<MetadataDto> getMetadataDtoList() {
+        return metadataDtoList;
+    }
+
+    public List<DocumentMetadataDto> getDocumentMetadataDtoList() {
+        return documentMetadataDtoList;
+    }
+
+    public List<File> getFileList() {
+        return fileList;
+    }
+}
@@ -1,22 +1,39 @@
 package com.sismics.docs.core.util;
 
 import com.google.common.base.Strings;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.io.ByteStreams;
 import com.sismics.docs.core.model.context.AppContext;
+import com.sismics.docs.core.service.FileService;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 
 import javax.crypto.Cipher;
 import javax.crypto.CipherInputStream;
+import javax.crypto.CipherOutputStream;
 import javax.crypto.SecretKey;
 import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.FilterOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.security.Security;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Encryption utilities.
@@ -28,6 +45,45 @@ public class EncryptionUtil {
      * Salt.
      */
     private static final String SALT = "LEpxZmm2SMu2PeKzPNrar2rhVAS6LrrgvXKeL9uyXC4vgKHg";
+
+    /**
+     * AES block size.
+     */
+    private static final int BLOCK_SIZE = 16;
+
+    /**
+     * Secret keys derived from the private keys.
+     * The derivation is expensive on purpose, it is done once per user instead of once per file.
+     */
+    private static final LoadingCache<String, SecretKey> secretKeyCache = CacheBuilder.newBuilder()
+            .maximumSize(1000)
+            .expireAfterAccess(1, TimeUnit.HOURS)
+            .build(new CacheLoader<>() {
+                @Override
+                public SecretKey load(String privateKey) throws Exception {
+                    return deriveSecretKey(privateKey);
+                }
+            });
+
+    /**
+     * Keys derived from the private keys to encrypt other keys.
+     */
+    private static final LoadingCache<String, SecretKey> wrappingKeyCache = CacheBuilder.newBuilder()
+            .maximumSize(1000)
+            .expireAfterAccess(1, TimeUnit.HOURS)
+            .build(new CacheLoader<>() {
+                @Override
+                public SecretKey load(String privateKey) throws Exception {
+                    PBEKeySpec keySpec = new PBEKeySpec(privateKey.toCharArray(), SALT.getBytes(), 10000, 256);
+                    SecretKeyFactory skf = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
+                    return new SecretKeySpec(skf.generateSecret(keySpec).getEncoded(), "AES");
+                }
+            });
+
+    /**
+     * Random generator for the IVs.
+     */
+    private static final SecureRandom secureRandom = new SecureRandom();
     
     static {
         // Initialize Bouncy Castle provider
@@ -62,23 +118,89 @@ public class EncryptionUtil {
     }
 
     /**
-     * Decrypt a file to a temporary file using the specified private key.
+     * Decrypt an InputStream from an offset using the specified private key.
+     * AES/CTR is seekable: the counter of the block containing the offset is computed from the IV,
+     * the previous blocks are not read.
+     *
+     * @param is InputStream to decrypt, starting at {@link #getBlockOffset(long)} of the offset
+     * @param privateKey Private key
+     * @param offset Offset in the decrypted data
+     * @return Decrypted stream, starting at the offset
+     * @throws Exception e
+     */
+    public static InputStream decryptInputStream(InputStream is, String privateKey, long offset) throws Exception {
+        long block = offset / BLOCK_SIZE;
+        InputStream decryptedInputStream = new CipherInputStream(is, getCipher(privateKey, Cipher.DECRYPT_MODE, block));
+        ByteStreams.skipFully(decryptedInputStream, offset - block * BLOCK_SIZE);
+        return decryptedInputStream;
+    }
+
+    /**
+     * Encrypt to an OutputStream from an offset using the specified private key.
+     * The encrypted data is the continuation of the data encrypted up to the offset,
+     * both are decrypted at once.
+     *
+     * @param os OutputStream receiving the encrypted data following the offset
+     * @param privateKey Private key
+     * @param offset Length of the data already encrypted
+     * @return Encrypting stream, closing it closes the OutputStream
+     * @throws Exception e
+     */
+    public static OutputStream encryptOutputStream(OutputStream os, String privateKey, long offset) throws Exception {
+        if (Strings.isNullOrEmpty(privateKey)) {
+            throw new IllegalArgumentException("The private key is null or empty");
+        }
+        long block = offset / BLOCK_SIZE;
+        int skip = (int) (offset - block * BLOCK_SIZE);
+        OutputStream cipherOutputStream = new CipherOutputStream(skip == 0 ? os : new FilterOutputStream(os) {
+            // The key stream of the beginning of the block is consumed by the data already encrypted
+            private int skipped = 0;
+
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] { (byte) b }, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                int n = Math.min(len, skip - skipped);
+                skipped += n;
+                out.write(b, off + n, len - n);
+            }
+        }, getCipher(privateKey, Cipher.ENCRYPT_MODE, block));
+        cipherOutputStream.write(new byte[skip]);
+        return cipherOutputStream;
+    }
+
+    /**
+     * Returns the offset in the encrypted data where the decryption from an offset starts.
      *
-     * @param file Encrypted file
+     * @param offset Offset in the decrypted data
+     * @return Offset of the AES block containing it
+     */
+    public static long getBlockOffset(long offset) {
+        return offset / BLOCK_SIZE * BLOCK_SIZE;
+    }
+
+    /**
+     * Decrypt a stream to a temporary file using the specified private key.
+     *
+     * @param is Encrypted stream
      * @param privateKey Private key
      * @return Decrypted temporary file
      * @throws Exception e
      */
-    public static Path decryptFile(Path file, String privateKey) throws Exception {
+    public static Path decryptFile(InputStream is, String privateKey) throws Exception {
+        FileService fileService = AppContext.getInstance().getFileService();
+        Path tmpFile = fileService.createTemporaryFile();
         if (privateKey == null) {
             // For unit testing
-            return file;
+            fileService.updateTemporarySize(tmpFile, Files.copy(is, tmpFile, StandardCopyOption.REPLACE_EXISTING));
+            return tmpFile;
         }
 
-        Path tmpFile = AppContext.getInstance().getFileService().createTemporaryFile();
-        try (InputStream is = Files.newInputStream(file)) {
-            Files.copy(new CipherInputStream(is, getCipher(privateKey, Cipher.DECRYPT_MODE)), tmpFile, StandardCopyOption.REPLACE_EXISTING);
-        }
+        fileService.updateTemporarySize(tmpFile,
+                Files.copy(new CipherInputStream(is, getCipher(privateKey, Cipher.DECRYPT_MODE)), tmpFile, StandardCopyOption.REPLACE_EXISTING));
         return tmpFile;
     }
 
@@ -96,6 +218,42 @@ public class EncryptionUtil {
         return getCipher(privateKey, Cipher.ENCRYPT_MODE);
     }
     
+    /**
+     * Encrypt a key with the specified private key.
+     * Each encryption uses a random IV, the same key encrypted twice gives different results.
+     *
+     * @param key Key to encrypt
+     * @param privateKey Private key
+     * @return Encrypted key
+     * @throws Exception e
+     */
+    public static String wrapKey(String key, String privateKey) throws Exception {
+        byte[] iv = new byte[12];
+        secureRandom.nextBytes(iv);
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, getWrappingKey(privateKey), new GCMParameterSpec(128, iv));
+        byte[] encryptedKey = cipher.doFinal(key.getBytes(StandardCharsets.UTF_8));
+
+        byte[] wrappedKey = Arrays.copyOf(iv, iv.length + encryptedKey.length);
+        System.arraycopy(encryptedKey, 0, wrappedKey, iv.length, encryptedKey.length);
+        return Base64.getEncoder().encodeToString(wrappedKey);
+    }
+
+    /**
+     * Decrypt a key encrypted with {@link #wrapKey(String, String)}.
+     *
+     * @param wrappedKey Encrypted key
+     * @param privateKey Private key
+     * @return Key
+     * @throws Exception e, if the key has not been encrypted with this private key
+     */
+    public static String unwrapKey(String wrappedKey, String privateKey) throws Exception {
+        byte[] data = Base64.getDecoder().decode(wrappedKey);
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        cipher.init(Cipher.DECRYPT_MODE, getWrappingKey(privateKey), new GCMParameterSpec(128, data, 0, 12));
+        return new String(cipher.doFinal(data, 12, data.length - 12), StandardCharsets.UTF_8);
+    }
+
     /**
      * Initialize a Cipher.
      * 
@@ -105,11 +263,77 @@ public class EncryptionUtil {
      * @throws Exception e
      */
     private static Cipher getCipher(String privateKey, int mode) throws Exception {
-        PBEKeySpec keySpec = new PBEKeySpec(privateKey.toCharArray(), SALT.getBytes(), 2000, 256);
-        SecretKeyFactory skf = SecretKeyFactory.getInstance("PBEWITHSHA256AND256BITAES-CBC-BC");
-        SecretKey desKey = skf.generateSecret(keySpec);
         Cipher cipher = Cipher.getInstance("AES/CTR/NOPADDING");
-        cipher.init(mode, desKey);
+        cipher.init(mode, getSecretKey(privateKey));
         return cipher;
     }
+
+    /**
+     * Initialize a Cipher starting at a block.
+     *
+     * @param privateKey Private key
+     * @param mode Mode (encrypt or decrypt)
+     * @param block Number of the first block
+     * @return Cipher
+     * @throws Exception e
+     */
+    private static Cipher getCipher(String privateKey, int mode, long block) throws Exception {
+        Cipher cipher = getCipher(privateKey, mode);
+        if (block > 0) {
+            // Add the block number to a copy of the initial counter, which may be shared with the cached key
+            byte[] counter = cipher.getIV().clone();
+            long carry = block;
+            for (int i = counter.length - 1; i >= 0 && carry != 0; i--) {
+                carry += counter[i] & 0xff;
+                counter[i] = (byte) carry;
+                carry >>>= 8;
+            }
+            cipher.init(mode, getSecretKey(privateKey), new IvParameterSpec(counter));
+        }
+        return cipher;
+    }
+
+    /**
+     * Returns the secret key of a private key, from the cache.
+     *
+     * @param privateKey Private key
+     * @return Secret key
+     * @throws Exception e
+     */
+    private static SecretKey getSecretKey(String privateKey) throws Exception {
+        try {
+            return secretKeyCache.get(privateKey);
+        } catch (ExecutionException e) {
+            throw (Exception) e.getCause();
+        }
+    }
+
+    /**
+     * Returns the key encrypting other keys, from the cache.
+     *
+     * @param privateKey Private key
+     * @return Wrapping key
+     * @throws Exception e
+     */
+    private static SecretKey getWrappingKey(String privateKey) throws Exception {
+        try {
+            return wrappingKeyCache.get(privateKey);
+        } catch (ExecutionException e) {
+            throw (Exception) e.getCause();
+        }
+    }
+
+    /**
+     * Derive the secret key from a private key.
+     * The key and IV derived by the PBE scheme are kept in the secret key, initializing a cipher with it is cheap.
+     *
+     * @param privateKey Private key
+     * @return Secret key
+     * @throws Exception e
+     */
+    static SecretKey deriveSecretKey(String privateKey) throws Exception {
+        PBEKeySpec keySpec = new PBEKeySpec(privateKey.toCharArray(), SALT.getBytes(), 2000, 256);
+        SecretKeyFactory skf = SecretKeyFactory.getInstance("PBEWITHSHA256AND256BITAES-CBC-BC");
+        return skf.generateSecret(keySpec);
+    }
 }
@@ -2,6 +2,9 @@ package com.sismics.docs.core.util;
 
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingInputStream;
+import com.google.common.io.ByteStreams;
 import com.google.common.io.CharStreams;
 import com.sismics.docs.core.constant.Constants;
 import com.sismics.docs.core.dao.FileDao;
@@ -11,25 +14,36 @@ import com.sismics.docs.core.event.FileCreatedAsyncEvent;
 import com.sismics.docs.core.model.context.AppContext;
 import com.sismics.docs.core.model.jpa.File;
 import com.sismics.docs.core.model.jpa.User;
+import com.sismics.docs.core.service.FileService;
+import com.sismics.docs.core.util.format.FormatHandler;
+import com.sismics.docs.core.util.format.FormatHandlerUtil;
+import com.sismics.docs.core.util.storage.StorageHandler;
+import com.sismics.docs.core.util.storage.StorageUtil;
+import com.sismics.docs.core.util.storage.StoredObject;
 import com.sismics.util.ImageDeskew;
+import com.sismics.util.ImageUtil;
 import com.sismics.util.Scalr;
 import com.sismics.util.context.ThreadLocalContext;
 import com.sismics.util.io.InputStreamReaderThread;
 import com.sismics.util.mime.MimeTypeUtil;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.input.CountingInputStream;
-import org.apache.commons.io.output.NullOutputStream;
+import org.apache.commons.io.input.TeeInputStream;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.crypto.Cipher;
 import javax.crypto.CipherInputStream;
+import javax.crypto.CipherOutputStream;
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -67,45 +81,145 @@ public class FileUtil {
         BufferedImage deskewedImage = Scalr.rotate(resizedImage, - imageDeskew.getSkewAngle(), Scalr.OP_ANTIALIAS, Scalr.OP_GRAYSCALE);
         resizedImage.flush();
         Path tmpFile = AppContext.getInstance().getFileService().createTemporaryFile();
-        ImageIO.write(deskewedImage, "tiff", tmpFile.toFile());
+        try {
+            ImageIO.write(deskewedImage, "tiff", tmpFile.toFile());
+
+            List<String> result = Lists.newLinkedList(Arrays.asList("tesseract", tmpFile.toAbsolutePath().toString(), "stdout", "-l", language));
+            ProcessBuilder pb = new ProcessBuilder(result);
+            Process process = pb.start();
+
+            // Consume the process error stream
+            final String commandName = pb.command().get(0);
+            new InputStreamReaderThread(process.getErrorStream(), commandName).start();
+
+            // Consume the data as text
+            try (InputStream is = process.getInputStream()) {
+                return CharStreams.toString(new InputStreamReader(is, StandardCharsets.UTF_8));
+            }
+        } finally {
+            AppContext.getInstance().getFileService().deleteTemporaryFile(tmpFile);
+        }
+    }
+
+    /**
+     * Generate the "web" and "thumb" images of a file.
+     *
+     * @param fileId File ID
+     * @param formatHandler Format handler of the file
+     * @param unencryptedFile Path to the unencrypted content
+     * @param privateKey Private key of the user who created the file
+     * @return True if the images have been generated, false if the format has no image
+     * @throws Exception e
+     */
+    public static boolean generateThumbnails(String fileId, FormatHandler formatHandler, Path unencryptedFile, String privateKey) throws Exception {
+        Cipher cipher = EncryptionUtil.getEncryptionCipher(privateKey);
+        BufferedImage image = formatHandler.generateThumbnail(unencryptedFile);
+        if (image == null) {
+            return false;
+        }
 
-        List<String> result = Lists.newLinkedList(Arrays.asList("tesseract", tmpFile.toAbsolutePath().toString(), "stdout", "-l", language));
-        ProcessBuilder pb = new ProcessBuilder(result);
-        Process process = pb.start();
+        // Generate thumbnails from image
+        BufferedImage web = Scalr.resize(image, Scalr.Method.ULTRA_QUALITY, Scalr.Mode.AUTOMATIC, 1280);
+        BufferedImage thumbnail = Scalr.resize(image, Scalr.Method.ULTRA_QUALITY, Scalr.Mode.AUTOMATIC, 256);
+        image.flush();
 
-        // Consume the process error stream
-        final String commandName = pb.command().get(0);
-        new InputStreamReaderThread(process.getErrorStream(), commandName).start();
+        // Write "web" and "thumb" encrypted images
+        StorageHandler storageHandler = AppContext.getInstance().getStorageHandler();
+        storageHandler.put(fileId + "_web", encryptJpeg(web, cipher));
+        storageHandler.put(fileId + "_thumb", encryptJpeg(thumbnail, cipher));
+        PreviewCache.invalidate(fileId);
+        return true;
+    }
 
-        // Consume the data as text
-        try (InputStream is = process.getInputStream()) {
-            return CharStreams.toString(new InputStreamReader(is, StandardCharsets.UTF_8));
+    /**
+     * Encode an image to an encrypted JPEG in memory.
+     *
+     * @param image Image
+     * @param cipher Encryption cipher
+     * @return Encrypted JPEG
+     * @throws IOException e
+     */
+    private static InputStream encryptJpeg(BufferedImage image, Cipher cipher) throws IOException {
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        try (OutputStream outputStream = new CipherOutputStream(byteArrayOutputStream, cipher)) {
+            ImageUtil.writeJpeg(image, outputStream);
         }
+        return new ByteArrayInputStream(byteArrayOutputStream.toByteArray());
     }
 
     /**
-     * Remove a file from the storage filesystem.
+     * Remove a file from the storage.
      * 
      * @param fileId ID of file to delete
      */
     public static void delete(String fileId) throws IOException {
-        Path storedFile = DirectoryUtil.getStorageDirectory().resolve(fileId);
-        Path webFile = DirectoryUtil.getStorageDirectory().resolve(fileId + "_web");
-        Path thumbnailFile = DirectoryUtil.getStorageDirectory().resolve(fileId + "_thumb");
-        
-        if (Files.exists(storedFile)) {
-            Files.delete(storedFile);
+        StorageHandler storageHandler = AppContext.getInstance().getStorageHandler();
+        for (String name : Lists.newArrayList(fileId, fileId + "_web", fileId + "_thumb")) {
+            storageHandler.delete(name);
         }
-        if (Files.exists(webFile)) {
-            Files.delete(webFile);
+    }
+
+    /**
+     * Returns the metadata of the stored content of a file, encrypted.
+     *
+     * @param file File
+     * @return Stored object, null if it does not exist
+     * @throws IOException e
+     */
+    public static StoredObject statStoredFile(File file) throws IOException {
+        if (file.getBlobId() != null) {
+            return AppContext.getInstance().getBlobStorageHandler().stat(file.getBlobId());
         }
-        if (Files.exists(thumbnailFile)) {
-            Files.delete(thumbnailFile);
+        return AppContext.getInstance().getStorageHandler().stat(file.getId());
+    }
+
+    /**
+     * Read the stored content of a file, encrypted.
+     *
+     * @param file File
+     * @param offset Offset of the first byte to read
+     * @return Encrypted content
+     * @throws IOException e
+     */
+    public static InputStream openStoredFile(File file, long offset) throws IOException {
+        if (file.getBlobId() != null) {
+            return AppContext.getInstance().getBlobStorageHandler().get(file.getBlobId(), offset);
         }
+        return AppContext.getInstance().getStorageHandler().get(file.getId(), offset);
     }
 
     /**
-     * Create a new file.
+     * Decrypt the stored content of a file to a temporary file.
+     *
+     * @param file File
+     * @param privateKey Private key of the user who created the file
+     * @return Decrypted temporary file
+     * @throws Exception e
+     */
+    public static Path decryptStoredFile(File file, String privateKey) throws Exception {
+        try (InputStream inputStream = openStoredFile(file, 0)) {
+            return EncryptionUtil.decryptFile(inputStream, getStoredFileKey(file, privateKey));
+        }
+    }
+
+    /**
+     * Returns the key to decrypt the stored content of a file.
+     *
+     * @param file File
+     * @param privateKey Private key of the user who created the file
+     * @return Key of the stored file
+     * @throws Exception e
+     */
+    public static String getStoredFileKey(File file, String privateKey) throws Exception {
+        if (file.getBlobKey() != null) {
+            return EncryptionUtil.unwrapKey(file.getBlobKey(), privateKey);
+        }
+        return privateKey;
+    }
+
+    /**
+     * Create a new file from its content already on disk.
+     * A temporary unencrypted file is handed over: it is released by the file processing, or now on error.
      *
      * @param name File name, can be null
      * @param previousFileId ID of the previous version of the file, if the new file is a new version
@@ -118,29 +232,75 @@ public class FileUtil {
      * @throws Exception e
      */
     public static String createFile(String name, String previousFileId, Path unencryptedFile, long fileSize, String language, String userId, String documentId) throws Exception {
-        // Validate mime type
+        try (InputStream inputStream = Files.newInputStream(unencryptedFile)) {
+            return createFile(name, previousFileId, inputStream, unencryptedFile, fileSize, language, userId, documentId);
+        } catch (Exception e) {
+            AppContext.getInstance().getFileService().deleteTemporaryFile(unencryptedFile);
+            throw e;
+        }
+    }
+
+    /**
+     * Create a new file from a stream, read once.
+     * The content is encrypted to the storage while being counted, and copied unencrypted to a temporary file
+     * only if it is needed to process the file or to deduplicate it.
+     *
+     * @param name File name, can be null
+     * @param previousFileId ID of the previous version of the file, if the new file is a new version
+     * @param inputStream Unencrypted content
+     * @param language File language, can be null if associated to no document
+     * @param userId User ID creating the file
+     * @param documentId Associated document ID or null if no document
+     * @return File ID
+     * @throws Exception e
+     */
+    public static String createFile(String name, String previousFileId, InputStream inputStream, String language, String userId, String documentId) throws Exception {
+        return createFile(name, previousFileId, inputStream, null, File.UNKNOWN_SIZE, language, userId, documentId);
+    }
+
+    /**
+     * Create a new file.
+     *
+     * @param name File name, can be null
+     * @param previousFileId ID of the previous version of the file, if the new file is a new version
+     * @param inputStream Unencrypted content
+     * @param unencryptedFile Path to the same unencrypted content on disk, null if it is only streamed
+     * @param expectedSize File size if known before reading the content, checked against the quota early
+     * @param language File language, can be null if associated to no document
+     * @param userId User ID creating the file
+     * @param documentId Associated document ID or null if no document
+     * @return File ID
+     * @throws Exception e
+     */
+    private static String createFile(String name, String previousFileId, InputStream inputStream, Path unencryptedFile, long expectedSize,
+                                     String language, String userId, String documentId) throws Exception {
+        // Validate mime type from the first bytes
         String mimeType;
+        BufferedInputStream bufferedInputStream = new BufferedInputStream(inputStream);
         try {
-            mimeType = MimeTypeUtil.guessMimeType(unencryptedFile, name);
+            bufferedInputStream.mark(MimeTypeUtil.HEADER_SIZE);
+            byte[] header = new byte[MimeTypeUtil.HEADER_SIZE];
+            header = Arrays.copyOf(header, ByteStreams.read(bufferedInputStream, header, 0, header.length));
+            bufferedInputStream.reset();
+            mimeType = MimeTypeUtil.guessMimeType(header, name);
         } catch (IOException e) {
             throw new IOException("ErrorGuessMime", e);
         }
 
-        // Validate user quota
-        UserDao userDao = new UserDao();
-        User user = userDao.getById(userId);
-        if (user.getStorageCurrent() + fileSize > user.getStorageQuota()) {
-            throw new IOException("QuotaReached");
+        // Keep an unencrypted copy only for the format handlers and the deduplication
+        boolean deduplicate = BlobUtil.isEnabled();
+        boolean copy = unencryptedFile == null && (deduplicate || FormatHandlerUtil.find(mimeType) != null);
+        FileService fileService = AppContext.getInstance().getFileService();
+        if (copy && !fileService.hasTemporarySpace()) {
+            // Refused before any database work, the copies of the files being processed are over the budget
+            throw new IOException("TemporarySpaceFull");
         }
 
-        // Validate global quota
-        String globalStorageQuotaStr = System.getenv(Constants.GLOBAL_QUOTA_ENV);
-        if (!Strings.isNullOrEmpty(globalStorageQuotaStr)) {
-            long globalStorageQuota = Long.parseLong(globalStorageQuotaStr);
-            long globalStorageCurrent = userDao.getGlobalStorageCurrent();
-            if (globalStorageCurrent + fileSize > globalStorageQuota) {
-                throw new IOException("QuotaReached");
-            }
+        // Validate the quotas with the announced size
+        UserDao userDao = new UserDao();
+        User user = userDao.getById(userId);
+        if (expectedSize != File.UNKNOWN_SIZE) {
+            checkQuota(user, expectedSize);
         }
 
         // Prepare the file
@@ -152,7 +312,6 @@ public class FileUtil {
         file.setName(StringUtils.abbreviate(name, 200));
         file.setMimeType(mimeType);
         file.setUserId(userId);
-        file.setSize(fileSize);
 
         // Get files of this document
         FileDao fileDao = new FileDao();
@@ -182,14 +341,53 @@ public class FileUtil {
             }
         }
 
-        // Create the file
-        String fileId = fileDao.create(file, userId);
+        if (copy) {
+            unencryptedFile = fileService.createTemporaryFile(name);
+        }
 
-        // Save the file
-        Cipher cipher = EncryptionUtil.getEncryptionCipher(user.getPrivateKey());
-        Path path = DirectoryUtil.getStorageDirectory().resolve(file.getId());
-        try (InputStream inputStream = Files.newInputStream(unencryptedFile)) {
-            Files.copy(new CipherInputStream(inputStream, cipher), path);
+        // Read the content once: hashed for the deduplication, counted, and copied to disk if needed
+        HashingInputStream hashingInputStream = new HashingInputStream(Hashing.sha256(), bufferedInputStream);
+        CountingInputStream countingInputStream = new CountingInputStream(deduplicate ? hashingInputStream : bufferedInputStream);
+        long fileSize;
+        String fileId;
+        try {
+            try (InputStream contentInputStream = copy ?
+                    new TeeInputStream(countingInputStream, Files.newOutputStream(unencryptedFile), true) : countingInputStream) {
+                if (deduplicate) {
+                    // The blob key is derived from the whole content, the blob is encrypted from the copy
+                    ByteStreams.exhaust(contentInputStream);
+                    fileSize = countingInputStream.getByteCount();
+                    checkQuota(user, fileSize);
+                    file.setSize(fileSize);
+                    BlobUtil.store(file, unencryptedFile, hashingInputStream.hash(), user.getPrivateKey());
+                    fileId = fileDao.create(file, userId);
+                } else {
+                    // The content is encrypted to the storage while it is read, the size is known at the end
+                    file.setSize(expectedSize);
+                    fileId = fileDao.create(file, userId);
+                    StorageHandler storageHandler = AppContext.getInstance().getStorageHandler();
+                    Cipher cipher = EncryptionUtil.getEncryptionCipher(user.getPrivateKey());
+                    try {
+                        file.setChecksum(StorageUtil.put(storageHandler, fileId, new CipherInputStream(contentInputStream, cipher)));
+                        fileSize = countingInputStream.getByteCount();
+                        checkQuota(user, fileSize);
+                    } catch (Exception e) {
+                        storageHandler.delete(fileId);
+                        throw e;
+                    }
+                    file.setSize(fileSize);
+                    fileDao.update(file);
+                }
+            }
+            if (copy) {
+                fileService.updateTemporarySize(unencryptedFile, fileSize);
+            }
+        } catch (Exception e) {
+            if (copy) {
+                // The copy is not handed over to the file processing
+                fileService.deleteTemporaryFile(unencryptedFile);
+            }
+            throw e;
         }
 
         // Update the user quota
@@ -215,6 +413,30 @@ public class FileUtil {
         return fileId;
     }
 
+    /**
+     * Check that a new file fits in the user and global quotas.
+     *
+     * @param user User creating the file
+     * @param fileSize File size
+     * @throws IOException If a quota is reached
+     */
+    private static void checkQuota(User user, long fileSize) throws IOException {
+        // Validate user quota
+        if (user.getStorageCurrent() + fileSize > user.getStorageQuota()) {
+            throw new IOException("QuotaReached");
+        }
+
+        // Validate global quota
+        String globalStorageQuotaStr = System.getenv(Constants.GLOBAL_QUOTA_ENV);
+        if (!Strings.isNullOrEmpty(globalStorageQuotaStr)) {
+            long globalStorageQuota = Long.parseLong(globalStorageQuotaStr);
+            long globalStorageCurrent = new UserDao().getGlobalStorageCurrent();
+            if (globalStorageCurrent + fileSize > globalStorageQuota) {
+                throw new IOException("QuotaReached");
+            }
+        }
+    }
+
     /**
      * Start processing a file.
      *
@@ -246,29 +468,38 @@ public class FileUtil {
     }
 
     /**
-     * Get the size of a file on disk.
+     * Returns the size of a file from its stored content, without reading it.
+     * AES/CTR keeps the length of the data: the size of the encrypted content is the size of the file.
      *
-     * @param fileId the file id
-     * @param user   the file owner
-     * @return the size or -1 if something went wrong
+     * @param fileId File ID
+     * @param blobId Blob ID, null if the file content is not in a blob
+     * @return File size, {@link File#UNKNOWN_SIZE} if the stored content is not found or cannot be read
      */
-    public static long getFileSize(String fileId, User user) {
-        // To get the size we copy the decrypted content into a null output stream
-        // and count the copied byte size.
-        Path storedFile = DirectoryUtil.getStorageDirectory().resolve(fileId);
-        if (! Files.exists(storedFile)) {
-            log.debug("File does not exist " + fileId);
+    public static long getFileSize(String fileId, String blobId) {
+        try {
+            return getStoredFileSize(fileId, blobId);
+        } catch (IOException e) {
+            log.debug("Can't find size of file " + fileId, e);
             return File.UNKNOWN_SIZE;
         }
-        try (InputStream fileInputStream = Files.newInputStream(storedFile);
-             InputStream inputStream = EncryptionUtil.decryptInputStream(fileInputStream, user.getPrivateKey());
-             CountingInputStream countingInputStream = new CountingInputStream(inputStream);
-        ) {
-            IOUtils.copy(countingInputStream, NullOutputStream.NULL_OUTPUT_STREAM);
-            return countingInputStream.getByteCount();
-        } catch (Exception e) {
-            log.debug("Can't find size of file " + fileId, e);
+    }
+
+    /**
+     * Returns the size of a file from its stored content, without reading it.
+     *
+     * @param fileId File ID
+     * @param blobId Blob ID, null if the file content is not in a blob
+     * @return File size, {@link File#UNKNOWN_SIZE} if the stored content is not found
+     * @throws IOException If the storage cannot tell
+     */
+    public static long getStoredFileSize(String fileId, String blobId) throws IOException {
+        StoredObject storedObject = blobId == null ?
+                AppContext.getInstance().getStorageHandler().stat(fileId) :
+                AppContext.getInstance().getBlobStorageHandler().stat(blobId);
+        if (storedObject == null) {
+            log.debug("File does not exist " + fileId);
             return File.UNKNOWN_SIZE;
         }
+        return storedObject.getSize();
     }
 }
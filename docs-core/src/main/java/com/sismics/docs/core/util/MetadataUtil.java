@@ -1,5 +1,6 @@
 package com.sismics.docs.core.util;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.sismics.docs.core.constant.MetadataType;
 import com.sismics.docs.core.dao.DocumentMetadataDao;
@@ -49,18 +50,22 @@ public class MetadataUtil {
         List<DocumentMetadataDto> documentMetadataDtoList = documentMetadataDao.getByDocumentId(documentId);
 
         // Update existing values
+        Map<String, String> updatedValues = Maps.newHashMap();
+        List<String> removedIdList = Lists.newArrayList();
         for (DocumentMetadataDto documentMetadataDto : documentMetadataDtoList) {
             if (newValues.containsKey(documentMetadataDto.getMetadataId())) {
                 // Update the value
                 String value = newValues.get(documentMetadataDto.getMetadataId());
                 validateValue(documentMetadataDto.getType(), value);
-                updateValue(documentMetadataDto.getId(), value);
+                updatedValues.put(documentMetadataDto.getId(), value);
                 newValues.remove(documentMetadataDto.getMetadataId());
             } else {
                 // Remove the value
-                updateValue(documentMetadataDto.getId(), null);
+                removedIdList.add(documentMetadataDto.getId());
             }
         }
+        documentMetadataDao.updateValues(updatedValues);
+        documentMetadataDao.clearValues(removedIdList);
 
         // Create new values
         for (Map.Entry<String, String> entry : newValues.entrySet()) {
@@ -135,20 +140,6 @@ public class MetadataUtil {
         documentMetadataDao.create(documentMetadata);
     }
 
-    /**
-     * Update a custom metadata value.
-     *
-     * @param documentMetadataId Document metadata ID
-     * @param value Value
-     */
-    private static void updateValue(String documentMetadataId, String value) {
-        DocumentMetadataDao documentMetadataDao = new DocumentMetadataDao();
-        DocumentMetadata documentMetadata = new DocumentMetadata();
-        documentMetadata.setId(documentMetadataId);
-        documentMetadata.setValue(value);
-        documentMetadataDao.update(documentMetadata);
-    }
-
     /**
      * Add custom metadata to a JSON response.
      *
@@ -160,6 +151,17 @@ public class MetadataUtil {
         MetadataDao metadataDao = new MetadataDao();
         List<MetadataDto> metadataDtoList = metadataDao.findByCriteria(new MetadataCriteria(), new SortCriteria(1, true));
         List<DocumentMetadataDto> documentMetadataDtoList = documentMetadataDao.getByDocumentId(documentId);
+        addMetadata(json, metadataDtoList, documentMetadataDtoList);
+    }
+
+    /**
+     * Add already loaded custom metadata to a JSON response.
+     *
+     * @param json JSON
+     * @param metadataDtoList All metadata definitions
+     * @param documentMetadataDtoList Metadata values of the document
+     */
+    public static void addMetadata(JsonObjectBuilder json, List<MetadataDto> metadataDtoList, List<DocumentMetadataDto> documentMetadataDtoList) {
         JsonArrayBuilder metadata = Json.createArrayBuilder();
         for (MetadataDto metadataDto : metadataDtoList) {
             JsonObjectBuilder meta = Json.createObjectBuilder()
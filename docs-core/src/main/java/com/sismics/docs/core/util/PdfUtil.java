@@ -7,6 +7,7 @@ import com.google.common.io.Resources;
 import com.lowagie.text.FontFactory;
 import com.sismics.docs.core.constant.Constants;
 import com.sismics.docs.core.dao.dto.DocumentDto;
+import com.sismics.docs.core.model.context.AppContext;
 import com.sismics.docs.core.model.jpa.File;
 import com.sismics.docs.core.util.format.FormatHandler;
 import com.sismics.docs.core.util.format.FormatHandlerUtil;
@@ -56,8 +57,8 @@ public class PdfUtil {
         MemoryUsageSetting memUsageSettings = MemoryUsageSetting.setupMixed(1000000); // 1MB max memory usage
         memUsageSettings.setTempDir(new java.io.File(System.getProperty("java.io.tmpdir"))); // To OS temp
 
-        // Create a blank PDF
-        try (PDDocument doc = new PDDocument(memUsageSettings)) {
+        // Create a blank PDF, the closer also releases the temporary files on error
+        try (closer; PDDocument doc = new PDDocument(memUsageSettings)) {
             // Add metadata
             if (metadata) {
                 PDPage page = new PDPage();
@@ -103,18 +104,18 @@ public class PdfUtil {
             
             // Add files
             for (File file : fileList) {
-                Path storedFile = DirectoryUtil.getStorageDirectory().resolve(file.getId());
-
                 // Decrypt the file to a temporary file
-                Path unencryptedFile = EncryptionUtil.decryptFile(storedFile, file.getPrivateKey());
+                Path unencryptedFile = FileUtil.decryptStoredFile(file, file.getPrivateKey());
+                closer.register(() -> AppContext.getInstance().getFileService().deleteTemporaryFile(unencryptedFile));
                 FormatHandler formatHandler = FormatHandlerUtil.find(file.getMimeType());
                 if (formatHandler != null) {
+                    closer.register(formatHandler::close);
                     formatHandler.appendToPdf(unencryptedFile, doc, fitImageToPage, margin, memUsageSettings, closer);
                 }
             }
             
             doc.save(outputStream); // Write to the output stream
-            closer.close(); // Close all remaining opened PDF
+            closer.close(); // Close all remaining opened PDF and release the temporary files
         }
     }
 
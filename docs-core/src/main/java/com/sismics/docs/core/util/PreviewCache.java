@@ -0,0 +1,161 @@
+package com.sismics.docs.core.util;
+
+import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.sismics.docs.core.constant.Constants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decrypted file previews (web and thumbnail variations) kept in memory.
+ * The cache is bounded by the total size of the previews, the least recently used are evicted first.
+ *
+ * @author bgamard
+ */
+public class PreviewCache {
+    /**
+     * Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(PreviewCache.class);
+
+    /**
+     * Variations kept in memory.
+     */
+    private static final String[] SIZES = { "web", "thumb" };
+
+    /**
+     * Memory budget, in bytes.
+     */
+    private static final long maxWeight = readMaxWeight();
+
+    /**
+     * Current size of the cached previews, in bytes.
+     */
+    private static final AtomicLong weight = new AtomicLong();
+
+    /**
+     * Decrypted previews by stored object name.
+     */
+    private static final Cache<String, CachedPreview> cache = CacheBuilder.newBuilder()
+            .maximumWeight(maxWeight)
+            .weigher((String name, CachedPreview cachedPreview) -> cachedPreview.content.length)
+            .removalListener(notification -> weight.addAndGet(-notification.getValue().content.length))
+            .recordStats()
+            .build();
+
+    /**
+     * Returns a decrypted preview.
+     *
+     * @param name Stored object name
+     * @param lastModified Last modification date of the stored object
+     * @return Decrypted preview, null if not cached or cached from another version
+     */
+    public static byte[] get(String name, long lastModified) {
+        CachedPreview cachedPreview = cache.getIfPresent(name);
+        if (cachedPreview == null) {
+            return null;
+        }
+        if (cachedPreview.lastModified != lastModified) {
+            cache.invalidate(name);
+            return null;
+        }
+        return cachedPreview.content;
+    }
+
+    /**
+     * Keep a decrypted preview.
+     *
+     * @param name Stored object name
+     * @param lastModified Last modification date of the stored object
+     * @param content Decrypted preview
+     */
+    public static void put(String name, long lastModified, byte[] content) {
+        if (maxWeight == 0) {
+            return;
+        }
+        weight.addAndGet(content.length);
+        cache.put(name, new CachedPreview(lastModified, content));
+    }
+
+    /**
+     * Forget the previews of a file.
+     *
+     * @param fileId File ID
+     */
+    public static void invalidate(String fileId) {
+        for (String size : SIZES) {
+            cache.invalidate(fileId + "_" + size);
+        }
+    }
+
+    /**
+     * Returns the statistics of the cache since the startup.
+     *
+     * @return Statistics
+     */
+    public static CacheStats getStats() {
+        return cache.stats();
+    }
+
+    /**
+     * Returns the number of cached previews.
+     *
+     * @return Number of previews
+     */
+    public static long getCount() {
+        return cache.size();
+    }
+
+    /**
+     * Returns the current size of the cached previews.
+     *
+     * @return Size in bytes
+     */
+    public static long getWeight() {
+        return weight.get();
+    }
+
+    /**
+     * Returns the memory budget.
+     *
+     * @return Size in bytes
+     */
+    public static long getMaxWeight() {
+        return maxWeight;
+    }
+
+    /**
+     * Read the memory budget from the environment.
+     *
+     * @return Memory budget in bytes
+     */
+    private static long readMaxWeight() {
+        String envSize = System.getenv(Constants.PREVIEW_CACHE_SIZE_ENV);
+        if (!Strings.isNullOrEmpty(envSize)) {
+            try {
+                return Math.max(0, Long.parseLong(envSize)) * 1024 * 1024;
+            } catch (NumberFormatException e) {
+                log.warn(Constants.PREVIEW_CACHE_SIZE_ENV + " needs to be a number. Falling back to " + Constants.DEFAULT_PREVIEW_CACHE_SIZE + ".");
+            }
+        }
+        return Constants.DEFAULT_PREVIEW_CACHE_SIZE * 1024L * 1024L;
+    }
+
+    /**
+     * Decrypted preview of a version of a stored object.
+     */
+    private static class CachedPreview {
+        private final long lastModified;
+
+        private final byte[] content;
+
+        private CachedPreview(long lastModified, byte[] content) {
+            this.lastModified = lastModified;
+            this.content = content;
+        }
+    }
+}
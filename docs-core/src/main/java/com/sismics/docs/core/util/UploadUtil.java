@@ -0,0 +1,136 @@
+package com.sismics.docs.core.util;
+
+import com.google.common.io.ByteStreams;
+import com.sismics.docs.core.constant.Constants;
+import com.sismics.docs.core.model.jpa.Upload;
+import com.sismics.docs.core.model.jpa.User;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Content of the upload sessions.
+ * The content received so far is appended to a staging file, encrypted with the key of the user.
+ * The length of the staging file is the offset of the next chunk: AES/CTR keeps the length of the data.
+ *
+ * @author bgamard
+ */
+public class UploadUtil {
+    /**
+     * Upload sessions receiving a chunk.
+     */
+    private static final Set<String> appendingSet = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Returns the length of the content received.
+     *
+     * @param uploadId Upload ID
+     * @return Offset of the next chunk
+     * @throws IOException e
+     */
+    public static long getOffset(String uploadId) throws IOException {
+        Path file = getFile(uploadId);
+        return Files.exists(file) ? Files.size(file) : 0;
+    }
+
+    /**
+     * Append a chunk to an upload session.
+     * The chunk is limited to the maximum chunk size, the announced size of the file and the quota of the user:
+     * a chunk going over is discarded entirely. A chunk interrupted by the client is kept up to the last byte received.
+     *
+     * @param upload Upload session
+     * @param offset Offset of the chunk, must be the length of the content received
+     * @param inputStream Chunk
+     * @param user Owner of the upload session
+     * @return Length of the content received
+     * @throws IOException e, with the error code as message
+     * @throws Exception e
+     */
+    public static long append(Upload upload, long offset, InputStream inputStream, User user) throws Exception {
+        if (!appendingSet.add(upload.getId())) {
+            throw new IOException("UploadInProgress");
+        }
+
+        try {
+            if (offset != getOffset(upload.getId())) {
+                throw new IOException("OffsetMismatch");
+            }
+
+            // Find the closest limit
+            long limit = Constants.UPLOAD_MAX_CHUNK_SIZE;
+            String limitError = "ChunkTooLarge";
+            if (upload.getSize() != null && upload.getSize() - offset < limit) {
+                limit = upload.getSize() - offset;
+                limitError = "SizeExceeded";
+            }
+            long quota = user.getStorageQuota() - user.getStorageCurrent() - offset;
+            if (quota < limit) {
+                limit = quota;
+                limitError = "QuotaReached";
+            }
+
+            Path file = getFile(upload.getId());
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                try (OutputStream outputStream = EncryptionUtil.encryptOutputStream(
+                        CloseShieldOutputStream.wrap(Channels.newOutputStream(channel)), user.getPrivateKey(), offset)) {
+                    ByteStreams.copy(ByteStreams.limit(inputStream, Math.max(limit, 0)), outputStream);
+                } finally {
+                    channel.force(false);
+                }
+
+                if (inputStream.read() != -1) {
+                    channel.truncate(offset);
+                    throw new IOException(limitError);
+                }
+            }
+            return Files.size(file);
+        } finally {
+            appendingSet.remove(upload.getId());
+        }
+    }
+
+    /**
+     * Returns the content received.
+     *
+     * @param uploadId Upload ID
+     * @param privateKey Private key of the owner of the upload session
+     * @return Decrypted content
+     * @throws Exception e
+     */
+    public static InputStream open(String uploadId, String privateKey) throws Exception {
+        Path file = getFile(uploadId);
+        if (!Files.exists(file)) {
+            return InputStream.nullInputStream();
+        }
+        return EncryptionUtil.decryptInputStream(Files.newInputStream(file), privateKey);
+    }
+
+    /**
+     * Delete the content received.
+     *
+     * @param uploadId Upload ID
+     * @throws IOException e
+     */
+    public static void delete(String uploadId) throws IOException {
+        Files.deleteIfExists(getFile(uploadId));
+    }
+
+    /**
+     * Returns the staging file of an upload session.
+     *
+     * @param uploadId Upload ID
+     * @return Staging file
+     */
+    private static Path getFile(String uploadId) {
+        return DirectoryUtil.getUploadDirectory().resolve(uploadId);
+    }
+}
@@ -0,0 +1,302 @@
+package com.sismics.docs.core.util;
+
+import com.google.common.io.ByteStreams;
+import com.sismics.docs.core.model.context.AppContext;
+import com.sismics.docs.core.model.jpa.File;
+import com.sismics.util.mime.MimeTypeUtil;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * ZIP archive of the content of files.
+ * Already compressed formats are stored as they are, the others are deflated.
+ * The next files are read and decrypted in parallel while the current one is written.
+ *
+ * @author bgamard
+ */
+public class ZipExporter {
+    /**
+     * Number of files prepared in advance.
+     */
+    private static final int PREFETCH_COUNT = 4;
+
+    /**
+     * Maximum size of a file prepared in memory, larger files are prepared in a temporary file.
+     */
+    private static final int MAX_MEMORY_SIZE = 8 * 1024 * 1024;
+
+    /**
+     * ZIP format limit above which the ZIP64 extensions are used.
+     */
+    private static final long ZIP64_LIMIT = 0xFFFFFFFFL;
+
+    /**
+     * Files of the archive.
+     */
+    private final List<ZipFile> zipFileList = new ArrayList<>();
+
+    /**
+     * Constructor.
+     *
+     * @param fileList Files
+     * @param privateKeyMap Private keys of the users who created the files, by user ID
+     */
+    public ZipExporter(List<File> fileList, Map<String, String> privateKeyMap) {
+        int index = 0;
+        for (File file : fileList) {
+            zipFileList.add(new ZipFile(file, index + "-" + file.getFullName(Integer.toString(index)),
+                    privateKeyMap.get(file.getUserId())));
+            index++;
+        }
+    }
+
+    /**
+     * Returns the length of the archive, known before writing it only if all the files are stored
+     * with a known size and the archive does not need the ZIP64 extensions.
+     *
+     * @return Length of the archive, null if unknown
+     */
+    public Long getLength() {
+        if (zipFileList.size() >= 0xFFFF) {
+            return null;
+        }
+
+        // End of central directory record
+        long length = 22;
+        for (ZipFile zipFile : zipFileList) {
+            if (!zipFile.stored || zipFile.size == null || zipFile.size >= ZIP64_LIMIT) {
+                return null;
+            }
+            // Local file header, data and central directory file header
+            int nameLength = zipFile.name.getBytes(StandardCharsets.UTF_8).length;
+            length += 30 + nameLength + zipFile.size + 46 + nameLength;
+        }
+        return length < ZIP64_LIMIT ? length : null;
+    }
+
+    /**
+     * Write the archive.
+     *
+     * @param outputStream Output stream, closed at the end
+     * @throws IOException e
+     */
+    public void write(OutputStream outputStream) throws IOException {
+        ExecutorService executor = AppContext.getInstance().getZipExportExecutor();
+        Deque<Future<PreparedFile>> futureQueue = new ArrayDeque<>();
+        AtomicBoolean discarded = new AtomicBoolean();
+        int next = 0;
+        try (ZipOutputStream zipOutputStream = new ZipOutputStream(outputStream)) {
+            for (ZipFile zipFile : zipFileList) {
+                // Keep the next files in preparation
+                while (next < zipFileList.size() && futureQueue.size() < PREFETCH_COUNT) {
+                    ZipFile nextZipFile = zipFileList.get(next++);
+                    futureQueue.add(executor.submit(() -> discarded.get() ? null : prepare(nextZipFile)));
+                }
+
+                try (PreparedFile preparedFile = get(futureQueue.poll())) {
+                    write(zipOutputStream, zipFile, preparedFile);
+                }
+            }
+        } finally {
+            // Discard the files prepared for nothing, a preparation in progress is waited for to release its result
+            discarded.set(true);
+            for (Future<PreparedFile> future : futureQueue) {
+                try {
+                    PreparedFile preparedFile = get(future);
+                    if (preparedFile != null) {
+                        preparedFile.close();
+                    }
+                } catch (IOException e) {
+                    // NOP
+                }
+            }
+        }
+    }
+
+    /**
+     * Write a prepared file to the archive.
+     *
+     * @param zipOutputStream ZIP stream
+     * @param zipFile File of the archive
+     * @param preparedFile Prepared file
+     * @throws IOException e
+     */
+    private void write(ZipOutputStream zipOutputStream, ZipFile zipFile, PreparedFile preparedFile) throws IOException {
+        ZipEntry zipEntry = new ZipEntry(zipFile.name);
+        if (zipFile.stored) {
+            if (zipFile.size != null && zipFile.size != preparedFile.size) {
+                // The announced length of the archive would be wrong
+                throw new IOException("Size mismatch of the file " + zipFile.file.getId());
+            }
+            zipEntry.setMethod(ZipEntry.STORED);
+            zipEntry.setSize(preparedFile.size);
+            zipEntry.setCompressedSize(preparedFile.size);
+            zipEntry.setCrc(preparedFile.crc);
+        }
+        zipOutputStream.putNextEntry(zipEntry);
+        try (InputStream inputStream = preparedFile.open(zipFile)) {
+            ByteStreams.copy(inputStream, zipOutputStream);
+        }
+        zipOutputStream.closeEntry();
+    }
+
+    /**
+     * Read and decrypt a file ahead of writing it.
+     * Deflated files too large to be kept in memory are read while being written instead.
+     *
+     * @param zipFile File of the archive
+     * @return Prepared file
+     * @throws Exception e
+     */
+    private static PreparedFile prepare(ZipFile zipFile) throws Exception {
+        boolean fitsInMemory = zipFile.size != null && zipFile.size <= MAX_MEMORY_SIZE;
+        if (!zipFile.stored && !fitsInMemory) {
+            return new PreparedFile(null, null, 0, 0);
+        }
+
+        try (CheckedInputStream inputStream = new CheckedInputStream(zipFile.open(), new CRC32())) {
+            if (fitsInMemory) {
+                byte[] content = ByteStreams.toByteArray(inputStream);
+                return new PreparedFile(content, null, content.length, inputStream.getChecksum().getValue());
+            }
+
+            Path temporaryFile = AppContext.getInstance().getFileService().createTemporaryFile();
+            try {
+                long size = Files.copy(inputStream, temporaryFile, StandardCopyOption.REPLACE_EXISTING);
+                AppContext.getInstance().getFileService().updateTemporarySize(temporaryFile, size);
+                return new PreparedFile(null, temporaryFile, size, inputStream.getChecksum().getValue());
+            } catch (Exception e) {
+                AppContext.getInstance().getFileService().deleteTemporaryFile(temporaryFile);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Wait for a file to be prepared.
+     *
+     * @param future File in preparation
+     * @return Prepared file
+     * @throws IOException e
+     */
+    private static PreparedFile get(Future<PreparedFile> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * File of the archive.
+     */
+    private static class ZipFile {
+        private final File file;
+
+        private final String name;
+
+        private final String privateKey;
+
+        /**
+         * True if the file is stored without compression.
+         */
+        private final boolean stored;
+
+        /**
+         * Size of the decrypted file, null if unknown.
+         */
+        private final Long size;
+
+        private ZipFile(File file, String name, String privateKey) {
+            this.file = file;
+            this.name = name;
+            this.privateKey = privateKey;
+            this.stored = MimeTypeUtil.isCompressed(file.getMimeType());
+            this.size = file.getSize() == null || File.UNKNOWN_SIZE.equals(file.getSize()) ? null : file.getSize();
+        }
+
+        /**
+         * Returns the decrypted content.
+         *
+         * @return Decrypted content
+         * @throws IOException e
+         */
+        private InputStream open() throws IOException {
+            InputStream inputStream = FileUtil.openStoredFile(file, 0);
+            try {
+                return EncryptionUtil.decryptInputStream(inputStream, FileUtil.getStoredFileKey(file, privateKey));
+            } catch (Exception e) {
+                inputStream.close();
+                throw new IOException(e);
+            }
+        }
+    }
+
+    /**
+     * File read and decrypted, in memory or in a temporary file.
+     */
+    private static class PreparedFile implements AutoCloseable {
+        private final byte[] content;
+
+        private final Path temporaryFile;
+
+        private final long size;
+
+        private final long crc;
+
+        private PreparedFile(byte[] content, Path temporaryFile, long size, long crc) {
+            this.content = content;
+            this.temporaryFile = temporaryFile;
+            this.size = size;
+            this.crc = crc;
+        }
+
+        /**
+         * Returns the decrypted content.
+         *
+         * @param zipFile File of the archive, read if the content has not been prepared
+         * @return Decrypted content
+         * @throws IOException e
+         */
+        private InputStream open(ZipFile zipFile) throws IOException {
+            if (content != null) {
+                return new ByteArrayInputStream(content);
+            }
+            if (temporaryFile != null) {
+                return Files.newInputStream(temporaryFile);
+            }
+            return zipFile.open();
+        }
+
+        @Override
+        public void close() {
+            AppContext.getInstance().getFileService().deleteTemporaryFile(temporaryFile);
+        }
+    }
+}
@@ -6,8 +6,6 @@ import com.sismics.docs.core.dao.dto.DocumentDto;
 import com.sismics.docs.core.event.FileUpdatedAsyncEvent;
 import com.sismics.docs.core.model.jpa.File;
 import com.sismics.docs.core.model.jpa.User;
-import com.sismics.docs.core.util.DirectoryUtil;
-import com.sismics.docs.core.util.EncryptionUtil;
 import com.sismics.docs.core.util.FileUtil;
 import com.sismics.util.context.ThreadLocalContext;
 import org.slf4j.Logger;
@@ -40,8 +38,7 @@ public class ProcessFilesAction implements Action {
                 User user = userDao.getById(file.getUserId());
 
                 // Decrypt the file
-                Path storedFile = DirectoryUtil.getStorageDirectory().resolve(file.getId());
-                Path unencryptedFile = EncryptionUtil.decryptFile(storedFile, user.getPrivateKey());
+                Path unencryptedFile = FileUtil.decryptStoredFile(file, user.getPrivateKey());
 
                 // Start the asynchronous processing
                 FileUtil.startProcessingFile(file.getId());
@@ -9,10 +9,11 @@ import java.nio.file.Path;
 
 /**
  * A format handler.
+ * A format handler can keep intermediate files between its calls, it must be closed once used.
  *
  * @author bgamard
  */
-public interface FormatHandler {
+public interface FormatHandler extends AutoCloseable {
     /**
      * Returns true if this format handler can handle this MIME type.
      *
@@ -52,4 +53,12 @@ public interface FormatHandler {
      * @throws Exception e
      */
     void appendToPdf(Path file, PDDocument doc, boolean fitImageToPage, int margin, MemoryUsageSetting memUsageSettings, Closer closer) throws Exception;
+
+    /**
+     * Release the intermediate files.
+     */
+    @Override
+    default void close() {
+        // NOP
+    }
 }
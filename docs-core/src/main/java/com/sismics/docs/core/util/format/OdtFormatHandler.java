@@ -65,8 +65,15 @@ public class OdtFormatHandler implements FormatHandler {
                 PdfOptions options = PdfOptions.create();
                 PdfConverter.getInstance().convert(document, outputStream, options);
             }
+            AppContext.getInstance().getFileService().updateTemporarySize(temporaryPdfFile, Files.size(temporaryPdfFile));
         }
 
         return temporaryPdfFile;
     }
+
+    @Override
+    public void close() {
+        AppContext.getInstance().getFileService().deleteTemporaryFile(temporaryPdfFile);
+        temporaryPdfFile = null;
+    }
 }
@@ -29,19 +29,23 @@ public class TextPlainFormatHandler implements FormatHandler {
     public BufferedImage generateThumbnail(Path file) throws Exception {
         Document output = new Document(PageSize.A4, 40, 40, 40, 40);
         Path tempFile = AppContext.getInstance().getFileService().createTemporaryFile();
-        OutputStream pdfOutputStream = Files.newOutputStream(tempFile);
-        PdfWriter.getInstance(output, pdfOutputStream);
-
-        output.open();
-        String content = Files.readString(file, StandardCharsets.UTF_8);
-        Font font = FontFactory.getFont("LiberationMono-Regular");
-        Paragraph paragraph = new Paragraph(content, font);
-        paragraph.setAlignment(Element.ALIGN_LEFT);
-        output.add(paragraph);
-        output.close();
-
-        // Use the PDF format handler
-        return new PdfFormatHandler().generateThumbnail(tempFile);
+        try {
+            OutputStream pdfOutputStream = Files.newOutputStream(tempFile);
+            PdfWriter.getInstance(output, pdfOutputStream);
+
+            output.open();
+            String content = Files.readString(file, StandardCharsets.UTF_8);
+            Font font = FontFactory.getFont("LiberationMono-Regular");
+            Paragraph paragraph = new Paragraph(content, font);
+            paragraph.setAlignment(Element.ALIGN_LEFT);
+            output.add(paragraph);
+            output.close();
+
+            // Use the PDF format handler
+            return new PdfFormatHandler().generateThumbnail(tempFile);
+        } finally {
+            AppContext.getInstance().getFileService().deleteTemporaryFile(tempFile);
+        }
     }
 
     @Override
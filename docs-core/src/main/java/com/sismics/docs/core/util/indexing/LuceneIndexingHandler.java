@@ -255,17 +255,10 @@ public class LuceneIndexingHandler implements IndexingHandler {
         Map<String, String> documentSearchMap = Maps.newHashMap();
 
         StringBuilder sb = new StringBuilder("select distinct d.DOC_ID_C c0, d.DOC_TITLE_C c1, d.DOC_DESCRIPTION_C c2, d.DOC_CREATEDATE_D c3, d.DOC_LANGUAGE_C c4, d.DOC_IDFILE_C, ");
-        sb.append(" s.count c5, ");
+        sb.append(" d.DOC_SHARECOUNT_N c5, ");
         sb.append(" rs2.RTP_ID_C c7, rs2.RTP_NAME_C, d.DOC_UPDATEDATE_D c8 ");
         sb.append(" from T_DOCUMENT d ");
-        sb.append(" left join (SELECT count(s.SHA_ID_C) count, ac.ACL_SOURCEID_C " +
-                "   FROM T_SHARE s, T_ACL ac " +
-                "   WHERE ac.ACL_TARGETID_C = s.SHA_ID_C AND ac.ACL_DELETEDATE_D IS NULL AND " +
-                "         s.SHA_DELETEDATE_D IS NULL group by ac.ACL_SOURCEID_C) s on s.ACL_SOURCEID_C = d.DOC_ID_C ");
-        sb.append(" left join (select rs.*, rs3.idDocument " +
-                "from T_ROUTE_STEP rs " +
-                "join (select r.RTE_IDDOCUMENT_C idDocument, rs.RTP_IDROUTE_C idRoute, min(rs.RTP_ORDER_N) minOrder from T_ROUTE_STEP rs join T_ROUTE r on r.RTE_ID_C = rs.RTP_IDROUTE_C and r.RTE_DELETEDATE_D is null where rs.RTP_DELETEDATE_D is null and rs.RTP_ENDDATE_D is null group by rs.RTP_IDROUTE_C, r.RTE_IDDOCUMENT_C) rs3 on rs.RTP_IDROUTE_C = rs3.idRoute and rs.RTP_ORDER_N = rs3.minOrder " +
-                "where rs.RTP_IDTARGET_C in (:targetIdList)) rs2 on rs2.idDocument = d.DOC_ID_C ");
+        sb.append(" left join T_ROUTE_STEP rs2 on rs2.RTP_ID_C = d.DOC_IDCURRENTSTEP_C and rs2.RTP_IDTARGET_C in (:targetIdList) ");
 
         // Add search criterias
         if (!SecurityUtil.skipAclCheck(criteria.getTargetIdList())) {
@@ -334,7 +327,7 @@ public class LuceneIndexingHandler implements IndexingHandler {
             }
         }
         if (criteria.getShared() != null && criteria.getShared()) {
-            criteriaList.add("s.count > 0");
+            criteriaList.add("d.DOC_SHARECOUNT_N > 0");
         }
         if (criteria.getMimeType() != null) {
             sb.append("left join T_FILE f0 on f0.FIL_IDDOC_C = d.DOC_ID_C and f0.FIL_MIMETYPE_C = :mimeType and f0.FIL_DELETEDATE_D is null");
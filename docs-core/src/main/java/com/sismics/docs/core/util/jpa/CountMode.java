@@ -0,0 +1,28 @@
+package com.sismics.docs.core.util.jpa;
+
+/**
+ * Strategy used to count the total number of records of a paginated query.
+ *
+ * @author bgamard
+ */
+public enum CountMode {
+    /**
+     * Run a count query on each page.
+     */
+    EXACT,
+
+    /**
+     * Reuse the count of the same criteria for a short time, or run a count query.
+     */
+    CACHED,
+
+    /**
+     * Reuse the count of the same criteria if any, or estimate a lower bound from the current page.
+     */
+    ESTIMATE,
+
+    /**
+     * Do not count.
+     */
+    NONE
+}
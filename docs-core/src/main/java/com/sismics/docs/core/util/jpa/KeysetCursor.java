@@ -0,0 +1,142 @@
+package com.sismics.docs.core.util.jpa;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.Base64;
+import java.util.Date;
+
+/**
+ * Opaque continuation token of a keyset paginated query.
+ * It holds the sort value and the ID (column c0) of the last record of a page.
+ *
+ * @author bgamard
+ */
+public class KeysetCursor {
+    /**
+     * Index of the sorted column.
+     */
+    private final int column;
+
+    /**
+     * Sort in increasing order.
+     */
+    private final boolean asc;
+
+    /**
+     * Sort value of the last record, can be null.
+     */
+    private final Object value;
+
+    /**
+     * ID of the last record.
+     */
+    private final String id;
+
+    /**
+     * Constructor of KeysetCursor.
+     *
+     * @param column Index of the sorted column
+     * @param asc Sort in increasing order
+     * @param value Sort value of the last record
+     * @param id ID of the last record
+     */
+    public KeysetCursor(int column, boolean asc, Object value, String id) {
+        this.column = column;
+        this.asc = asc;
+        this.value = value;
+        this.id = id;
+    }
+
+    /**
+     * Encode this cursor to an opaque token.
+     *
+     * @return Token
+     */
+    public String encode() {
+        String type;
+        String valueStr;
+        if (value == null) {
+            type = "z";
+            valueStr = "";
+        } else if (value instanceof Date) {
+            type = "t";
+            valueStr = Long.toString(((Date) value).getTime());
+        } else if (value instanceof Number) {
+            type = "n";
+            valueStr = new BigDecimal(value.toString()).toPlainString();
+        } else if (value instanceof Boolean) {
+            type = "b";
+            valueStr = value.toString();
+        } else {
+            type = "s";
+            valueStr = value.toString();
+        }
+        String raw = column + ":" + (asc ? "a" : "d") + ":" + type + ":" + id + ":" + valueStr;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decode a token.
+     *
+     * @param token Token
+     * @return Cursor
+     * @throws IllegalArgumentException If the token is invalid
+     */
+    public static KeysetCursor decode(String token) {
+        String raw;
+        try {
+            raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+        String[] parts = raw.split(":", 5);
+        if (parts.length != 5 || parts[3].isEmpty()) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+
+        try {
+            Object value;
+            switch (parts[2]) {
+                case "z":
+                    value = null;
+                    break;
+                case "t":
+                    value = new Timestamp(Long.parseLong(parts[4]));
+                    break;
+                case "n":
+                    value = new BigDecimal(parts[4]);
+                    break;
+                case "b":
+                    value = Boolean.valueOf(parts[4]);
+                    break;
+                case "s":
+                    value = parts[4];
+                    break;
+                default:
+                    throw new IllegalArgumentException("Invalid cursor");
+            }
+            return new KeysetCursor(Integer.parseInt(parts[0]), "a".equals(parts[1]), value, parts[3]);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+
+    /**
+     * Returns true if this cursor has been issued for this sort criteria.
+     *
+     * @param sortCriteria Sort criteria
+     * @return True if matching
+     */
+    public boolean matches(SortCriteria sortCriteria) {
+        return column == sortCriteria.getColumn() && asc == sortCriteria.isAsc();
+    }
+
+    public Object getValue() {
+        return value;
+    }
+
+    public String getId() {
+        return id;
+    }
+}
@@ -19,9 +19,35 @@ public class PaginatedList<T> {
     private int offset;
 
     /**
-     * Total number of records.
+     * Total number of records, -1 if not counted.
      */
-    private int resultCount;
+    private int resultCount = -1;
+
+    /**
+     * True if the total number of records is an estimation.
+     */
+    private boolean resultCountEstimated;
+
+    /**
+     * Strategy used to count the total number of records.
+     */
+    private CountMode countMode = CountMode.EXACT;
+
+    /**
+     * Keyset pagination cursor of the page, null to use offset pagination.
+     * An empty cursor requests the first page in keyset mode.
+     */
+    private String cursor;
+
+    /**
+     * Keyset pagination cursor of the next page, null if there is no next page.
+     */
+    private String nextCursor;
+
+    /**
+     * True if there are records after this page.
+     */
+    private boolean hasMore;
     
     /**
      * List of records of the current page.
@@ -57,6 +83,100 @@ public class PaginatedList<T> {
         this.resultCount = resultCount;
     }
 
+    /**
+     * Getter of resultCountEstimated.
+     *
+     * @return resultCountEstimated
+     */
+    public boolean isResultCountEstimated() {
+        return resultCountEstimated;
+    }
+
+    /**
+     * Setter of resultCountEstimated.
+     *
+     * @param resultCountEstimated resultCountEstimated
+     */
+    public void setResultCountEstimated(boolean resultCountEstimated) {
+        this.resultCountEstimated = resultCountEstimated;
+    }
+
+    /**
+     * Getter of countMode.
+     *
+     * @return countMode
+     */
+    public CountMode getCountMode() {
+        return countMode;
+    }
+
+    /**
+     * Setter of countMode.
+     *
+     * @param countMode countMode
+     * @return Paginated list
+     */
+    public PaginatedList<T> setCountMode(CountMode countMode) {
+        this.countMode = countMode;
+        return this;
+    }
+
+    /**
+     * Getter of cursor.
+     *
+     * @return cursor
+     */
+    public String getCursor() {
+        return cursor;
+    }
+
+    /**
+     * Setter of cursor.
+     *
+     * @param cursor cursor
+     * @return Paginated list
+     */
+    public PaginatedList<T> setCursor(String cursor) {
+        this.cursor = cursor;
+        return this;
+    }
+
+    /**
+     * Getter of nextCursor.
+     *
+     * @return nextCursor
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    /**
+     * Setter of nextCursor.
+     *
+     * @param nextCursor nextCursor
+     */
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
+    /**
+     * Getter of hasMore.
+     *
+     * @return hasMore
+     */
+    public boolean isHasMore() {
+        return hasMore;
+    }
+
+    /**
+     * Setter of hasMore.
+     *
+     * @param hasMore hasMore
+     */
+    public void setHasMore(boolean hasMore) {
+        this.hasMore = hasMore;
+    }
+
     /**
      * Getter of resultList.
      *
@@ -1,7 +1,15 @@
 package com.sismics.docs.core.util.jpa;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import jakarta.persistence.Query;
+
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Utilities for paginated lists.
@@ -19,6 +27,14 @@ public class PaginatedLists {
      */
     private static final int MAX_PAGE_SIZE = 100;
 
+    /**
+     * Result counts by query and parameters, for the cached and estimated count modes.
+     */
+    private static final Cache<String, Integer> countCache = CacheBuilder.newBuilder()
+            .maximumSize(1000)
+            .expireAfterWrite(1, TimeUnit.MINUTES)
+            .build();
+
     /**
      * Constructs a paginated list.
      * 
@@ -51,10 +67,10 @@ public class PaginatedLists {
     /**
      * Executes a native count(*) request to count the number of results.
      * 
-     * @param paginatedList Paginated list object containing parameters, and into which results are added by side effects
      * @param queryParam Query parameters
+     * @return Number of results
      */
-    private static <E> void executeCountQuery(PaginatedList<E> paginatedList, QueryParam queryParam) {
+    private static int executeCountQuery(QueryParam queryParam) {
         StringBuilder sb = new StringBuilder("select count(*) as result_count from (");
         sb.append(queryParam.getQueryString());
         sb.append(") as t1");
@@ -64,7 +80,51 @@ public class PaginatedLists {
         Query q = QueryUtil.getNativeQuery(countQueryParam);
         
         Number resultCount = (Number) q.getSingleResult();
-        paginatedList.setResultCount(resultCount.intValue());
+        return resultCount.intValue();
+    }
+
+    /**
+     * Counts the number of results according to the count mode of the paginated list.
+     *
+     * @param paginatedList Paginated list object containing parameters, and into which results are added by side effects
+     * @param queryParam Unsorted query parameters
+     * @param pageSize Number of results in the current page
+     */
+    private static <E> void count(PaginatedList<E> paginatedList, QueryParam queryParam, int pageSize) {
+        boolean keyset = paginatedList.getCursor() != null;
+        if (!keyset && !paginatedList.isHasMore() && (pageSize > 0 || paginatedList.getOffset() == 0)) {
+            // Last page reached, no need to count
+            paginatedList.setResultCount(paginatedList.getOffset() + pageSize);
+            return;
+        }
+
+        String cacheKey = queryParam.getQueryString() + "|" + new TreeMap<>(queryParam.getParameterMap());
+        switch (paginatedList.getCountMode()) {
+            case EXACT:
+                paginatedList.setResultCount(executeCountQuery(queryParam));
+                break;
+            case CACHED:
+                Integer cachedCount = countCache.getIfPresent(cacheKey);
+                if (cachedCount == null) {
+                    cachedCount = executeCountQuery(queryParam);
+                    countCache.put(cacheKey, cachedCount);
+                }
+                paginatedList.setResultCount(cachedCount);
+                break;
+            case ESTIMATE:
+                Integer estimatedCount = countCache.getIfPresent(cacheKey);
+                if (estimatedCount == null && !keyset) {
+                    // Lower bound: the current page and at least one more result
+                    estimatedCount = paginatedList.getOffset() + pageSize + 1;
+                }
+                if (estimatedCount != null) {
+                    paginatedList.setResultCount(estimatedCount);
+                    paginatedList.setResultCountEstimated(true);
+                }
+                break;
+            case NONE:
+                break;
+        }
     }
 
     /**
@@ -79,12 +139,93 @@ public class PaginatedLists {
         Query q = QueryUtil.getNativeQuery(queryParam);
         
         q.setFirstResult(paginatedList.getOffset());
-        q.setMaxResults(paginatedList.getLimit());
-        return q.getResultList();
+        q.setMaxResults(paginatedList.getLimit() + 1);
+        List<Object[]> resultList = q.getResultList();
+        return trimPage(paginatedList, resultList);
+    }
+
+    /**
+     * Executes a query and returns the data of the page following the cursor.
+     * The query is wrapped to filter and sort on the sorted column, then on the ID (column c0).
+     * Null sort values come last in both directions.
+     *
+     * @param paginatedList Paginated list object containing parameters, and into which results are added by side effects
+     * @param queryParam Unsorted query parameters
+     * @param sortCriteria Sort criteria
+     * @return List of results
+     */
+    @SuppressWarnings("unchecked")
+    private static <E> List<Object[]> executeKeysetQuery(PaginatedList<E> paginatedList, QueryParam queryParam, SortCriteria sortCriteria) {
+        KeysetCursor cursor = null;
+        if (!paginatedList.getCursor().isEmpty()) {
+            cursor = KeysetCursor.decode(paginatedList.getCursor());
+            if (!cursor.matches(sortCriteria)) {
+                throw new IllegalArgumentException("The cursor does not match the sort criteria");
+            }
+        }
+
+        String column = "t.c" + sortCriteria.getColumn();
+        String direction = sortCriteria.isAsc() ? " asc" : " desc";
+        String comparison = sortCriteria.isAsc() ? " > " : " < ";
+        Map<String, Object> parameterMap = new HashMap<>(queryParam.getParameterMap());
+        StringBuilder sb = new StringBuilder("select t.*, ");
+        sb.append(column).append(" as keyset_value, t.c0 as keyset_id from (");
+        sb.append(queryParam.getQueryString());
+        sb.append(") t");
+        if (cursor != null) {
+            parameterMap.put("keysetId", cursor.getId());
+            if (sortCriteria.getColumn() == 0) {
+                sb.append(" where t.c0").append(comparison).append(":keysetId");
+            } else if (cursor.getValue() == null) {
+                sb.append(" where ").append(column).append(" is null and t.c0").append(comparison).append(":keysetId");
+            } else {
+                sb.append(" where (").append(column).append(comparison).append(":keysetValue");
+                sb.append(" or ").append(column).append(" = :keysetValue and t.c0").append(comparison).append(":keysetId");
+                sb.append(" or ").append(column).append(" is null)");
+                parameterMap.put("keysetValue", cursor.getValue());
+            }
+        }
+        sb.append(" order by ").append(column).append(direction).append(" nulls last");
+        if (sortCriteria.getColumn() != 0) {
+            sb.append(", t.c0").append(direction);
+        }
+
+        Query q = QueryUtil.getNativeQuery(new QueryParam(sb.toString(), parameterMap));
+        q.setMaxResults(paginatedList.getLimit() + 1);
+        List<Object[]> resultList = trimPage(paginatedList, q.getResultList());
+
+        // Build the cursor of the next page and remove the keyset columns
+        if (paginatedList.isHasMore() && !resultList.isEmpty()) {
+            Object[] last = resultList.get(resultList.size() - 1);
+            paginatedList.setNextCursor(new KeysetCursor(sortCriteria.getColumn(), sortCriteria.isAsc(),
+                    last[last.length - 2], (String) last[last.length - 1]).encode());
+        }
+        for (int i = 0; i < resultList.size(); i++) {
+            Object[] o = resultList.get(i);
+            resultList.set(i, Arrays.copyOf(o, o.length - 2));
+        }
+        return resultList;
+    }
+
+    /**
+     * Remove the extra result fetched to know if there is a next page.
+     *
+     * @param paginatedList Paginated list
+     * @param resultList Results, one more than the page limit if there is a next page
+     * @return Results of the page
+     */
+    private static <E> List<Object[]> trimPage(PaginatedList<E> paginatedList, List<Object[]> resultList) {
+        paginatedList.setHasMore(resultList.size() > paginatedList.getLimit());
+        if (paginatedList.isHasMore()) {
+            return resultList.subList(0, paginatedList.getLimit());
+        }
+        return resultList;
     }
 
     /**
      * Executes a paginated request with 2 native queries (one to count the number of results, and one to return the page).
+     * The page is selected by offset, or by keyset if the paginated list has a cursor.
+     * The count query is skipped on the last page, and otherwise depends on the count mode.
      * 
      * @param paginatedList Paginated list object containing parameters, and into which results are added by side effects
      * @param queryParam Query parameters
@@ -92,8 +233,14 @@ public class PaginatedLists {
      * @return List of results
      */
     public static <E> List<Object[]> executePaginatedQuery(PaginatedList<E> paginatedList, QueryParam queryParam, SortCriteria sortCriteria) {
-        QueryParam sortedQueryParam = QueryUtil.getSortedQueryParam(queryParam, sortCriteria);
-        executeCountQuery(paginatedList, sortedQueryParam);
-        return executeResultQuery(paginatedList, sortedQueryParam);
+        List<Object[]> resultList;
+        if (paginatedList.getCursor() == null) {
+            QueryParam sortedQueryParam = QueryUtil.getSortedQueryParam(queryParam, sortCriteria);
+            resultList = executeResultQuery(paginatedList, sortedQueryParam);
+        } else {
+            resultList = executeKeysetQuery(paginatedList, queryParam, sortCriteria == null ? new SortCriteria(0, true) : sortCriteria);
+        }
+        count(paginatedList, queryParam, resultList.size());
+        return resultList;
     }
 }
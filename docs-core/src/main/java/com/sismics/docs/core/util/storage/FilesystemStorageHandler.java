@@ -0,0 +1,262 @@
+package com.sismics.docs.core.util.storage;
+
+import com.sismics.docs.core.util.DirectoryUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Storage handler on the local filesystem, in the sharded layout of {@link DirectoryUtil}.
+ * Written files are synced to the disk in background batches, a write does not wait for the disk.
+ *
+ * @author bgamard
+ */
+public class FilesystemStorageHandler implements StorageHandler {
+    /**
+     * Logger.
+     */
+    private static final Logger log = LoggerFactory.getLogger(FilesystemStorageHandler.class);
+
+    /**
+     * Delay between two syncs in milliseconds.
+     */
+    private static final long SYNC_DELAY = 1000;
+
+    /**
+     * Storage directory.
+     */
+    private final Path directory;
+
+    /**
+     * Files written and not synced yet.
+     */
+    private final ConcurrentLinkedQueue<Path> unsyncedFileQueue = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Executor of the background syncs.
+     */
+    private ScheduledExecutorService syncExecutor;
+
+    public FilesystemStorageHandler(Path directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public void startUp() {
+        syncExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "storage-sync-" + directory.getFileName());
+            thread.setDaemon(true);
+            return thread;
+        });
+        syncExecutor.scheduleWithFixedDelay(() -> {
+            try {
+                sync();
+            } catch (Throwable e) {
+                log.error("Error syncing the storage", e);
+            }
+        }, SYNC_DELAY, SYNC_DELAY, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void shutDown() {
+        if (syncExecutor != null) {
+            syncExecutor.shutdown();
+            try {
+                syncExecutor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                // NOP
+            }
+        }
+        sync();
+    }
+
+    /**
+     * Returns the storage directory.
+     *
+     * @return Storage directory
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    @Override
+    public StoredObject stat(String name) throws IOException {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(DirectoryUtil.getStoredFile(directory, name), BasicFileAttributes.class);
+            return new StoredObject(name, attributes.size(), attributes.lastModifiedTime().toMillis());
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public InputStream get(String name, long offset) throws IOException {
+        Path file = DirectoryUtil.getStoredFile(directory, name);
+        SeekableByteChannel channel;
+        try {
+            channel = Files.newByteChannel(file);
+        } catch (NoSuchFileException e) {
+            // Moved to the sharded layout between the lookup and the opening
+            Path movedFile = DirectoryUtil.getStoredFile(directory, name);
+            if (movedFile.equals(file)) {
+                throw e;
+            }
+            channel = Files.newByteChannel(movedFile);
+        }
+
+        try {
+            channel.position(offset);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return Channels.newInputStream(channel);
+    }
+
+    @Override
+    public void put(String name, InputStream inputStream) throws IOException {
+        Path file = DirectoryUtil.getNewStoredFile(directory, name);
+        Path tmpFile = file.resolveSibling(name + "." + UUID.randomUUID() + ".tmp");
+        try {
+            Files.copy(inputStream, tmpFile);
+            Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmpFile);
+        }
+        unsyncedFileQueue.add(file);
+    }
+
+    @Override
+    public void delete(String name) throws IOException {
+        // Flat layout first, a file migrated meanwhile is then in the sharded layout
+        Files.deleteIfExists(directory.resolve(name));
+        Files.deleteIfExists(DirectoryUtil.getShardedPath(directory, name));
+    }
+
+    @Override
+    public Stream<StoredObject> list() throws IOException {
+        // Files of the flat and sharded layouts, except the ones being written
+        return Files.walk(directory, 3)
+                .map(this::toStoredObject)
+                .filter(Objects::nonNull);
+    }
+
+    @Override
+    public Stream<StoredObject> list(String afterName) throws IOException {
+        // Files of the flat layout first, then the shards in order, each one sorted by name
+        boolean afterFlat = afterName.isEmpty() || Files.isRegularFile(directory.resolve(afterName));
+        Path afterShard = afterFlat ? null : DirectoryUtil.getShardedPath(directory, afterName).getParent();
+        Stream<Path> flatStream = afterFlat ? listSorted(directory)
+                .filter(path -> Files.isRegularFile(path) && path.getFileName().toString().compareTo(afterName) > 0) : Stream.empty();
+        Stream<Path> shardedStream = listSorted(directory)
+                .filter(Files::isDirectory)
+                .flatMap(FilesystemStorageHandler::listSorted)
+                .filter(shard -> Files.isDirectory(shard) && (afterShard == null || shard.compareTo(afterShard) >= 0))
+                .flatMap(shard -> listSorted(shard)
+                        .filter(path -> !shard.equals(afterShard) || path.getFileName().toString().compareTo(afterName) > 0));
+        return Stream.concat(flatStream, shardedStream)
+                .map(this::toStoredObject)
+                .filter(Objects::nonNull);
+    }
+
+    /**
+     * Returns the stored object of a file, except the ones being written.
+     *
+     * @param path File
+     * @return Stored object, null if this is not a stored file
+     */
+    private StoredObject toStoredObject(Path path) {
+        if (path.getFileName().toString().endsWith(".tmp")) {
+            return null;
+        }
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            if (!attributes.isRegularFile()) {
+                return null;
+            }
+            return new StoredObject(path.getFileName().toString(), attributes.size(), attributes.lastModifiedTime().toMillis());
+        } catch (NoSuchFileException e) {
+            // Deleted meanwhile
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * List the content of a directory, sorted by name.
+     *
+     * @param directory Directory
+     * @return Files and subdirectories
+     */
+    private static Stream<Path> listSorted(Path directory) {
+        try (Stream<Path> pathStream = Files.list(directory)) {
+            return pathStream.sorted().collect(Collectors.toList()).stream();
+        } catch (NoSuchFileException e) {
+            // Deleted meanwhile
+            return Stream.empty();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Sync the written files and their directories to the disk.
+     * One sync of each directory covers all the files written in it since the last batch.
+     */
+    public void sync() {
+        List<Path> fileList = new ArrayList<>();
+        Path file;
+        while ((file = unsyncedFileQueue.poll()) != null) {
+            fileList.add(file);
+        }
+        if (fileList.isEmpty()) {
+            return;
+        }
+
+        Set<Path> directorySet = new HashSet<>();
+        for (Path unsyncedFile : fileList) {
+            try (FileChannel channel = FileChannel.open(unsyncedFile, StandardOpenOption.READ)) {
+                channel.force(true);
+            } catch (NoSuchFileException e) {
+                // Deleted meanwhile
+            } catch (IOException e) {
+                log.error("Error syncing the file: " + unsyncedFile, e);
+            }
+            directorySet.add(unsyncedFile.getParent());
+        }
+        for (Path unsyncedDirectory : directorySet) {
+            try (FileChannel channel = FileChannel.open(unsyncedDirectory, StandardOpenOption.READ)) {
+                channel.force(true);
+            } catch (IOException e) {
+                // Directories cannot be synced on some platforms
+                log.debug("Unable to sync the directory: " + unsyncedDirectory, e);
+            }
+        }
+        log.debug("{} files synced in {} directories", fileList.size(), directorySet.size());
+    }
+}
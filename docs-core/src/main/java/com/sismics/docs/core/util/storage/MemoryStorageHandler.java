@@ -0,0 +1,82 @@
+package com.sismics.docs.core.util.storage;
+
+import com.google.common.io.ByteStreams;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Storage handler in memory, nothing is persisted.
+ * Meant for the tests and the throwaway instances.
+ *
+ * @author bgamard
+ */
+public class MemoryStorageHandler implements StorageHandler {
+    /**
+     * Stored objects by name.
+     */
+    private final Map<String, MemoryObject> objectMap = new ConcurrentHashMap<>();
+
+    @Override
+    public void startUp() {
+        // NOP
+    }
+
+    @Override
+    public void shutDown() {
+        objectMap.clear();
+    }
+
+    @Override
+    public StoredObject stat(String name) {
+        MemoryObject memoryObject = objectMap.get(name);
+        return memoryObject == null ? null : memoryObject.storedObject;
+    }
+
+    @Override
+    public InputStream get(String name, long offset) throws IOException {
+        MemoryObject memoryObject = objectMap.get(name);
+        if (memoryObject == null) {
+            throw new NoSuchFileException(name);
+        }
+        int start = (int) Math.min(offset, memoryObject.content.length);
+        return new ByteArrayInputStream(memoryObject.content, start, memoryObject.content.length - start);
+    }
+
+    @Override
+    public void put(String name, InputStream inputStream) throws IOException {
+        byte[] content = ByteStreams.toByteArray(inputStream);
+        objectMap.put(name, new MemoryObject(new StoredObject(name, content.length, System.currentTimeMillis()), content));
+    }
+
+    @Override
+    public void delete(String name) {
+        objectMap.remove(name);
+    }
+
+    @Override
+    public Stream<StoredObject> list() {
+        return new ArrayList<>(objectMap.values()).stream()
+                .map(memoryObject -> memoryObject.storedObject);
+    }
+
+    /**
+     * Object stored in memory.
+     */
+    private static class MemoryObject {
+        private final StoredObject storedObject;
+
+        private final byte[] content;
+
+        private MemoryObject(StoredObject storedObject, byte[] content) {
+            this.storedObject = storedObject;
+            this.content = content;
+        }
+    }
+}
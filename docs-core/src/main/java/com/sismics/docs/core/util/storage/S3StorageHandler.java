@@ -0,0 +1,406 @@
+package com.sismics.docs.core.util.storage;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Streams;
+import com.google.common.hash.Hashing;
+import com.google.common.io.BaseEncoding;
+import com.sismics.docs.core.model.context.AppContext;
+import com.sismics.docs.core.service.FileService;
+import com.sismics.util.HttpUtil;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Storage handler on an S3-compatible object storage.
+ * Objects are stored in a bucket under a prefix, requests are signed with AWS Signature Version 4.
+ *
+ * @author bgamard
+ */
+public class S3StorageHandler implements StorageHandler {
+    /**
+     * The payload is not signed, it is streamed and checked by TLS.
+     */
+    private static final String UNSIGNED_PAYLOAD = "UNSIGNED-PAYLOAD";
+
+    /**
+     * Format of the request date.
+     */
+    private static final DateTimeFormatter AMZ_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'").withZone(ZoneOffset.UTC);
+
+    /**
+     * OkHttp client.
+     */
+    private final OkHttpClient client = new OkHttpClient.Builder()
+            .readTimeout(5, TimeUnit.MINUTES)
+            .writeTimeout(5, TimeUnit.MINUTES)
+            .build();
+
+    /**
+     * Endpoint URL, the bucket is in the path.
+     */
+    private final HttpUrl endpoint;
+
+    /**
+     * Region.
+     */
+    private final String region;
+
+    /**
+     * Bucket name.
+     */
+    private final String bucket;
+
+    /**
+     * Prefix of the object keys.
+     */
+    private final String prefix;
+
+    /**
+     * Access key ID.
+     */
+    private final String accessKey;
+
+    /**
+     * Secret access key.
+     */
+    private final String secretKey;
+
+    public S3StorageHandler(String endpoint, String region, String bucket, String prefix, String accessKey, String secretKey) {
+        this.endpoint = HttpUrl.get(endpoint);
+        this.region = region;
+        this.bucket = bucket;
+        this.prefix = prefix;
+        this.accessKey = accessKey;
+        this.secretKey = secretKey;
+    }
+
+    @Override
+    public void startUp() {
+        // NOP
+    }
+
+    @Override
+    public void shutDown() {
+        client.dispatcher().executorService().shutdown();
+        client.connectionPool().evictAll();
+    }
+
+    @Override
+    public StoredObject stat(String name) throws IOException {
+        try (Response response = execute(new Request.Builder().head(), getObjectUrl(name))) {
+            if (response.code() == 404) {
+                return null;
+            }
+            checkResponse(response);
+            Long lastModified = HttpUtil.parseHttpDate(response.header("Last-Modified"));
+            return new StoredObject(name, Long.parseLong(response.header("Content-Length", "0")),
+                    lastModified == null ? 0 : lastModified);
+        }
+    }
+
+    @Override
+    public InputStream get(String name, long offset) throws IOException {
+        Request.Builder builder = new Request.Builder().get();
+        if (offset > 0) {
+            builder.header("Range", "bytes=" + offset + "-");
+        }
+        Response response = execute(builder, getObjectUrl(name));
+        if (response.code() == 416) {
+            // Offset at the end of the object
+            response.close();
+            return new ByteArrayInputStream(new byte[0]);
+        }
+        if (response.code() == 404) {
+            response.close();
+            throw new NoSuchFileException(name);
+        }
+        checkResponse(response);
+        ResponseBody body = response.body();
+        if (body == null) {
+            response.close();
+            throw new IOException("Empty response reading " + name);
+        }
+        return body.byteStream();
+    }
+
+    @Override
+    public void put(String name, InputStream inputStream) throws IOException {
+        // The length must be known before sending, the content is buffered in a temporary file counted in the budget
+        FileService fileService = AppContext.getInstance().getFileService();
+        Path tmpFile = fileService.createTemporaryFile();
+        try {
+            fileService.updateTemporarySize(tmpFile, Files.copy(inputStream, tmpFile, StandardCopyOption.REPLACE_EXISTING));
+            try (Response response = execute(new Request.Builder().put(RequestBody.create(tmpFile.toFile(), null)), getObjectUrl(name))) {
+                checkResponse(response);
+            }
+        } finally {
+            fileService.deleteTemporaryFile(tmpFile);
+        }
+    }
+
+    @Override
+    public void delete(String name) throws IOException {
+        try (Response response = execute(new Request.Builder().delete(), getObjectUrl(name))) {
+            if (response.code() != 404) {
+                checkResponse(response);
+            }
+        }
+    }
+
+    @Override
+    public Stream<StoredObject> list() {
+        return list("");
+    }
+
+    @Override
+    public Stream<StoredObject> list(String afterName) {
+        // Listed one page at a time while iterating, in the order of the keys
+        return Streams.stream(new AbstractIterator<StoredObject>() {
+            private final Deque<StoredObject> page = new ArrayDeque<>();
+            private String continuationToken;
+            private boolean truncated = true;
+
+            @Override
+            protected StoredObject computeNext() {
+                while (page.isEmpty() && truncated) {
+                    try {
+                        listPage();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                return page.isEmpty() ? endOfData() : page.poll();
+            }
+
+            private void listPage() throws IOException {
+                HttpUrl.Builder urlBuilder = endpoint.newBuilder()
+                        .addPathSegment(bucket)
+                        .addQueryParameter("list-type", "2")
+                        .addQueryParameter("prefix", prefix + "/");
+                if (continuationToken != null) {
+                    urlBuilder.addQueryParameter("continuation-token", continuationToken);
+                } else if (!afterName.isEmpty()) {
+                    urlBuilder.addQueryParameter("start-after", prefix + "/" + afterName);
+                }
+
+                try (Response response = execute(new Request.Builder().get(), urlBuilder.build())) {
+                    checkResponse(response);
+                    DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
+                    documentBuilderFactory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+                    Document document = documentBuilderFactory.newDocumentBuilder().parse(response.body().byteStream());
+                    NodeList contentList = document.getElementsByTagName("Contents");
+                    for (int i = 0; i < contentList.getLength(); i++) {
+                        Element content = (Element) contentList.item(i);
+                        String key = getText(content, "Key");
+                        page.add(new StoredObject(key.substring(prefix.length() + 1),
+                                Long.parseLong(getText(content, "Size")),
+                                Instant.parse(getText(content, "LastModified")).toEpochMilli()));
+                    }
+                    truncated = Boolean.parseBoolean(getText(document.getDocumentElement(), "IsTruncated"));
+                    continuationToken = getText(document.getDocumentElement(), "NextContinuationToken");
+                    if (continuationToken == null) {
+                        truncated = false;
+                    }
+                } catch (IOException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new IOException("Error listing the objects", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns the URL of an object.
+     *
+     * @param name Object name
+     * @return URL
+     */
+    private HttpUrl getObjectUrl(String name) {
+        return endpoint.newBuilder()
+                .addPathSegment(bucket)
+                .addPathSegment(prefix)
+                .addPathSegment(name)
+                .build();
+    }
+
+    /**
+     * Sign and execute a request.
+     *
+     * @param builder Request builder, with the method and the unsigned headers
+     * @param url URL
+     * @return Response
+     * @throws IOException e
+     */
+    private Response execute(Request.Builder builder, HttpUrl url) throws IOException {
+        String amzDate = AMZ_DATE_FORMAT.format(Instant.now());
+        Map<String, String> signedHeaderMap = new TreeMap<>();
+        signedHeaderMap.put("host", getHost(url));
+        signedHeaderMap.put("x-amz-content-sha256", UNSIGNED_PAYLOAD);
+        signedHeaderMap.put("x-amz-date", amzDate);
+
+        Request request = builder.url(url).build();
+        String signature = sign(request.method(), url, signedHeaderMap, UNSIGNED_PAYLOAD, amzDate, region, secretKey);
+        String scope = amzDate.substring(0, 8) + "/" + region + "/s3/aws4_request";
+        return client.newCall(request.newBuilder()
+                .header("x-amz-content-sha256", UNSIGNED_PAYLOAD)
+                .header("x-amz-date", amzDate)
+                .header("Authorization", "AWS4-HMAC-SHA256 Credential=" + accessKey + "/" + scope
+                        + ", SignedHeaders=" + String.join(";", signedHeaderMap.keySet())
+                        + ", Signature=" + signature)
+                .build()).execute();
+    }
+
+    /**
+     * Compute the AWS Signature Version 4 of a request.
+     *
+     * @param method HTTP method
+     * @param url URL
+     * @param signedHeaderMap Signed headers, with lowercase names in order
+     * @param payloadHash Hash of the payload
+     * @param amzDate Request date
+     * @param region Region
+     * @param secretKey Secret access key
+     * @return Signature
+     */
+    static String sign(String method, HttpUrl url, Map<String, String> signedHeaderMap, String payloadHash,
+                       String amzDate, String region, String secretKey) {
+        // Canonical request
+        Map<String, String> queryMap = new TreeMap<>();
+        for (String queryName : url.queryParameterNames()) {
+            queryMap.put(encode(queryName), encode(url.queryParameter(queryName)));
+        }
+        String canonicalRequest = method + "\n"
+                + url.encodedPath() + "\n"
+                + queryMap.entrySet().stream()
+                        .map(entry -> entry.getKey() + "=" + entry.getValue())
+                        .collect(Collectors.joining("&")) + "\n"
+                + signedHeaderMap.entrySet().stream()
+                        .map(entry -> entry.getKey() + ":" + entry.getValue().trim() + "\n")
+                        .collect(Collectors.joining()) + "\n"
+                + String.join(";", signedHeaderMap.keySet()) + "\n"
+                + payloadHash;
+
+        // String to sign
+        String dateStamp = amzDate.substring(0, 8);
+        String stringToSign = "AWS4-HMAC-SHA256\n"
+                + amzDate + "\n"
+                + dateStamp + "/" + region + "/s3/aws4_request\n"
+                + Hashing.sha256().hashString(canonicalRequest, StandardCharsets.UTF_8);
+
+        // Signing key derived from the secret key and the scope
+        byte[] key = hmac(("AWS4" + secretKey).getBytes(StandardCharsets.UTF_8), dateStamp);
+        key = hmac(key, region);
+        key = hmac(key, "s3");
+        key = hmac(key, "aws4_request");
+        return BaseEncoding.base16().lowerCase().encode(hmac(key, stringToSign));
+    }
+
+    /**
+     * Compute a HMAC-SHA256.
+     *
+     * @param key Key
+     * @param data Data
+     * @return HMAC
+     */
+    private static byte[] hmac(byte[] key, String data) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(key, "HmacSHA256"));
+            return mac.doFinal(data.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * URI-encode a query parameter as specified by AWS.
+     *
+     * @param value Value
+     * @return Encoded value
+     */
+    private static String encode(String value) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            char c = (char) (b & 0xff);
+            if (c >= 'A' && c <= 'Z' || c >= 'a' && c <= 'z' || c >= '0' && c <= '9'
+                    || c == '-' || c == '_' || c == '.' || c == '~') {
+                sb.append(c);
+            } else {
+                sb.append('%').append(String.format("%02X", b & 0xff));
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns the host header sent for an URL.
+     *
+     * @param url URL
+     * @return Host header
+     */
+    private static String getHost(HttpUrl url) {
+        if (url.port() == HttpUrl.defaultPort(url.scheme())) {
+            return url.host();
+        }
+        return url.host() + ":" + url.port();
+    }
+
+    /**
+     * Throw an exception if a response is not successful.
+     *
+     * @param response Response
+     * @throws IOException e
+     */
+    private static void checkResponse(Response response) throws IOException {
+        if (!response.isSuccessful()) {
+            ResponseBody body = response.body();
+            String message = body == null ? "" : body.string();
+            response.close();
+            throw new IOException("S3 request failed with " + response.code() + ": " + message);
+        }
+    }
+
+    /**
+     * Returns the text of the first child element with a name.
+     *
+     * @param element Parent element
+     * @param name Child element name
+     * @return Text, null if there is no such element
+     */
+    private static String getText(Element element, String name) {
+        NodeList nodeList = element.getElementsByTagName(name);
+        return nodeList.getLength() == 0 ? null : nodeList.item(0).getTextContent();
+    }
+}
@@ -0,0 +1,101 @@
+package com.sismics.docs.core.util.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Storage handler.
+ * Stores named objects, the files and their variations or the deduplicated blobs.
+ *
+ * @author bgamard
+ */
+public interface StorageHandler {
+    /**
+     * Start the storage handler.
+     *
+     * @throws Exception e
+     */
+    void startUp() throws Exception;
+
+    /**
+     * Shutdown the storage handler.
+     */
+    void shutDown();
+
+    /**
+     * Returns the metadata of a stored object.
+     *
+     * @param name Object name
+     * @return Stored object, null if it does not exist
+     * @throws IOException e
+     */
+    StoredObject stat(String name) throws IOException;
+
+    /**
+     * Read a stored object.
+     *
+     * @param name Object name
+     * @return Content
+     * @throws java.nio.file.NoSuchFileException if the object does not exist
+     * @throws IOException e
+     */
+    default InputStream get(String name) throws IOException {
+        return get(name, 0);
+    }
+
+    /**
+     * Read a stored object from an offset.
+     *
+     * @param name Object name
+     * @param offset Offset of the first byte to read
+     * @return Content, starting at the offset
+     * @throws java.nio.file.NoSuchFileException if the object does not exist
+     * @throws IOException e
+     */
+    InputStream get(String name, long offset) throws IOException;
+
+    /**
+     * Store an object, replacing the existing one.
+     * The object is visible once completely written.
+     *
+     * @param name Object name
+     * @param inputStream Content, read until the end but not closed
+     * @throws IOException e
+     */
+    void put(String name, InputStream inputStream) throws IOException;
+
+    /**
+     * Delete a stored object, if it exists.
+     *
+     * @param name Object name
+     * @throws IOException e
+     */
+    void delete(String name) throws IOException;
+
+    /**
+     * List all the stored objects.
+     * The stream must be closed, errors while iterating are thrown as {@link java.io.UncheckedIOException}.
+     *
+     * @return Stored objects
+     * @throws IOException e
+     */
+    Stream<StoredObject> list() throws IOException;
+
+    /**
+     * List the stored objects after a name, in an order specific to the storage but stable.
+     * Listing again after the name of the last object read continues where the previous listing stopped,
+     * the objects written meanwhile before this name are listed on the next pass.
+     * The default implementation sorts the whole listing by name, for the small storages.
+     *
+     * @param afterName Name of the last object read, empty to list from the start
+     * @return Stored objects
+     * @throws IOException e
+     */
+    default Stream<StoredObject> list(String afterName) throws IOException {
+        return list()
+                .filter(storedObject -> storedObject.getName().compareTo(afterName) > 0)
+                .sorted(Comparator.comparing(StoredObject::getName));
+    }
+}
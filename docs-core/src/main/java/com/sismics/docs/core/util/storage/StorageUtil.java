@@ -0,0 +1,86 @@
+package com.sismics.docs.core.util.storage;
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Strings;
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingInputStream;
+import com.google.common.io.ByteStreams;
+import com.sismics.docs.core.constant.Constants;
+import com.sismics.docs.core.util.DirectoryUtil;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Storage handler utilities.
+ *
+ * @author bgamard
+ */
+public class StorageUtil {
+    /**
+     * Storage area of the files and their variations.
+     */
+    public static final String FILE_AREA = "storage";
+
+    /**
+     * Storage area of the deduplicated blobs.
+     */
+    public static final String BLOB_AREA = "blob";
+
+    /**
+     * Create the storage handler of an area, from the environment.
+     *
+     * @param area Storage area
+     * @return Storage handler, not started
+     */
+    public static StorageHandler create(String area) {
+        String type = MoreObjects.firstNonNull(System.getenv(Constants.STORAGE_TYPE_ENV), "filesystem");
+        switch (type) {
+            case "memory":
+                return new MemoryStorageHandler();
+            case "s3":
+                String endpoint = System.getenv(Constants.S3_ENDPOINT_ENV);
+                String bucket = System.getenv(Constants.S3_BUCKET_ENV);
+                if (Strings.isNullOrEmpty(endpoint) || Strings.isNullOrEmpty(bucket)) {
+                    throw new IllegalStateException(Constants.S3_ENDPOINT_ENV + " and " + Constants.S3_BUCKET_ENV + " are required by the S3 storage");
+                }
+                return new S3StorageHandler(endpoint,
+                        MoreObjects.firstNonNull(System.getenv(Constants.S3_REGION_ENV), "us-east-1"),
+                        bucket, area,
+                        System.getenv(Constants.S3_ACCESS_KEY_ENV),
+                        System.getenv(Constants.S3_SECRET_KEY_ENV));
+            case "filesystem":
+                return new FilesystemStorageHandler(BLOB_AREA.equals(area) ? DirectoryUtil.getBlobDirectory() : DirectoryUtil.getStorageDirectory());
+            default:
+                throw new IllegalStateException("Unknown storage type in " + Constants.STORAGE_TYPE_ENV + ": " + type);
+        }
+    }
+
+    /**
+     * Store an object, replacing the existing one.
+     *
+     * @param storageHandler Storage handler
+     * @param name Object name
+     * @param inputStream Content, read until the end but not closed
+     * @return Checksum of the stored content
+     * @throws IOException e
+     */
+    public static String put(StorageHandler storageHandler, String name, InputStream inputStream) throws IOException {
+        HashingInputStream hashingInputStream = new HashingInputStream(Hashing.sha256(), inputStream);
+        storageHandler.put(name, hashingInputStream);
+        return hashingInputStream.hash().toString();
+    }
+
+    /**
+     * Compute the checksum of a stored content.
+     *
+     * @param inputStream Stored content, read until the end but not closed
+     * @return Checksum
+     * @throws IOException e
+     */
+    public static String checksum(InputStream inputStream) throws IOException {
+        HashingInputStream hashingInputStream = new HashingInputStream(Hashing.sha256(), inputStream);
+        ByteStreams.exhaust(hashingInputStream);
+        return hashingInputStream.hash().toString();
+    }
+}
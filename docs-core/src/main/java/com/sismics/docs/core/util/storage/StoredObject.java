@@ -0,0 +1,51 @@
+package com.sismics.docs.core.util.storage;
+
+import com.google.common.base.MoreObjects;
+
+/**
+ * Metadata of a stored object.
+ *
+ * @author bgamard
+ */
+public class StoredObject {
+    /**
+     * Object name.
+     */
+    private final String name;
+
+    /**
+     * Size in bytes.
+     */
+    private final long size;
+
+    /**
+     * Last modification date, in milliseconds.
+     */
+    private final long lastModified;
+
+    public StoredObject(String name, long size, long lastModified) {
+        this.name = name;
+        this.size = size;
+        this.lastModified = lastModified;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("name", name)
+                .add("size", size)
+                .toString();
+    }
+}
@@ -205,6 +205,7 @@ public class EmailUtil {
                     fileContent.file = AppContext.getInstance().getFileService().createTemporaryFile();
                     Files.copy(subPart.getInputStream(), fileContent.file, StandardCopyOption.REPLACE_EXISTING);
                     fileContent.size = Files.size(fileContent.file);
+                    AppContext.getInstance().getFileService().updateTemporarySize(fileContent.file, fileContent.size);
                     mailContent.fileContentList.add(fileContent);
                 } else {
                     parseMailContent(subPart, mailContent);
@@ -228,6 +229,7 @@ public class EmailUtil {
             fileContent.file = AppContext.getInstance().getFileService().createTemporaryFile();
             Files.copy((InputStream) content, fileContent.file, StandardCopyOption.REPLACE_EXISTING);
             fileContent.size = Files.size(fileContent.file);
+            AppContext.getInstance().getFileService().updateTemporarySize(fileContent.file, fileContent.size);
             mailContent.fileContentList.add(fileContent);
         }
     }
@@ -0,0 +1,118 @@
+package com.sismics.util;
+
+import jakarta.json.Json;
+import jakarta.json.JsonArrayBuilder;
+import jakarta.json.JsonObjectBuilder;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe histogram with fixed bucket upper bounds.
+ * Values greater than the last bound are counted in an overflow bucket.
+ *
+ * @author bgamard
+ */
+public class Histogram {
+    /**
+     * Inclusive upper bounds of the buckets, in ascending order.
+     */
+    private final long[] bounds;
+
+    /**
+     * Counts per bucket (the last one is the overflow bucket).
+     */
+    private final LongAdder[] counts;
+
+    /**
+     * Sum of all recorded values.
+     */
+    private final LongAdder sum = new LongAdder();
+
+    /**
+     * Maximum recorded value.
+     */
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Constructor of Histogram.
+     *
+     * @param bounds Inclusive upper bounds of the buckets, in ascending order
+     */
+    public Histogram(long... bounds) {
+        this.bounds = bounds.clone();
+        counts = new LongAdder[bounds.length + 1];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Record a value.
+     *
+     * @param value Value
+     */
+    public void record(long value) {
+        int i = 0;
+        while (i < bounds.length && value > bounds[i]) {
+            i++;
+        }
+        counts[i].increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * Returns the number of recorded values.
+     *
+     * @return Count
+     */
+    public long getCount() {
+        long count = 0;
+        for (LongAdder adder : counts) {
+            count += adder.sum();
+        }
+        return count;
+    }
+
+    /**
+     * Returns the sum of recorded values.
+     *
+     * @return Sum
+     */
+    public long getSum() {
+        return sum.sum();
+    }
+
+    /**
+     * Returns the maximum recorded value.
+     *
+     * @return Maximum
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Serialize this histogram to JSON.
+     *
+     * @return JSON object builder
+     */
+    public JsonObjectBuilder toJson() {
+        JsonArrayBuilder buckets = Json.createArrayBuilder();
+        for (int i = 0; i < counts.length; i++) {
+            JsonObjectBuilder bucket = Json.createObjectBuilder();
+            if (i < bounds.length) {
+                bucket.add("le", bounds[i]);
+            } else {
+                bucket.add("le", "+Inf");
+            }
+            buckets.add(bucket.add("count", counts[i].sum()));
+        }
+        return Json.createObjectBuilder()
+                .add("count", getCount())
+                .add("sum", getSum())
+                .add("max", getMax())
+                .add("buckets", buckets);
+    }
+}
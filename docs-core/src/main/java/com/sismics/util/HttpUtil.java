@@ -1,8 +1,19 @@
 package com.sismics.util;
 
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.Date;
 import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * HTTP request utilities.
@@ -15,6 +26,11 @@ public class HttpUtil {
      */
     private static final SimpleDateFormat EXPIRES_FORMAT = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss Z", Locale.ENGLISH);
 
+    /**
+     * Single byte range of a Range header.
+     */
+    private static final Pattern RANGE_PATTERN = Pattern.compile("^bytes=(\\d*)-(\\d*)$");
+
     /**
      * Build an Expires HTTP header.
      *
@@ -24,4 +40,133 @@ public class HttpUtil {
     public static String buildExpiresHeader(long futureTime) {
         return EXPIRES_FORMAT.format(new Date().getTime() + futureTime);
     }
+
+    /**
+     * Format an HTTP date, for the Last-Modified header.
+     *
+     * @param time Time in milliseconds
+     * @return Formatted header value
+     */
+    public static String formatHttpDate(long time) {
+        return DateTimeFormatter.RFC_1123_DATE_TIME.format(Instant.ofEpochMilli(time).atOffset(ZoneOffset.UTC));
+    }
+
+    /**
+     * Parse an HTTP date.
+     *
+     * @param date Header value
+     * @return Time in milliseconds, null if not a date
+     */
+    public static Long parseHttpDate(String date) {
+        if (date == null) {
+            return null;
+        }
+        try {
+            return Instant.from(DateTimeFormatter.RFC_1123_DATE_TIME.parse(date.trim())).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Parse a Range header.
+     * Only a single byte range is supported, the whole content is served otherwise.
+     *
+     * @param range Header value
+     * @param length Length of the content
+     * @return First and last byte positions, inclusive. The first is after the last if the range is not satisfiable.
+     * Null if the whole content must be served.
+     */
+    public static long[] parseRange(String range, long length) {
+        if (range == null) {
+            return null;
+        }
+        Matcher matcher = RANGE_PATTERN.matcher(range.trim());
+        if (!matcher.matches()) {
+            return null;
+        }
+        String first = matcher.group(1);
+        String last = matcher.group(2);
+        try {
+            if (first.isEmpty()) {
+                if (last.isEmpty()) {
+                    return null;
+                }
+
+                // Suffix range: the last bytes
+                long suffixLength = Long.parseLong(last);
+                return new long[] { suffixLength == 0 ? length : Math.max(length - suffixLength, 0), length - 1 };
+            }
+
+            long start = Long.parseLong(first);
+            if (last.isEmpty()) {
+                return new long[] { start, length - 1 };
+            }
+            long end = Long.parseLong(last);
+            if (end < start) {
+                // Invalid range, ignored
+                return null;
+            }
+            return new long[] { start, Math.min(end, length - 1) };
+        } catch (NumberFormatException e) {
+            // Too large
+            return null;
+        }
+    }
+
+    /**
+     * Build a strong entity tag from the values identifying a version of the content.
+     *
+     * @param values Values changing with the content
+     * @return ETag header value
+     */
+    public static String buildEtag(Object... values) {
+        return "\"" + Hashing.sha256().hashString(Joiner.on('/').useForNull("").join(values), StandardCharsets.UTF_8)
+                .toString().substring(0, 32) + "\"";
+    }
+
+    /**
+     * Returns true if the client already has this version of the content.
+     * If-Modified-Since is only considered without If-None-Match.
+     *
+     * @param ifNoneMatch If-None-Match header value
+     * @param ifModifiedSince If-Modified-Since header value
+     * @param etag Entity tag of the content
+     * @param lastModified Last modification date of the content, null if unknown
+     * @return True if the content is not modified
+     */
+    public static boolean isNotModified(String ifNoneMatch, String ifModifiedSince, String etag, Long lastModified) {
+        if (ifNoneMatch != null) {
+            for (String tag : Splitter.on(',').trimResults().omitEmptyStrings().split(ifNoneMatch)) {
+                // Weak comparison
+                if (tag.equals("*") || (tag.startsWith("W/") ? tag.substring(2) : tag).equals(etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        Long since = parseHttpDate(ifModifiedSince);
+        return since != null && lastModified != null && lastModified / 1000 * 1000 <= since;
+    }
+
+    /**
+     * Returns true if a range can be served for this version of the content.
+     *
+     * @param ifRange If-Range header value, an entity tag or a date
+     * @param etag Entity tag of the content
+     * @param lastModified Last modification date of the content
+     * @return True if the range is valid
+     */
+    public static boolean isRangeValid(String ifRange, String etag, long lastModified) {
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.trim().startsWith("\"")) {
+            // Strong comparison
+            return ifRange.trim().equals(etag);
+        }
+        Long date = parseHttpDate(ifRange);
+        return date != null && date == lastModified / 1000 * 1000;
+    }
 }
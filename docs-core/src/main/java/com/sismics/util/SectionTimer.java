@@ -0,0 +1,67 @@
+package com.sismics.util;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Measures the time spent in consecutive sections of a task.
+ * Not thread-safe, a timer is meant to be used by one request.
+ *
+ * @author bgamard
+ */
+public class SectionTimer {
+    /**
+     * Elapsed nanoseconds per section, in order of execution.
+     */
+    private final Map<String, Long> sections = new LinkedHashMap<>();
+
+    /**
+     * End of the last section.
+     */
+    private long last = System.nanoTime();
+
+    /**
+     * Ends a section started at the end of the previous one (or at the creation of the timer).
+     *
+     * @param name Section name
+     */
+    public void mark(String name) {
+        long now = System.nanoTime();
+        sections.merge(name, now - last, Long::sum);
+        last = now;
+    }
+
+    /**
+     * Returns the elapsed time of a section.
+     *
+     * @param name Section name
+     * @return Elapsed time in nanoseconds, 0 if the section is unknown
+     */
+    public long getNanos(String name) {
+        return sections.getOrDefault(name, 0L);
+    }
+
+    /**
+     * Format the sections as a Server-Timing HTTP header value.
+     *
+     * @return Header value
+     */
+    public String toServerTiming() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Long> section : sections.entrySet()) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(section.getKey())
+                    .append(";dur=")
+                    .append(String.format(Locale.ENGLISH, "%.3f", section.getValue() / 1_000_000d));
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return toServerTiming();
+    }
+}
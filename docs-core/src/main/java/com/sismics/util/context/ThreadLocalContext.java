@@ -2,6 +2,7 @@ package com.sismics.util.context;
 
 import com.google.common.collect.Lists;
 import com.sismics.docs.core.model.context.AppContext;
+import com.sismics.util.jpa.EMF;
 
 import jakarta.persistence.EntityManager;
 import java.util.Iterator;
@@ -23,6 +24,16 @@ public class ThreadLocalContext {
      */
     private EntityManager entityManager;
 
+    /**
+     * Entity manager on the read replica, used instead of the main one if set.
+     */
+    private EntityManager readOnlyEntityManager;
+
+    /**
+     * True to open the entity manager and begin a transaction on first use.
+     */
+    private boolean openOnDemand;
+
     /**
      * List of async events posted during this request.
      */
@@ -62,6 +73,15 @@ public class ThreadLocalContext {
      * @return entityManager
      */
     public EntityManager getEntityManager() {
+        if (readOnlyEntityManager != null) {
+            readOnlyEntityManager.clear();
+            return readOnlyEntityManager;
+        }
+        if (entityManager == null && openOnDemand) {
+            // No connection is taken from the pool until the database is actually used
+            entityManager = EMF.get().createEntityManager();
+            entityManager.getTransaction().begin();
+        }
         if (entityManager != null && entityManager.isOpen()) {
             // This disables the L1 cache
             entityManager.flush();
@@ -79,6 +99,42 @@ public class ThreadLocalContext {
         this.entityManager = entityManager;
     }
 
+    /**
+     * Returns the entity manager without opening it on demand.
+     *
+     * @return Entity manager, null if not opened
+     */
+    public EntityManager getOpenedEntityManager() {
+        return entityManager;
+    }
+
+    /**
+     * Setter of openOnDemand.
+     *
+     * @param openOnDemand openOnDemand
+     */
+    public void setOpenOnDemand(boolean openOnDemand) {
+        this.openOnDemand = openOnDemand;
+    }
+
+    /**
+     * Getter of readOnlyEntityManager.
+     *
+     * @return readOnlyEntityManager
+     */
+    public EntityManager getReadOnlyEntityManager() {
+        return readOnlyEntityManager;
+    }
+
+    /**
+     * Setter of readOnlyEntityManager.
+     *
+     * @param readOnlyEntityManager readOnlyEntityManager
+     */
+    public void setReadOnlyEntityManager(EntityManager readOnlyEntityManager) {
+        this.readOnlyEntityManager = readOnlyEntityManager;
+    }
+
     /**
      * Add an async event to the queue to be fired after the current request.
      *
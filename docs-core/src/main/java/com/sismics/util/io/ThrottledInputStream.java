@@ -0,0 +1,59 @@
+package com.sismics.util.io;
+
+import com.google.common.util.concurrent.RateLimiter;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream read at a limited rate.
+ * Each byte read takes a permit from the rate limiter, which can be shared by several streams.
+ *
+ * @author bgamard
+ */
+public class ThrottledInputStream extends FilterInputStream {
+    /**
+     * Rate limiter, in bytes per second.
+     */
+    private final RateLimiter rateLimiter;
+
+    /**
+     * Constructor.
+     *
+     * @param in Input stream
+     * @param rateLimiter Rate limiter, in bytes per second
+     */
+    public ThrottledInputStream(InputStream in, RateLimiter rateLimiter) {
+        super(in);
+        this.rateLimiter = rateLimiter;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b != -1) {
+            rateLimiter.acquire();
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = super.read(b, off, len);
+        if (n > 0) {
+            rateLimiter.acquire(n);
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        // Skipped bytes may be read as well
+        long skipped = super.skip(n);
+        if (skipped > 0) {
+            rateLimiter.acquire((int) Math.min(skipped, Integer.MAX_VALUE));
+        }
+        return skipped;
+    }
+}
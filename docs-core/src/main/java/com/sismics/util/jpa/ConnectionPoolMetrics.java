@@ -0,0 +1,112 @@
+package com.sismics.util.jpa;
+
+import com.sismics.util.Histogram;
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of the JDBC connection pool.
+ *
+ * @author bgamard
+ */
+public class ConnectionPoolMetrics implements MetricsTrackerFactory {
+    /**
+     * Name of the tracked pool.
+     */
+    private String poolName;
+
+    /**
+     * Live statistics of the tracked pool.
+     */
+    private PoolStats poolStats;
+
+    /**
+     * Time spent waiting for a connection, in microseconds.
+     */
+    private final Histogram acquireHistogram = new Histogram(100, 500, 1_000, 5_000, 10_000, 50_000, 100_000, 500_000, 1_000_000, 5_000_000);
+
+    /**
+     * Time a connection is held before being returned to the pool, in milliseconds.
+     */
+    private final Histogram usageHistogram = new Histogram(10, 50, 100, 500, 1_000, 5_000, 10_000, 60_000);
+
+    /**
+     * Number of connection requests which timed out.
+     */
+    private final LongAdder timeoutCount = new LongAdder();
+
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats poolStats) {
+        this.poolName = poolName;
+        this.poolStats = poolStats;
+        return new IMetricsTracker() {
+            @Override
+            public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+                acquireHistogram.record(TimeUnit.NANOSECONDS.toMicros(elapsedAcquiredNanos));
+            }
+
+            @Override
+            public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+                usageHistogram.record(elapsedBorrowedMillis);
+            }
+
+            @Override
+            public void recordConnectionTimeout() {
+                timeoutCount.increment();
+            }
+        };
+    }
+
+    /**
+     * Returns true if a pool is tracked.
+     *
+     * @return True if tracked
+     */
+    public boolean isTracking() {
+        return poolStats != null;
+    }
+
+    public String getPoolName() {
+        return poolName;
+    }
+
+    public int getActiveConnections() {
+        return poolStats.getActiveConnections();
+    }
+
+    public int getIdleConnections() {
+        return poolStats.getIdleConnections();
+    }
+
+    public int getPendingThreads() {
+        return poolStats.getPendingThreads();
+    }
+
+    public int getTotalConnections() {
+        return poolStats.getTotalConnections();
+    }
+
+    public int getMinConnections() {
+        return poolStats.getMinConnections();
+    }
+
+    public int getMaxConnections() {
+        return poolStats.getMaxConnections();
+    }
+
+    public long getTimeoutCount() {
+        return timeoutCount.sum();
+    }
+
+    public Histogram getAcquireHistogram() {
+        return acquireHistogram;
+    }
+
+    public Histogram getUsageHistogram() {
+        return usageHistogram;
+    }
+}
@@ -2,7 +2,10 @@ package com.sismics.util.jpa;
 
 import com.google.common.base.Strings;
 import com.sismics.docs.core.util.DirectoryUtil;
+import com.zaxxer.hikari.HikariDataSource;
 import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
 import org.hibernate.internal.util.config.ConfigurationHelper;
 import org.hibernate.service.ServiceRegistry;
 import org.slf4j.Logger;
@@ -30,9 +33,22 @@ public final class EMF {
 
     private static EntityManagerFactory emfInstance;
 
+    /**
+     * Entity manager factory of the read replica, null if there is none.
+     */
+    private static EntityManagerFactory readOnlyEmfInstance;
+
+    /**
+     * Prefix of the properties overriding the primary ones for the read replica.
+     */
+    private static final String REPLICA_PREFIX = "replica.";
+
+    private static final ConnectionPoolMetrics connectionPoolMetrics = new ConnectionPoolMetrics();
+
     static {
         try {
-            properties = getEntityManagerProperties();
+            Properties allProperties = getEntityManagerProperties();
+            properties = getPrimaryProperties(allProperties);
 
             ConfigurationHelper.resolvePlaceHolders(properties);
             ServiceRegistry reg = new StandardServiceRegistryBuilder().applySettings(properties).build();
@@ -51,12 +67,65 @@ public final class EMF {
                 }
             };
             openHelper.open();
-            
-            emfInstance = Persistence.createEntityManagerFactory("transactions-optional", getEntityManagerProperties());
-            
+
+            // Release the connections used by the schema update
+            StandardServiceRegistryBuilder.destroy(reg);
+
+            emfInstance = Persistence.createEntityManagerFactory("transactions-optional", getPrimaryProperties(getEntityManagerProperties()));
+            trackConnectionPool();
         } catch (Throwable t) {
             log.error("Error creating EMF", t);
         }
+
+        try {
+            Properties replicaProperties = getReplicaProperties(getEntityManagerProperties());
+            if (replicaProperties != null) {
+                log.info("Using a read replica at " + replicaProperties.get("hibernate.connection.url"));
+                readOnlyEmfInstance = Persistence.createEntityManagerFactory("transactions-optional", replicaProperties);
+            }
+        } catch (Throwable t) {
+            log.error("Error creating the read replica EMF, reading from the primary database", t);
+        }
+    }
+
+    /**
+     * Returns the properties of the primary database.
+     *
+     * @param allProperties All properties
+     * @return Properties without the read replica ones
+     */
+    private static Properties getPrimaryProperties(Properties allProperties) {
+        Properties props = new Properties();
+        for (String name : allProperties.stringPropertyNames()) {
+            if (!name.startsWith(REPLICA_PREFIX)) {
+                props.put(name, allProperties.getProperty(name));
+            }
+        }
+        return props;
+    }
+
+    /**
+     * Returns the properties of the read replica: the primary ones, overridden by the replica ones.
+     * The replica connections are read-only, and the schema is never updated through them.
+     *
+     * @param allProperties All properties
+     * @return Properties of the read replica, null if there is none
+     */
+    private static Properties getReplicaProperties(Properties allProperties) {
+        Properties props = getPrimaryProperties(allProperties);
+        boolean replica = false;
+        for (String name : allProperties.stringPropertyNames()) {
+            if (name.startsWith(REPLICA_PREFIX)) {
+                props.put(name.substring(REPLICA_PREFIX.length()), allProperties.getProperty(name));
+                replica = true;
+            }
+        }
+        if (!replica) {
+            return null;
+        }
+        props.put("hibernate.hikari.poolName", "docs-replica");
+        props.put("hibernate.hikari.readOnly", "true");
+        return props;
     }
     
     private static Properties getEntityManagerProperties() {
@@ -79,10 +148,13 @@ public final class EMF {
         String databaseUrl = System.getenv("DATABASE_URL");
         String databaseUsername = System.getenv("DATABASE_USER");
         String databasePassword = System.getenv("DATABASE_PASSWORD");
-        String databasePoolSize = System.getenv("DATABASE_POOL_SIZE");
-        if(databasePoolSize == null) {
-            databasePoolSize = "10";
-        }
+        String databasePoolSize = getEnv("DATABASE_POOL_SIZE", "10");
+        String databasePoolMinIdle = getEnv("DATABASE_POOL_MIN_IDLE", "1");
+        String databasePoolConnectionTimeout = getEnv("DATABASE_POOL_CONNECTION_TIMEOUT", "30000");
+        String databasePoolLeakDetectionThreshold = getEnv("DATABASE_POOL_LEAK_DETECTION_THRESHOLD", "60000");
+        String databasePoolStatementCacheSize = getEnv("DATABASE_POOL_STATEMENT_CACHE_SIZE", "256");
+        String databaseBatchSize = getEnv("DATABASE_BATCH_SIZE", "50");
+        String databaseReplicaUrl = System.getenv("DATABASE_REPLICA_URL");
 
         log.info("Configuring EntityManager from environment parameters");
         Properties props = new Properties();
@@ -100,17 +172,63 @@ public final class EMF {
             props.put("hibernate.connection.url", databaseUrl);
             props.put("hibernate.connection.username", databaseUsername);
             props.put("hibernate.connection.password", databasePassword);
+
+            // Server-side prepared statements, cached per connection by the driver
+            props.put("hibernate.hikari.dataSource.prepareThreshold", "3");
+            props.put("hibernate.hikari.dataSource.preparedStatementCacheQueries", databasePoolStatementCacheSize);
+
+            // Optional read replica, with the same credentials by default
+            if (!Strings.isNullOrEmpty(databaseReplicaUrl)) {
+                props.put(REPLICA_PREFIX + "hibernate.connection.url", databaseReplicaUrl);
+                props.put(REPLICA_PREFIX + "hibernate.connection.username", Strings.nullToEmpty(getEnv("DATABASE_REPLICA_USER", databaseUsername)));
+                props.put(REPLICA_PREFIX + "hibernate.connection.password", Strings.nullToEmpty(getEnv("DATABASE_REPLICA_PASSWORD", databasePassword)));
+            }
         }
         props.put("hibernate.hbm2ddl.auto", "");
         props.put("hibernate.show_sql", "false");
         props.put("hibernate.format_sql", "false");
         props.put("hibernate.max_fetch_depth", "5");
         props.put("hibernate.cache.use_second_level_cache", "false");
-        props.put("hibernate.connection.initial_pool_size", "1");
-        props.put("hibernate.connection.pool_size", databasePoolSize);
-        props.put("hibernate.connection.pool_validation_interval", "5");
+
+        // Group the inserts and updates of a flush in JDBC batches
+        props.put("hibernate.jdbc.batch_size", databaseBatchSize);
+        props.put("hibernate.order_inserts", "true");
+        props.put("hibernate.order_updates", "true");
+        props.put("hibernate.jdbc.batch_versioned_data", "true");
+        props.put("hibernate.connection.provider_class", "org.hibernate.hikaricp.internal.HikariCPConnectionProvider");
+        props.put("hibernate.connection.autocommit", "false");
+        props.put("hibernate.hikari.poolName", "docs");
+        props.put("hibernate.hikari.minimumIdle", databasePoolMinIdle);
+        props.put("hibernate.hikari.maximumPoolSize", databasePoolSize);
+        props.put("hibernate.hikari.connectionTimeout", databasePoolConnectionTimeout);
+        props.put("hibernate.hikari.leakDetectionThreshold", databasePoolLeakDetectionThreshold);
         return props;
     }
+
+    /**
+     * Returns an environment variable, or a default value if not set.
+     *
+     * @param name Environment variable name
+     * @param defaultValue Default value
+     * @return Value
+     */
+    private static String getEnv(String name, String defaultValue) {
+        String value = System.getenv(name);
+        return Strings.isNullOrEmpty(value) ? defaultValue : value;
+    }
+
+    /**
+     * Plug the metrics tracker into the connection pool, if the pool is HikariCP.
+     */
+    private static void trackConnectionPool() {
+        ConnectionProvider connectionProvider = emfInstance.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry().getService(ConnectionProvider.class);
+        if (connectionProvider != null && connectionProvider.isUnwrappableAs(HikariDataSource.class)) {
+            connectionProvider.unwrap(HikariDataSource.class).setMetricsTrackerFactory(connectionPoolMetrics);
+        } else {
+            log.warn("The connection pool is not HikariCP, pool metrics are disabled");
+        }
+    }
     
     /**
      * Private constructor.
@@ -127,6 +245,24 @@ public final class EMF {
         return emfInstance;
     }
 
+    /**
+     * Returns the entity manager factory of the read replica.
+     *
+     * @return Read replica EMF, null if there is none
+     */
+    public static EntityManagerFactory getReadOnly() {
+        return readOnlyEmfInstance;
+    }
+
+    /**
+     * Returns the connection pool metrics.
+     *
+     * @return Connection pool metrics
+     */
+    public static ConnectionPoolMetrics getConnectionPoolMetrics() {
+        return connectionPoolMetrics;
+    }
+
     public static boolean isDriverH2() {
         String driver = getDriver();
         return driver.contains("h2");
@@ -0,0 +1,130 @@
+package com.sismics.util.jpa;
+
+import com.google.common.base.Strings;
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Access to the read replica, when it is not lagging too much behind the primary database.
+ *
+ * @author bgamard
+ */
+public final class ReadReplica {
+    private static final Logger log = LoggerFactory.getLogger(ReadReplica.class);
+
+    /**
+     * Maximum replication lag in milliseconds, before falling back to the primary database.
+     */
+    private static final long MAX_LAG = TimeUnit.SECONDS.toMillis(getMaxLag());
+
+    /**
+     * Replication lag checks interval in milliseconds.
+     */
+    private static final long CHECK_INTERVAL = TimeUnit.SECONDS.toMillis(5);
+
+    /**
+     * Last replication lag check.
+     */
+    private static volatile long lastCheck;
+
+    /**
+     * True if the replication lag was acceptable at the last check.
+     */
+    private static volatile boolean upToDate;
+
+    /**
+     * Private constructor.
+     */
+    private ReadReplica() {
+    }
+
+    /**
+     * Creates an entity manager on the read replica, with a read-only transaction started.
+     *
+     * @return Entity manager, null if there is no read replica or if it is lagging
+     */
+    public static EntityManager createEntityManager() {
+        EntityManagerFactory emf = EMF.getReadOnly();
+        if (emf == null || !isUpToDate(emf)) {
+            return null;
+        }
+
+        EntityManager em = emf.createEntityManager();
+        Session session = em.unwrap(Session.class);
+        session.setDefaultReadOnly(true);
+        session.setHibernateFlushMode(FlushMode.MANUAL);
+        em.getTransaction().begin();
+        return em;
+    }
+
+    /**
+     * Returns true if the replication lag is acceptable, checked at most every few seconds.
+     *
+     * @param emf Read replica EMF
+     * @return True if up to date
+     */
+    private static boolean isUpToDate(EntityManagerFactory emf) {
+        long now = System.currentTimeMillis();
+        if (now - lastCheck > CHECK_INTERVAL) {
+            synchronized (ReadReplica.class) {
+                if (now - lastCheck > CHECK_INTERVAL) {
+                    boolean wasUpToDate = upToDate;
+                    upToDate = getLag(emf) <= MAX_LAG;
+                    lastCheck = now;
+                    if (wasUpToDate && !upToDate) {
+                        log.warn("The read replica is lagging, reading from the primary database");
+                    }
+                }
+            }
+        }
+        return upToDate;
+    }
+
+    /**
+     * Returns the replication lag.
+     *
+     * @param emf Read replica EMF
+     * @return Lag in milliseconds, max value if unknown
+     */
+    private static long getLag(EntityManagerFactory emf) {
+        if (!EMF.isDriverPostgresql()) {
+            return 0;
+        }
+
+        EntityManager em = emf.createEntityManager();
+        try {
+            // No lag if everything received has been replayed, or if the replica is actually a primary
+            Object lag = em.createNativeQuery("select case when pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() then 0"
+                    + " else coalesce(extract(epoch from now() - pg_last_xact_replay_timestamp()), 0) end").getSingleResult();
+            return (long) (((Number) lag).doubleValue() * 1000);
+        } catch (Exception e) {
+            log.error("Error checking the read replica lag", e);
+            return Long.MAX_VALUE;
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * Returns the maximum replication lag.
+     *
+     * @return Lag in seconds
+     */
+    private static long getMaxLag() {
+        String maxLag = System.getenv("DATABASE_REPLICA_MAX_LAG");
+        if (!Strings.isNullOrEmpty(maxLag)) {
+            try {
+                return Long.parseLong(maxLag);
+            } catch (NumberFormatException e) {
+                log.warn("DATABASE_REPLICA_MAX_LAG needs to be a number of seconds. Falling back to 5.");
+            }
+        }
+        return 5;
+    }
+}
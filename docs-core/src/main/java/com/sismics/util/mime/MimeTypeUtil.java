@@ -3,7 +3,9 @@ package com.sismics.util.mime;
 import java.io.IOException;
 import java.net.URLConnection;
 import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 
 /**
  * Utility to check MIME types.
@@ -33,6 +35,127 @@ public class MimeTypeUtil {
         return mimeType;
     }
     
+    /**
+     * Number of bytes at the start of a file needed to guess its MIME type.
+     */
+    public static final int HEADER_SIZE = 8;
+
+    /**
+     * Try to guess the MIME type of a file from its first bytes and its name.
+     * The content is trusted over the name, except for ZIP containers (ODT, DOCX...) which are told apart by the name.
+     *
+     * @param header First bytes of the file, at most {@link #HEADER_SIZE} are used
+     * @param name File name
+     * @return MIME type
+     */
+    public static String guessMimeType(byte[] header, String name) {
+        String mimeType = guessMimeTypeFromHeader(header);
+        String nameMimeType = guessMimeTypeFromName(name);
+        if (mimeType == null || MimeType.APPLICATION_ZIP.equals(mimeType) && nameMimeType != null && nameMimeType.startsWith("application/")) {
+            mimeType = nameMimeType;
+        }
+
+        if (mimeType == null) {
+            return MimeType.DEFAULT;
+        }
+
+        return mimeType;
+    }
+
+    /**
+     * Guess a MIME type from the magic bytes at the start of a file.
+     *
+     * @param header First bytes of the file
+     * @return MIME type, null if unknown
+     */
+    private static String guessMimeTypeFromHeader(byte[] header) {
+        if (startsWith(header, 0x25, 0x50, 0x44, 0x46, 0x2D)) {
+            return MimeType.APPLICATION_PDF;
+        }
+        if (startsWith(header, 0x89, 0x50, 0x4E, 0x47, 0x0D, 0x0A, 0x1A, 0x0A)) {
+            return MimeType.IMAGE_PNG;
+        }
+        if (startsWith(header, 0xFF, 0xD8, 0xFF)) {
+            return MimeType.IMAGE_JPEG;
+        }
+        if (startsWith(header, 0x47, 0x49, 0x46, 0x38)) {
+            return MimeType.IMAGE_GIF;
+        }
+        if (startsWith(header, 0x50, 0x4B, 0x03, 0x04)) {
+            return MimeType.APPLICATION_ZIP;
+        }
+        return null;
+    }
+
+    /**
+     * Guess a MIME type from the extension of a file name.
+     *
+     * @param name File name
+     * @return MIME type, null if unknown
+     */
+    private static String guessMimeTypeFromName(String name) {
+        if (name == null) {
+            return null;
+        }
+
+        String mimeType = null;
+        try {
+            mimeType = Files.probeContentType(Paths.get(name));
+        } catch (IOException | InvalidPathException e) {
+            // The name is not usable as a path, fallback to the file name map
+        }
+        if (mimeType == null) {
+            mimeType = URLConnection.getFileNameMap().getContentTypeFor(name);
+        }
+        return mimeType;
+    }
+
+    /**
+     * Returns true if some bytes start with a signature.
+     *
+     * @param bytes Bytes
+     * @param signature Signature, as unsigned bytes
+     * @return True if the bytes start with the signature
+     */
+    private static boolean startsWith(byte[] bytes, int... signature) {
+        if (bytes.length < signature.length) {
+            return false;
+        }
+        for (int i = 0; i < signature.length; i++) {
+            if ((bytes[i] & 0xFF) != signature[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if the content of a MIME type is already compressed.
+     * Compressing it again costs time for no size benefit.
+     *
+     * @param mimeType MIME type
+     * @return True if the content is compressed
+     */
+    public static boolean isCompressed(String mimeType) {
+        if (mimeType == null) {
+            return false;
+        }
+        switch (mimeType) {
+            case MimeType.APPLICATION_ZIP:
+            case MimeType.IMAGE_GIF:
+            case MimeType.IMAGE_JPEG:
+            case MimeType.IMAGE_PNG:
+            case MimeType.APPLICATION_PDF:
+            case MimeType.OPEN_DOCUMENT_TEXT:
+            case MimeType.OFFICE_DOCUMENT:
+            case MimeType.OFFICE_PRESENTATION:
+            case MimeType.OFFICE_SHEET:
+                return true;
+            default:
+                return mimeType.startsWith("video/") || mimeType.startsWith("audio/");
+        }
+    }
+
     /**
      * Get a file extension linked to a MIME type.
      * 
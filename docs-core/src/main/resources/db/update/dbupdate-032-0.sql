@@ -0,0 +1,5 @@
+alter table T_DOCUMENT add column DOC_SHARECOUNT_N int not null default 0;
+alter table T_DOCUMENT add column DOC_IDCURRENTSTEP_C varchar(36);
+update T_DOCUMENT set DOC_SHARECOUNT_N = (select count(s.SHA_ID_C) from T_SHARE s, T_ACL ac where ac.ACL_SOURCEID_C = DOC_ID_C and ac.ACL_TARGETID_C = s.SHA_ID_C and ac.ACL_DELETEDATE_D is null and s.SHA_DELETEDATE_D is null);
+update T_DOCUMENT set DOC_IDCURRENTSTEP_C = (select min(rs.RTP_ID_C) from T_ROUTE_STEP rs join T_ROUTE r on r.RTE_ID_C = rs.RTP_IDROUTE_C and r.RTE_DELETEDATE_D is null where r.RTE_IDDOCUMENT_C = DOC_ID_C and rs.RTP_DELETEDATE_D is null and rs.RTP_ENDDATE_D is null and rs.RTP_ORDER_N = (select min(rs2.RTP_ORDER_N) from T_ROUTE_STEP rs2 where rs2.RTP_IDROUTE_C = rs.RTP_IDROUTE_C and rs2.RTP_DELETEDATE_D is null and rs2.RTP_ENDDATE_D is null));
+update T_CONFIG set CFG_VALUE_C = '32' where CFG_ID_C = 'DB_VERSION';
@@ -0,0 +1,12 @@
+create index IDX_ACL_COMPOSITE on T_ACL (ACL_SOURCEID_C, ACL_TARGETID_C, ACL_PERM_C, ACL_DELETEDATE_D);
+create index IDX_ACL_TARGET_COMPOSITE on T_ACL (ACL_TARGETID_C, ACL_PERM_C, ACL_DELETEDATE_D);
+create index IDX_DOT_IDTAG_COMPOSITE on T_DOCUMENT_TAG (DOT_IDTAG_C, DOT_DELETEDATE_D);
+create index IDX_FIL_IDDOC_COMPOSITE on T_FILE (FIL_IDDOC_C, FIL_DELETEDATE_D, FIL_LATESTVERSION_B);
+create index IDX_RTE_IDDOCUMENT_C on T_ROUTE (RTE_IDDOCUMENT_C, RTE_DELETEDATE_D);
+create index IDX_RTP_IDROUTE_C on T_ROUTE_STEP (RTP_IDROUTE_C, RTP_DELETEDATE_D, RTP_ENDDATE_D, RTP_ORDER_N);
+create index IDX_LOG_IDUSER_C on T_AUDIT_LOG (LOG_IDUSER_C, LOG_CREATEDATE_D);
+create index IDX_DME_IDDOCUMENT_C on T_DOCUMENT_METADATA (DME_IDDOCUMENT_C);
+create index IDX_CTR_IDDOC_C on T_CONTRIBUTOR (CTR_IDDOC_C);
+create index IDX_REL_IDDOCFROM_C on T_RELATION (REL_IDDOCFROM_C, REL_DELETEDATE_D);
+create index IDX_REL_IDDOCTO_C on T_RELATION (REL_IDDOCTO_C, REL_DELETEDATE_D);
+update T_CONFIG set CFG_VALUE_C = '33' where CFG_ID_C = 'DB_VERSION';
@@ -0,0 +1,2 @@
+create index IDX_LOG_CREATEDATE_D on T_AUDIT_LOG (LOG_CREATEDATE_D, LOG_ID_C);
+update T_CONFIG set CFG_VALUE_C = '34' where CFG_ID_C = 'DB_VERSION';
@@ -0,0 +1,6 @@
+create cached table T_BLOB ( BLB_ID_C varchar(64) not null, BLB_SIZE_N bigint not null, BLB_REFCOUNT_N int not null, BLB_CREATEDATE_D datetime not null, primary key (BLB_ID_C) );
+alter table T_FILE add column FIL_IDBLOB_C varchar(64);
+alter table T_FILE add column FIL_BLOBKEY_C varchar(200);
+alter table T_FILE add constraint FK_FIL_IDBLOB_C foreign key (FIL_IDBLOB_C) references T_BLOB (BLB_ID_C) on delete restrict on update restrict;
+create index IDX_FIL_IDBLOB_C on T_FILE (FIL_IDBLOB_C);
+update T_CONFIG set CFG_VALUE_C = '35' where CFG_ID_C = 'DB_VERSION';
@@ -0,0 +1,4 @@
+create cached table T_UPLOAD ( UPL_ID_C varchar(36) not null, UPL_IDUSER_C varchar(36) not null, UPL_IDDOC_C varchar(36), UPL_IDPREVIOUSFILE_C varchar(36), UPL_NAME_C varchar(200), UPL_SIZE_N bigint, UPL_CREATEDATE_D datetime not null, UPL_UPDATEDATE_D datetime not null, primary key (UPL_ID_C) );
+alter table T_UPLOAD add constraint FK_UPL_IDUSER_C foreign key (UPL_IDUSER_C) references T_USER (USE_ID_C) on delete restrict on update restrict;
+create index IDX_UPL_UPDATEDATE_D on T_UPLOAD (UPL_UPDATEDATE_D);
+update T_CONFIG set CFG_VALUE_C = '36' where CFG_ID_C = 'DB_VERSION';
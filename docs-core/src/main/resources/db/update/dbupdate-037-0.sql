@@ -0,0 +1,3 @@
+alter table T_FILE add column FIL_CHECKSUM_C varchar(64);
+alter table T_BLOB add column BLB_CHECKSUM_C varchar(64);
+update T_CONFIG set CFG_VALUE_C = '37' where CFG_ID_C = 'DB_VERSION';
@@ -0,0 +1,4 @@
+drop index IDX_ACL_SOURCEID_C;
+drop index IDX_ACL_TARGETID_C;
+create index IDX_DOC_DELETEDATE_COMPOSITE on T_DOCUMENT (DOC_DELETEDATE_D, DOC_CREATEDATE_D);
+update T_CONFIG set CFG_VALUE_C = '38' where CFG_ID_C = 'DB_VERSION';
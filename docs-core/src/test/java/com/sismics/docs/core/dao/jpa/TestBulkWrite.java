@@ -0,0 +1,113 @@
+package com.sismics.docs.core.dao.jpa;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.sismics.docs.BaseTransactionalTest;
+import com.sismics.docs.core.dao.DocumentDao;
+import com.sismics.docs.core.dao.RelationDao;
+import com.sismics.docs.core.dao.TagDao;
+import com.sismics.docs.core.dao.criteria.TagCriteria;
+import com.sismics.docs.core.model.jpa.Document;
+import com.sismics.docs.core.model.jpa.Tag;
+import com.sismics.docs.core.model.jpa.User;
+import com.sismics.util.context.ThreadLocalContext;
+import com.sismics.util.jpa.RecordingStatementInspector;
+import org.junit.Assert;
+import org.junit.Test;
+
+import jakarta.persistence.EntityManager;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Tests of the bulk write paths: the number of statements must not depend on the size of the lists.
+ *
+ * @author bgamard
+ */
+public class TestBulkWrite extends BaseTransactionalTest {
+    @Test
+    public void testUpdateTagList() throws Exception {
+        User user = createUser("bulktag");
+        String documentId = createDocument(user);
+        TagDao tagDao = new TagDao();
+        List<String> tagIdList = Lists.newArrayList();
+        for (int i = 0; i < 200; i++) {
+            Tag tag = new Tag();
+            tag.setName("bulk" + i);
+            tag.setColor("#ffffff");
+            tag.setUserId(user.getId());
+            tagIdList.add(tagDao.create(tag, user.getId()));
+        }
+        flush();
+
+        // Link 10 tags, then 200 tags: same number of statements
+        int smallCount = countStatements(() -> tagDao.updateTagList(documentId, Sets.newHashSet(tagIdList.subList(0, 10))));
+        int largeCount = countStatements(() -> tagDao.updateTagList(documentId, Sets.newHashSet(tagIdList)));
+        Assert.assertEquals(smallCount, largeCount);
+        Assert.assertEquals(200, tagDao.findByCriteria(new TagCriteria().setDocumentId(documentId), null).size());
+
+        // Unlink 150 tags in one statement
+        int deleteCount = countStatements(() -> tagDao.updateTagList(documentId, Sets.newHashSet(tagIdList.subList(150, 200))));
+        Assert.assertTrue(deleteCount <= smallCount);
+        Assert.assertEquals(50, tagDao.findByCriteria(new TagCriteria().setDocumentId(documentId), null).size());
+
+        // Unlink everything
+        tagDao.updateTagList(documentId, Sets.newHashSet());
+        flush();
+        Assert.assertEquals(0, tagDao.findByCriteria(new TagCriteria().setDocumentId(documentId), null).size());
+    }
+
+    @Test
+    public void testUpdateRelationList() throws Exception {
+        User user = createUser("bulkrelation");
+        String documentId = createDocument(user);
+        List<String> documentIdList = Lists.newArrayList();
+        for (int i = 0; i < 100; i++) {
+            documentIdList.add(createDocument(user));
+        }
+        flush();
+
+        DocumentDao documentDao = new DocumentDao();
+        Set<String> activeIdSet = documentDao.filterActiveIds(Lists.newArrayList(documentIdList.get(0), "unknown"));
+        Assert.assertEquals(Sets.newHashSet(documentIdList.get(0)), activeIdSet);
+
+        RelationDao relationDao = new RelationDao();
+        int smallCount = countStatements(() -> relationDao.updateRelationList(documentId, Sets.newHashSet(documentIdList.subList(0, 5))));
+        int largeCount = countStatements(() -> relationDao.updateRelationList(documentId, Sets.newHashSet(documentIdList)));
+        Assert.assertEquals(smallCount, largeCount);
+        Assert.assertEquals(100, relationDao.getByDocumentId(documentId).size());
+
+        relationDao.updateRelationList(documentId, Sets.newHashSet(documentIdList.subList(0, 30)));
+        flush();
+        Assert.assertEquals(30, relationDao.getByDocumentId(documentId).size());
+    }
+
+    /**
+     * Count the statements sent to the database by an operation, including the flush.
+     *
+     * @param operation Operation
+     * @return Number of statements
+     */
+    private int countStatements(Runnable operation) {
+        RecordingStatementInspector.start();
+        operation.run();
+        flush();
+        return RecordingStatementInspector.stop().size();
+    }
+
+    private String createDocument(User user) {
+        Document document = new Document();
+        document.setUserId(user.getId());
+        document.setTitle("Bulk");
+        document.setLanguage("eng");
+        document.setCreateDate(new Date());
+        return new DocumentDao().create(document, user.getId());
+    }
+
+    private static void flush() {
+        EntityManager em = ThreadLocalContext.get().getEntityManager();
+        em.flush();
+        em.clear();
+    }
+}
@@ -0,0 +1,241 @@
+package com.sismics.docs.core.dao.jpa;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.sismics.docs.BaseTransactionalTest;
+import com.sismics.docs.core.constant.PermType;
+import com.sismics.docs.core.dao.AclDao;
+import com.sismics.docs.core.dao.TagDao;
+import com.sismics.docs.core.dao.criteria.DocumentCriteria;
+import com.sismics.docs.core.dao.criteria.TagCriteria;
+import com.sismics.docs.core.dao.dto.DocumentDto;
+import com.sismics.docs.core.model.jpa.User;
+import com.sismics.docs.core.util.indexing.LuceneIndexingHandler;
+import com.sismics.docs.core.util.jpa.PaginatedList;
+import com.sismics.docs.core.util.jpa.PaginatedLists;
+import com.sismics.docs.core.util.jpa.SortCriteria;
+import com.sismics.util.context.ThreadLocalContext;
+import com.sismics.util.jpa.RecordingStatementInspector;
+import org.hibernate.Session;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Query plan regression tests of the hot queries, on a synthetic dataset.
+ * A query fails if it scans a table which should be accessed by index.
+ *
+ * @author bgamard
+ */
+public class TestQueryPlan extends BaseTransactionalTest {
+    /**
+     * Full table scan in an H2 query plan.
+     */
+    private static final Pattern TABLE_SCAN = Pattern.compile("PUBLIC\\.(\\w+)\\.tableScan");
+
+    /**
+     * Number of documents of the dataset.
+     */
+    private static final int DOCUMENT_COUNT = 500;
+
+    /**
+     * One document out of this number is shared.
+     */
+    private static final int SHARED_MODULO = 5;
+
+    /**
+     * Number of tags of the dataset.
+     */
+    private static final int TAG_COUNT = 50;
+
+    /**
+     * Owner of the dataset.
+     */
+    private User user;
+
+    /**
+     * Number of ACLs of the dataset.
+     */
+    private int aclCount;
+
+    @Before
+    public void createDataset() throws Exception {
+        user = createUser("queryplan");
+        ThreadLocalContext.get().getEntityManager().flush();
+        getSession().doWork(connection -> {
+            Timestamp now = new Timestamp(System.currentTimeMillis());
+            try (PreparedStatement document = connection.prepareStatement("insert into T_DOCUMENT (DOC_ID_C, DOC_IDUSER_C, DOC_TITLE_C, DOC_LANGUAGE_C, DOC_CREATEDATE_D, DOC_UPDATEDATE_D, DOC_SHARECOUNT_N) values (?, ?, ?, 'eng', ?, ?, ?)");
+                 PreparedStatement tag = connection.prepareStatement("insert into T_TAG (TAG_ID_C, TAG_NAME_C, TAG_IDUSER_C, TAG_CREATEDATE_D, TAG_COLOR_C) values (?, ?, ?, ?, '#ffffff')");
+                 PreparedStatement documentTag = connection.prepareStatement("insert into T_DOCUMENT_TAG (DOT_ID_C, DOT_IDDOCUMENT_C, DOT_IDTAG_C) values (?, ?, ?)");
+                 PreparedStatement acl = connection.prepareStatement("insert into T_ACL (ACL_ID_C, ACL_PERM_C, ACL_TYPE_C, ACL_SOURCEID_C, ACL_TARGETID_C) values (?, ?, 'USER', ?, ?)")) {
+                for (int i = 0; i < TAG_COUNT; i++) {
+                    tag.setString(1, "qp-tag-" + i);
+                    tag.setString(2, "qptag" + i);
+                    tag.setString(3, user.getId());
+                    tag.setTimestamp(4, now);
+                    tag.addBatch();
+                    addAcl(acl, "qp-tag-" + i, "qp-group-" + (i % 10), PermType.READ);
+                }
+                for (int i = 0; i < DOCUMENT_COUNT; i++) {
+                    String documentId = "qp-doc-" + i;
+                    document.setString(1, documentId);
+                    document.setString(2, user.getId());
+                    document.setString(3, "Document " + i);
+                    document.setTimestamp(4, now);
+                    document.setTimestamp(5, now);
+                    document.setInt(6, i % SHARED_MODULO == 0 ? 1 : 0);
+                    document.addBatch();
+                    documentTag.setString(1, "qp-dt-" + i);
+                    documentTag.setString(2, documentId);
+                    documentTag.setString(3, "qp-tag-" + (i % TAG_COUNT));
+                    documentTag.addBatch();
+                    addAcl(acl, documentId, user.getId(), PermType.READ);
+                    addAcl(acl, documentId, user.getId(), PermType.WRITE);
+                    addAcl(acl, documentId, "qp-group-" + (i % 10), PermType.READ);
+                }
+                tag.executeBatch();
+                document.executeBatch();
+                documentTag.executeBatch();
+                acl.executeBatch();
+            }
+        });
+    }
+
+    @Test
+    public void testDocumentList() throws Exception {
+        DocumentCriteria criteria = new DocumentCriteria();
+        criteria.setTargetIdList(Lists.newArrayList(user.getId(), "qp-group-1"));
+        PaginatedList<DocumentDto> paginatedList = PaginatedLists.create(10, 0);
+
+        RecordingStatementInspector.start();
+        new LuceneIndexingHandler().findByCriteria(paginatedList, new ArrayList<>(), criteria, new SortCriteria(3, false));
+        List<String> sqlList = RecordingStatementInspector.stop();
+
+        Assert.assertEquals(10, paginatedList.getResultList().size());
+        // Live documents are reached by index, not by scanning the deleted ones too
+        assertNoTableScan(sqlList);
+        assertIndexUsed(sqlList, "IDX_DOC_DELETEDATE_COMPOSITE");
+    }
+
+    @Test
+    public void testSharedDocumentList() throws Exception {
+        DocumentCriteria criteria = new DocumentCriteria();
+        criteria.setTargetIdList(Lists.newArrayList(user.getId()));
+        criteria.setShared(true);
+        PaginatedList<DocumentDto> paginatedList = PaginatedLists.create(10, 0);
+
+        RecordingStatementInspector.start();
+        new LuceneIndexingHandler().findByCriteria(paginatedList, new ArrayList<>(), criteria, new SortCriteria(3, false));
+        List<String> sqlList = RecordingStatementInspector.stop();
+
+        // The shared documents are filtered on their share count, without counting the shares
+        Assert.assertEquals(DOCUMENT_COUNT / SHARED_MODULO, paginatedList.getResultCount());
+        Assert.assertEquals(10, paginatedList.getResultList().size());
+        Assert.assertTrue(paginatedList.getResultList().stream().allMatch(DocumentDto::getShared));
+        assertNoTableScan(sqlList);
+        Assert.assertTrue(sqlList.stream().noneMatch(sql -> sql.contains("T_SHARE")));
+    }
+
+    @Test
+    public void testCheckPermission() {
+        RecordingStatementInspector.start();
+        boolean writable = new AclDao().checkPermission("qp-doc-42", PermType.WRITE, Lists.newArrayList(user.getId(), "qp-group-2"));
+        List<String> sqlList = RecordingStatementInspector.stop();
+
+        Assert.assertTrue(writable);
+        assertNoTableScan(sqlList);
+    }
+
+    @Test
+    public void testTagFindByCriteria() {
+        RecordingStatementInspector.start();
+        new TagDao().findByCriteria(new TagCriteria()
+                .setTargetIdList(Lists.newArrayList("qp-group-3"))
+                .setDocumentId("qp-doc-3"), new SortCriteria(1, true));
+        new TagDao().findByDocumentsIds(Sets.newHashSet("qp-doc-3", "qp-doc-4"), Lists.newArrayList("qp-group-3"));
+        List<String> sqlList = RecordingStatementInspector.stop();
+
+        // Users are joined on the few tags found
+        assertNoTableScan(sqlList, "T_USER");
+    }
+
+    /**
+     * Asserts that no recorded query scans a table, except the allowed ones.
+     *
+     * @param sqlList Recorded queries
+     * @param allowedTables Tables allowed to be scanned
+     */
+    private void assertNoTableScan(List<String> sqlList, String... allowedTables) {
+        Assert.assertFalse(sqlList.isEmpty());
+        Set<String> allowedTableSet = Sets.newHashSet(allowedTables);
+        for (String sql : sqlList) {
+            String plan = explain(sql);
+            Matcher matcher = TABLE_SCAN.matcher(plan);
+            while (matcher.find()) {
+                Assert.assertTrue("Full scan of " + matcher.group(1) + " in plan: " + plan,
+                        allowedTableSet.contains(matcher.group(1)));
+            }
+        }
+    }
+
+    /**
+     * Asserts that the plan of every recorded query uses an index.
+     *
+     * @param sqlList Recorded queries
+     * @param index Index name
+     */
+    private void assertIndexUsed(List<String> sqlList, String index) {
+        Assert.assertFalse(sqlList.isEmpty());
+        for (String sql : sqlList) {
+            String plan = explain(sql);
+            Assert.assertTrue("Index " + index + " not used in plan: " + plan, plan.contains("PUBLIC." + index));
+        }
+    }
+
+    /**
+     * Returns the query plan of a query, with all parameters set to null.
+     *
+     * @param sql Query
+     * @return Query plan
+     */
+    private String explain(String sql) {
+        return getSession().doReturningWork(connection -> {
+            try (PreparedStatement ps = connection.prepareStatement("explain " + sql)) {
+                int parameterCount = ps.getParameterMetaData().getParameterCount();
+                for (int i = 1; i <= parameterCount; i++) {
+                    ps.setNull(i, Types.VARCHAR);
+                }
+                try (ResultSet rs = ps.executeQuery()) {
+                    StringBuilder plan = new StringBuilder();
+                    while (rs.next()) {
+                        plan.append(rs.getString(1));
+                    }
+                    return plan.toString();
+                }
+            }
+        });
+    }
+
+    private void addAcl(PreparedStatement acl, String sourceId, String targetId, PermType perm) throws SQLException {
+        acl.setString(1, "qp-acl-" + aclCount++);
+        acl.setString(2, perm.name());
+        acl.setString(3, sourceId);
+        acl.setString(4, targetId);
+        acl.addBatch();
+    }
+
+    private static Session getSession() {
+        return ThreadLocalContext.get().getEntityManager().unwrap(Session.class);
+    }
+}
@@ -0,0 +1,83 @@
+package com.sismics.docs.core.service;
+
+import com.google.common.io.CharStreams;
+import com.sismics.docs.BaseTransactionalTest;
+import com.sismics.docs.core.constant.AuditLogType;
+import com.sismics.docs.core.dao.AuditLogDao;
+import com.sismics.docs.core.model.jpa.AuditLog;
+import com.sismics.util.context.ThreadLocalContext;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Test of the audit log archive service.
+ *
+ * @author bgamard
+ */
+public class TestAuditLogArchiveService extends BaseTransactionalTest {
+    @Test
+    public void archiveTest() throws Exception {
+        // 2500 audit logs in January 2001, and one in February
+        for (int i = 0; i < 2500; i++) {
+            createAuditLog("archive-" + i, LocalDateTime.of(2001, 1, 1 + i % 31, 12, 0), "Message, \"quoted\" " + i);
+        }
+        createAuditLog("archive-february", LocalDateTime.of(2001, 2, 1, 0, 0), null);
+        ThreadLocalContext.get().getEntityManager().flush();
+        AuditLogDao auditLogDao = new AuditLogDao();
+        Assert.assertEquals(toDate(LocalDateTime.of(2001, 1, 1, 12, 0)), auditLogDao.getOldestCreateDate());
+
+        AuditLogArchiveService auditLogArchiveService = new AuditLogArchiveService();
+        Path archiveFile = auditLogArchiveService.archive(YearMonth.of(2001, 1));
+        Path otherArchiveFile = null;
+        try {
+            Assert.assertTrue(archiveFile.getFileName().toString().startsWith("audit-log-2001-01"));
+            List<String> lineList;
+            try (Reader reader = new InputStreamReader(new GZIPInputStream(Files.newInputStream(archiveFile)), StandardCharsets.UTF_8)) {
+                lineList = CharStreams.readLines(reader);
+            }
+            Assert.assertEquals(2501, lineList.size());
+            Assert.assertEquals("id,create_date,user_id,entity_id,entity_class,type,message", lineList.get(0));
+            Assert.assertTrue(lineList.get(1).endsWith(",admin,archive-0,Document,CREATE,\"Message, \"\"quoted\"\" 0\""));
+
+            // Only February is left
+            Assert.assertEquals(toDate(LocalDateTime.of(2001, 2, 1, 0, 0)), auditLogDao.getOldestCreateDate());
+
+            // Archiving the same month again does not overwrite the archive
+            otherArchiveFile = auditLogArchiveService.archive(YearMonth.of(2001, 1));
+            Assert.assertNotEquals(archiveFile, otherArchiveFile);
+        } finally {
+            Files.deleteIfExists(archiveFile);
+            if (otherArchiveFile != null) {
+                Files.deleteIfExists(otherArchiveFile);
+            }
+        }
+    }
+
+    private static void createAuditLog(String entityId, LocalDateTime createDate, String message) {
+        AuditLog auditLog = new AuditLog();
+        auditLog.setId(entityId);
+        auditLog.setUserId("admin");
+        auditLog.setEntityId(entityId);
+        auditLog.setEntityClass("Document");
+        auditLog.setType(AuditLogType.CREATE);
+        auditLog.setMessage(message);
+        auditLog.setCreateDate(toDate(createDate));
+        ThreadLocalContext.get().getEntityManager().persist(auditLog);
+    }
+
+    private static Date toDate(LocalDateTime localDateTime) {
+        return Date.from(localDateTime.atZone(ZoneId.systemDefault()).toInstant());
+    }
+}
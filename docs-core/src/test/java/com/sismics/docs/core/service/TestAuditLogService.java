@@ -0,0 +1,105 @@
+package com.sismics.docs.core.service;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Service;
+import com.sismics.docs.BaseTransactionalTest;
+import com.sismics.docs.core.constant.AuditLogType;
+import com.sismics.docs.core.model.jpa.AuditLog;
+import com.sismics.util.jpa.EMF;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import jakarta.persistence.EntityManager;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test of the audit log service.
+ *
+ * @author bgamard
+ */
+public class TestAuditLogService extends BaseTransactionalTest {
+    @After
+    public void deleteAuditLogs() {
+        EntityManager em = EMF.get().createEntityManager();
+        em.getTransaction().begin();
+        em.createNativeQuery("delete from T_AUDIT_LOG where LOG_IDENTITY_C like 'als-%'").executeUpdate();
+        em.getTransaction().commit();
+        em.close();
+    }
+
+    @Test
+    public void writeTest() {
+        // Tiny queue: submitters wait for the writer
+        AuditLogService auditLogService = new AuditLogService(2);
+        auditLogService.startAsync();
+        auditLogService.awaitRunning();
+        for (int i = 0; i < 50; i++) {
+            auditLogService.submit(createAuditLog("als-" + i));
+        }
+
+        // Everything is flushed on shutdown
+        auditLogService.stopAsync();
+        auditLogService.awaitTerminated();
+        Assert.assertEquals(0, auditLogService.getQueueSize());
+        Assert.assertEquals(50, countAuditLogs());
+
+        // Written immediately once stopped
+        auditLogService.submit(createAuditLog("als-late"));
+        Assert.assertEquals(51, countAuditLogs());
+    }
+
+    @Test(timeout = 60000)
+    public void submitDuringShutdownTest() throws Exception {
+        AuditLogService auditLogService = new AuditLogService(2);
+        auditLogService.startAsync();
+        auditLogService.awaitRunning();
+
+        // Submitters racing with the shutdown drain, until the service is terminated
+        AtomicInteger submitted = new AtomicInteger();
+        List<Thread> threadList = Lists.newArrayList();
+        for (int i = 0; i < 8; i++) {
+            String prefix = "als-" + i + "-";
+            Thread thread = new Thread(() -> {
+                while (auditLogService.state() != Service.State.TERMINATED) {
+                    auditLogService.submit(createAuditLog(prefix + submitted.incrementAndGet()));
+                }
+            });
+            thread.start();
+            threadList.add(thread);
+        }
+        Thread.sleep(200);
+        auditLogService.stopAsync();
+        for (Thread thread : threadList) {
+            thread.join();
+        }
+
+        // Nothing is lost
+        Assert.assertEquals(0, auditLogService.getQueueSize());
+        Assert.assertEquals(submitted.get(), countAuditLogs());
+    }
+
+    private static AuditLog createAuditLog(String entityId) {
+        AuditLog auditLog = new AuditLog();
+        auditLog.setId(UUID.randomUUID().toString());
+        auditLog.setUserId("admin");
+        auditLog.setEntityId(entityId);
+        auditLog.setEntityClass("Document");
+        auditLog.setType(AuditLogType.CREATE);
+        auditLog.setMessage("Audit");
+        auditLog.setCreateDate(new Date());
+        return auditLog;
+    }
+
+    private static long countAuditLogs() {
+        EntityManager em = EMF.get().createEntityManager();
+        try {
+            return ((Number) em.createNativeQuery("select count(*) from T_AUDIT_LOG where LOG_IDENTITY_C like 'als-%'").getSingleResult()).longValue();
+        } finally {
+            em.close();
+        }
+    }
+}
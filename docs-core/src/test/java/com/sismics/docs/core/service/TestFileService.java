@@ -0,0 +1,88 @@
+package com.sismics.docs.core.service;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Test of the temporary files.
+ *
+ * @author bgamard
+ */
+public class TestFileService {
+    @Test
+    public void temporaryFileTest() throws Exception {
+        FileService fileService = new FileService();
+        fileService.startUp();
+        Assert.assertEquals(0, fileService.getMaxSize());
+
+        // Temporary files are tracked with their size, counted once written
+        Path file1 = fileService.createTemporaryFile();
+        Path file2 = fileService.createTemporaryFile("test.txt");
+        Files.write(file1, new byte[100]);
+        fileService.updateTemporarySize(file1, 100);
+        Assert.assertTrue(file2.getFileName().toString().endsWith("test.txt"));
+        Assert.assertEquals(2, fileService.getTemporaryCount());
+        Assert.assertEquals(100, fileService.getTemporarySize());
+
+        // A released file is deleted now, once
+        fileService.deleteTemporaryFile(file1);
+        fileService.deleteTemporaryFile(file1);
+        Assert.assertFalse(Files.exists(file1));
+        Assert.assertEquals(1, fileService.getTemporaryCount());
+        Assert.assertEquals(0, fileService.getTemporarySize());
+        Assert.assertEquals(1, fileService.getReleasedCount());
+
+        // Other files are not deleted
+        Path otherFile = Files.createTempFile("other", null);
+        fileService.deleteTemporaryFile(otherFile);
+        fileService.deleteTemporaryFile(null);
+        Assert.assertTrue(Files.exists(otherFile));
+        Assert.assertEquals(1, fileService.getReleasedCount());
+        Files.delete(otherFile);
+
+        // No budget, always space
+        Assert.assertTrue(fileService.hasTemporarySpace());
+
+        fileService.deleteTemporaryFile(file2);
+        Assert.assertEquals(0, fileService.getTemporaryCount());
+        Assert.assertEquals(0, fileService.getCollectedCount());
+        fileService.shutDown();
+    }
+
+    @Test
+    public void budgetTest() throws Exception {
+        Path directory = Files.createTempDirectory("budget");
+        FileService fileService = new FileService(directory, 100);
+        fileService.startUp();
+        Assert.assertEquals(100, fileService.getMaxSize());
+
+        // Under the budget, new content is admitted
+        Path file1 = fileService.createTemporaryFile();
+        Files.write(file1, new byte[50]);
+        fileService.updateTemporarySize(file1, 50);
+        Assert.assertTrue(fileService.hasTemporarySpace());
+
+        // Over the budget, new content is refused until the files in use are released
+        Path file2 = fileService.createTemporaryFile();
+        Files.write(file2, new byte[50]);
+        fileService.updateTemporarySize(file2, 50);
+        Assert.assertFalse(fileService.hasTemporarySpace());
+        fileService.deleteTemporaryFile(file1);
+        Assert.assertTrue(fileService.hasTemporarySpace());
+        Assert.assertEquals(50, fileService.getTemporarySize());
+
+        // A released file is not counted again
+        fileService.updateTemporarySize(file1, 50);
+        Assert.assertEquals(50, fileService.getTemporarySize());
+
+        // The temporary files are created in the configured directory
+        Assert.assertEquals(directory, file2.getParent());
+        fileService.deleteTemporaryFile(file2);
+        Assert.assertEquals(0, fileService.getTemporarySize());
+        fileService.shutDown();
+        Files.delete(directory);
+    }
+}
@@ -4,9 +4,14 @@ import com.sismics.docs.BaseTransactionalTest;
 import com.sismics.docs.core.dao.FileDao;
 import com.sismics.docs.core.model.jpa.File;
 import com.sismics.docs.core.model.jpa.User;
+import com.sismics.util.mime.MimeType;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
 public class TestFileSizeService extends BaseTransactionalTest {
 
     @Test
@@ -15,8 +20,26 @@ public class TestFileSizeService extends BaseTransactionalTest {
 
         FileDao fileDao = new FileDao();
         File file = createFile(user, File.UNKNOWN_SIZE);
+
+        // A file without stored content keeps an unknown size
+        File missingFile = new File();
+        missingFile.setUserId(user.getId());
+        missingFile.setVersion(0);
+        missingFile.setMimeType(MimeType.IMAGE_JPEG);
+        missingFile.setSize(File.UNKNOWN_SIZE);
+        fileDao.create(missingFile, user.getId());
+        Assert.assertEquals(2, fileDao.countFilesWithUnknownSize());
+
+        // A file whose stored content cannot be read is kept to be retried
+        File unreadableFile = new File();
+        unreadableFile.setId("unreadable\0file");
+
         FileSizeService fileSizeService = new FileSizeService();
-        fileSizeService.processFile(file);
+        List<File> failedFiles = new ArrayList<>();
+        Assert.assertEquals(1, fileSizeService.processFiles(List.of(file, missingFile, unreadableFile), failedFiles));
+        Assert.assertEquals(List.of(unreadableFile), failedFiles);
         Assert.assertEquals(fileDao.getFile(file.getId()).getSize(), Long.valueOf(FILE_JPG_SIZE));
+        Assert.assertEquals(File.UNKNOWN_SIZE, fileDao.getFile(missingFile.getId()).getSize());
+        Assert.assertEquals(List.of(missingFile.getId()), fileDao.getFilesWithUnknownSize("", 10).stream().map(File::getId).collect(Collectors.toList()));
     }
 }
@@ -0,0 +1,72 @@
+package com.sismics.docs.core.service;
+
+import com.sismics.BaseTest;
+import com.sismics.docs.core.util.DirectoryUtil;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Test of the storage migration service.
+ *
+ * @author bgamard
+ */
+public class TestStorageMigrationService extends BaseTest {
+    @Test
+    public void migrateTest() throws Exception {
+        Path directory = Files.createTempDirectory("storage");
+        Path flatFile = directory.resolve("migration");
+        Path flatWebFile = directory.resolve("migration_web");
+        Path obsoleteFile = directory.resolve("obsolete");
+        Files.writeString(flatFile, "flat");
+        Files.writeString(flatWebFile, "flat web");
+        Files.writeString(obsoleteFile, "obsolete");
+
+        // Flat files are found until they are migrated, new files are written in the sharded layout
+        Assert.assertEquals(flatFile, DirectoryUtil.getStoredFile(directory, "migration"));
+        Path shardedObsoleteFile = DirectoryUtil.getNewStoredFile(directory, "obsolete");
+        Assert.assertEquals(directory, shardedObsoleteFile.getParent().getParent().getParent());
+        Files.writeString(shardedObsoleteFile, "rewritten");
+        Assert.assertEquals(shardedObsoleteFile, DirectoryUtil.getStoredFile(directory, "obsolete"));
+
+        // Migrate one batch at a time
+        StorageMigrationService storageMigrationService = new StorageMigrationService();
+        Assert.assertEquals(2, storageMigrationService.migrate(directory, 2));
+        Assert.assertEquals(1, storageMigrationService.migrate(directory, 2));
+        Assert.assertEquals(0, storageMigrationService.migrate(directory, 2));
+
+        // All variations of a file are in the same directory, and a newer sharded file is kept
+        Path shardedFile = DirectoryUtil.getStoredFile(directory, "migration");
+        Assert.assertNotEquals(flatFile, shardedFile);
+        Assert.assertEquals("flat", Files.readString(shardedFile, StandardCharsets.UTF_8));
+        Assert.assertEquals(shardedFile.getParent(), DirectoryUtil.getStoredFile(directory, "migration_web").getParent());
+        Assert.assertEquals("rewritten", Files.readString(shardedObsoleteFile, StandardCharsets.UTF_8));
+        Assert.assertFalse(Files.exists(flatFile));
+        Assert.assertFalse(Files.exists(flatWebFile));
+        Assert.assertFalse(Files.exists(obsoleteFile));
+    }
+
+    @Test
+    public void migrateWithoutHardLinksTest() throws Exception {
+        Path directory = Files.createTempDirectory("storage");
+        Path flatFile = directory.resolve("migration");
+        Path obsoleteFile = directory.resolve("obsolete");
+        Files.writeString(flatFile, "flat");
+        Files.writeString(obsoleteFile, "obsolete");
+        Path shardedObsoleteFile = DirectoryUtil.getNewStoredFile(directory, "obsolete");
+        Files.writeString(shardedObsoleteFile, "rewritten");
+
+        // The files are moved, a newer sharded file is kept
+        StorageMigrationService storageMigrationService = new StorageMigrationService(false);
+        Assert.assertEquals(2, storageMigrationService.migrate(directory, 10));
+        Path shardedFile = DirectoryUtil.getStoredFile(directory, "migration");
+        Assert.assertNotEquals(flatFile, shardedFile);
+        Assert.assertEquals("flat", Files.readString(shardedFile, StandardCharsets.UTF_8));
+        Assert.assertEquals("rewritten", Files.readString(shardedObsoleteFile, StandardCharsets.UTF_8));
+        Assert.assertFalse(Files.exists(flatFile));
+        Assert.assertFalse(Files.exists(obsoleteFile));
+    }
+}
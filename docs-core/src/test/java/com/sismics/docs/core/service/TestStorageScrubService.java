@@ -0,0 +1,118 @@
+package com.sismics.docs.core.service;
+
+import com.google.common.io.ByteStreams;
+import com.sismics.docs.BaseTransactionalTest;
+import com.sismics.docs.core.dao.FileDao;
+import com.sismics.docs.core.model.context.AppContext;
+import com.sismics.docs.core.model.jpa.File;
+import com.sismics.docs.core.model.jpa.User;
+import com.sismics.docs.core.util.storage.MemoryStorageHandler;
+import com.sismics.docs.core.util.storage.StorageHandler;
+import com.sismics.docs.core.util.storage.StorageUtil;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Test of the storage scrubber.
+ *
+ * @author bgamard
+ */
+public class TestStorageScrubService extends BaseTransactionalTest {
+    @Test
+    public void scrubTest() throws Exception {
+        User user = createUser("scrubTest");
+        File file = createFile(user, FILE_JPG_SIZE);
+        String fileId = file.getId();
+        StorageHandler storageHandler = AppContext.getInstance().getStorageHandler();
+        StorageScrubService storageScrubService = new StorageScrubService(100 * 1024 * 1024);
+
+        // The checksum of a file stored before the checksums is saved, and its missing images are generated
+        storageScrubService.scrubFiles(List.of(file));
+        file = new FileDao().getFile(fileId);
+        Assert.assertNotNull(file.getChecksum());
+        Assert.assertEquals(1, storageScrubService.getRegeneratedCount());
+        Assert.assertNotNull(storageHandler.stat(fileId + "_web"));
+        Assert.assertNotNull(storageHandler.stat(fileId + "_thumb"));
+
+        // Nothing to do on an intact file
+        storageScrubService.scrubFiles(List.of(file));
+        Assert.assertEquals(2, storageScrubService.getCheckedCount());
+        Assert.assertEquals(1, storageScrubService.getRegeneratedCount());
+        Assert.assertEquals(0, storageScrubService.getMissingCount());
+        Assert.assertEquals(0, storageScrubService.getCorruptCount());
+
+        // A truncated image is generated again
+        byte[] web = read(storageHandler, fileId + "_web");
+        storageHandler.put(fileId + "_web", new ByteArrayInputStream(Arrays.copyOf(web, web.length / 2)));
+        storageScrubService.scrubFiles(List.of(file));
+        Assert.assertEquals(2, storageScrubService.getRegeneratedCount());
+        Assert.assertEquals(web.length, storageHandler.stat(fileId + "_web").getSize());
+
+        // A content without image is not decrypted again on the next passes, even once repaired
+        StorageScrubService unregeneratedScrubService = new StorageScrubService(100 * 1024 * 1024);
+        byte[] content = read(storageHandler, fileId);
+        byte[] damagedContent = new byte[content.length];
+        storageHandler.put(fileId, new ByteArrayInputStream(damagedContent));
+        new FileDao().updateChecksum(fileId, StorageUtil.checksum(new ByteArrayInputStream(damagedContent)));
+        storageHandler.delete(fileId + "_web");
+        unregeneratedScrubService.scrubFiles(List.of(new FileDao().getFile(fileId)));
+        long corruptCount = unregeneratedScrubService.getCorruptCount();
+        storageHandler.put(fileId, new ByteArrayInputStream(content));
+        new FileDao().updateChecksum(fileId, file.getChecksum());
+        unregeneratedScrubService.scrubFiles(List.of(file));
+        Assert.assertEquals(2, unregeneratedScrubService.getCheckedCount());
+        Assert.assertEquals(0, unregeneratedScrubService.getRegeneratedCount());
+        Assert.assertEquals(corruptCount, unregeneratedScrubService.getCorruptCount());
+        Assert.assertNull(storageHandler.stat(fileId + "_web"));
+
+        // A corrupt content is reported
+        content[100] ^= 1;
+        storageHandler.put(fileId, new ByteArrayInputStream(content));
+        storageScrubService.scrubFiles(List.of(file));
+        Assert.assertEquals(1, storageScrubService.getCorruptCount());
+        Assert.assertTrue(storageScrubService.getProblemList().contains("Corrupt file content: " + fileId));
+
+        // A missing content is reported
+        storageHandler.delete(fileId);
+        storageScrubService.scrubFiles(List.of(file));
+        Assert.assertEquals(1, storageScrubService.getMissingCount());
+        Assert.assertTrue(storageScrubService.getProblemList().contains("Missing file content: " + fileId));
+
+        // Objects without file are reported, not the variations of an existing file, one batch at a time
+        StorageHandler orphanStorageHandler = new MemoryStorageHandler();
+        orphanStorageHandler.put(fileId + "_web", new ByteArrayInputStream(new byte[] { 1 }));
+        orphanStorageHandler.put("orphan", new ByteArrayInputStream(new byte[] { 1 }));
+        orphanStorageHandler.put("orphan_web", new ByteArrayInputStream(new byte[] { 1 }));
+        long modifiedBefore = System.currentTimeMillis() + 60000;
+        Assert.assertEquals(fileId + "_web", storageScrubService.findFileOrphans(orphanStorageHandler, "", modifiedBefore, 1));
+        Assert.assertEquals(0, storageScrubService.getOrphanCount());
+        Assert.assertEquals("orphan_web", storageScrubService.findFileOrphans(orphanStorageHandler, fileId + "_web", modifiedBefore, 2));
+        Assert.assertEquals(2, storageScrubService.getOrphanCount());
+        Assert.assertTrue(storageScrubService.getProblemList().contains("Orphan stored object: orphan_web"));
+        Assert.assertNull(storageScrubService.findFileOrphans(orphanStorageHandler, "orphan_web", modifiedBefore, 2));
+        Assert.assertEquals(2, storageScrubService.getOrphanCount());
+
+        // The recent objects are listed but not reported
+        Assert.assertNull(storageScrubService.findFileOrphans(orphanStorageHandler, "", System.currentTimeMillis() - 60000, 10));
+        Assert.assertEquals(2, storageScrubService.getOrphanCount());
+
+        // The position goes through the files, the blobs, then the orphans of the files and of the blobs
+        Assert.assertTrue(storageScrubService.scrub("").startsWith("blob:"));
+        Assert.assertEquals("orphan:", storageScrubService.scrub("blob:"));
+        String position = storageScrubService.scrub("orphan:");
+        Assert.assertTrue(position.equals("blob-orphan:") || position.startsWith("orphan:"));
+        position = storageScrubService.scrub("blob-orphan:");
+        Assert.assertTrue(position.isEmpty() || position.startsWith("blob-orphan:"));
+    }
+
+    private static byte[] read(StorageHandler storageHandler, String name) throws Exception {
+        try (InputStream inputStream = storageHandler.get(name)) {
+            return ByteStreams.toByteArray(inputStream);
+        }
+    }
+}
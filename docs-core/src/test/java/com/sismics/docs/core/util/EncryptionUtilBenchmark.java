@@ -0,0 +1,70 @@
+package com.sismics.docs.core.util;
+
+import com.google.common.io.ByteStreams;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import javax.crypto.Cipher;
+import javax.crypto.CipherInputStream;
+import java.io.ByteArrayInputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of the decryption of a thumbnail, with and without the secret key cache.
+ * Run with:
+ * mvn -pl docs-core test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.sismics.docs.core.util.EncryptionUtilBenchmark
+ *
+ * @author bgamard
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EncryptionUtilBenchmark {
+    private String privateKey;
+
+    private byte[] thumbnail;
+
+    @Setup
+    public void setUp() throws Exception {
+        privateKey = EncryptionUtil.generatePrivateKey();
+        thumbnail = ByteStreams.toByteArray(new CipherInputStream(
+                new ByteArrayInputStream(new byte[16 * 1024]), EncryptionUtil.getEncryptionCipher(privateKey)));
+    }
+
+    /**
+     * Key derived on each request, as before the cache.
+     */
+    @Benchmark
+    public byte[] derivedKey() throws Exception {
+        Cipher cipher = Cipher.getInstance("AES/CTR/NOPADDING");
+        cipher.init(Cipher.DECRYPT_MODE, EncryptionUtil.deriveSecretKey(privateKey));
+        return ByteStreams.toByteArray(new CipherInputStream(new ByteArrayInputStream(thumbnail), cipher));
+    }
+
+    /**
+     * Key from the cache.
+     */
+    @Benchmark
+    public byte[] cachedKey() throws Exception {
+        return ByteStreams.toByteArray(EncryptionUtil.decryptInputStream(new ByteArrayInputStream(thumbnail), privateKey));
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(EncryptionUtilBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,100 @@
+package com.sismics.docs.core.util;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.MoreFiles;
+import com.sismics.docs.BaseTransactionalTest;
+import com.sismics.docs.core.dao.BlobDao;
+import com.sismics.docs.core.dao.FileDao;
+import com.sismics.docs.core.model.context.AppContext;
+import com.sismics.docs.core.model.jpa.Blob;
+import com.sismics.docs.core.model.jpa.File;
+import com.sismics.docs.core.model.jpa.User;
+import com.sismics.docs.core.util.storage.StorageHandler;
+import com.sismics.docs.core.util.storage.StorageUtil;
+import com.sismics.util.mime.MimeType;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Test of the deduplicated storage.
+ *
+ * @author bgamard
+ */
+public class TestBlobUtil extends BaseTransactionalTest {
+    @Test
+    public void deduplicationTest() throws Exception {
+        User user1 = createUser("blob1");
+        User user2 = createUser("blob2");
+        Path unencryptedFile = Files.createTempFile("blob", ".jpg");
+        try (InputStream inputStream = getSystemResourceAsStream(FILE_JPG)) {
+            Files.copy(inputStream, unencryptedFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+        byte[] content = Files.readAllBytes(unencryptedFile);
+
+        // The same content uploaded by two users is stored once
+        File file1 = createBlobFile(user1, unencryptedFile);
+        File file2 = createBlobFile(user2, unencryptedFile);
+        Files.delete(unencryptedFile);
+        Assert.assertEquals(file1.getBlobId(), file2.getBlobId());
+        Assert.assertNotEquals(file1.getBlobKey(), file2.getBlobKey());
+        BlobDao blobDao = new BlobDao();
+        Blob blob = blobDao.getById(file1.getBlobId());
+        Assert.assertEquals(FILE_JPG_SIZE, blob.getSize());
+        StorageHandler blobStorageHandler = AppContext.getInstance().getBlobStorageHandler();
+        Assert.assertNotNull(blobStorageHandler.stat(file1.getBlobId()));
+        Assert.assertNull(AppContext.getInstance().getStorageHandler().stat(file1.getId()));
+
+        // The checksum of the stored content is saved when it is written
+        try (InputStream inputStream = blobStorageHandler.get(file1.getBlobId())) {
+            Assert.assertEquals(StorageUtil.checksum(inputStream), blobDao.getById(file1.getBlobId()).getChecksum());
+        }
+
+        // Each user reads it with its own private key
+        Assert.assertArrayEquals(content, readStoredFile(file1, user1.getPrivateKey()));
+        Assert.assertArrayEquals(content, readStoredFile(file2, user2.getPrivateKey()));
+        try {
+            FileUtil.getStoredFileKey(file1, user2.getPrivateKey());
+            Assert.fail();
+        } catch (Exception e) {
+            // NOP
+        }
+
+        // A concurrent upload of the same content does not create the blob again
+        Assert.assertFalse(blobDao.create(new Blob()
+                .setId(file1.getBlobId())
+                .setSize(FILE_JPG_SIZE)));
+
+        // The blob is unreferenced with its last file, and purged after
+        Assert.assertNull(BlobUtil.release(file1.getId()));
+        Assert.assertEquals(file1.getBlobId(), BlobUtil.release(file2.getId()));
+        Assert.assertNull(new FileDao().getBlobId(file2.getId()));
+        Assert.assertNotNull(blobStorageHandler.stat(file1.getBlobId()));
+        BlobUtil.purge(file1.getBlobId());
+        Assert.assertNull(blobStorageHandler.stat(file1.getBlobId()));
+        Assert.assertNull(blobDao.getById(file1.getBlobId()));
+    }
+
+    private static File createBlobFile(User user, Path unencryptedFile) throws Exception {
+        File file = new File();
+        file.setUserId(user.getId());
+        file.setVersion(0);
+        file.setMimeType(MimeType.IMAGE_JPEG);
+        file.setSize(Files.size(unencryptedFile));
+        BlobUtil.store(file, unencryptedFile, MoreFiles.asByteSource(unencryptedFile).hash(Hashing.sha256()), user.getPrivateKey());
+        new FileDao().create(file, user.getId());
+        return file;
+    }
+
+    private static byte[] readStoredFile(File file, String privateKey) throws Exception {
+        try (InputStream inputStream = EncryptionUtil.decryptInputStream(FileUtil.openStoredFile(file, 0),
+                FileUtil.getStoredFileKey(file, privateKey))) {
+            return ByteStreams.toByteArray(inputStream);
+        }
+    }
+}
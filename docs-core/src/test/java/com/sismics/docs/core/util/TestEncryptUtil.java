@@ -8,7 +8,10 @@ import org.junit.Test;
 
 import javax.crypto.Cipher;
 import javax.crypto.CipherInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
 
 /**
  * Test of the encryption utilities.
@@ -48,4 +51,43 @@ public class TestEncryptUtil extends BaseTest {
         
         Assert.assertEquals(encryptedData.length, assertData.length);
     }
+
+    @Test
+    public void cachedKeyTest() throws Exception {
+        // Ciphers built from the cached key produce the same data as a freshly derived key
+        byte[] assertData = ByteStreams.toByteArray(getSystemResourceAsStream(FILE_PDF_ENCRYPTED));
+        for (int i = 0; i < 3; i++) {
+            InputStream inputStream = new CipherInputStream(getSystemResourceAsStream(FILE_PDF),
+                    EncryptionUtil.getEncryptionCipher("OnceUponATime"));
+            Assert.assertArrayEquals(assertData, ByteStreams.toByteArray(inputStream));
+        }
+    }
+
+    @Test
+    public void decryptStreamOffsetTest() throws Exception {
+        byte[] assertData = ByteStreams.toByteArray(getSystemResourceAsStream(FILE_PDF));
+        for (long offset : new long[] { 0, 1, 15, 16, 17, 4096, 100_000, assertData.length - 1, assertData.length }) {
+            InputStream encryptedInputStream = getSystemResourceAsStream(FILE_PDF_ENCRYPTED);
+            ByteStreams.skipFully(encryptedInputStream, EncryptionUtil.getBlockOffset(offset));
+            InputStream inputStream = EncryptionUtil.decryptInputStream(encryptedInputStream, "OnceUponATime", offset);
+            Assert.assertArrayEquals(Arrays.copyOfRange(assertData, (int) offset, assertData.length),
+                    ByteStreams.toByteArray(inputStream));
+        }
+    }
+
+    @Test
+    public void encryptStreamOffsetTest() throws Exception {
+        // Data encrypted in pieces from their offset is identical to the data encrypted at once
+        byte[] data = ByteStreams.toByteArray(getSystemResourceAsStream(FILE_PDF));
+        byte[] assertData = ByteStreams.toByteArray(getSystemResourceAsStream(FILE_PDF_ENCRYPTED));
+        ByteArrayOutputStream encryptedData = new ByteArrayOutputStream();
+        int offset = 0;
+        for (int length : new int[] { 1, 15, 16, 17, 4000, 100_000, data.length - 104_049 }) {
+            try (OutputStream outputStream = EncryptionUtil.encryptOutputStream(encryptedData, "OnceUponATime", offset)) {
+                outputStream.write(data, offset, length);
+            }
+            offset += length;
+        }
+        Assert.assertArrayEquals(assertData, encryptedData.toByteArray());
+    }
 }
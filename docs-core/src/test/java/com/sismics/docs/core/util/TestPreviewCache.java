@@ -0,0 +1,41 @@
+package com.sismics.docs.core.util;
+
+import com.sismics.BaseTest;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test of the decrypted file previews kept in memory.
+ *
+ * @author bgamard
+ */
+public class TestPreviewCache extends BaseTest {
+    @Test
+    public void previewCacheTest() {
+        long weight = PreviewCache.getWeight();
+        long hitCount = PreviewCache.getStats().hitCount();
+        byte[] thumb = new byte[] { 1, 2, 3 };
+        byte[] web = new byte[] { 1, 2, 3, 4, 5 };
+
+        // Cached previews
+        Assert.assertNull(PreviewCache.get("preview1_thumb", 1000L));
+        PreviewCache.put("preview1_thumb", 1000L, thumb);
+        PreviewCache.put("preview1_web", 1000L, web);
+        Assert.assertSame(thumb, PreviewCache.get("preview1_thumb", 1000L));
+        Assert.assertEquals(hitCount + 1, PreviewCache.getStats().hitCount());
+        Assert.assertEquals(weight + 8, PreviewCache.getWeight());
+
+        // A replaced preview is not counted twice
+        PreviewCache.put("preview1_thumb", 2000L, thumb);
+        Assert.assertEquals(weight + 8, PreviewCache.getWeight());
+
+        // Another version of the stored object
+        Assert.assertNull(PreviewCache.get("preview1_thumb", 1000L));
+        Assert.assertEquals(weight + 5, PreviewCache.getWeight());
+
+        // All the previews of a file are forgotten
+        PreviewCache.invalidate("preview1");
+        Assert.assertNull(PreviewCache.get("preview1_web", 1000L));
+        Assert.assertEquals(weight, PreviewCache.getWeight());
+    }
+}
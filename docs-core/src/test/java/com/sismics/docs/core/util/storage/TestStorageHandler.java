@@ -0,0 +1,316 @@
+package com.sismics.docs.core.util.storage;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
+import com.sismics.BaseTest;
+import com.sismics.docs.core.model.context.AppContext;
+import com.sismics.docs.core.service.FileService;
+import com.sismics.util.HttpUtil;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import okhttp3.HttpUrl;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Test of the storage handlers.
+ *
+ * @author bgamard
+ */
+public class TestStorageHandler extends BaseTest {
+    @Test
+    public void filesystemTest() throws Exception {
+        Path directory = Files.createTempDirectory("storage");
+        FilesystemStorageHandler storageHandler = new FilesystemStorageHandler(directory);
+        storageHandler.startUp();
+        assertStorageHandler(storageHandler);
+
+        // Files of the previous flat layout are still read and listed
+        Files.writeString(directory.resolve("flat"), "flat");
+        Assert.assertEquals("flat", read(storageHandler.get("flat")));
+        Assert.assertEquals(Arrays.asList("file1_thumb", "flat"), listNames(storageHandler));
+        Assert.assertEquals(Arrays.asList("file1_thumb", "flat"), listNamesByOne(storageHandler));
+        storageHandler.delete("flat");
+        Assert.assertFalse(Files.exists(directory.resolve("flat")));
+
+        // The pending writes are synced on shutdown
+        storageHandler.put("file2", new ByteArrayInputStream(new byte[] { 1 }));
+        storageHandler.shutDown();
+        Assert.assertEquals(1, storageHandler.stat("file2").getSize());
+    }
+
+    @Test
+    public void memoryTest() throws Exception {
+        MemoryStorageHandler storageHandler = new MemoryStorageHandler();
+        storageHandler.startUp();
+        assertStorageHandler(storageHandler);
+        storageHandler.shutDown();
+    }
+
+    @Test
+    public void s3Test() throws Exception {
+        FakeS3Server server = new FakeS3Server();
+        try {
+            S3StorageHandler storageHandler = new S3StorageHandler(server.getEndpoint(), "us-east-1", "docs", "storage", "access", "secret");
+            storageHandler.startUp();
+            FileService fileService = AppContext.getInstance().getFileService();
+            int temporaryCount = fileService.getTemporaryCount();
+            long releasedCount = fileService.getReleasedCount();
+            assertStorageHandler(storageHandler);
+
+            // The uploads are buffered in released temporary files
+            Assert.assertEquals(temporaryCount, fileService.getTemporaryCount());
+            Assert.assertTrue(fileService.getReleasedCount() > releasedCount);
+
+            // Only the objects under the prefix are listed, and every request is signed
+            server.objectMap.put("blob/other", new byte[0]);
+            Assert.assertEquals(List.of("file1_thumb"), listNames(storageHandler));
+            Assert.assertTrue(server.allSigned);
+            storageHandler.shutDown();
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void s3SignatureTest() {
+        // Example of the AWS Signature Version 4 documentation
+        Map<String, String> headerMap = new TreeMap<>(ImmutableMap.of(
+                "host", "examplebucket.s3.amazonaws.com",
+                "range", "bytes=0-9",
+                "x-amz-content-sha256", "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855",
+                "x-amz-date", "20130524T000000Z"));
+        Assert.assertEquals("f0e8bdb87c964420e857bd35b5d6ed310bd44f0170aba48dd91039c6036bdb41",
+                S3StorageHandler.sign("GET", HttpUrl.get("https://examplebucket.s3.amazonaws.com/test.txt"), headerMap,
+                        "e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855", "20130524T000000Z",
+                        "us-east-1", "wJalrXUtnFEMI/K7MDENG/bPxRfiCYEXAMPLEKEY"));
+    }
+
+    /**
+     * Check the behavior common to all the storage handlers.
+     *
+     * @param storageHandler Started storage handler
+     * @throws Exception e
+     */
+    private void assertStorageHandler(StorageHandler storageHandler) throws Exception {
+        // Missing object
+        Assert.assertNull(storageHandler.stat("file1"));
+        try {
+            storageHandler.get("file1");
+            Assert.fail();
+        } catch (NoSuchFileException e) {
+            // NOP
+        }
+
+        // Store and read an object, from an offset
+        byte[] content = new byte[1000];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        storageHandler.put("file1", new ByteArrayInputStream(content));
+        StoredObject storedObject = storageHandler.stat("file1");
+        Assert.assertEquals("file1", storedObject.getName());
+        Assert.assertEquals(1000, storedObject.getSize());
+        Assert.assertTrue(storedObject.getLastModified() > 0);
+        try (InputStream inputStream = storageHandler.get("file1")) {
+            Assert.assertArrayEquals(content, ByteStreams.toByteArray(inputStream));
+        }
+        try (InputStream inputStream = storageHandler.get("file1", 900)) {
+            Assert.assertArrayEquals(Arrays.copyOfRange(content, 900, 1000), ByteStreams.toByteArray(inputStream));
+        }
+        try (InputStream inputStream = storageHandler.get("file1", 1000)) {
+            Assert.assertEquals(-1, inputStream.read());
+        }
+
+        // Replace an object
+        storageHandler.put("file1_thumb", new ByteArrayInputStream("thumb".getBytes(StandardCharsets.UTF_8)));
+        storageHandler.put("file1_thumb", new ByteArrayInputStream("new thumb".getBytes(StandardCharsets.UTF_8)));
+        Assert.assertEquals("new thumb", read(storageHandler.get("file1_thumb")));
+        Assert.assertEquals(Arrays.asList("file1", "file1_thumb"), listNames(storageHandler));
+
+        // A listing continues after the last object read
+        for (int i = 0; i < 20; i++) {
+            storageHandler.put("other" + i, new ByteArrayInputStream(new byte[] { 1 }));
+        }
+        Assert.assertEquals(listNames(storageHandler), listNamesByOne(storageHandler));
+        for (int i = 0; i < 20; i++) {
+            storageHandler.delete("other" + i);
+        }
+
+        // Delete an object, twice
+        storageHandler.delete("file1");
+        storageHandler.delete("file1");
+        Assert.assertNull(storageHandler.stat("file1"));
+        Assert.assertEquals(List.of("file1_thumb"), listNames(storageHandler));
+    }
+
+    private static String read(InputStream inputStream) throws IOException {
+        try (inputStream) {
+            return new String(ByteStreams.toByteArray(inputStream), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static List<String> listNames(StorageHandler storageHandler) throws IOException {
+        try (Stream<StoredObject> storedObjectStream = storageHandler.list()) {
+            return storedObjectStream.map(StoredObject::getName).sorted().collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * List the names of the objects one listing at a time, each one continuing after the previous name.
+     *
+     * @param storageHandler Storage handler
+     * @return Sorted names
+     * @throws IOException e
+     */
+    private static List<String> listNamesByOne(StorageHandler storageHandler) throws IOException {
+        List<String> nameList = new ArrayList<>();
+        String afterName = "";
+        while (true) {
+            try (Stream<StoredObject> storedObjectStream = storageHandler.list(afterName)) {
+                Optional<String> name = storedObjectStream.map(StoredObject::getName).findFirst();
+                if (name.isEmpty()) {
+                    break;
+                }
+                afterName = name.get();
+            }
+            nameList.add(afterName);
+        }
+        Collections.sort(nameList);
+        return nameList;
+    }
+
+    /**
+     * Local stand-in for an S3-compatible storage, with path-style buckets.
+     * Listings return one object per page to go through the continuation.
+     */
+    private static class FakeS3Server {
+        private final HttpServer server;
+
+        private final Map<String, byte[]> objectMap = new ConcurrentSkipListMap<>();
+
+        private volatile boolean allSigned = true;
+
+        FakeS3Server() throws IOException {
+            server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+            server.createContext("/docs", this::handle);
+            server.start();
+        }
+
+        String getEndpoint() {
+            return "http://localhost:" + server.getAddress().getPort();
+        }
+
+        void stop() {
+            server.stop(0);
+        }
+
+        private void handle(HttpExchange exchange) throws IOException {
+            String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+            if (authorization == null || !authorization.startsWith("AWS4-HMAC-SHA256 Credential=access/")
+                    || exchange.getRequestHeaders().getFirst("x-amz-date") == null) {
+                allSigned = false;
+            }
+
+            String key = exchange.getRequestURI().getPath().substring("/docs".length());
+            if (key.isEmpty() || key.equals("/")) {
+                list(exchange);
+                return;
+            }
+            key = key.substring(1);
+
+            byte[] content = objectMap.get(key);
+            switch (exchange.getRequestMethod()) {
+                case "PUT":
+                    try (InputStream inputStream = exchange.getRequestBody()) {
+                        objectMap.put(key, ByteStreams.toByteArray(inputStream));
+                    }
+                    exchange.sendResponseHeaders(200, -1);
+                    break;
+                case "DELETE":
+                    objectMap.remove(key);
+                    exchange.sendResponseHeaders(204, -1);
+                    break;
+                case "HEAD":
+                    if (content == null) {
+                        exchange.sendResponseHeaders(404, -1);
+                        break;
+                    }
+                    exchange.getResponseHeaders().set("Content-Length", Integer.toString(content.length));
+                    exchange.getResponseHeaders().set("Last-Modified", HttpUtil.formatHttpDate(System.currentTimeMillis()));
+                    exchange.sendResponseHeaders(200, -1);
+                    break;
+                default:
+                    if (content == null) {
+                        exchange.sendResponseHeaders(404, -1);
+                        break;
+                    }
+                    String range = exchange.getRequestHeaders().getFirst("Range");
+                    int start = range == null ? 0 : Integer.parseInt(range.substring("bytes=".length(), range.length() - 1));
+                    if (start >= content.length) {
+                        exchange.sendResponseHeaders(416, -1);
+                        break;
+                    }
+                    send(exchange, range == null ? 200 : 206, Arrays.copyOfRange(content, start, content.length));
+            }
+            exchange.close();
+        }
+
+        private void list(HttpExchange exchange) throws IOException {
+            Map<String, String> queryMap = new HashMap<>();
+            for (String parameter : exchange.getRequestURI().getRawQuery().split("&")) {
+                String[] parameterArray = parameter.split("=", 2);
+                queryMap.put(parameterArray[0], URLDecoder.decode(parameterArray[1], StandardCharsets.UTF_8));
+            }
+
+            String after = queryMap.getOrDefault("continuation-token", queryMap.getOrDefault("start-after", ""));
+            Entry<String, byte[]> entry = objectMap.entrySet().stream()
+                    .filter(e -> e.getKey().startsWith(queryMap.get("prefix")) && e.getKey().compareTo(after) > 0)
+                    .findFirst().orElse(null);
+            StringBuilder sb = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?><ListBucketResult>");
+            if (entry != null) {
+                sb.append("<Contents><Key>").append(entry.getKey()).append("</Key>")
+                        .append("<LastModified>").append(Instant.now()).append("</LastModified>")
+                        .append("<Size>").append(entry.getValue().length).append("</Size></Contents>")
+                        .append("<IsTruncated>true</IsTruncated>")
+                        .append("<NextContinuationToken>").append(entry.getKey()).append("</NextContinuationToken>");
+            } else {
+                sb.append("<IsTruncated>false</IsTruncated>");
+            }
+            sb.append("</ListBucketResult>");
+            send(exchange, 200, sb.toString().getBytes(StandardCharsets.UTF_8));
+            exchange.close();
+        }
+
+        private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+            exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(body);
+            }
+        }
+    }
+}
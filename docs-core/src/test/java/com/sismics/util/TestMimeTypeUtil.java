@@ -6,6 +6,7 @@ import com.sismics.util.mime.MimeTypeUtil;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.InputStream;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 
@@ -69,4 +70,40 @@ public class TestMimeTypeUtil extends BaseTest {
         path = Paths.get(getResource(FILE_MP4).toURI());
         Assert.assertEquals(MimeType.VIDEO_MP4, MimeTypeUtil.guessMimeType(path, FILE_MP4));
     }
+
+    @Test
+    public void headerTest() throws Exception {
+        // The content is trusted over the name
+        Assert.assertEquals(MimeType.IMAGE_JPEG, MimeTypeUtil.guessMimeType(readHeader(FILE_JPG), "image.png"));
+        Assert.assertEquals(MimeType.IMAGE_PNG, MimeTypeUtil.guessMimeType(readHeader(FILE_PNG), null));
+        Assert.assertEquals(MimeType.IMAGE_GIF, MimeTypeUtil.guessMimeType(readHeader(FILE_GIF), null));
+        Assert.assertEquals(MimeType.APPLICATION_PDF, MimeTypeUtil.guessMimeType(readHeader(FILE_PDF), "document"));
+
+        // ZIP containers are told apart by their name
+        Assert.assertEquals(MimeType.APPLICATION_ZIP, MimeTypeUtil.guessMimeType(readHeader(FILE_ZIP), null));
+        Assert.assertEquals(MimeType.OFFICE_DOCUMENT, MimeTypeUtil.guessMimeType(readHeader(FILE_DOCX), FILE_DOCX));
+        Assert.assertEquals(MimeType.OPEN_DOCUMENT_TEXT, MimeTypeUtil.guessMimeType(readHeader(FILE_ODT), FILE_ODT));
+
+        // Files without magic bytes are recognized by their name
+        Assert.assertEquals(MimeType.TEXT_PLAIN, MimeTypeUtil.guessMimeType(readHeader(FILE_TXT), FILE_TXT));
+        Assert.assertEquals(MimeType.VIDEO_MP4, MimeTypeUtil.guessMimeType(readHeader(FILE_MP4), FILE_MP4));
+        Assert.assertEquals(MimeType.DEFAULT, MimeTypeUtil.guessMimeType(new byte[0], null));
+    }
+
+    @Test
+    public void isCompressedTest() {
+        Assert.assertTrue(MimeTypeUtil.isCompressed(MimeType.IMAGE_JPEG));
+        Assert.assertTrue(MimeTypeUtil.isCompressed(MimeType.APPLICATION_PDF));
+        Assert.assertTrue(MimeTypeUtil.isCompressed(MimeType.OFFICE_SHEET));
+        Assert.assertTrue(MimeTypeUtil.isCompressed("audio/mpeg"));
+        Assert.assertFalse(MimeTypeUtil.isCompressed(MimeType.TEXT_PLAIN));
+        Assert.assertFalse(MimeTypeUtil.isCompressed(MimeType.DEFAULT));
+        Assert.assertFalse(MimeTypeUtil.isCompressed(null));
+    }
+
+    private byte[] readHeader(String name) throws Exception {
+        try (InputStream inputStream = getSystemResourceAsStream(name)) {
+            return inputStream.readNBytes(MimeTypeUtil.HEADER_SIZE);
+        }
+    }
 }
@@ -0,0 +1,39 @@
+package com.sismics.util.context;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import jakarta.persistence.EntityManager;
+
+/**
+ * Test of the thread local context.
+ *
+ * @author bgamard
+ */
+public class TestThreadLocalContext {
+    @After
+    public void tearDown() {
+        EntityManager em = ThreadLocalContext.get().getOpenedEntityManager();
+        if (em != null) {
+            em.getTransaction().rollback();
+            em.close();
+        }
+        ThreadLocalContext.cleanup();
+    }
+
+    @Test
+    public void testOpenOnDemand() {
+        ThreadLocalContext context = ThreadLocalContext.get();
+        Assert.assertNull(context.getEntityManager());
+
+        // Nothing is opened until the entity manager is used
+        context.setOpenOnDemand(true);
+        Assert.assertNull(context.getOpenedEntityManager());
+        EntityManager em = context.getEntityManager();
+        Assert.assertNotNull(em);
+        Assert.assertTrue(em.getTransaction().isActive());
+        Assert.assertSame(em, context.getOpenedEntityManager());
+        Assert.assertSame(em, context.getEntityManager());
+    }
+}
@@ -0,0 +1,45 @@
+package com.sismics.util.jpa;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Statement inspector recording the SQL sent by Hibernate on the current thread.
+ *
+ * @author bgamard
+ */
+public class RecordingStatementInspector implements StatementInspector {
+    /**
+     * Recorded statements, null if not recording.
+     */
+    private static final ThreadLocal<List<String>> recorded = new ThreadLocal<>();
+
+    /**
+     * Start recording statements on the current thread.
+     */
+    public static void start() {
+        recorded.set(new ArrayList<>());
+    }
+
+    /**
+     * Stop recording statements on the current thread.
+     *
+     * @return Statements recorded since the start
+     */
+    public static List<String> stop() {
+        List<String> sqlList = recorded.get();
+        recorded.remove();
+        return sqlList;
+    }
+
+    @Override
+    public String inspect(String sql) {
+        List<String> sqlList = recorded.get();
+        if (sqlList != null) {
+            sqlList.add(sql);
+        }
+        return sql;
+    }
+}
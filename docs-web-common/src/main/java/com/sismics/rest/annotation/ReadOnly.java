@@ -0,0 +1,17 @@
+package com.sismics.rest.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a resource method which never writes to the database, so it can be served by the read replica.
+ * GET methods are read-only by default.
+ *
+ * @author bgamard
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface ReadOnly {
+}
@@ -0,0 +1,16 @@
+package com.sismics.rest.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a GET resource method which writes to the database, so it is always served by the primary database.
+ *
+ * @author bgamard
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface ReadWrite {
+}
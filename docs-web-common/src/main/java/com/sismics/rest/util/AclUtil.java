@@ -27,6 +27,17 @@ public class AclUtil {
     public static void addAcls(JsonObjectBuilder json, String sourceId, List<String> targetIdList) {
         AclDao aclDao = new AclDao();
         List<AclDto> aclDtoList = aclDao.getBySourceId(sourceId, AclType.USER);
+        addAcls(json, aclDtoList, aclDao.checkPermission(sourceId, PermType.WRITE, targetIdList));
+    }
+
+    /**
+     * Add already loaded ACLs to a JSON response.
+     *
+     * @param json JSON
+     * @param aclDtoList ACLs of the source
+     * @param writable True if the source is writable by the current user
+     */
+    public static void addAcls(JsonObjectBuilder json, List<AclDto> aclDtoList, boolean writable) {
         JsonArrayBuilder aclList = Json.createArrayBuilder();
         for (AclDto aclDto : aclDtoList) {
             aclList.add(Json.createObjectBuilder()
@@ -36,6 +47,6 @@ public class AclUtil {
                     .add("type", aclDto.getTargetType()));
         }
         json.add("acls", aclList)
-                .add("writable", aclDao.checkPermission(sourceId, PermType.WRITE, targetIdList));
+                .add("writable", writable);
     }
 }
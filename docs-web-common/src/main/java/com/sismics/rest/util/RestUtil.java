@@ -1,8 +1,8 @@
 package com.sismics.rest.util;
 
 import com.sismics.docs.core.model.jpa.File;
-import com.sismics.docs.core.util.DirectoryUtil;
 import com.sismics.docs.core.util.FileUtil;
+import com.sismics.docs.core.util.storage.StoredObject;
 import com.sismics.rest.exception.ServerException;
 import com.sismics.util.JsonUtil;
 
@@ -10,7 +10,7 @@ import jakarta.json.Json;
 import jakarta.json.JsonObjectBuilder;
 
 import java.io.IOException;
-import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 
 /**
  * Rest utilities.
@@ -27,7 +27,14 @@ public class RestUtil {
      */
     public static JsonObjectBuilder fileToJsonObjectBuilder(File fileDb) {
         try {
-            long fileSize = fileDb.getSize().equals(File.UNKNOWN_SIZE) ? Files.size(DirectoryUtil.getStorageDirectory().resolve(fileDb.getId())) : fileDb.getSize();
+            long fileSize = fileDb.getSize();
+            if (fileSize == File.UNKNOWN_SIZE) {
+                StoredObject storedObject = FileUtil.statStoredFile(fileDb);
+                if (storedObject == null) {
+                    throw new NoSuchFileException(fileDb.getId());
+                }
+                fileSize = storedObject.getSize();
+            }
             return Json.createObjectBuilder()
                     .add("id", fileDb.getId())
                     .add("processing", FileUtil.isProcessingFile(fileDb.getId()))
@@ -0,0 +1,23 @@
+package com.sismics.util.filter;
+
+import com.sismics.util.context.ThreadLocalContext;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerResponseContext;
+import jakarta.ws.rs.container.ContainerResponseFilter;
+
+/**
+ * Filter ending the request transaction before the response entity is written.
+ * The database connection is given back to the pool before streaming the response to a possibly slow client.
+ *
+ * @author bgamard
+ */
+public class EndTransactionFilter implements ContainerResponseFilter {
+    @Override
+    public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) {
+        int statusClass = responseContext.getStatus() / 100;
+        if (!RequestContextFilter.endTransaction(ThreadLocalContext.get(), statusClass == 2 || statusClass == 3)) {
+            responseContext.setStatus(500);
+            responseContext.setEntity(null);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.sismics.util.filter;
+
+import com.sismics.rest.annotation.ReadOnly;
+import com.sismics.rest.annotation.ReadWrite;
+import com.sismics.util.context.ThreadLocalContext;
+import com.sismics.util.jpa.ReadReplica;
+import jakarta.annotation.Priority;
+import jakarta.persistence.EntityManager;
+import jakarta.ws.rs.HttpMethod;
+import jakarta.ws.rs.Priorities;
+import jakarta.ws.rs.container.ContainerRequestContext;
+import jakarta.ws.rs.container.ContainerRequestFilter;
+import jakarta.ws.rs.container.ResourceInfo;
+import jakarta.ws.rs.core.Context;
+
+import java.lang.reflect.Method;
+
+/**
+ * Filter routing read-only resource methods to the read replica.
+ * It runs after the security filters, which may write to the primary database.
+ * The read replica entity manager is closed by the request context filter.
+ *
+ * @author bgamard
+ */
+@Priority(Priorities.USER)
+public class ReadReplicaFilter implements ContainerRequestFilter {
+    /**
+     * Matched resource method.
+     */
+    @Context
+    private ResourceInfo resourceInfo;
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) {
+        Method method = resourceInfo.getResourceMethod();
+        if (method == null || !isReadOnly(requestContext.getMethod(), method)) {
+            return;
+        }
+
+        EntityManager em = ReadReplica.createEntityManager();
+        if (em != null) {
+            // The security filters are done with the primary database, give its connection back
+            ThreadLocalContext context = ThreadLocalContext.get();
+            RequestContextFilter.endTransaction(context, true);
+            context.setReadOnlyEntityManager(em);
+        }
+    }
+
+    /**
+     * Returns true if a resource method never writes to the database.
+     *
+     * @param httpMethod HTTP method
+     * @param method Resource method
+     * @return True if read-only
+     */
+    private static boolean isReadOnly(String httpMethod, Method method) {
+        if (method.isAnnotationPresent(ReadWrite.class)) {
+            return false;
+        }
+        return HttpMethod.GET.equals(httpMethod) || HttpMethod.HEAD.equals(httpMethod)
+                || method.isAnnotationPresent(ReadOnly.class);
+    }
+}
@@ -5,7 +5,6 @@ import com.sismics.docs.core.util.DirectoryUtil;
 import com.sismics.docs.core.util.TransactionUtil;
 import com.sismics.util.EnvironmentUtil;
 import com.sismics.util.context.ThreadLocalContext;
-import com.sismics.util.jpa.EMF;
 import jakarta.servlet.*;
 import jakarta.servlet.http.HttpServletResponse;
 import jakarta.ws.rs.core.HttpHeaders;
@@ -17,7 +16,6 @@ import org.slf4j.LoggerFactory;
 import org.slf4j.bridge.SLF4JBridgeHandler;
 
 import jakarta.persistence.EntityManager;
-import jakarta.persistence.EntityTransaction;
 import java.io.IOException;
 import java.text.MessageFormat;
 
@@ -72,17 +70,9 @@ public class RequestContextFilter implements Filter {
 
     @Override
     public void doFilter(ServletRequest request, ServletResponse response, FilterChain filterChain) throws IOException, ServletException {
-        EntityManager em;
-        
-        try {
-            em = EMF.get().createEntityManager();
-        } catch (Exception e) {
-            throw new ServletException("Cannot create entity manager", e);
-        }
+        // The entity manager is opened on first use, requests not using the database never take a connection
         ThreadLocalContext context = ThreadLocalContext.get();
-        context.setEntityManager(em);
-        EntityTransaction tx = em.getTransaction();
-        tx.begin();
+        context.setOpenOnDemand(true);
         
         try {
             addCacheHeaders(response);
@@ -95,50 +85,88 @@ public class RequestContextFilter implements Filter {
                 log.error("An exception occured, rolling back current transaction", e);
 
                 // If an unprocessed error comes up from the application layers (Jersey...), rollback the transaction (should not happen)
-                if (em.isOpen()) {
-                    if (em.getTransaction() != null && em.getTransaction().isActive()) {
-                        em.getTransaction().rollback();
-                    }
-                    
-                    try {
-                        em.close();
-                    } catch (Exception ce) {
-                        log.error("Error closing entity manager", ce);
-                    }
-                }
+                endTransaction(context, false);
                 throw new ServletException(e);
             }
         }
 
-        // No error processing the request : commit / rollback the current transaction depending on the HTTP code
+        // No error processing the request : commit / rollback the current transaction depending on the HTTP code.
+        // It has usually been done already before writing the response, but the response may have used the database again.
+        context.setOpenOnDemand(false);
+        HttpServletResponse r = (HttpServletResponse) response;
+        int statusClass = r.getStatus() / 100;
+        if (!endTransaction(context, statusClass == 2 || statusClass == 3) && !r.isCommitted()) {
+            r.sendError(500);
+        }
+
+        // Fire all pending async events after request transaction commit.
+        // This way, all modifications done during this request are available in the listeners.
+        context.fireAllAsyncEvents();
+
+        ThreadLocalContext.cleanup();
+    }
+
+    /**
+     * End the transactions of a request, and close its entity managers to give the connections back to the pool.
+     * If the database is used again later in the request, a new entity manager is opened on demand.
+     *
+     * @param context Request context
+     * @param commit True to commit the transaction, false to rollback
+     * @return False if the commit failed
+     */
+    public static boolean endTransaction(ThreadLocalContext context, boolean commit) {
+        closeReadOnlyEntityManager(context);
+
+        EntityManager em = context.getOpenedEntityManager();
+        if (em == null) {
+            return true;
+        }
+        context.setEntityManager(null);
+
+        boolean success = true;
         if (em.isOpen()) {
             if (em.getTransaction() != null && em.getTransaction().isActive()) {
-                HttpServletResponse r = (HttpServletResponse) response;
-                int statusClass = r.getStatus() / 100;
-                if (statusClass == 2 || statusClass == 3) {
+                if (commit) {
                     try {
                         em.getTransaction().commit();
                     } catch (Exception e) {
                         log.error("Error during commit", e);
-                        r.sendError(500);
+                        success = false;
                     }
                 } else {
                     em.getTransaction().rollback();
                 }
-                
-                try {
-                    em.close();
-                } catch (Exception e) {
-                    log.error("Error closing entity manager", e);
-                }
+            }
+            
+            try {
+                em.close();
+            } catch (Exception e) {
+                log.error("Error closing entity manager", e);
             }
         }
+        return success;
+    }
 
-        // Fire all pending async events after request transaction commit.
-        // This way, all modifications done during this request are available in the listeners.
-        context.fireAllAsyncEvents();
-
-        ThreadLocalContext.cleanup();
+    /**
+     * Close the read replica entity manager, if the request has been routed to it.
+     * Nothing has been written, the read-only transaction is rolled back.
+     *
+     * @param context Request context
+     */
+    private static void closeReadOnlyEntityManager(ThreadLocalContext context) {
+        EntityManager em = context.getReadOnlyEntityManager();
+        if (em == null) {
+            return;
+        }
+        context.setReadOnlyEntityManager(null);
+        try {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            em.close();
+        } catch (Exception e) {
+            log.error("Error closing read replica entity manager", e);
+        }
     }
 
     /**
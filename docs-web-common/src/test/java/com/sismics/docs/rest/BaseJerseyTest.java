@@ -108,7 +108,7 @@ public abstract class BaseJerseyTest extends JerseyTest {
                 .addMappingForUrlPatterns(null, "/*");
         ServletRegistration reg = context.addServlet("jerseyServlet", ServletContainer.class);
         reg.setInitParameter("jersey.config.server.provider.packages", "com.sismics.docs.rest.resource");
-        reg.setInitParameter("jersey.config.server.provider.classnames", "org.glassfish.jersey.media.multipart.MultiPartFeature");
+        reg.setInitParameter("jersey.config.server.provider.classnames", "org.glassfish.jersey.media.multipart.MultiPartFeature,com.sismics.util.filter.ReadReplicaFilter,com.sismics.util.filter.EndTransactionFilter");
         reg.setInitParameter("jersey.config.server.response.setStatusOverSendError", "true");
         reg.setLoadOnStartup(1);
         reg.addMapping("/*");
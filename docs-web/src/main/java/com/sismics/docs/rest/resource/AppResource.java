@@ -1,6 +1,7 @@
 package com.sismics.docs.rest.resource;
 
 import com.google.common.base.Strings;
+import com.google.common.cache.CacheStats;
 import com.sismics.docs.core.constant.ConfigType;
 import com.sismics.docs.core.constant.Constants;
 import com.sismics.docs.core.dao.ConfigDao;
@@ -11,11 +12,15 @@ import com.sismics.docs.core.event.RebuildIndexAsyncEvent;
 import com.sismics.docs.core.model.context.AppContext;
 import com.sismics.docs.core.model.jpa.Config;
 import com.sismics.docs.core.model.jpa.File;
+import com.sismics.docs.core.service.FileService;
 import com.sismics.docs.core.service.InboxService;
+import com.sismics.docs.core.service.StorageScrubService;
 import com.sismics.docs.core.util.ConfigUtil;
-import com.sismics.docs.core.util.DirectoryUtil;
+import com.sismics.docs.core.util.PreviewCache;
 import com.sismics.docs.core.util.jpa.PaginatedList;
 import com.sismics.docs.core.util.jpa.PaginatedLists;
+import com.sismics.docs.core.util.storage.StorageHandler;
+import com.sismics.docs.core.util.storage.StoredObject;
 import com.sismics.docs.rest.constant.BaseFunction;
 import com.sismics.rest.exception.ClientException;
 import com.sismics.rest.exception.ForbiddenClientException;
@@ -23,6 +28,8 @@ import com.sismics.rest.exception.ServerException;
 import com.sismics.rest.util.ValidationUtil;
 import com.sismics.util.JsonUtil;
 import com.sismics.util.context.ThreadLocalContext;
+import com.sismics.util.jpa.ConnectionPoolMetrics;
+import com.sismics.util.jpa.EMF;
 import com.sismics.util.log4j.LogCriteria;
 import com.sismics.util.log4j.LogEntry;
 import com.sismics.util.log4j.MemoryAppender;
@@ -40,10 +47,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.nio.file.DirectoryStream;
-import java.nio.file.Files;
+import java.io.UncheckedIOException;
 import java.text.MessageFormat;
 import java.util.*;
+import java.util.stream.Stream;
 
 /**
  * General app REST resource.
@@ -601,6 +608,187 @@ public class AppResource extends BaseResource {
         return Response.ok().entity(response.build()).build();
     }
 
+    /**
+     * Get the database connection pool statistics.
+     *
+     * @api {get} /app/db_pool Get the database connection pool statistics
+     * @apiName GetAppDbPool
+     * @apiGroup App
+     * @apiSuccess {Boolean} tracked True if the connection pool is tracked
+     * @apiSuccess {String} name Pool name
+     * @apiSuccess {Number} active Connections currently in use
+     * @apiSuccess {Number} idle Connections currently idle
+     * @apiSuccess {Number} waiting Threads waiting for a connection
+     * @apiSuccess {Number} total Total connections in the pool
+     * @apiSuccess {Number} min Minimum idle connections
+     * @apiSuccess {Number} max Maximum pool size
+     * @apiSuccess {Number} timeouts Number of connection requests which timed out
+     * @apiSuccess {Object} acquire_micros Histogram of the time spent acquiring a connection (in microseconds)
+     * @apiSuccess {Object} usage_millis Histogram of the time a connection is held (in milliseconds)
+     * @apiError (client) ForbiddenError Access denied
+     * @apiPermission admin
+     * @apiVersion 1.12.0
+     *
+     * @return Response
+     */
+    @GET
+    @Path("db_pool")
+    public Response dbPool() {
+        if (!authenticate()) {
+            throw new ForbiddenClientException();
+        }
+        checkBaseFunction(BaseFunction.ADMIN);
+
+        ConnectionPoolMetrics metrics = EMF.getConnectionPoolMetrics();
+        JsonObjectBuilder response = Json.createObjectBuilder()
+                .add("tracked", metrics.isTracking());
+        if (metrics.isTracking()) {
+            response.add("name", metrics.getPoolName())
+                    .add("active", metrics.getActiveConnections())
+                    .add("idle", metrics.getIdleConnections())
+                    .add("waiting", metrics.getPendingThreads())
+                    .add("total", metrics.getTotalConnections())
+                    .add("min", metrics.getMinConnections())
+                    .add("max", metrics.getMaxConnections())
+                    .add("timeouts", metrics.getTimeoutCount())
+                    .add("acquire_micros", metrics.getAcquireHistogram().toJson())
+                    .add("usage_millis", metrics.getUsageHistogram().toJson());
+        }
+
+        return Response.ok().entity(response.build()).build();
+    }
+
+    /**
+     * Get the statistics of the decrypted file previews kept in memory.
+     *
+     * @api {get} /app/preview_cache Get the file preview cache statistics
+     * @apiName GetAppPreviewCache
+     * @apiGroup App
+     * @apiSuccess {Number} count Number of cached previews
+     * @apiSuccess {Number} size Size of the cached previews (in bytes)
+     * @apiSuccess {Number} max_size Memory budget (in bytes)
+     * @apiSuccess {Number} hits Number of previews served from memory
+     * @apiSuccess {Number} misses Number of previews decrypted from the storage
+     * @apiSuccess {Number} hit_ratio Ratio of the previews served from memory
+     * @apiSuccess {Number} evictions Number of previews evicted to stay in the budget
+     * @apiError (client) ForbiddenError Access denied
+     * @apiPermission admin
+     * @apiVersion 1.12.0
+     *
+     * @return Response
+     */
+    @GET
+    @Path("preview_cache")
+    public Response previewCache() {
+        if (!authenticate()) {
+            throw new ForbiddenClientException();
+        }
+        checkBaseFunction(BaseFunction.ADMIN);
+
+        CacheStats stats = PreviewCache.getStats();
+        JsonObjectBuilder response = Json.createObjectBuilder()
+                .add("count", PreviewCache.getCount())
+                .add("size", PreviewCache.getWeight())
+                .add("max_size", PreviewCache.getMaxWeight())
+                .add("hits", stats.hitCount())
+                .add("misses", stats.missCount())
+                .add("hit_ratio", stats.hitRate())
+                .add("evictions", stats.evictionCount());
+
+        return Response.ok().entity(response.build()).build();
+    }
+
+    /**
+     * Get the statistics of the temporary files.
+     *
+     * @api {get} /app/temporary_files Get the temporary files statistics
+     * @apiName GetAppTemporaryFiles
+     * @apiGroup App
+     * @apiSuccess {Number} count Number of temporary files in use
+     * @apiSuccess {Number} size Size of the temporary files in use (in bytes)
+     * @apiSuccess {Number} max_size Disk budget (in bytes), 0 if unlimited
+     * @apiSuccess {Number} released Number of temporary files deleted when released
+     * @apiSuccess {Number} collected Number of temporary files deleted without being released
+     * @apiError (client) ForbiddenError Access denied
+     * @apiPermission admin
+     * @apiVersion 1.12.0
+     *
+     * @return Response
+     */
+    @GET
+    @Path("temporary_files")
+    public Response temporaryFiles() {
+        if (!authenticate()) {
+            throw new ForbiddenClientException();
+        }
+        checkBaseFunction(BaseFunction.ADMIN);
+
+        FileService fileService = AppContext.getInstance().getFileService();
+        JsonObjectBuilder response = Json.createObjectBuilder()
+                .add("count", fileService.getTemporaryCount())
+                .add("size", fileService.getTemporarySize())
+                .add("max_size", fileService.getMaxSize())
+                .add("released", fileService.getReleasedCount())
+                .add("collected", fileService.getCollectedCount());
+
+        return Response.ok().entity(response.build()).build();
+    }
+
+    /**
+     * Get the report of the storage scrubber.
+     *
+     * @api {get} /app/storage_scrub Get the storage scrubber report
+     * @apiName GetAppStorageScrub
+     * @apiGroup App
+     * @apiSuccess {Boolean} enabled True if the storage scrubber is enabled
+     * @apiSuccess {String} position Position in the current pass, empty between passes
+     * @apiSuccess {Number} last_pass_date End date of the last pass since the startup (timestamp)
+     * @apiSuccess {Number} checked Number of stored contents checked in the pass
+     * @apiSuccess {Number} missing Number of missing stored contents
+     * @apiSuccess {Number} corrupt Number of corrupt stored contents
+     * @apiSuccess {Number} orphan Number of stored objects without file
+     * @apiSuccess {Number} regenerated Number of files whose damaged images have been generated again
+     * @apiSuccess {String[]} problems Last problems found
+     * @apiError (client) ForbiddenError Access denied
+     * @apiPermission admin
+     * @apiVersion 1.12.0
+     *
+     * @return Response
+     */
+    @GET
+    @Path("storage_scrub")
+    public Response storageScrub() {
+        if (!authenticate()) {
+            throw new ForbiddenClientException();
+        }
+        checkBaseFunction(BaseFunction.ADMIN);
+
+        StorageScrubService storageScrubService = AppContext.getInstance().getStorageScrubService();
+        JsonObjectBuilder response = Json.createObjectBuilder()
+                .add("enabled", storageScrubService != null);
+        if (storageScrubService != null) {
+            JsonArrayBuilder problems = Json.createArrayBuilder();
+            for (String problem : storageScrubService.getProblemList()) {
+                problems.add(problem);
+            }
+            response.add("position", storageScrubService.getPosition())
+                    .add("checked", storageScrubService.getCheckedCount())
+                    .add("missing", storageScrubService.getMissingCount())
+                    .add("corrupt", storageScrubService.getCorruptCount())
+                    .add("orphan", storageScrubService.getOrphanCount())
+                    .add("regenerated", storageScrubService.getRegeneratedCount())
+                    .add("problems", problems);
+            Date lastPassDate = storageScrubService.getLastPassDate();
+            if (lastPassDate == null) {
+                response.addNull("last_pass_date");
+            } else {
+                response.add("last_pass_date", lastPassDate.getTime());
+            }
+        }
+
+        return Response.ok().entity(response.build()).build();
+    }
+
     /**
      * Destroy and rebuild the search index.
      *
@@ -664,16 +852,18 @@ public class AppResource extends BaseResource {
         log.info("Checking {} files", fileMap.size());
 
         // Check if each stored file is valid
-        try (DirectoryStream<java.nio.file.Path> storedFileList = Files.newDirectoryStream(DirectoryUtil.getStorageDirectory())) {
-            for (java.nio.file.Path storedFile : storedFileList) {
-                String fileName = storedFile.getFileName().toString();
-                String[] fileNameArray = fileName.split("_");
-                if (!fileMap.containsKey(fileNameArray[0])) {
-                    log.info("Deleting orphan files at this location: {}", storedFile);
-                    Files.delete(storedFile);
+        StorageHandler storageHandler = AppContext.getInstance().getStorageHandler();
+        try (Stream<StoredObject> storedObjectStream = storageHandler.list()) {
+            Iterator<StoredObject> storedObjectIterator = storedObjectStream.iterator();
+            while (storedObjectIterator.hasNext()) {
+                String name = storedObjectIterator.next().getName();
+                String[] nameArray = name.split("_");
+                if (!fileMap.containsKey(nameArray[0])) {
+                    log.info("Deleting orphan stored file: {}", name);
+                    storageHandler.delete(name);
                 }
             }
-        } catch (IOException e) {
+        } catch (IOException | UncheckedIOException e) {
             throw new ServerException("FileError", "Error deleting orphan files", e);
         }
 
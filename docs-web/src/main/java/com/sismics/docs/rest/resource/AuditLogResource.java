@@ -8,7 +8,6 @@ import com.sismics.docs.core.dao.criteria.AuditLogCriteria;
 import com.sismics.docs.core.dao.dto.AuditLogDto;
 import com.sismics.docs.core.util.SecurityUtil;
 import com.sismics.docs.core.util.jpa.PaginatedList;
-import com.sismics.docs.core.util.jpa.PaginatedLists;
 import com.sismics.docs.core.util.jpa.SortCriteria;
 import com.sismics.rest.exception.ForbiddenClientException;
 import com.sismics.util.JsonUtil;
@@ -37,7 +36,12 @@ public class AuditLogResource extends BaseResource {
      * @apiName GetAuditlog
      * @apiGroup Auditlog
      * @apiParam {String} [document] Document ID
-     * @apiSuccess {String} total Total number of logs
+     * @apiParam {String} [cursor] Keyset pagination cursor, empty for the first page and then the previous <code>next_cursor</code>
+     * @apiParam {String="exact","cached","estimate","none"} [total=exact] How the total number of logs is counted
+     * @apiSuccess {String} total Total number of logs, absent if not counted
+     * @apiSuccess {Boolean} total_estimated True if the total is an estimation
+     * @apiSuccess {Boolean} has_more True if there are more logs after this page
+     * @apiSuccess {String} next_cursor Cursor of the next page (keyset pagination only)
      * @apiSuccess {Object[]} logs List of logs
      * @apiSuccess {String} logs.id ID
      * @apiSuccess {String} logs.username Username
@@ -47,21 +51,27 @@ public class AuditLogResource extends BaseResource {
      * @apiSuccess {String} logs.message Message
      * @apiSuccess {Number} logs.create_date Create date (timestamp)
      * @apiError (client) ForbiddenError Access denied
+     * @apiError (client) ValidationError Validation error
      * @apiError (client) NotFound Document not found
      * @apiPermission user
      * @apiVersion 1.5.0
      *
+     * @param documentId Document ID
+     * @param cursor Keyset cursor
+     * @param total Count mode of the total
      * @return Response
      */
     @GET
-    public Response list(@QueryParam("document") String documentId) {
+    public Response list(@QueryParam("document") String documentId,
+                         @QueryParam("cursor") String cursor,
+                         @QueryParam("total") String total) {
         if (!authenticate()) {
             throw new ForbiddenClientException();
         }
         
         // On a document or a user?
-        PaginatedList<AuditLogDto> paginatedList = PaginatedLists.create(20, 0);
         SortCriteria sortCriteria = new SortCriteria(1, false);
+        PaginatedList<AuditLogDto> paginatedList = createPaginatedList(20, 0, sortCriteria, cursor, total);
         AuditLogCriteria criteria = new AuditLogCriteria();
         if (Strings.isNullOrEmpty(documentId)) {
             // Search logs for a user
@@ -95,8 +105,8 @@ public class AuditLogResource extends BaseResource {
 
         // Send the response
         JsonObjectBuilder response = Json.createObjectBuilder()
-                .add("logs", logs)
-                .add("total", paginatedList.getResultCount());
+                .add("logs", logs);
+        addPagination(response, paginatedList);
         return Response.ok().entity(response.build()).build();
     }
 }
@@ -1,12 +1,20 @@
 package com.sismics.docs.rest.resource;
 
+import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
+import com.sismics.docs.core.util.jpa.CountMode;
+import com.sismics.docs.core.util.jpa.KeysetCursor;
+import com.sismics.docs.core.util.jpa.PaginatedList;
+import com.sismics.docs.core.util.jpa.PaginatedLists;
+import com.sismics.docs.core.util.jpa.SortCriteria;
 import com.sismics.docs.rest.constant.BaseFunction;
+import com.sismics.rest.exception.ClientException;
 import com.sismics.rest.exception.ForbiddenClientException;
 import com.sismics.security.IPrincipal;
 import com.sismics.security.UserPrincipal;
 import com.sismics.util.filter.SecurityFilter;
 
+import jakarta.json.JsonObjectBuilder;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.Produces;
@@ -122,4 +130,60 @@ public abstract class BaseResource {
         }
         return targetIdList;
     }
+
+    /**
+     * Constructs a paginated list from the pagination request parameters.
+     *
+     * @param limit Page limit
+     * @param offset Page offset
+     * @param sortCriteria Sort criteria
+     * @param cursor Keyset cursor (empty for the first page, null for offset pagination)
+     * @param total Count mode of the total (exact, cached, estimate or none)
+     * @return Paginated list
+     */
+    <E> PaginatedList<E> createPaginatedList(Integer limit, Integer offset, SortCriteria sortCriteria, String cursor, String total) {
+        CountMode countMode = CountMode.EXACT;
+        if (!Strings.isNullOrEmpty(total)) {
+            try {
+                countMode = CountMode.valueOf(total.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new ClientException("ValidationError", "total must be one of exact, cached, estimate or none");
+            }
+        }
+        if (!Strings.isNullOrEmpty(cursor)) {
+            KeysetCursor keysetCursor;
+            try {
+                keysetCursor = KeysetCursor.decode(cursor);
+            } catch (IllegalArgumentException e) {
+                throw new ClientException("ValidationError", "Invalid cursor", e);
+            }
+            if (!keysetCursor.matches(sortCriteria)) {
+                throw new ClientException("ValidationError", "The cursor does not match the sort criteria");
+            }
+        }
+
+        PaginatedList<E> paginatedList = PaginatedLists.create(limit, offset);
+        return paginatedList.setCountMode(countMode).setCursor(cursor);
+    }
+
+    /**
+     * Adds the pagination data of a paginated list to a response.
+     *
+     * @param response Response
+     * @param paginatedList Paginated list
+     * @return Response
+     */
+    JsonObjectBuilder addPagination(JsonObjectBuilder response, PaginatedList<?> paginatedList) {
+        if (paginatedList.getResultCount() >= 0) {
+            response.add("total", paginatedList.getResultCount());
+            if (paginatedList.isResultCountEstimated()) {
+                response.add("total_estimated", true);
+            }
+        }
+        response.add("has_more", paginatedList.isHasMore());
+        if (paginatedList.getNextCursor() != null) {
+            response.add("next_cursor", paginatedList.getNextCursor());
+        }
+        return response;
+    }
 }
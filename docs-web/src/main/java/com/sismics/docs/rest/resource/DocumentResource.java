@@ -1,16 +1,13 @@
 package com.sismics.docs.rest.resource;
 
 import com.google.common.collect.Lists;
-import com.sismics.docs.core.constant.AclType;
 import com.sismics.docs.core.constant.ConfigType;
 import com.sismics.docs.core.constant.Constants;
 import com.sismics.docs.core.constant.PermType;
 import com.sismics.docs.core.dao.AclDao;
-import com.sismics.docs.core.dao.ContributorDao;
 import com.sismics.docs.core.dao.DocumentDao;
 import com.sismics.docs.core.dao.FileDao;
 import com.sismics.docs.core.dao.RelationDao;
-import com.sismics.docs.core.dao.RouteStepDao;
 import com.sismics.docs.core.dao.TagDao;
 import com.sismics.docs.core.dao.UserDao;
 import com.sismics.docs.core.dao.criteria.DocumentCriteria;
@@ -30,14 +27,16 @@ import com.sismics.docs.core.model.jpa.Document;
 import com.sismics.docs.core.model.jpa.File;
 import com.sismics.docs.core.model.jpa.User;
 import com.sismics.docs.core.util.ConfigUtil;
+import com.sismics.docs.core.util.DocumentAggregate;
 import com.sismics.docs.core.util.DocumentUtil;
 import com.sismics.docs.core.util.FileUtil;
 import com.sismics.docs.core.util.MetadataUtil;
 import com.sismics.docs.core.util.PdfUtil;
 import com.sismics.docs.core.util.jpa.PaginatedList;
-import com.sismics.docs.core.util.jpa.PaginatedLists;
 import com.sismics.docs.core.util.jpa.SortCriteria;
+import com.sismics.docs.rest.constant.BaseFunction;
 import com.sismics.docs.rest.util.DocumentSearchCriteriaUtil;
+import com.sismics.rest.annotation.ReadOnly;
 import com.sismics.rest.exception.ClientException;
 import com.sismics.rest.exception.ForbiddenClientException;
 import com.sismics.rest.exception.ServerException;
@@ -45,11 +44,14 @@ import com.sismics.rest.util.AclUtil;
 import com.sismics.rest.util.RestUtil;
 import com.sismics.rest.util.ValidationUtil;
 import com.sismics.util.EmailUtil;
+import com.sismics.util.HttpUtil;
 import com.sismics.util.JsonUtil;
+import com.sismics.util.SectionTimer;
 import com.sismics.util.context.ThreadLocalContext;
 import com.sismics.util.mime.MimeType;
 import jakarta.json.Json;
 import jakarta.json.JsonArrayBuilder;
+import jakarta.json.JsonObject;
 import jakarta.json.JsonObjectBuilder;
 import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.DELETE;
@@ -62,6 +64,7 @@ import jakarta.ws.rs.PUT;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.StreamingOutput;
 import org.apache.commons.collections4.CollectionUtils;
@@ -164,6 +167,7 @@ public class DocumentResource extends BaseResource {
      * @apiSuccess {String} metadata.name Name
      * @apiSuccess {String="STRING","INTEGER","FLOAT","DATE","BOOLEAN"} metadata.type Type
      * @apiSuccess {Object} metadata.value Value
+     * @apiHeader {String} [If-None-Match] ETag already known, answered with a 304 Not Modified
      * @apiError (client) NotFound Document not found
      * @apiPermission none
      * @apiVersion 1.5.0
@@ -180,11 +184,17 @@ public class DocumentResource extends BaseResource {
             @QueryParam("files") Boolean files) {
         authenticate();
 
+        SectionTimer timer = new SectionTimer();
         DocumentDao documentDao = new DocumentDao();
         DocumentDto documentDto = documentDao.getDocument(documentId, PermType.READ, getTargetIdList(shareId));
         if (documentDto == null) {
             throw new NotFoundException();
         }
+        timer.mark("document");
+
+        // Load everything else in a few queries
+        DocumentAggregate aggregate = DocumentAggregate.load(documentId, getTargetIdList(shareId),
+                principal.isAnonymous() ? null : getTargetIdList(null), Boolean.TRUE == files, timer);
 
         JsonObjectBuilder document = createDocumentObjectBuilder(documentDto)
                 .add("creator", documentDto.getCreator())
@@ -198,31 +208,23 @@ public class DocumentResource extends BaseResource {
                 .add("subject", JsonUtil.nullable(documentDto.getSubject()))
                 .add("type", JsonUtil.nullable(documentDto.getType()));
 
-        List<TagDto> tagDtoList = null;
-        if (principal.isAnonymous()) {
+        List<TagDto> tagDtoList = aggregate.getTagDtoList();
+        if (tagDtoList == null) {
             // No tags in anonymous mode (sharing)
             document.add("tags", Json.createArrayBuilder());
         } else {
             // Add tags visible by the current user on this document
-            TagDao tagDao = new TagDao();
-            tagDtoList = tagDao.findByCriteria(
-                    new TagCriteria()
-                            .setTargetIdList(getTargetIdList(null)) // No tags for shares
-                            .setDocumentId(documentId),
-                    new SortCriteria(1, true));
             document.add("tags", createTagsArrayBuilder(tagDtoList));
         }
 
         // Add ACL
-        AclUtil.addAcls(document, documentId, getTargetIdList(shareId));
+        AclUtil.addAcls(document, aggregate.getAclDtoList(), aggregate.isWritable());
 
         // Add computed ACL
         if (tagDtoList != null) {
             JsonArrayBuilder aclList = Json.createArrayBuilder();
             for (TagDto tagDto : tagDtoList) {
-                AclDao aclDao = new AclDao();
-                List<AclDto> aclDtoList = aclDao.getBySourceId(tagDto.getId(), AclType.USER);
-                for (AclDto aclDto : aclDtoList) {
+                for (AclDto aclDto : aggregate.getInheritedAclDtoList(tagDto.getId())) {
                     aclList.add(Json.createObjectBuilder()
                             .add("perm", aclDto.getPerm().name())
                             .add("source_id", tagDto.getId())
@@ -237,10 +239,8 @@ public class DocumentResource extends BaseResource {
         }
 
         // Add contributors
-        ContributorDao contributorDao = new ContributorDao();
-        List<ContributorDto> contributorDtoList = contributorDao.getByDocumentId(documentId);
         JsonArrayBuilder contributorList = Json.createArrayBuilder();
-        for (ContributorDto contributorDto : contributorDtoList) {
+        for (ContributorDto contributorDto : aggregate.getContributorDtoList()) {
             contributorList.add(Json.createObjectBuilder()
                     .add("username", contributorDto.getUsername())
                     .add("email", contributorDto.getEmail()));
@@ -248,10 +248,8 @@ public class DocumentResource extends BaseResource {
         document.add("contributors", contributorList);
 
         // Add relations
-        RelationDao relationDao = new RelationDao();
-        List<RelationDto> relationDtoList = relationDao.getByDocumentId(documentId);
         JsonArrayBuilder relationList = Json.createArrayBuilder();
-        for (RelationDto relationDto : relationDtoList) {
+        for (RelationDto relationDto : aggregate.getRelationDtoList()) {
             relationList.add(Json.createObjectBuilder()
                     .add("id", relationDto.getId())
                     .add("title", relationDto.getTitle())
@@ -260,30 +258,44 @@ public class DocumentResource extends BaseResource {
         document.add("relations", relationList);
 
         // Add current route step
-        RouteStepDto routeStepDto = new RouteStepDao().getCurrentStep(documentId);
-        if (routeStepDto != null && !principal.isAnonymous()) {
+        RouteStepDto routeStepDto = aggregate.getRouteStepDto();
+        if (routeStepDto != null) {
             JsonObjectBuilder step = routeStepDto.toJson();
             step.add("transitionable", getTargetIdList(null).contains(routeStepDto.getTargetId()));
             document.add("route_step", step);
         }
 
         // Add custom metadata
-        MetadataUtil.addMetadata(document, documentId);
+        MetadataUtil.addMetadata(document, aggregate.getMetadataDtoList(), aggregate.getDocumentMetadataDtoList());
 
         // Add files
         if (Boolean.TRUE == files) {
-            FileDao fileDao = new FileDao();
-            List<File> fileList = fileDao.getByDocumentsIds(Collections.singleton(documentId));
-
             JsonArrayBuilder filesArrayBuilder = Json.createArrayBuilder();
-            for (File fileDb : fileList) {
+            for (File fileDb : aggregate.getFileList()) {
                 filesArrayBuilder.add(RestUtil.fileToJsonObjectBuilder(fileDb));
             }
 
             document.add("files", filesArrayBuilder);
         }
+        timer.mark("json");
+
+        // Tags, ACLs and routes do not all change the update date, the ETag is computed from the response itself
+        JsonObject json = document.build();
+        String etag = HttpUtil.buildEtag(json.toString());
+        if (HttpUtil.isNotModified(request.getHeader(HttpHeaders.IF_NONE_MATCH), null, etag, null)) {
+            return Response.notModified()
+                    .header(HttpHeaders.ETAG, etag)
+                    .build();
+        }
 
-        return Response.ok().entity(document.build()).build();
+        // Backend timings are only disclosed to administrators
+        Response.ResponseBuilder response = Response.ok()
+                .header(HttpHeaders.ETAG, etag)
+                .entity(json);
+        if (hasBaseFunction(BaseFunction.ADMIN)) {
+            response.header("Server-Timing", timer.toServerTiming());
+        }
+        return response.build();
     }
 
     /**
@@ -369,6 +381,8 @@ public class DocumentResource extends BaseResource {
      * @apiParam {Boolean} [asc] If <code>true</code> sorts in ascending order
      * @apiParam {String} [search] Search query (see "Document search syntax" on the top of the page for explanations) when the input is entered by a human.
      * @apiParam {Boolean} [files] If <code>true</code> includes files information
+     * @apiParam {String} [cursor] Keyset pagination cursor, empty for the first page and then the previous <code>next_cursor</code>. The offset is ignored
+     * @apiParam {String="exact","cached","estimate","none"} [total=exact] How the total number of documents is counted
      *
      * @apiParam {String} [search[after]] The document must have been created after or at the value moment, accepted format is <code>yyyy-MM-dd</code>
      * @apiParam {String} [search[before]] The document must have been created before or at the value moment, accepted format is <code>yyyy-MM-dd</code>
@@ -385,7 +399,10 @@ public class DocumentResource extends BaseResource {
      * @apiParam {String} [search[ubefore]] The document must have been updated before or at the value moment, accepted format is <code>yyyy-MM-dd</code>
      * @apiParam {String} [search[workflow]] If the value is <code>me</code> the document must have an active route, for other values the criteria is ignored
      *
-     * @apiSuccess {Number} total Total number of documents
+     * @apiSuccess {Number} total Total number of documents, absent if not counted
+     * @apiSuccess {Boolean} total_estimated True if the total is an estimation
+     * @apiSuccess {Boolean} has_more True if there are more documents after this page
+     * @apiSuccess {String} next_cursor Cursor of the next page (keyset pagination only)
      * @apiSuccess {Object[]} documents List of documents
      * @apiSuccess {String} documents.id ID
      * @apiSuccess {String} documents.highlight Search highlight (for fulltext search)
@@ -412,6 +429,7 @@ public class DocumentResource extends BaseResource {
      * @apiSuccess {String[]} suggestions List of search suggestions
      *
      * @apiError (client) ForbiddenError Access denied
+     * @apiError (client) ValidationError Validation error
      * @apiError (server) SearchError Error searching in documents
      * @apiPermission user
      * @apiVersion 1.5.0
@@ -422,6 +440,8 @@ public class DocumentResource extends BaseResource {
      * @param asc Sorting
      * @param search Search query
      * @param files Files list
+     * @param cursor Keyset cursor
+     * @param total Count mode of the total
      * @return Response
      */
     @GET
@@ -433,6 +453,8 @@ public class DocumentResource extends BaseResource {
             @QueryParam("asc") Boolean asc,
             @QueryParam("search") String search,
             @QueryParam("files") Boolean files,
+            @QueryParam("cursor") String cursor,
+            @QueryParam("total") String total,
 
             @QueryParam("search[after]") String searchCreatedAfter,
             @QueryParam("search[before]") String searchCreatedBefore,
@@ -457,11 +479,17 @@ public class DocumentResource extends BaseResource {
         JsonArrayBuilder documents = Json.createArrayBuilder();
 
         TagDao tagDao = new TagDao();
-        PaginatedList<DocumentDto> paginatedList = PaginatedLists.create(limit, offset);
-        List<String> suggestionList = Lists.newArrayList();
         SortCriteria sortCriteria = new SortCriteria(sortColumn, asc);
+        PaginatedList<DocumentDto> paginatedList = createPaginatedList(limit, offset, sortCriteria, cursor, total);
+        List<String> suggestionList = Lists.newArrayList();
+
+        List<String> targetIdList = getTargetIdList(null);
 
-        List<TagDto> allTagDtoList = tagDao.findByCriteria(new TagCriteria().setTargetIdList(getTargetIdList(null)), null);
+        // All tags are only needed to resolve tag search criteria
+        List<TagDto> allTagDtoList = Collections.emptyList();
+        if (searchTag != null || searchTagNot != null || (search != null && search.contains("tag:"))) {
+            allTagDtoList = tagDao.findByCriteria(new TagCriteria().setTargetIdList(targetIdList), null);
+        }
 
         DocumentCriteria documentCriteria = DocumentSearchCriteriaUtil.parseSearchQuery(search, allTagDtoList);
         DocumentSearchCriteriaUtil.addHttpSearchParams(
@@ -482,15 +510,16 @@ public class DocumentResource extends BaseResource {
                 searchWorkflow,
                 allTagDtoList);
 
-        documentCriteria.setTargetIdList(getTargetIdList(null));
+        documentCriteria.setTargetIdList(targetIdList);
         try {
             AppContext.getInstance().getIndexingHandler().findByCriteria(paginatedList, suggestionList, documentCriteria, sortCriteria);
         } catch (Exception e) {
             throw new ServerException("SearchError", "Error searching in documents", e);
         }
 
-        // Find the files of the documents
-        Iterable<String> documentsIds = CollectionUtils.collect(paginatedList.getResultList(), DocumentDto::getId);
+        // Find the files and tags of the documents
+        Collection<String> documentsIds = CollectionUtils.collect(paginatedList.getResultList(), DocumentDto::getId);
+        Map<String, List<TagDto>> tagsByDocument = tagDao.findByDocumentsIds(documentsIds, targetIdList);
         FileDao fileDao = new FileDao();
         List<File> filesList = null;
         Map<String, Long> filesCountByDocument = null;
@@ -501,10 +530,7 @@ public class DocumentResource extends BaseResource {
         }
 
         for (DocumentDto documentDto : paginatedList.getResultList()) {
-            // Get tags accessible by the current user on this document
-            List<TagDto> tagDtoList = tagDao.findByCriteria(new TagCriteria()
-                    .setTargetIdList(getTargetIdList(null))
-                    .setDocumentId(documentDto.getId()), new SortCriteria(1, true));
+            List<TagDto> tagDtoList = tagsByDocument.getOrDefault(documentDto.getId(), Collections.emptyList());
 
             Long filesCount;
             Collection<File> filesOfDocument = null;
@@ -538,7 +564,7 @@ public class DocumentResource extends BaseResource {
             suggestions.add(suggestion);
         }
 
-        response.add("total", paginatedList.getResultCount())
+        addPagination(response, paginatedList)
                 .add("documents", documents)
                 .add("suggestions", suggestions);
 
@@ -560,10 +586,13 @@ public class DocumentResource extends BaseResource {
      * @param asc        Sorting
      * @param search     Search query
      * @param files      Files list
+     * @param cursor     Keyset cursor
+     * @param total      Count mode of the total
      * @return Response
      */
     @POST
     @Path("list")
+    @ReadOnly
     public Response listPost(
             @FormParam("limit") Integer limit,
             @FormParam("offset") Integer offset,
@@ -571,6 +600,8 @@ public class DocumentResource extends BaseResource {
             @FormParam("asc") Boolean asc,
             @FormParam("search") String search,
             @FormParam("files") Boolean files,
+            @FormParam("cursor") String cursor,
+            @FormParam("total") String total,
             @FormParam("search[after]") String searchCreatedAfter,
             @FormParam("search[before]") String searchCreatedBefore,
             @FormParam("search[by]") String searchBy,
@@ -593,6 +624,8 @@ public class DocumentResource extends BaseResource {
                 asc,
                 search,
                 files,
+                cursor,
+                total,
                 searchCreatedAfter,
                 searchCreatedBefore,
                 searchBy,
@@ -905,11 +938,13 @@ public class DocumentResource extends BaseResource {
         ValidationUtil.validateRequired(fileBodyPart, "file");
 
         // Save the file to a temporary file
-        java.nio.file.Path unencryptedFile;
+        java.nio.file.Path unencryptedFile = null;
         try {
             unencryptedFile = AppContext.getInstance().getFileService().createTemporaryFile();
-            Files.copy(fileBodyPart.getValueAs(InputStream.class), unencryptedFile, StandardCopyOption.REPLACE_EXISTING);
+            long size = Files.copy(fileBodyPart.getValueAs(InputStream.class), unencryptedFile, StandardCopyOption.REPLACE_EXISTING);
+            AppContext.getInstance().getFileService().updateTemporarySize(unencryptedFile, size);
         } catch (IOException e) {
+            AppContext.getInstance().getFileService().deleteTemporaryFile(unencryptedFile);
             throw new ServerException("StreamError", "Error reading the input file", e);
         }
 
@@ -924,6 +959,8 @@ public class DocumentResource extends BaseResource {
             EmailUtil.parseMailContent(message, mailContent);
         } catch (IOException | MessagingException e) {
             throw new ServerException("StreamError", "Error reading the temporary file", e);
+        } finally {
+            AppContext.getInstance().getFileService().deleteTemporaryFile(unencryptedFile);
         }
 
         // Create the document
@@ -1063,14 +1100,9 @@ public class DocumentResource extends BaseResource {
         if (relationList != null) {
             DocumentDao documentDao = new DocumentDao();
             RelationDao relationDao = new RelationDao();
-            Set<String> documentIdSet = new HashSet<>();
-            for (String targetDocId : relationList) {
-                // ACL are not checked, because the editing user is not forced to view the target document
-                Document document = documentDao.getById(targetDocId);
-                if (document != null && !documentId.equals(targetDocId)) {
-                    documentIdSet.add(targetDocId);
-                }
-            }
+            // ACL are not checked, because the editing user is not forced to view the target document
+            Set<String> documentIdSet = documentDao.filterActiveIds(relationList);
+            documentIdSet.remove(documentId);
             relationDao.updateRelationList(documentId, documentIdSet);
         }
     }
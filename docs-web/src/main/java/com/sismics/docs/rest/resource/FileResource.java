@@ -3,10 +3,12 @@ package com.sismics.docs.rest.resource;
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
 import com.google.common.io.ByteStreams;
+import com.sismics.docs.core.constant.Constants;
 import com.sismics.docs.core.constant.PermType;
 import com.sismics.docs.core.dao.AclDao;
 import com.sismics.docs.core.dao.DocumentDao;
 import com.sismics.docs.core.dao.FileDao;
+import com.sismics.docs.core.dao.UploadDao;
 import com.sismics.docs.core.dao.UserDao;
 import com.sismics.docs.core.dao.dto.DocumentDto;
 import com.sismics.docs.core.event.DocumentUpdatedAsyncEvent;
@@ -14,10 +16,16 @@ import com.sismics.docs.core.event.FileDeletedAsyncEvent;
 import com.sismics.docs.core.event.FileUpdatedAsyncEvent;
 import com.sismics.docs.core.model.context.AppContext;
 import com.sismics.docs.core.model.jpa.File;
+import com.sismics.docs.core.model.jpa.Upload;
 import com.sismics.docs.core.model.jpa.User;
-import com.sismics.docs.core.util.DirectoryUtil;
 import com.sismics.docs.core.util.EncryptionUtil;
 import com.sismics.docs.core.util.FileUtil;
+import com.sismics.docs.core.util.PreviewCache;
+import com.sismics.docs.core.util.UploadUtil;
+import com.sismics.docs.core.util.ZipExporter;
+import com.sismics.docs.core.util.storage.StorageHandler;
+import com.sismics.docs.core.util.storage.StoredObject;
+import com.sismics.docs.rest.util.CachedImageUtil;
 import com.sismics.rest.exception.ClientException;
 import com.sismics.rest.exception.ForbiddenClientException;
 import com.sismics.rest.exception.ServerException;
@@ -41,16 +49,14 @@ import jakarta.ws.rs.core.Response.Status;
 import jakarta.ws.rs.core.StreamingOutput;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.URISyntaxException;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
 import java.text.MessageFormat;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 /**
  * File REST resources.
@@ -79,6 +85,7 @@ public class FileResource extends BaseResource {
      * @apiError (server) StreamError Error reading the input file
      * @apiError (server) ErrorGuessMime Error guessing mime type
      * @apiError (client) QuotaReached Quota limit reached
+     * @apiError (client) TemporarySpaceFull Too many files being processed, try again later
      * @apiError (server) FileError Error adding a file
      * @apiPermission user
      * @apiVersion 1.5.0
@@ -112,22 +119,261 @@ public class FileResource extends BaseResource {
             }
         }
         
-        // Keep unencrypted data temporary on disk
+        // Stream the data to the storage, it is kept unencrypted on disk only if it needs to be processed
         String name = fileBodyPart.getContentDisposition() != null ?
                 URLDecoder.decode(fileBodyPart.getContentDisposition().getFileName(), StandardCharsets.UTF_8) : null;
-        java.nio.file.Path unencryptedFile;
-        long fileSize;
+        try (InputStream inputStream = fileBodyPart.getValueAs(InputStream.class)) {
+            String fileId = FileUtil.createFile(name, previousFileId, inputStream, documentDto == null ?
+                    null : documentDto.getLanguage(), principal.getId(), documentId);
+            long fileSize = new FileDao().getActiveById(fileId).getSize();
+
+            // Always return OK
+            JsonObjectBuilder response = Json.createObjectBuilder()
+                    .add("status", "ok")
+                    .add("id", fileId)
+                    .add("size", fileSize);
+            return Response.ok().entity(response.build()).build();
+        } catch (IOException e) {
+            throw new ClientException(e.getMessage(), e.getMessage(), e);
+        } catch (Exception e) {
+            throw new ServerException("FileError", "Error adding a file", e);
+        }
+    }
+    
+    /**
+     * Start a resumable upload.
+     *
+     * @api {post} /file/upload Start a resumable upload
+     * @apiDescription The file is sent in chunks with PUT /file/upload/:id, the upload can be resumed
+     * from the offset returned by GET /file/upload/:id after an interruption.
+     * An upload session without new content for 24 hours is deleted.
+     * @apiName PostFileUpload
+     * @apiGroup File
+     * @apiParam {String} [id] Document ID
+     * @apiParam {String} [previousFileId] ID of the file to replace by this new version
+     * @apiParam {String} name File name
+     * @apiParam {Number} [size] File size (in bytes)
+     * @apiSuccess {String} id Upload ID
+     * @apiSuccess {Number} offset Offset of the next chunk
+     * @apiSuccess {Number} max_chunk_size Maximum size of a chunk (in bytes)
+     * @apiError (client) ForbiddenError Access denied
+     * @apiError (client) ValidationError Validation error
+     * @apiError (client) NotFound Document not found
+     * @apiError (client) QuotaReached Quota limit reached
+     * @apiError (client) TooManyUploads Too many uploads in progress
+     * @apiPermission user
+     * @apiVersion 1.5.0
+     *
+     * @param documentId Document ID
+     * @param previousFileId Previous file ID
+     * @param name File name
+     * @param sizeStr File size
+     * @return Response
+     */
+    @POST
+    @Path("upload")
+    public Response startUpload(
+            @FormParam("id") String documentId,
+            @FormParam("previousFileId") String previousFileId,
+            @FormParam("name") String name,
+            @FormParam("size") String sizeStr) {
+        if (!authenticate()) {
+            throw new ForbiddenClientException();
+        }
+
+        // Validate input data
+        name = ValidationUtil.validateLength(name, "name", 1, 200, false);
+        Long size = null;
+        if (!Strings.isNullOrEmpty(sizeStr)) {
+            size = ValidationUtil.validateLong(sizeStr, "size");
+            if (size < 0) {
+                throw new ClientException("ValidationError", "size must be positive");
+            }
+        }
+
+        // Check the document and the limits
+        if (Strings.isNullOrEmpty(documentId)) {
+            documentId = null;
+        } else if (new DocumentDao().getDocument(documentId, PermType.WRITE, getTargetIdList(null)) == null) {
+            throw new NotFoundException();
+        }
+        User user = new UserDao().getById(principal.getId());
+        if (size != null && user.getStorageCurrent() + size > user.getStorageQuota()) {
+            throw new ClientException("QuotaReached", "QuotaReached");
+        }
+        UploadDao uploadDao = new UploadDao();
+        if (uploadDao.countByUserId(principal.getId()) >= Constants.UPLOAD_MAX_COUNT) {
+            throw new ClientException("TooManyUploads", "Too many uploads in progress");
+        }
+
+        // Create the upload session
+        Upload upload = new Upload()
+                .setUserId(principal.getId())
+                .setDocumentId(documentId)
+                .setPreviousFileId(Strings.emptyToNull(previousFileId))
+                .setName(name)
+                .setSize(size);
+        String uploadId = uploadDao.create(upload);
+
+        JsonObjectBuilder response = Json.createObjectBuilder()
+                .add("id", uploadId)
+                .add("offset", 0)
+                .add("max_chunk_size", Constants.UPLOAD_MAX_CHUNK_SIZE);
+        return Response.ok().entity(response.build()).build();
+    }
+
+    /**
+     * Returns the progress of a resumable upload.
+     *
+     * @api {get} /file/upload/:id Get the progress of a resumable upload
+     * @apiName GetFileUpload
+     * @apiGroup File
+     * @apiParam {String} id Upload ID
+     * @apiSuccess {String} id Upload ID
+     * @apiSuccess {String} name File name
+     * @apiSuccess {Number} [size] File size (in bytes)
+     * @apiSuccess {Number} offset Offset of the next chunk, everything before has been received
+     * @apiError (client) ForbiddenError Access denied
+     * @apiError (client) NotFound Upload not found
+     * @apiPermission user
+     * @apiVersion 1.5.0
+     *
+     * @param uploadId Upload ID
+     * @return Response
+     */
+    @GET
+    @Path("upload/{id: [a-z0-9\\-]+}")
+    public Response getUpload(@PathParam("id") String uploadId) {
+        if (!authenticate()) {
+            throw new ForbiddenClientException();
+        }
+
+        Upload upload = findUpload(uploadId);
+        JsonObjectBuilder response = Json.createObjectBuilder()
+                .add("id", upload.getId())
+                .add("name", upload.getName());
+        if (upload.getSize() != null) {
+            response.add("size", upload.getSize());
+        }
         try {
-            unencryptedFile = AppContext.getInstance().getFileService().createTemporaryFile(name);
-            Files.copy(fileBodyPart.getValueAs(InputStream.class), unencryptedFile, StandardCopyOption.REPLACE_EXISTING);
-            fileSize = Files.size(unencryptedFile);
+            response.add("offset", UploadUtil.getOffset(upload.getId()));
         } catch (IOException e) {
-            throw new ServerException("StreamError", "Error reading the input file", e);
+            throw new ServerException("UploadError", "Error reading the upload", e);
         }
+        return Response.ok().entity(response.build()).build();
+    }
 
+    /**
+     * Send a chunk of a resumable upload.
+     *
+     * @api {put} /file/upload/:id Send a chunk of a resumable upload
+     * @apiDescription The body is the chunk content, in application/octet-stream.
+     * A chunk interrupted during its transfer is kept up to the last byte received.
+     * @apiName PutFileUpload
+     * @apiGroup File
+     * @apiParam {String} id Upload ID
+     * @apiParam {Number} offset Offset of the chunk, must be the offset of the next chunk
+     * @apiSuccess {Number} offset Offset of the next chunk
+     * @apiError (client) ForbiddenError Access denied
+     * @apiError (client) ValidationError Validation error
+     * @apiError (client) NotFound Upload not found
+     * @apiError (client) OffsetMismatch The offset is not the offset of the next chunk
+     * @apiError (client) UploadInProgress Another chunk is being received
+     * @apiError (client) ChunkTooLarge The chunk is larger than the maximum chunk size
+     * @apiError (client) SizeExceeded The content is larger than the announced file size
+     * @apiError (client) QuotaReached Quota limit reached
+     * @apiError (server) UploadError Error receiving the chunk
+     * @apiPermission user
+     * @apiVersion 1.5.0
+     *
+     * @param uploadId Upload ID
+     * @param offsetStr Offset
+     * @param inputStream Chunk
+     * @return Response
+     */
+    @PUT
+    @Path("upload/{id: [a-z0-9\\-]+}")
+    @Consumes(MediaType.APPLICATION_OCTET_STREAM)
+    public Response putUpload(
+            @PathParam("id") String uploadId,
+            @QueryParam("offset") String offsetStr,
+            InputStream inputStream) {
+        if (!authenticate()) {
+            throw new ForbiddenClientException();
+        }
+
+        long offset = ValidationUtil.validateLong(offsetStr, "offset");
+        Upload upload = findUpload(uploadId);
+        User user = new UserDao().getById(principal.getId());
+        long newOffset;
         try {
-            String fileId = FileUtil.createFile(name, previousFileId, unencryptedFile, fileSize, documentDto == null ?
-                    null : documentDto.getLanguage(), principal.getId(), documentId);
+            newOffset = UploadUtil.append(upload, offset, inputStream, user);
+        } catch (IOException e) {
+            throw new ClientException(e.getMessage(), e.getMessage(), e);
+        } catch (Exception e) {
+            throw new ServerException("UploadError", "Error receiving the chunk", e);
+        }
+        new UploadDao().touch(upload.getId());
+
+        JsonObjectBuilder response = Json.createObjectBuilder()
+                .add("offset", newOffset);
+        return Response.ok().entity(response.build()).build();
+    }
+
+    /**
+     * Complete a resumable upload, the file is added.
+     *
+     * @api {post} /file/upload/:id/complete Complete a resumable upload
+     * @apiName PostFileUploadComplete
+     * @apiGroup File
+     * @apiParam {String} id Upload ID
+     * @apiSuccess {String} status Status OK
+     * @apiSuccess {String} id File ID
+     * @apiSuccess {Number} size File size (in bytes)
+     * @apiError (client) ForbiddenError Access denied
+     * @apiError (client) NotFound Upload or document not found
+     * @apiError (client) UploadIncomplete The content received is shorter than the announced file size
+     * @apiError (client) QuotaReached Quota limit reached
+     * @apiError (client) TemporarySpaceFull Too many files being processed, try again later
+     * @apiError (server) FileError Error adding a file
+     * @apiPermission user
+     * @apiVersion 1.5.0
+     *
+     * @param uploadId Upload ID
+     * @return Response
+     */
+    @POST
+    @Path("upload/{id: [a-z0-9\\-]+}/complete")
+    public Response completeUpload(@PathParam("id") String uploadId) {
+        if (!authenticate()) {
+            throw new ForbiddenClientException();
+        }
+
+        Upload upload = findUpload(uploadId);
+
+        // The document may have been deleted since the start of the upload
+        DocumentDto documentDto = null;
+        if (upload.getDocumentId() != null) {
+            documentDto = new DocumentDao().getDocument(upload.getDocumentId(), PermType.WRITE, getTargetIdList(null));
+            if (documentDto == null) {
+                throw new NotFoundException();
+            }
+        }
+
+        User user = new UserDao().getById(principal.getId());
+        try {
+            if (upload.getSize() != null && UploadUtil.getOffset(upload.getId()) != upload.getSize()) {
+                throw new ClientException("UploadIncomplete", "The content received is shorter than the file size");
+            }
+
+            String fileId;
+            try (InputStream inputStream = UploadUtil.open(upload.getId(), user.getPrivateKey())) {
+                fileId = FileUtil.createFile(upload.getName(), upload.getPreviousFileId(), inputStream, documentDto == null ?
+                        null : documentDto.getLanguage(), principal.getId(), upload.getDocumentId());
+            }
+            long fileSize = new FileDao().getActiveById(fileId).getSize();
+            new UploadDao().delete(upload.getId());
+            UploadUtil.delete(upload.getId());
 
             // Always return OK
             JsonObjectBuilder response = Json.createObjectBuilder()
@@ -135,13 +381,53 @@ public class FileResource extends BaseResource {
                     .add("id", fileId)
                     .add("size", fileSize);
             return Response.ok().entity(response.build()).build();
+        } catch (ClientException e) {
+            throw e;
         } catch (IOException e) {
             throw new ClientException(e.getMessage(), e.getMessage(), e);
         } catch (Exception e) {
             throw new ServerException("FileError", "Error adding a file", e);
         }
     }
-    
+
+    /**
+     * Cancel a resumable upload.
+     *
+     * @api {delete} /file/upload/:id Cancel a resumable upload
+     * @apiName DeleteFileUpload
+     * @apiGroup File
+     * @apiParam {String} id Upload ID
+     * @apiSuccess {String} status Status OK
+     * @apiError (client) ForbiddenError Access denied
+     * @apiError (client) NotFound Upload not found
+     * @apiError (server) UploadError Error deleting the upload
+     * @apiPermission user
+     * @apiVersion 1.5.0
+     *
+     * @param uploadId Upload ID
+     * @return Response
+     */
+    @DELETE
+    @Path("upload/{id: [a-z0-9\\-]+}")
+    public Response deleteUpload(@PathParam("id") String uploadId) {
+        if (!authenticate()) {
+            throw new ForbiddenClientException();
+        }
+
+        Upload upload = findUpload(uploadId);
+        new UploadDao().delete(upload.getId());
+        try {
+            UploadUtil.delete(upload.getId());
+        } catch (IOException e) {
+            throw new ServerException("UploadError", "Error deleting the upload", e);
+        }
+
+        // Always return OK
+        JsonObjectBuilder response = Json.createObjectBuilder()
+                .add("status", "ok");
+        return Response.ok().entity(response.build()).build();
+    }
+
     /**
      * Attach a file to a document.
      *
@@ -198,8 +484,7 @@ public class FileResource extends BaseResource {
         
         // Raise a new file updated event and document updated event (it wasn't sent during file creation)
         try {
-            java.nio.file.Path storedFile = DirectoryUtil.getStorageDirectory().resolve(id);
-            java.nio.file.Path unencryptedFile = EncryptionUtil.decryptFile(storedFile, user.getPrivateKey());
+            java.nio.file.Path unencryptedFile = FileUtil.decryptStoredFile(file, user.getPrivateKey());
             FileUtil.startProcessingFile(id);
             FileUpdatedAsyncEvent fileUpdatedAsyncEvent = new FileUpdatedAsyncEvent();
             fileUpdatedAsyncEvent.setUserId(principal.getId());
@@ -306,8 +591,7 @@ public class FileResource extends BaseResource {
 
         // Start the processing asynchronously
         try {
-            java.nio.file.Path storedFile = DirectoryUtil.getStorageDirectory().resolve(id);
-            java.nio.file.Path unencryptedFile = EncryptionUtil.decryptFile(storedFile, user.getPrivateKey());
+            java.nio.file.Path unencryptedFile = FileUtil.decryptStoredFile(file, user.getPrivateKey());
             FileUtil.startProcessingFile(id);
             FileUpdatedAsyncEvent event = new FileUpdatedAsyncEvent();
             event.setUserId(principal.getId());
@@ -551,8 +835,13 @@ public class FileResource extends BaseResource {
      * @apiParam {String} id File ID
      * @apiParam {String} share Share ID
      * @apiParam {String="web","thumb","content"} [size] Size variation
+     * @apiHeader {String} [Range] Single byte range, answered with a 206 Partial Content
+     * @apiHeader {String} [If-Range] ETag or last modification date the range is valid for
+     * @apiHeader {String} [If-None-Match] ETag already known, answered with a 304 Not Modified
+     * @apiHeader {String} [If-Modified-Since] Last modification date already known, answered with a 304 Not Modified
      * @apiSuccess {Object} file The file data is the whole response
      * @apiError (client) SizeError Size must be web or thumb
+     * @apiError (client) RangeNotSatisfiable The range is outside of the file
      * @apiError (client) ForbiddenError Access denied or document not visible
      * @apiError (client) NotFound File not found
      * @apiError (server) ServiceUnavailable Error reading the file
@@ -580,69 +869,120 @@ public class FileResource extends BaseResource {
 
         // Get the stored file
         UserDao userDao = new UserDao();
-        java.nio.file.Path storedFile;
+        StorageHandler storageHandler = AppContext.getInstance().getStorageHandler();
+        StoredObject storedObject;
+        byte[] placeholder = null;
         String mimeType;
         boolean decrypt;
-        if (size != null) {
-            if (size.equals("content")) {
-                return Response.ok(Strings.nullToEmpty(file.getContent()))
-                        .header(HttpHeaders.CONTENT_TYPE, "text/plain; charset=utf-8")
-                        .build();
-            }
+        try {
+            if (size != null) {
+                if (size.equals("content")) {
+                    return Response.ok(Strings.nullToEmpty(file.getContent()))
+                            .header(HttpHeaders.CONTENT_TYPE, "text/plain; charset=utf-8")
+                            .build();
+                }
 
-            storedFile = DirectoryUtil.getStorageDirectory().resolve(fileId + "_" + size);
-            mimeType = MimeType.IMAGE_JPEG; // Thumbnails are JPEG
-            decrypt = true; // Thumbnails are encrypted
-            if (!Files.exists(storedFile)) {
-                try {
-                    storedFile = Paths.get(getClass().getResource("/image/file-" + size + ".png").toURI());
-                } catch (URISyntaxException e) {
-                    // Ignore
+                storedObject = storageHandler.stat(fileId + "_" + size);
+                mimeType = MimeType.IMAGE_JPEG; // Thumbnails are JPEG
+                decrypt = true; // Thumbnails are encrypted
+                if (storedObject == null) {
+                    placeholder = CachedImageUtil.getResource("/image/file-" + size + ".png");
+                    storedObject = new StoredObject(fileId + "_" + size, placeholder.length, 0);
+                    mimeType = MimeType.IMAGE_PNG;
+                    decrypt = false;
+                }
+            } else {
+                storedObject = FileUtil.statStoredFile(file);
+                mimeType = file.getMimeType();
+                decrypt = true; // Original files are encrypted
+                if (storedObject == null) {
+                    return Response.status(Status.SERVICE_UNAVAILABLE).build();
                 }
-                mimeType = MimeType.IMAGE_PNG;
-                decrypt = false;
             }
-        } else {
-            storedFile = DirectoryUtil.getStorageDirectory().resolve(fileId);
-            mimeType = file.getMimeType();
-            decrypt = true; // Original files are encrypted
+        } catch (IOException e) {
+            return Response.status(Status.SERVICE_UNAVAILABLE).build();
         }
         
-        // Stream the output and decrypt it if necessary
-        StreamingOutput stream;
-        
+        // The client revalidates with the version of the stored file, before it is opened
+        long lastModified = storedObject.getLastModified();
+        String etag = decrypt ? HttpUtil.buildEtag(file.getId(), size, file.getVersion(), lastModified) : null;
+        if (decrypt && HttpUtil.isNotModified(request.getHeader(HttpHeaders.IF_NONE_MATCH),
+                request.getHeader(HttpHeaders.IF_MODIFIED_SINCE), etag, lastModified)) {
+            return addCacheHeaders(Response.notModified(), etag, lastModified).build();
+        }
+
         // A file is always encrypted by the creator of it
         User user = userDao.getById(file.getUserId());
-        
-        // Write the decrypted file to the output
-        try {
-            InputStream fileInputStream = Files.newInputStream(storedFile);
-            final InputStream responseInputStream = decrypt ?
-                    EncryptionUtil.decryptInputStream(fileInputStream, user.getPrivateKey()) : fileInputStream;
-                    
-            stream = outputStream -> {
-                try {
-                    ByteStreams.copy(responseInputStream, outputStream);
-                } finally {
+
+        // The previews are small and displayed often, they are kept decrypted in memory
+        byte[] content = placeholder;
+        if (decrypt && size != null) {
+            content = PreviewCache.get(storedObject.getName(), lastModified);
+            if (content == null) {
+                try (InputStream inputStream = EncryptionUtil.decryptInputStream(storageHandler.get(storedObject.getName()), user.getPrivateKey())) {
+                    content = ByteStreams.toByteArray(inputStream);
+                } catch (Exception e) {
+                    return Response.status(Status.SERVICE_UNAVAILABLE).build();
+                }
+                PreviewCache.put(storedObject.getName(), lastModified, content);
+            }
+        }
+
+        // AES/CTR does not change the length, a byte range can be served from the encrypted file
+        long length = content == null ? storedObject.getSize() : content.length;
+        long[] range = HttpUtil.parseRange(request.getHeader("Range"), length);
+        if (range != null && !HttpUtil.isRangeValid(request.getHeader("If-Range"), etag, lastModified)) {
+            // The range is only valid for the same version of the file
+            range = null;
+        }
+        if (range != null && range[0] > range[1]) {
+            return Response.status(Status.REQUESTED_RANGE_NOT_SATISFIABLE)
+                    .header("Content-Range", "bytes */" + length)
+                    .build();
+        }
+        long offset = range == null ? 0 : range[0];
+        long count = range == null ? length : range[1] - range[0] + 1;
+
+        // Stream the original file and decrypt it, the previews and the placeholder are sent from memory
+        Object entity;
+        if (content == null) {
+            try {
+                // Only the AES blocks from the offset are read, the original file may be in a blob
+                long blockOffset = EncryptionUtil.getBlockOffset(offset);
+                InputStream fileInputStream = FileUtil.openStoredFile(file, blockOffset);
+                String key = FileUtil.getStoredFileKey(file, user.getPrivateKey());
+                final InputStream limitedInputStream = ByteStreams.limit(EncryptionUtil.decryptInputStream(fileInputStream, key, offset), count);
+
+                entity = (StreamingOutput) outputStream -> {
                     try {
-                        responseInputStream.close();
-                        outputStream.close();
-                    } catch (IOException e) {
-                        // Ignore
+                        ByteStreams.copy(limitedInputStream, outputStream);
+                    } finally {
+                        try {
+                            limitedInputStream.close();
+                            outputStream.close();
+                        } catch (IOException e) {
+                            // Ignore
+                        }
                     }
-                }
-            };
-        } catch (Exception e) {
-            return Response.status(Status.SERVICE_UNAVAILABLE).build();
+                };
+            } catch (Exception e) {
+                return Response.status(Status.SERVICE_UNAVAILABLE).build();
+            }
+        } else {
+            entity = range == null ? content : Arrays.copyOfRange(content, (int) offset, (int) (offset + count));
         }
 
-        Response.ResponseBuilder builder = Response.ok(stream)
+        Response.ResponseBuilder builder = Response.ok(entity)
                 .header(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + file.getFullName("data") + "\"")
-                .header(HttpHeaders.CONTENT_TYPE, mimeType);
+                .header(HttpHeaders.CONTENT_TYPE, mimeType)
+                .header(HttpHeaders.CONTENT_LENGTH, count)
+                .header("Accept-Ranges", "bytes");
+        if (range != null) {
+            builder.status(Status.PARTIAL_CONTENT)
+                    .header("Content-Range", "bytes " + range[0] + "-" + range[1] + "/" + length);
+        }
         if (decrypt) {
-            // Cache real files
-            builder.header(HttpHeaders.CACHE_CONTROL, "private")
-                    .header(HttpHeaders.EXPIRES, HttpUtil.buildExpiresHeader(3_600_000L * 24L * 365L));
+            addCacheHeaders(builder, etag, lastModified);
         } else {
             // Do not cache the temporary thumbnail
             builder.header(HttpHeaders.CACHE_CONTROL, "no-store, must-revalidate")
@@ -651,6 +991,21 @@ public class FileResource extends BaseResource {
         return builder.build();
     }
 
+    /**
+     * Add the headers caching a stored file.
+     *
+     * @param builder Response builder
+     * @param etag Entity tag of the stored file
+     * @param lastModified Last modification date of the stored file
+     * @return Response builder
+     */
+    private Response.ResponseBuilder addCacheHeaders(Response.ResponseBuilder builder, String etag, long lastModified) {
+        return builder.header(HttpHeaders.CACHE_CONTROL, "private")
+                .header(HttpHeaders.EXPIRES, HttpUtil.buildExpiresHeader(3_600_000L * 24L * 365L))
+                .header(HttpHeaders.ETAG, etag)
+                .header(HttpHeaders.LAST_MODIFIED, HttpUtil.formatHttpDate(lastModified));
+    }
+
     /**
      * Returns all files from a document, zipped.
      *
@@ -721,39 +1076,25 @@ public class FileResource extends BaseResource {
      * Sent the content of a list of files.
      */
     private Response sendZippedFiles(String zipFileName, List<File> fileList) {
-        final UserDao userDao = new UserDao();
+        // Files are encrypted by the creator of them, their keys are read at once
+        Map<String, String> privateKeyMap = new HashMap<>();
+        for (User user : new UserDao().getByIdList(fileList.stream().map(File::getUserId).collect(Collectors.toSet()))) {
+            privateKeyMap.put(user.getId(), user.getPrivateKey());
+        }
+        ZipExporter zipExporter = new ZipExporter(fileList, privateKeyMap);
 
         // Create the ZIP stream
-        StreamingOutput stream = outputStream -> {
-            try (ZipOutputStream zipOutputStream = new ZipOutputStream(outputStream)) {
-                // Add each file to the ZIP stream
-                int index = 0;
-                for (File file : fileList) {
-                    java.nio.file.Path storedfile = DirectoryUtil.getStorageDirectory().resolve(file.getId());
-                    InputStream fileInputStream = Files.newInputStream(storedfile);
-
-                    // Add the decrypted file to the ZIP stream
-                    // Files are encrypted by the creator of them
-                    User user = userDao.getById(file.getUserId());
-                    try (InputStream decryptedStream = EncryptionUtil.decryptInputStream(fileInputStream, user.getPrivateKey())) {
-                        ZipEntry zipEntry = new ZipEntry(index + "-" + file.getFullName(Integer.toString(index)));
-                        zipOutputStream.putNextEntry(zipEntry);
-                        ByteStreams.copy(decryptedStream, zipOutputStream);
-                        zipOutputStream.closeEntry();
-                    } catch (Exception e) {
-                        throw new WebApplicationException(e);
-                    }
-                    index++;
-                }
-            }
-            outputStream.close();
-        };
+        StreamingOutput stream = zipExporter::write;
         
         // Write to the output
-        return Response.ok(stream)
+        Response.ResponseBuilder response = Response.ok(stream)
                 .header("Content-Type", "application/zip")
-                .header("Content-Disposition", "attachment; filename=\"" + zipFileName + ".zip\"")
-                .build();
+                .header("Content-Disposition", "attachment; filename=\"" + zipFileName + ".zip\"");
+        Long length = zipExporter.getLength();
+        if (length != null) {
+            response.header(HttpHeaders.CONTENT_LENGTH, length);
+        }
+        return response.build();
     }
 
     /**
@@ -773,6 +1114,19 @@ public class FileResource extends BaseResource {
         return file;
     }
 
+    /**
+     * Find an upload session of the current user.
+     *
+     * @param uploadId Upload ID
+     * @return Upload session
+     */
+    private Upload findUpload(String uploadId) {
+        Upload upload = new UploadDao().getById(uploadId, principal.getId());
+        if (upload == null) {
+            throw new NotFoundException();
+        }
+        return upload;
+    }
 
     /**
      * Find a list of files with access rights checking.
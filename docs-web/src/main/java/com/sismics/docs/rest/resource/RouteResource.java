@@ -116,6 +116,7 @@ public class RouteResource extends BaseResource {
                 routeStepDao.create(routeStep);
             }
         }
+        new DocumentDao().updateCurrentStep(documentId);
 
         // Intialize ACLs on the first step
         RouteStepDto routeStepDto = routeStepDao.getCurrentStep(documentId);
@@ -5,6 +5,7 @@ import com.sismics.docs.core.constant.AclTargetType;
 import com.sismics.docs.core.constant.AclType;
 import com.sismics.docs.core.constant.PermType;
 import com.sismics.docs.core.dao.AclDao;
+import com.sismics.docs.core.dao.DocumentDao;
 import com.sismics.docs.core.dao.ShareDao;
 import com.sismics.docs.core.event.DocumentUpdatedAsyncEvent;
 import com.sismics.docs.core.model.jpa.Acl;
@@ -82,6 +83,7 @@ public class ShareResource extends BaseResource {
         acl.setType(AclType.USER);
         acl.setTargetId(share.getId());
         aclDao.create(acl, principal.getId());
+        new DocumentDao().updateShareCount(documentId);
 
         // Raise a document updated event
         DocumentUpdatedAsyncEvent event = new DocumentUpdatedAsyncEvent();
@@ -138,6 +140,7 @@ public class ShareResource extends BaseResource {
         // Delete the share
         ShareDao shareDao = new ShareDao();
         shareDao.delete(id);
+        new DocumentDao().updateShareCount(acl.getSourceId());
 
         // Raise a document updated event
         DocumentUpdatedAsyncEvent event = new DocumentUpdatedAsyncEvent();
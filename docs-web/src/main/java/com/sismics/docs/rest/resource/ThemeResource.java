@@ -1,12 +1,12 @@
 package com.sismics.docs.rest.resource;
 
 import com.google.common.base.Strings;
-import com.google.common.io.ByteStreams;
 import com.sismics.docs.core.constant.ConfigType;
 import com.sismics.docs.core.dao.ConfigDao;
 import com.sismics.docs.core.model.jpa.Config;
 import com.sismics.docs.core.util.DirectoryUtil;
 import com.sismics.docs.rest.constant.BaseFunction;
+import com.sismics.docs.rest.util.CachedImageUtil;
 import com.sismics.rest.exception.ClientException;
 import com.sismics.rest.exception.ForbiddenClientException;
 import com.sismics.rest.exception.ServerException;
@@ -24,7 +24,6 @@ import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.StreamingOutput;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.io.StringReader;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
@@ -211,30 +210,37 @@ public class ThemeResource extends BaseResource {
     public Response getImage(@PathParam("type") final String type) {
         final java.nio.file.Path filePath = DirectoryUtil.getThemeDirectory().resolve(type);
 
-        // Copy the image to the response output
-        return Response.ok(new StreamingOutput() {
-            @Override
-            public void write(OutputStream outputStream) throws IOException, WebApplicationException {
-                InputStream inputStream = null;
-                try {
-                    if (Files.exists(filePath)) {
-                        inputStream = Files.newInputStream(filePath);
-                    } else {
-                        inputStream = getClass().getResource("/image/" + (type.equals("logo") ? "logo.png" : "background.jpg")).openStream();
-                    }
-                    ByteStreams.copy(inputStream, outputStream);
-                } finally {
+        // Images are sent from memory, a custom image too large to be kept in memory is streamed
+        Object entity;
+        long length;
+        try {
+            byte[] image = CachedImageUtil.getFile(filePath);
+            if (image == null && Files.exists(filePath)) {
+                length = Files.size(filePath);
+                entity = (StreamingOutput) outputStream -> {
                     try {
-                        if (inputStream != null) {
-                            inputStream.close();
+                        Files.copy(filePath, outputStream);
+                    } finally {
+                        try {
+                            outputStream.close();
+                        } catch (IOException e) {
+                            // Ignore
                         }
-                        outputStream.close();
-                    } catch (IOException e) {
-                        // Ignore
                     }
+                };
+            } else {
+                if (image == null) {
+                    image = CachedImageUtil.getResource("/image/" + (type.equals("logo") ? "logo.png" : "background.jpg"));
                 }
+                length = image.length;
+                entity = image;
             }
-        })
+        } catch (IOException e) {
+            throw new ServerException("ImageError", "Error reading the theme image", e);
+        }
+
+        return Response.ok(entity)
+        .header(HttpHeaders.CONTENT_LENGTH, length)
         .header(HttpHeaders.CONTENT_TYPE, "image/*")
         .header(HttpHeaders.CACHE_CONTROL, "public")
         .header(HttpHeaders.EXPIRES, HttpUtil.buildExpiresHeader(3_600_000L * 24L * 15L))
@@ -19,8 +19,10 @@ import com.sismics.docs.core.model.jpa.*;
 import com.sismics.docs.core.util.ConfigUtil;
 import com.sismics.docs.core.util.RoutingUtil;
 import com.sismics.docs.core.util.authentication.AuthenticationUtil;
+import com.sismics.docs.core.util.jpa.PaginatedList;
 import com.sismics.docs.core.util.jpa.SortCriteria;
 import com.sismics.docs.rest.constant.BaseFunction;
+import com.sismics.rest.annotation.ReadWrite;
 import com.sismics.rest.exception.ClientException;
 import com.sismics.rest.exception.ForbiddenClientException;
 import com.sismics.rest.exception.ServerException;
@@ -652,6 +654,7 @@ public class UserResource extends BaseResource {
      * @return Response
      */
     @GET
+    @ReadWrite
     public Response info() {
         JsonObjectBuilder response = Json.createObjectBuilder();
         if (!authenticate()) {
@@ -771,6 +774,14 @@ public class UserResource extends BaseResource {
      * @apiParam {Number} sort_column Column index to sort on
      * @apiParam {Boolean} asc If true, sort in ascending order
      * @apiParam {String} group Filter on this group
+     * @apiParam {Number} [limit] Page limit, all users are returned if no pagination parameter is provided
+     * @apiParam {Number} [offset] Page offset
+     * @apiParam {String} [cursor] Keyset pagination cursor, empty for the first page and then the previous <code>next_cursor</code>
+     * @apiParam {String="exact","cached","estimate","none"} [total=exact] How the total number of users is counted
+     * @apiSuccess {Number} total Total number of users (paginated only, absent if not counted)
+     * @apiSuccess {Boolean} total_estimated True if the total is an estimation
+     * @apiSuccess {Boolean} has_more True if there are more users after this page (paginated only)
+     * @apiSuccess {String} next_cursor Cursor of the next page (keyset pagination only)
      * @apiSuccess {Object[]} users List of users
      * @apiSuccess {String} users.id ID
      * @apiSuccess {String} users.username Username
@@ -781,12 +792,17 @@ public class UserResource extends BaseResource {
      * @apiSuccess {Number} users.create_date Create date (timestamp)
      * @apiSuccess {Number} users.disabled True if the user is disabled
      * @apiError (client) ForbiddenError Access denied
+     * @apiError (client) ValidationError Validation error
      * @apiPermission user
      * @apiVersion 1.5.0
      *
      * @param sortColumn Sort index
      * @param asc If true, ascending sorting, else descending
      * @param groupName Only return users from this group
+     * @param limit Page limit
+     * @param offset Page offset
+     * @param cursor Keyset cursor
+     * @param total Count mode of the total
      * @return Response
      */
     @GET
@@ -794,7 +810,11 @@ public class UserResource extends BaseResource {
     public Response list(
             @QueryParam("sort_column") Integer sortColumn,
             @QueryParam("asc") Boolean asc,
-            @QueryParam("group") String groupName) {
+            @QueryParam("group") String groupName,
+            @QueryParam("limit") Integer limit,
+            @QueryParam("offset") Integer offset,
+            @QueryParam("cursor") String cursor,
+            @QueryParam("total") String total) {
         if (!authenticate()) {
             throw new ForbiddenClientException();
         }
@@ -813,7 +833,16 @@ public class UserResource extends BaseResource {
         }
 
         UserDao userDao = new UserDao();
-        List<UserDto> userDtoList = userDao.findByCriteria(new UserCriteria().setGroupId(groupId), sortCriteria);
+        UserCriteria userCriteria = new UserCriteria().setGroupId(groupId);
+        PaginatedList<UserDto> paginatedList = null;
+        List<UserDto> userDtoList;
+        if (limit != null || offset != null || cursor != null) {
+            paginatedList = createPaginatedList(limit, offset, sortCriteria, cursor, total);
+            userDao.findByCriteria(paginatedList, userCriteria, sortCriteria);
+            userDtoList = paginatedList.getResultList();
+        } else {
+            userDtoList = userDao.findByCriteria(userCriteria, sortCriteria);
+        }
         for (UserDto userDto : userDtoList) {
             users.add(Json.createObjectBuilder()
                     .add("id", userDto.getId())
@@ -828,6 +857,9 @@ public class UserResource extends BaseResource {
 
         JsonObjectBuilder response = Json.createObjectBuilder()
                 .add("users", users);
+        if (paginatedList != null) {
+            addPagination(response, paginatedList);
+        }
         return Response.ok().entity(response.build()).build();
     }
 
@@ -0,0 +1,95 @@
+package com.sismics.docs.rest.util;
+
+import com.google.common.io.Resources;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Unencrypted images kept in memory.
+ * They are sent as byte arrays, written at once with their length instead of being read and copied on each request.
+ *
+ * @author bgamard
+ */
+public class CachedImageUtil {
+    /**
+     * Maximum size of a file kept in memory.
+     */
+    private static final long MAX_FILE_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * Classpath images by name.
+     */
+    private static final Map<String, byte[]> resourceMap = new ConcurrentHashMap<>();
+
+    /**
+     * Images files by path.
+     */
+    private static final Map<Path, CachedFile> fileMap = new ConcurrentHashMap<>();
+
+    /**
+     * Returns an image from the classpath.
+     *
+     * @param name Resource name
+     * @return Image content
+     */
+    public static byte[] getResource(String name) {
+        return resourceMap.computeIfAbsent(name, key -> {
+            try {
+                return Resources.toByteArray(Resources.getResource(CachedImageUtil.class, key));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Returns an image file.
+     * The file is read again when it is modified.
+     *
+     * @param path Image file
+     * @return Image content, null if the file does not exist or is too large to be kept in memory
+     * @throws IOException e
+     */
+    public static byte[] getFile(Path path) throws IOException {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            fileMap.remove(path);
+            return null;
+        }
+        if (attributes.size() > MAX_FILE_SIZE) {
+            fileMap.remove(path);
+            return null;
+        }
+
+        long lastModified = attributes.lastModifiedTime().toMillis();
+        CachedFile cachedFile = fileMap.get(path);
+        if (cachedFile == null || cachedFile.lastModified != lastModified || cachedFile.content.length != attributes.size()) {
+            cachedFile = new CachedFile(lastModified, Files.readAllBytes(path));
+            fileMap.put(path, cachedFile);
+        }
+        return cachedFile.content;
+    }
+
+    /**
+     * Image file in memory.
+     */
+    private static class CachedFile {
+        private final long lastModified;
+
+        private final byte[] content;
+
+        private CachedFile(long lastModified, byte[] content) {
+            this.lastModified = lastModified;
+            this.content = content;
+        }
+    }
+}
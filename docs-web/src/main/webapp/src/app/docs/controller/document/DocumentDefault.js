@@ -3,7 +3,7 @@
 /**
  * Document default controller.
  */
-angular.module('docs').controller('DocumentDefault', function ($scope, $rootScope, $state, Restangular, Upload, $translate, $uibModal, $dialog, User) {
+angular.module('docs').controller('DocumentDefault', function ($scope, $rootScope, $state, Restangular, FileUpload, $translate, $uibModal, $dialog, User) {
   // Load user audit log
   Restangular.one('auditlog').get().then(function (data) {
     $scope.logs = data.logs;
@@ -49,27 +49,21 @@ angular.module('docs').controller('DocumentDefault', function ($scope, $rootScop
   $scope.uploadFile = function (file, newfile) {
     // Upload the file
     newfile.status = $translate.instant('document.default.upload_progress');
-    return Upload.upload({
-      method: 'PUT',
-      url: '../api/file',
-      file: file
-    })
-        .progress(function (e) {
-          newfile.progress = parseInt(100.0 * e.loaded / e.total);
-        })
-        .success(function (data) {
+    return FileUpload.upload(file)
+        .then(function (data) {
           // Update local model with real data
           newfile.id = data.id;
           newfile.size = data.size;
 
           // New file uploaded, increase used quota
           $rootScope.userInfo.storage_current += data.size;
-        })
-        .error(function (data) {
+        }, function (data) {
           newfile.status = $translate.instant('document.default.upload_error');
           if (data.type === 'QuotaReached') {
             newfile.status += ' - ' + $translate.instant('document.default.upload_error_quota');
           }
+        }, function (e) {
+          newfile.progress = parseInt(100.0 * e.loaded / e.total);
         });
   };
 
@@ -3,7 +3,7 @@
 /**
  * Document edition controller.
  */
-angular.module('docs').controller('DocumentEdit', function($rootScope, $scope, $q, $http, $state, $stateParams, Restangular, $translate) {
+angular.module('docs').controller('DocumentEdit', function($rootScope, $scope, $q, $http, $state, $stateParams, Restangular, $translate, FileUpload) {
   // Alerts
   $scope.alerts = [];
 
@@ -153,44 +153,11 @@ angular.module('docs').controller('DocumentEdit', function($rootScope, $scope, $
         
         // Send a file from the input file array and return a promise
         var sendFile = function(key) {
-          var deferred = $q.defer();
-          var getProgressListener = function(deferred) {
-            return function(event) {
-              deferred.notify(event);
-            };
-          };
-
-          // Build the payload
-          var file = $scope.newFiles[key];
-          var formData = new FormData();
-          formData.append('id', data.id);
-          formData.append('file', file, encodeURIComponent(file.name));
-
-          // Send the file
-          $.ajax({
-            type: 'PUT',
-            url: '../api/file',
-            data: formData,
-            cache: false,
-            contentType: false,
-            processData: false,
-            success: function(response) {
-              deferred.resolve(response);
-            },
-            error: function(jqXHR) {
-              deferred.reject(jqXHR);
-            },
-            xhr: function() {
-              var myXhr = $.ajaxSettings.xhr();
-              myXhr.upload.addEventListener(
-                  'progress', getProgressListener(deferred), false);
-              return myXhr;
-            }
-          });
+          var upload = FileUpload.upload($scope.newFiles[key], data.id);
 
           // Update progress bar and title on progress
           var startProgress = $scope.fileProgress;
-          deferred.promise.then(function(data) {
+          upload.then(function(data) {
             // New file uploaded, increase used quota
             $rootScope.userInfo.storage_current += data.size;
           }, function(data) {
@@ -198,7 +165,7 @@ angular.module('docs').controller('DocumentEdit', function($rootScope, $scope, $
             $scope.alerts.unshift({
               type: 'danger',
               msg: $translate.instant('document.edit.document_' + ($scope.isEdit() ? 'edited' : 'added') + '_with_errors')
-                + (data.responseJSON && data.responseJSON.type === 'QuotaReached' ? (' - ' + $translate.instant('document.edit.quota_reached')) : '')
+                + (data.type === 'QuotaReached' ? (' - ' + $translate.instant('document.edit.quota_reached')) : '')
             });
 
             // Reset view and title
@@ -212,7 +179,7 @@ angular.module('docs').controller('DocumentEdit', function($rootScope, $scope, $
             $rootScope.pageTitle = Math.round($scope.fileProgress) + '% - ' + $rootScope.appName;
           });
 
-          return deferred.promise;
+          return upload;
         };
         
         // Upload files sequentially
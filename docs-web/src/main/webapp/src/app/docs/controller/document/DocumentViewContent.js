@@ -3,7 +3,7 @@
 /**
  * Document view content controller.
  */
-angular.module('docs').controller('DocumentViewContent', function ($scope, $rootScope, $stateParams, Restangular, $dialog, $state, Upload, $translate, $uibModal) {
+angular.module('docs').controller('DocumentViewContent', function ($scope, $rootScope, $stateParams, Restangular, $dialog, $state, FileUpload, $translate, $uibModal) {
   $scope.displayMode = _.isUndefined(localStorage.fileDisplayMode) ? 'grid' : localStorage.fileDisplayMode;
   $scope.openedFile = undefined;
 
@@ -146,31 +146,21 @@ angular.module('docs').controller('DocumentViewContent', function ($scope, $root
   $scope.uploadFile = function(file, newfile, previousFileId) {
     // Upload the file
     newfile.status = $translate.instant('document.view.content.upload_progress');
-    return Upload.upload({
-      method: 'PUT',
-      url: '../api/file',
-      file: file,
-      fields: {
-        id: $stateParams.id,
-        previousFileId: previousFileId
-      }
-    })
-    .progress(function(e) {
-      newfile.progress = parseInt(100.0 * e.loaded / e.total);
-    })
-    .success(function(data) {
+    return FileUpload.upload(file, $stateParams.id, previousFileId)
+    .then(function(data) {
       // Update local model with real data
       newfile.id = data.id;
       newfile.size = data.size;
 
       // New file uploaded, increase used quota
       $rootScope.userInfo.storage_current += data.size;
-    })
-    .error(function (data) {
+    }, function(data) {
       newfile.status = $translate.instant('document.view.content.upload_error');
       if (data.type === 'QuotaReached') {
         newfile.status += ' - ' + $translate.instant('document.view.content.upload_error_quota');
       }
+    }, function(e) {
+      newfile.progress = parseInt(100.0 * e.loaded / e.total);
     });
   };
 
@@ -0,0 +1,103 @@
+'use strict';
+
+/**
+ * Resumable file upload service.
+ * Files are sent in chunks, an interrupted upload continues from the offset received by the server.
+ */
+angular.module('docs').factory('FileUpload', function($http, $q, $timeout) {
+  // Size of the chunks sent
+  var CHUNK_SIZE = 4 * 1024 * 1024;
+
+  // Consecutive failures before giving up
+  var MAX_RETRY = 5;
+
+  // Delay before resuming after the first failure (ms), doubled after each one
+  var RETRY_DELAY = 1000;
+
+  // Client errors meaning that the server is not where we expect it to be, or not ready yet
+  var RESUMABLE_ERRORS = ['OffsetMismatch', 'UploadInProgress', 'TemporarySpaceFull'];
+
+  /**
+   * Returns true if resuming after this error may succeed.
+   */
+  var isResumable = function(response) {
+    return response.status <= 0 || response.status >= 500
+        || response.data && _.contains(RESUMABLE_ERRORS, response.data.type);
+  };
+
+  return {
+    /**
+     * Upload a file.
+     * The promise is notified of the progress with { loaded, total } and resolved with the added file.
+     * @param file File
+     * @param documentId Document ID (optional)
+     * @param previousFileId ID of the file to replace by this new version (optional)
+     */
+    upload: function(file, documentId, previousFileId) {
+      var deferred = $q.defer();
+      var uploadId = null;
+      var retry = 0;
+
+      // Give up and cancel the upload session
+      var fail = function(response) {
+        if (uploadId) {
+          $http.delete('../api/file/upload/' + uploadId);
+        }
+        deferred.reject(response.data || {});
+      };
+
+      // Ask the server where to resume from
+      var resume = function() {
+        $http.get('../api/file/upload/' + uploadId).then(function(response) {
+          send(response.data.offset);
+        }, retryOrFail);
+      };
+
+      // Resume later after a failure, unless there is no hope
+      var retryOrFail = function(response) {
+        if (!isResumable(response) || ++retry > MAX_RETRY) {
+          fail(response);
+          return;
+        }
+        $timeout(resume, RETRY_DELAY * Math.pow(2, retry - 1));
+      };
+
+      // Send the chunk starting at an offset, or complete the upload when everything is received
+      var send = function(offset) {
+        if (offset >= file.size) {
+          $http.post('../api/file/upload/' + uploadId + '/complete').then(function(response) {
+            deferred.resolve(response.data);
+          }, fail);
+          return;
+        }
+
+        $http.put('../api/file/upload/' + uploadId, file.slice(offset, offset + CHUNK_SIZE), {
+          params: { offset: offset },
+          headers: { 'Content-Type': 'application/octet-stream' },
+          transformRequest: angular.identity,
+          uploadEventHandlers: {
+            progress: function(e) {
+              deferred.notify({ loaded: offset + e.loaded, total: file.size });
+            }
+          }
+        }).then(function(response) {
+          retry = 0;
+          send(response.data.offset);
+        }, retryOrFail);
+      };
+
+      // Start the upload session
+      $http.post('../api/file/upload', {
+        id: documentId,
+        previousFileId: previousFileId,
+        name: file.name,
+        size: file.size
+      }).then(function(response) {
+        uploadId = response.data.id;
+        send(response.data.offset);
+      }, fail);
+
+      return deferred.promise;
+    }
+  };
+});
@@ -376,9 +376,11 @@ public class TestAclResource extends BaseJerseyTest {
         Assert.assertEquals(Status.FORBIDDEN.getStatusCode(), response.getStatus());
 
         // acltag2 can see document1 with tag1 (non-writable)
-        json = target().path("/document/" + document1Id).request()
+        response = target().path("/document/" + document1Id).request()
                 .cookie(TokenBasedSecurityFilter.COOKIE_NAME, acltag2Token)
-                .get(JsonObject.class);
+                .get();
+        Assert.assertNull(response.getHeaderString("Server-Timing"));
+        json = response.readEntity(JsonObject.class);
         tags = json.getJsonArray("tags");
         Assert.assertEquals(1, tags.size());
         Assert.assertFalse(json.getBoolean("writable"));
@@ -449,5 +451,14 @@ public class TestAclResource extends BaseJerseyTest {
                         .param("title", "My super document 1")
                         .param("tags", tag1Id)
                         .param("language", "eng")), JsonObject.class);
+
+        // The backend timings are disclosed to administrators only
+        String adminToken = adminToken();
+        String adminDocumentId = clientUtil.createDocument(adminToken);
+        response = target().path("/document/" + adminDocumentId).request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
+                .get();
+        Assert.assertEquals(Status.OK.getStatusCode(), response.getStatus());
+        Assert.assertTrue(response.getHeaderString("Server-Timing").contains("acls;dur="));
     }
 }
\ No newline at end of file
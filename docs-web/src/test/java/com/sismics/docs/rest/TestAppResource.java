@@ -63,6 +63,15 @@ public class TestAppResource extends BaseJerseyTest {
         Assert.assertTrue(json.containsKey("global_storage_current"));
         Assert.assertTrue(json.getJsonNumber("active_user_count").longValue() > 0);
 
+        // Check the connection pool statistics
+        json = target().path("/app/db_pool").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
+                .get(JsonObject.class);
+        Assert.assertTrue(json.getBoolean("tracked"));
+        Assert.assertEquals(10, json.getInt("max"));
+        Assert.assertTrue(json.getInt("total") > 0);
+        Assert.assertTrue(json.getJsonObject("acquire_micros").getJsonNumber("count").longValue() > 0);
+
         // Rebuild Lucene index
         Response response = target().path("/app/batch/reindex").request()
                 .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
@@ -67,6 +67,20 @@ public class TestAuditLogResource extends BaseJerseyTest {
         Assert.assertNotNull(logs.getJsonObject(0).getJsonNumber("create_date"));
         Assert.assertEquals("auditlog1", logs.getJsonObject(1).getString("username"));
         Assert.assertEquals("auditlog1", logs.getJsonObject(2).getString("username"));
+        Assert.assertEquals(3, json.getInt("total"));
+        Assert.assertFalse(json.getBoolean("has_more"));
+
+        // Get all logs for the document with keyset pagination
+        json = target().path("/auditlog")
+                .queryParam("document", document1Id)
+                .queryParam("cursor", "")
+                .queryParam("total", "estimate")
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, auditlog1Token)
+                .get(JsonObject.class);
+        Assert.assertEquals(3, json.getJsonArray("logs").size());
+        Assert.assertFalse(json.getBoolean("has_more"));
+        Assert.assertFalse(json.containsKey("next_cursor"));
         
         // Get all logs for the current user
         json = target().path("/auditlog").request()
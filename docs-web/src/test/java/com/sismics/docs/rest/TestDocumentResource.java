@@ -15,6 +15,7 @@ import jakarta.json.JsonArray;
 import jakarta.json.JsonObject;
 import jakarta.ws.rs.client.Entity;
 import jakarta.ws.rs.core.Form;
+import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.Response.Status;
@@ -170,6 +171,47 @@ public class TestDocumentResource extends BaseJerseyTest {
                 .get(JsonObject.class);
         documents = json.getJsonArray("documents");
         Assert.assertEquals(2, documents.size());
+        Assert.assertEquals(2, json.getInt("total"));
+        Assert.assertFalse(json.getBoolean("has_more"));
+
+        // List documents from document3 with keyset pagination
+        json = target().path("/document/list")
+                .queryParam("sort_column", 1)
+                .queryParam("asc", true)
+                .queryParam("limit", 1)
+                .queryParam("cursor", "")
+                .queryParam("total", "none")
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, document3Token)
+                .get(JsonObject.class);
+        documents = json.getJsonArray("documents");
+        Assert.assertEquals(1, documents.size());
+        Assert.assertEquals(document3Id, documents.getJsonObject(0).getString("id"));
+        Assert.assertFalse(json.containsKey("total"));
+        Assert.assertTrue(json.getBoolean("has_more"));
+        json = target().path("/document/list")
+                .queryParam("sort_column", 1)
+                .queryParam("asc", true)
+                .queryParam("limit", 1)
+                .queryParam("cursor", json.getString("next_cursor"))
+                .queryParam("total", "cached")
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, document3Token)
+                .get(JsonObject.class);
+        documents = json.getJsonArray("documents");
+        Assert.assertEquals(1, documents.size());
+        Assert.assertEquals(document4Id, documents.getJsonObject(0).getString("id"));
+        Assert.assertEquals(2, json.getInt("total"));
+        Assert.assertFalse(json.getBoolean("has_more"));
+        Assert.assertFalse(json.containsKey("next_cursor"));
+
+        // List documents with an invalid cursor
+        Response response = target().path("/document/list")
+                .queryParam("cursor", "invalid")
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, document3Token)
+                .get();
+        Assert.assertEquals(Status.BAD_REQUEST, Status.fromStatusCode(response.getStatus()));
 
         // Check highlights
         json = target().path("/document/list")
@@ -322,7 +364,7 @@ public class TestDocumentResource extends BaseJerseyTest {
         Assert.assertEquals(document2Id, json.getString("id"));
 
         // Export a document in PDF format
-        Response response = target().path("/document/" + document1Id + "/pdf")
+        response = target().path("/document/" + document1Id + "/pdf")
                 .queryParam("margin", "10")
                 .queryParam("metadata", "true")
                 .queryParam("comments", "true")
@@ -418,9 +460,9 @@ public class TestDocumentResource extends BaseJerseyTest {
         Assert.assertEquals(Status.NOT_FOUND, Status.fromStatusCode(response.getStatus()));
 
         // Check that the associated files are deleted from FS
-        java.io.File storedFile = DirectoryUtil.getStorageDirectory().resolve(file1Id).toFile();
-        java.io.File webFile = DirectoryUtil.getStorageDirectory().resolve(file1Id + "_web").toFile();
-        java.io.File thumbnailFile = DirectoryUtil.getStorageDirectory().resolve(file1Id + "_thumb").toFile();
+        java.io.File storedFile = DirectoryUtil.getStoredFile(file1Id).toFile();
+        java.io.File webFile = DirectoryUtil.getStoredFile(file1Id + "_web").toFile();
+        java.io.File thumbnailFile = DirectoryUtil.getStoredFile(file1Id + "_thumb").toFile();
         Assert.assertFalse(storedFile.exists());
         Assert.assertFalse(webFile.exists());
         Assert.assertFalse(thumbnailFile.exists());
@@ -873,9 +915,12 @@ public class TestDocumentResource extends BaseJerseyTest {
         String document1Id = json.getString("id");
 
         // Check the values
-        json = target().path("/document/" + document1Id).request()
+        Response response = target().path("/document/" + document1Id).request()
                 .cookie(TokenBasedSecurityFilter.COOKIE_NAME, metadata1Token)
-                .get(JsonObject.class);
+                .get();
+        String etag = response.getHeaderString(HttpHeaders.ETAG);
+        Assert.assertNotNull(etag);
+        json = response.readEntity(JsonObject.class);
         JsonArray metadata = json.getJsonArray("metadata");
         Assert.assertEquals(5, metadata.size());
         JsonObject meta = metadata.getJsonObject(0);
@@ -922,6 +967,20 @@ public class TestDocumentResource extends BaseJerseyTest {
                         .param("metadata_value", Long.toString(dateValue))
                         .param("metadata_value", "true")), JsonObject.class);
 
+        // The document is not sent again if the client already has it
+        response = target().path("/document/" + document1Id).request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, metadata1Token)
+                .header(HttpHeaders.IF_NONE_MATCH, etag)
+                .get();
+        Assert.assertEquals(Status.OK, Status.fromStatusCode(response.getStatus()));
+        Assert.assertNotEquals(etag, response.getHeaderString(HttpHeaders.ETAG));
+        etag = response.getHeaderString(HttpHeaders.ETAG);
+        response = target().path("/document/" + document1Id).request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, metadata1Token)
+                .header(HttpHeaders.IF_NONE_MATCH, etag)
+                .get();
+        Assert.assertEquals(Status.NOT_MODIFIED, Status.fromStatusCode(response.getStatus()));
+
         // Check the values
         json = target().path("/document/" + document1Id).request()
                 .cookie(TokenBasedSecurityFilter.COOKIE_NAME, metadata1Token)
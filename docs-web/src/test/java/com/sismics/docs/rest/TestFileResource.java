@@ -16,13 +16,17 @@ import jakarta.json.JsonArray;
 import jakarta.json.JsonObject;
 import jakarta.ws.rs.client.Entity;
 import jakarta.ws.rs.core.Form;
+import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.Response.Status;
+import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
 /**
@@ -58,7 +62,74 @@ public class TestFileResource extends BaseJerseyTest {
         InputStream is = (InputStream) response.getEntity();
         byte[] fileBytes = ByteStreams.toByteArray(is);
         Assert.assertTrue(fileBytes.length > 0);
-        
+        Assert.assertEquals("bytes", response.getHeaderString("Accept-Ranges"));
+        Assert.assertEquals(fileBytes.length, response.getLength());
+        String lastModified = response.getHeaderString(HttpHeaders.LAST_MODIFIED);
+        Assert.assertNotNull(lastModified);
+        String etag = response.getHeaderString(HttpHeaders.ETAG);
+        Assert.assertNotNull(etag);
+
+        // The file data is not sent again if the client already has it
+        response = target().path("/file/" + file1Id + "/data").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, file1Token)
+                .header(HttpHeaders.IF_NONE_MATCH, etag)
+                .get();
+        Assert.assertEquals(Status.NOT_MODIFIED, Status.fromStatusCode(response.getStatus()));
+        Assert.assertEquals(etag, response.getHeaderString(HttpHeaders.ETAG));
+        response = target().path("/file/" + file1Id + "/data").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, file1Token)
+                .header(HttpHeaders.IF_MODIFIED_SINCE, lastModified)
+                .get();
+        Assert.assertEquals(Status.NOT_MODIFIED, Status.fromStatusCode(response.getStatus()));
+        response = target().path("/file/" + file2Id + "/data").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, file1Token)
+                .header(HttpHeaders.IF_NONE_MATCH, etag)
+                .get();
+        Assert.assertEquals(Status.OK, Status.fromStatusCode(response.getStatus()));
+        Assert.assertNotEquals(etag, response.getHeaderString(HttpHeaders.ETAG));
+
+        // Get a range of the file data
+        response = target().path("/file/" + file1Id + "/data").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, file1Token)
+                .header("Range", "bytes=1000-1999")
+                .get();
+        Assert.assertEquals(Status.PARTIAL_CONTENT, Status.fromStatusCode(response.getStatus()));
+        Assert.assertEquals("bytes 1000-1999/" + fileBytes.length, response.getHeaderString("Content-Range"));
+        Assert.assertArrayEquals(Arrays.copyOfRange(fileBytes, 1000, 2000), ByteStreams.toByteArray((InputStream) response.getEntity()));
+
+        // Get the end of the file data
+        response = target().path("/file/" + file1Id + "/data").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, file1Token)
+                .header("Range", "bytes=-100")
+                .header("If-Range", lastModified)
+                .get();
+        Assert.assertEquals(Status.PARTIAL_CONTENT, Status.fromStatusCode(response.getStatus()));
+        Assert.assertArrayEquals(Arrays.copyOfRange(fileBytes, fileBytes.length - 100, fileBytes.length), ByteStreams.toByteArray((InputStream) response.getEntity()));
+        response = target().path("/file/" + file1Id + "/data").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, file1Token)
+                .header("Range", "bytes=-100")
+                .header("If-Range", etag)
+                .get();
+        Assert.assertEquals(Status.PARTIAL_CONTENT, Status.fromStatusCode(response.getStatus()));
+        Assert.assertEquals(100, ByteStreams.toByteArray((InputStream) response.getEntity()).length);
+
+        // The range is ignored if the file changed
+        response = target().path("/file/" + file1Id + "/data").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, file1Token)
+                .header("Range", "bytes=-100")
+                .header("If-Range", "Thu, 1 Jan 2015 00:00:00 GMT")
+                .get();
+        Assert.assertEquals(Status.OK, Status.fromStatusCode(response.getStatus()));
+        Assert.assertEquals(fileBytes.length, ByteStreams.toByteArray((InputStream) response.getEntity()).length);
+
+        // Range outside of the file
+        response = target().path("/file/" + file1Id + "/data").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, file1Token)
+                .header("Range", "bytes=" + fileBytes.length + "-")
+                .get();
+        Assert.assertEquals(Status.REQUESTED_RANGE_NOT_SATISFIABLE, Status.fromStatusCode(response.getStatus()));
+        Assert.assertEquals("bytes */" + fileBytes.length, response.getHeaderString("Content-Range"));
+
         // Get the thumbnail data
         response = target().path("/file/" + file1Id + "/data")
                 .queryParam("size", "thumb")
@@ -69,6 +140,45 @@ public class TestFileResource extends BaseJerseyTest {
         is = (InputStream) response.getEntity();
         fileBytes = ByteStreams.toByteArray(is);
         Assert.assertTrue(fileBytes.length > 0);
+
+        // Get the thumbnail data again, from memory
+        response = target().path("/file/" + file1Id + "/data")
+                .queryParam("size", "thumb")
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, file1Token)
+                .get();
+        Assert.assertEquals(fileBytes.length, response.getLength());
+        Assert.assertArrayEquals(fileBytes, ByteStreams.toByteArray((InputStream) response.getEntity()));
+        JsonObject json = target().path("/app/preview_cache").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken())
+                .get(JsonObject.class);
+        Assert.assertTrue(json.getJsonNumber("count").longValue() > 0);
+        Assert.assertTrue(json.getJsonNumber("size").longValue() >= fileBytes.length);
+        Assert.assertTrue(json.getJsonNumber("hits").longValue() > 0);
+
+        // The temporary files of an upload are released once it is processed
+        json = target().path("/app/temporary_files").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken())
+                .get(JsonObject.class);
+        Assert.assertEquals(0, json.getJsonNumber("max_size").longValue());
+        long temporaryCount = json.getJsonNumber("count").longValue();
+        long temporarySize = json.getJsonNumber("size").longValue();
+        long releasedCount = json.getJsonNumber("released").longValue();
+        String processedFileId = clientUtil.addFileToDocument(FILE_PIA_00452_JPG, file1Token, document1Id);
+        json = target().path("/app/temporary_files").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken())
+                .get(JsonObject.class);
+        Assert.assertEquals(temporaryCount, json.getJsonNumber("count").longValue());
+        Assert.assertEquals(temporarySize, json.getJsonNumber("size").longValue());
+        Assert.assertTrue(json.getJsonNumber("released").longValue() > releasedCount);
+        Assert.assertTrue(json.containsKey("collected"));
+        target().path("/file/" + processedFileId).request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, file1Token)
+                .delete(JsonObject.class);
+        json = target().path("/app/storage_scrub").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken())
+                .get(JsonObject.class);
+        Assert.assertFalse(json.getBoolean("enabled"));
         
         // Get the content data
         response = target().path("/file/" + file1Id + "/data")
@@ -90,11 +200,11 @@ public class TestFileResource extends BaseJerseyTest {
         Assert.assertTrue(fileBytes.length > 0);
         
         // Check that the files are not readable directly from FS
-        Path storedFile = DirectoryUtil.getStorageDirectory().resolve(file1Id);
+        Path storedFile = DirectoryUtil.getStoredFile(file1Id);
         Assert.assertEquals(MimeType.DEFAULT, MimeTypeUtil.guessMimeType(storedFile, null));
 
         // Get all files from a document
-        JsonObject json = target().path("/file/list")
+        json = target().path("/file/list")
                 .queryParam("id", document1Id)
                 .request()
                 .cookie(TokenBasedSecurityFilter.COOKIE_NAME, file1Token)
@@ -168,9 +278,9 @@ public class TestFileResource extends BaseJerseyTest {
         Assert.assertEquals(Status.NOT_FOUND, Status.fromStatusCode(response.getStatus()));
         
         // Check that files are deleted from FS
-        storedFile = DirectoryUtil.getStorageDirectory().resolve(file1Id);
-        Path webFile = DirectoryUtil.getStorageDirectory().resolve(file1Id + "_web");
-        Path thumbnailFile = DirectoryUtil.getStorageDirectory().resolve(file1Id + "_thumb");
+        storedFile = DirectoryUtil.getStoredFile(file1Id);
+        Path webFile = DirectoryUtil.getStoredFile(file1Id + "_web");
+        Path thumbnailFile = DirectoryUtil.getStoredFile(file1Id + "_thumb");
         Assert.assertFalse(Files.exists(storedFile));
         Assert.assertFalse(Files.exists(webFile));
         Assert.assertFalse(Files.exists(thumbnailFile));
@@ -273,11 +383,17 @@ public class TestFileResource extends BaseJerseyTest {
                 .cookie(TokenBasedSecurityFilter.COOKIE_NAME, file1Token)
                 .get();
         Assert.assertEquals(Status.OK, Status.fromStatusCode(response.getStatus()));
-        InputStream is = (InputStream) response.getEntity();
-        ZipInputStream zipInputStream = new ZipInputStream(is);
-        Assert.assertEquals(zipInputStream.getNextEntry().getName(), "0-PIA00452.jpg");
+        byte[] zipBytes = ByteStreams.toByteArray((InputStream) response.getEntity());
+        ZipInputStream zipInputStream = new ZipInputStream(new ByteArrayInputStream(zipBytes));
+        ZipEntry zipEntry = zipInputStream.getNextEntry();
+        Assert.assertEquals(zipEntry.getName(), "0-PIA00452.jpg");
+        Assert.assertEquals(ZipEntry.STORED, zipEntry.getMethod());
+        Assert.assertArrayEquals(Resources.toByteArray(Resources.getResource(FILE_PIA_00452_JPG)), ByteStreams.toByteArray(zipInputStream));
         Assert.assertNull(zipInputStream.getNextEntry());
 
+        // The JPEG is stored, the length of the ZIP is known in advance
+        Assert.assertEquals(Integer.toString(zipBytes.length), response.getHeaderString(HttpHeaders.CONTENT_LENGTH));
+
         // Fail if we don't have access to the document
         response = target().path("/file/zip")
                 .queryParam("id", document1Id)
@@ -299,11 +415,33 @@ public class TestFileResource extends BaseJerseyTest {
                         .param("files", file1Id)
                         .param("files", file2Id)));
         Assert.assertEquals(Status.OK, Status.fromStatusCode(response.getStatus()));
-        is = (InputStream) response.getEntity();
+        InputStream is = (InputStream) response.getEntity();
         zipInputStream = new ZipInputStream(is);
         Assert.assertNotNull(zipInputStream.getNextEntry().getName());
         Assert.assertNotNull(zipInputStream.getNextEntry().getName());
         Assert.assertNull(zipInputStream.getNextEntry());
+
+        // Add a text file, it is deflated and the length of the ZIP is unknown
+        String file3Id = clientUtil.addFileToDocument(FILE_DOCUMENT_TXT, file1Token, document2Id);
+        response = target().path("/file/zip")
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, file1Token)
+                .post(Entity.form(new Form()
+                        .param("files", file1Id)
+                        .param("files", file2Id)
+                        .param("files", file3Id)));
+        Assert.assertEquals(Status.OK, Status.fromStatusCode(response.getStatus()));
+        Assert.assertNull(response.getHeaderString(HttpHeaders.CONTENT_LENGTH));
+        zipInputStream = new ZipInputStream((InputStream) response.getEntity());
+        int deflatedCount = 0;
+        while ((zipEntry = zipInputStream.getNextEntry()) != null) {
+            if (zipEntry.getName().endsWith("document.txt")) {
+                Assert.assertEquals(ZipEntry.DEFLATED, zipEntry.getMethod());
+                Assert.assertArrayEquals(Resources.toByteArray(Resources.getResource(FILE_DOCUMENT_TXT)), ByteStreams.toByteArray(zipInputStream));
+                deflatedCount++;
+            }
+        }
+        Assert.assertEquals(1, deflatedCount);
         
         // Fail if we don't have access to the files
         response = target().path("/file/zip")
@@ -400,6 +538,138 @@ public class TestFileResource extends BaseJerseyTest {
         Assert.assertEquals("ok", json.getString("status"));
     }
     
+    /**
+     * Test the resumable upload.
+     *
+     * @throws Exception e
+     */
+    @Test
+    public void testResumableUpload() throws Exception {
+        // Login file_upload
+        clientUtil.createUser("file_upload");
+        String fileUploadToken = clientUtil.login("file_upload");
+        String document1Id = clientUtil.createDocument(fileUploadToken);
+        byte[] content = Resources.toByteArray(Resources.getResource(FILE_PIA_00452_JPG));
+
+        // Start an upload
+        JsonObject json = target().path("/file/upload").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, fileUploadToken)
+                .post(Entity.form(new Form()
+                        .param("id", document1Id)
+                        .param("name", "PIA00452.jpg")
+                        .param("size", Long.toString(FILE_PIA_00452_JPG_SIZE))), JsonObject.class);
+        String uploadId = json.getString("id");
+        Assert.assertEquals(0, json.getJsonNumber("offset").longValue());
+        Assert.assertTrue(json.getJsonNumber("max_chunk_size").longValue() > 0);
+
+        // Send a first chunk, not aligned on the encryption blocks
+        json = target().path("/file/upload/" + uploadId)
+                .queryParam("offset", 0)
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, fileUploadToken)
+                .put(Entity.entity(Arrays.copyOfRange(content, 0, 1000), MediaType.APPLICATION_OCTET_STREAM), JsonObject.class);
+        Assert.assertEquals(1000, json.getJsonNumber("offset").longValue());
+
+        // The same chunk sent again is refused
+        Response response = target().path("/file/upload/" + uploadId)
+                .queryParam("offset", 0)
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, fileUploadToken)
+                .put(Entity.entity(Arrays.copyOfRange(content, 0, 1000), MediaType.APPLICATION_OCTET_STREAM));
+        Assert.assertEquals(Status.BAD_REQUEST, Status.fromStatusCode(response.getStatus()));
+        Assert.assertEquals("OffsetMismatch", response.readEntity(JsonObject.class).getString("type"));
+
+        // Resume from the offset received
+        json = target().path("/file/upload/" + uploadId).request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, fileUploadToken)
+                .get(JsonObject.class);
+        Assert.assertEquals(1000, json.getJsonNumber("offset").longValue());
+        Assert.assertEquals(FILE_PIA_00452_JPG_SIZE, json.getJsonNumber("size").longValue());
+        Assert.assertEquals("PIA00452.jpg", json.getString("name"));
+
+        // The upload sessions are private
+        clientUtil.createUser("file_upload2");
+        String fileUpload2Token = clientUtil.login("file_upload2");
+        response = target().path("/file/upload/" + uploadId).request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, fileUpload2Token)
+                .get();
+        Assert.assertEquals(Status.NOT_FOUND, Status.fromStatusCode(response.getStatus()));
+
+        // Content past the announced size is refused entirely
+        response = target().path("/file/upload/" + uploadId)
+                .queryParam("offset", 1000)
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, fileUploadToken)
+                .put(Entity.entity(Arrays.copyOfRange(content, 0, content.length), MediaType.APPLICATION_OCTET_STREAM));
+        Assert.assertEquals(Status.BAD_REQUEST, Status.fromStatusCode(response.getStatus()));
+        Assert.assertEquals("SizeExceeded", response.readEntity(JsonObject.class).getString("type"));
+
+        // The upload cannot be completed before receiving everything
+        response = target().path("/file/upload/" + uploadId + "/complete").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, fileUploadToken)
+                .post(Entity.form(new Form()));
+        Assert.assertEquals(Status.BAD_REQUEST, Status.fromStatusCode(response.getStatus()));
+        Assert.assertEquals("UploadIncomplete", response.readEntity(JsonObject.class).getString("type"));
+
+        // Send the rest in two chunks
+        json = target().path("/file/upload/" + uploadId)
+                .queryParam("offset", 1000)
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, fileUploadToken)
+                .put(Entity.entity(Arrays.copyOfRange(content, 1000, 50001), MediaType.APPLICATION_OCTET_STREAM), JsonObject.class);
+        Assert.assertEquals(50001, json.getJsonNumber("offset").longValue());
+        json = target().path("/file/upload/" + uploadId)
+                .queryParam("offset", 50001)
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, fileUploadToken)
+                .put(Entity.entity(Arrays.copyOfRange(content, 50001, content.length), MediaType.APPLICATION_OCTET_STREAM), JsonObject.class);
+        Assert.assertEquals(FILE_PIA_00452_JPG_SIZE, json.getJsonNumber("offset").longValue());
+
+        // Complete the upload
+        json = target().path("/file/upload/" + uploadId + "/complete").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, fileUploadToken)
+                .post(Entity.form(new Form()), JsonObject.class);
+        String file1Id = json.getString("id");
+        Assert.assertEquals(FILE_PIA_00452_JPG_SIZE, json.getJsonNumber("size").longValue());
+        Assert.assertEquals(FILE_PIA_00452_JPG_SIZE, getUserQuota(fileUploadToken));
+
+        // The upload session is gone
+        response = target().path("/file/upload/" + uploadId).request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, fileUploadToken)
+                .get();
+        Assert.assertEquals(Status.NOT_FOUND, Status.fromStatusCode(response.getStatus()));
+
+        // The file is in the document, with the content sent
+        json = target().path("/file/list")
+                .queryParam("id", document1Id)
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, fileUploadToken)
+                .get(JsonObject.class);
+        Assert.assertEquals(1, json.getJsonArray("files").size());
+        Assert.assertEquals(MimeType.IMAGE_JPEG, json.getJsonArray("files").getJsonObject(0).getString("mimetype"));
+        response = target().path("/file/" + file1Id + "/data").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, fileUploadToken)
+                .get();
+        Assert.assertArrayEquals(content, ByteStreams.toByteArray((InputStream) response.getEntity()));
+
+        // Start and cancel an upload
+        json = target().path("/file/upload").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, fileUploadToken)
+                .post(Entity.form(new Form()
+                        .param("name", "document.txt")), JsonObject.class);
+        String upload2Id = json.getString("id");
+        target().path("/file/upload/" + upload2Id)
+                .queryParam("offset", 0)
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, fileUploadToken)
+                .put(Entity.entity(new byte[] { 1, 2, 3 }, MediaType.APPLICATION_OCTET_STREAM), JsonObject.class);
+        json = target().path("/file/upload/" + upload2Id).request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, fileUploadToken)
+                .delete(JsonObject.class);
+        Assert.assertEquals("ok", json.getString("status"));
+        Assert.assertFalse(Files.exists(DirectoryUtil.getUploadDirectory().resolve(upload2Id)));
+    }
+
     /**
      * Test user quota.
      * 
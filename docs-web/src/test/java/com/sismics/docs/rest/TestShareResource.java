@@ -76,6 +76,13 @@ public class TestShareResource extends BaseJerseyTest {
                 .get(JsonObject.class);
         Assert.assertEquals(document1Id, json.getString("id"));
         Assert.assertEquals(3, json.getJsonArray("acls").size()); // 2 for the creator, 1 for the share
+        Assert.assertTrue(json.getBoolean("shared"));
+
+        // The document is listed as shared
+        json = target().path("/document/list").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, share1Token)
+                .get(JsonObject.class);
+        Assert.assertTrue(json.getJsonArray("documents").getJsonObject(0).getBoolean("shared"));
 
         // Get all comments from this document anonymously
         json = target().path("/comment/" + document1Id)
@@ -120,6 +127,12 @@ public class TestShareResource extends BaseJerseyTest {
                 .delete(JsonObject.class);
         Assert.assertEquals("ok", json.getString("status"));
 
+        // The document is not listed as shared anymore
+        json = target().path("/document/list").request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, share1Token)
+                .get(JsonObject.class);
+        Assert.assertFalse(json.getJsonArray("documents").getJsonObject(0).getBoolean("shared"));
+
         // Deletes the share again
         response = target().path("/share/" + share1Id).request()
                 .cookie(TokenBasedSecurityFilter.COOKIE_NAME, share1Token)
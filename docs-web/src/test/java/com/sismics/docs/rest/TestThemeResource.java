@@ -62,9 +62,10 @@ public class TestThemeResource extends BaseJerseyTest {
         Assert.assertEquals("#ff0000", json.getString("color"));
         Assert.assertEquals(".body { content: 'Custom CSS'; }", json.getString("css"));
 
-        // Get the logo
+        // Get the logo, sent from memory with its length
         Response response = target().path("/theme/image/logo").request().get();
         Assert.assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        Assert.assertEquals(response.getLength(), response.readEntity(byte[].class).length);
 
         // Get the background
         response = target().path("/theme/image/background").request().get();
@@ -96,9 +97,10 @@ public class TestThemeResource extends BaseJerseyTest {
             }
         }
 
-        // Get the logo
+        // Get the new logo
         response = target().path("/theme/image/logo").request().get();
         Assert.assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+        Assert.assertArrayEquals(Resources.toByteArray(Resources.getResource("file/PIA00452.jpg")), response.readEntity(byte[].class));
 
         // Get the background
         response = target().path("/theme/image/background").request().get();
@@ -57,6 +57,33 @@ public class TestUserResource extends BaseJerseyTest {
         Assert.assertNotNull(user.getJsonNumber("create_date"));
         Assert.assertFalse(user.getBoolean("totp_enabled"));
         Assert.assertFalse(user.getBoolean("disabled"));
+        Assert.assertFalse(json.containsKey("has_more"));
+
+        // List users with keyset pagination
+        json = target().path("/user/list")
+                .queryParam("sort_column", 1)
+                .queryParam("asc", true)
+                .queryParam("limit", 1)
+                .queryParam("cursor", "")
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
+                .get(JsonObject.class);
+        users = json.getJsonArray("users");
+        Assert.assertEquals(1, users.size());
+        Assert.assertTrue(json.getInt("total") > 1);
+        Assert.assertTrue(json.getBoolean("has_more"));
+        String firstUsername = users.getJsonObject(0).getString("username");
+        json = target().path("/user/list")
+                .queryParam("sort_column", 1)
+                .queryParam("asc", true)
+                .queryParam("limit", 1)
+                .queryParam("cursor", json.getString("next_cursor"))
+                .request()
+                .cookie(TokenBasedSecurityFilter.COOKIE_NAME, adminToken)
+                .get(JsonObject.class);
+        users = json.getJsonArray("users");
+        Assert.assertEquals(1, users.size());
+        Assert.assertTrue(users.getJsonObject(0).getString("username").compareTo(firstUsername) > 0);
 
         // Create a user KO (login length validation)
         Response response = target().path("/user").request()